@@ -1,14 +1,19 @@
 package net.maizegenetics.analysis.association;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.stream.Collectors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -25,7 +30,6 @@ import net.maizegenetics.stats.linearmodels.FactorModelEffect;
 import net.maizegenetics.stats.linearmodels.LinearModelUtils;
 import net.maizegenetics.stats.linearmodels.ModelEffect;
 import net.maizegenetics.stats.linearmodels.ModelEffectUtils;
-import net.maizegenetics.stats.linearmodels.SolveByOrthogonalizing;
 import net.maizegenetics.stats.linearmodels.SweepFastLinearModel;
 import net.maizegenetics.taxa.Taxon;
 import net.maizegenetics.util.BitSet;
@@ -71,7 +75,7 @@ public abstract class AbstractFixedEffectLM implements FixedEffectLM {
 	protected boolean permute = false;
 	protected int numberOfPermutations = 0;
 	protected double[] minP = null;
-	protected List<DoubleMatrix> permutedData;
+	protected PermutedData permutedData;
 	protected double[] baseErrorSSdf;
 	protected double[] totalcfmSSdf;
 	protected double[] markerSSdf;
@@ -87,6 +91,16 @@ public abstract class AbstractFixedEffectLM implements FixedEffectLM {
 	protected int randomSeed;
 	protected boolean useRandomSeed = false;
 	protected Random rand = null;
+	
+	//fields used for multithreaded analysis
+	//sites are given to workers in blocks of this size and reported in site order
+	private static final int SITES_PER_BLOCK = 256;
+	//maximum number of base models saved for reuse, one per missing data pattern
+	private static final int MAX_CACHED_BASE_MODELS = 64;
+	protected int maxThreads = 1;
+	private final Map<OpenBitSet, ArrayList<ModelEffect>> baseModelCache = missingPatternCache();
+	private final Map<OpenBitSet, PermutedData.Base> permutationBaseCache = missingPatternCache();
+	private final int[] genotypeClassCounts = new int[256];
 
 
     protected static final Map<SiteScore.SITE_SCORE_TYPE, String> typeNameMap;
@@ -114,6 +128,50 @@ public abstract class AbstractFixedEffectLM implements FixedEffectLM {
 		siteTableReportRows = new ArrayList<Object[]>();
 		testTaxaReplication();
 	}
+	
+	/**
+	 * Creates a worker that shares the data, settings, and permuted data of the current trait with parent,
+	 * but has its own per site state, permutation minimum p-values, and reports.
+	 * @param parent	the analysis that uses this worker to test a subset of sites
+	 */
+	protected AbstractFixedEffectLM(AbstractFixedEffectLM parent) {
+		myDatum = parent.myDatum;
+		myParentPlugin = parent.myParentPlugin;
+		myGenoPheno = parent.myGenoPheno;
+		numberOfObservations = parent.numberOfObservations;
+		numberOfSites = parent.numberOfSites;
+		myDataAttributes = parent.myDataAttributes;
+		myFactorAttributes = parent.myFactorAttributes;
+		myCovariateAttributes = parent.myCovariateAttributes;
+		numberOfSiteReportColumns = parent.numberOfSiteReportColumns;
+		numberOfAlleleReportColumns = parent.numberOfAlleleReportColumns;
+		areTaxaReplicated = parent.areTaxaReplicated;
+		maxP = parent.maxP;
+		appendAddDomEffects = parent.appendAddDomEffects;
+		minClassSize = parent.minClassSize;
+		biallelicOnly = parent.biallelicOnly;
+		permute = parent.permute;
+		numberOfPermutations = parent.numberOfPermutations;
+		markerpvalueColumn = parent.markerpvalueColumn;
+		permpvalueColumn = parent.permpvalueColumn;
+		currentTraitName = parent.currentTraitName;
+		allData = parent.allData;
+		permutedData = parent.permutedData;
+		if (permute) {
+			minP = new double[numberOfPermutations];
+			Arrays.fill(minP, 1.0);
+		}
+		siteTableReportRows = new ArrayList<Object[]>();
+	}
+	
+	/**
+	 * Used when maxThreads is greater than one. Subclasses that keep per site state in their own fields should
+	 * return a new instance created with {@link #AbstractFixedEffectLM(AbstractFixedEffectLM)}.
+	 * @return		a worker for testing sites on another thread, or null if sites can only be tested on a single thread
+	 */
+	protected AbstractFixedEffectLM newWorker() {
+		return null;
+	}
 
 	@Override
 	public void initializeReportBuilders() {
@@ -151,23 +209,21 @@ public abstract class AbstractFixedEffectLM implements FixedEffectLM {
 				missingObsForSite = missingObs;
 				createPermutedData();
 			}
-			for (int s = 0; s < numberOfSites; s++) {
-				//updata missing obs for this site
-				myCurrentSite = s;
-				getGenotypeAndUpdateMissing(missingObs);
-				boolean keepSite = applySiteFilters();
-				if (!keepSite) continue;
-				siteData = AssociationUtils.getNonMissingDoubles(allData, missingObsForSite);
-				myBaseModel = baseModel();
-				numberOfBaseEffects = myBaseModel.size();
-				analyzeSite();
-				if (permute) updateMinP(missingObs);
-				
-				numberOfTestsCalculated++;
-				if (numberOfTestsCalculated % updateInterval == 0) {
-				        double percentTested = 100.0 * ((double) numberOfTestsCalculated) / numberOfTestsTotal;
-				        percentTested = Math.min(percentTested, 100);
-					if (myParentPlugin != null) myParentPlugin.updateProgress((int) percentTested);
+			List<AbstractFixedEffectLM> workers = createWorkers();
+			if (workers != null) {
+				testSitesInParallel(workers, missingObs, numberOfTestsCalculated, numberOfTestsTotal);
+				numberOfTestsCalculated += numberOfSites;
+			} else {
+				for (int s = 0; s < numberOfSites; s++) {
+					boolean keepSite = testSite(s, missingObs);
+					if (!keepSite) continue;
+					
+					numberOfTestsCalculated++;
+					if (numberOfTestsCalculated % updateInterval == 0) {
+					        double percentTested = 100.0 * ((double) numberOfTestsCalculated) / numberOfTestsTotal;
+					        percentTested = Math.min(percentTested, 100);
+						if (myParentPlugin != null) myParentPlugin.updateProgress((int) percentTested);
+					}
 				}
 			}
 //			System.out.printf("Sites analyzed in %d ms\n", System.currentTimeMillis() - start);
@@ -179,33 +235,156 @@ public abstract class AbstractFixedEffectLM implements FixedEffectLM {
 		}
 	}
 	
+	/**
+	 * Tests a single site and adds the results to the reports
+	 * @param site				a site number
+	 * @param missingObs		a BitSet with bits set for observations missing in model covariates and data
+	 * @return					false if the site was removed by the site filters, true otherwise
+	 */
+	private boolean testSite(int site, BitSet missingObs) {
+		//updata missing obs for this site
+		myCurrentSite = site;
+		getGenotypeAndUpdateMissing(missingObs);
+		boolean keepSite = applySiteFilters();
+		if (!keepSite) return false;
+		siteData = AssociationUtils.getNonMissingDoubles(allData, missingObsForSite);
+		myBaseModel = cachedBaseModel();
+		numberOfBaseEffects = myBaseModel.size();
+		analyzeSite();
+		if (permute) updateMinP(missingObs);
+		return true;
+	}
+	
+	/**
+	 * @return		maxThreads workers for the current trait, or null if sites should be tested on a single thread
+	 */
+	private List<AbstractFixedEffectLM> createWorkers() {
+		if (maxThreads < 2) return null;
+		List<AbstractFixedEffectLM> workers = new ArrayList<>();
+		for (int w = 0; w < maxThreads; w++) {
+			AbstractFixedEffectLM worker = newWorker();
+			if (worker == null) return null;
+			workers.add(worker);
+		}
+		return workers;
+	}
+	
+	/**
+	 * Tests all sites for the current trait. Each worker tests a block of sites at a time and keeps its own
+	 * permutation minimum p-values, which are merged into minP after all sites have been tested.
+	 * Results are added to the reports in site order.
+	 * @param workers					one worker per thread
+	 * @param missingObs				a BitSet with bits set for observations missing in model covariates and data
+	 * @param numberOfTestsBefore		the number of tests done for previous traits, used to report progress
+	 * @param numberOfTestsTotal		the total number of tests for all traits, used to report progress
+	 */
+	private void testSitesInParallel(List<AbstractFixedEffectLM> workers, BitSet missingObs, int numberOfTestsBefore, int numberOfTestsTotal) {
+		int numberOfThreads = workers.size();
+		BlockingQueue<AbstractFixedEffectLM> idleWorkers = new ArrayBlockingQueue<>(numberOfThreads, false, workers);
+		
+		//limit the number of finished blocks waiting to be reported
+		int maxPendingBlocks = 4 * numberOfThreads;
+		ArrayDeque<Future<SiteBlock>> pending = new ArrayDeque<>();
+		ExecutorService pool = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			int nextSite = 0;
+			int numberOfSitesTested = 0;
+			while (nextSite < numberOfSites || !pending.isEmpty()) {
+				while (nextSite < numberOfSites && pending.size() < maxPendingBlocks) {
+					int start = nextSite;
+					int end = Math.min(start + SITES_PER_BLOCK, numberOfSites);
+					pending.add(pool.submit(() -> {
+						AbstractFixedEffectLM worker = idleWorkers.take();
+						try {
+							return worker.testSiteBlock(start, end, missingObs);
+						} finally {
+							idleWorkers.add(worker);
+						}
+					}));
+					nextSite = end;
+				}
+				
+				SiteBlock block = pending.poll().get();
+				for (long r = 0; r < block.siteRows.getRowCount(); r++) siteReportBuilder.add(block.siteRows.getRow(r));
+				for (long r = 0; r < block.alleleRows.getRowCount(); r++) alleleReportBuilder.add(block.alleleRows.getRow(r));
+				siteTableReportRows.addAll(block.permutationRows);
+				
+				numberOfSitesTested += block.numberOfSites;
+				if (myParentPlugin != null) {
+					double percentTested = 100.0 * ((double) (numberOfTestsBefore + numberOfSitesTested)) / numberOfTestsTotal;
+					myParentPlugin.updateProgress((int) Math.min(percentTested, 100));
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("AbstractFixedEffectLM: testSitesInParallel: interrupted while testing " + currentTraitName);
+		} catch (ExecutionException e) {
+			myLogger.debug(e.getMessage(), e);
+			throw new IllegalStateException("AbstractFixedEffectLM: testSitesInParallel: problem testing " + currentTraitName + ": " + e.getCause().getMessage());
+		} finally {
+			pool.shutdownNow();
+		}
+		
+		if (permute) {
+			for (AbstractFixedEffectLM worker : workers) {
+				for (int iter = 0; iter < numberOfPermutations; iter++) {
+					if (minP[iter] > worker.minP[iter]) minP[iter] = worker.minP[iter];
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Tests the sites from start (inclusive) to end (exclusive). Called on a worker.
+	 * @return		the report rows for the tested sites
+	 */
+	private SiteBlock testSiteBlock(int start, int end, BitSet missingObs) {
+		siteReportBuilder = TableReportBuilder.getInstance(currentTraitName, numberOfSiteReportColumns);
+		alleleReportBuilder = TableReportBuilder.getInstance(currentTraitName, numberOfAlleleReportColumns);
+		siteTableReportRows = new ArrayList<Object[]>();
+		for (int s = start; s < end; s++) testSite(s, missingObs);
+		return new SiteBlock(siteReportBuilder.build(), alleleReportBuilder.build(), siteTableReportRows, end - start);
+	}
+	
+	private static class SiteBlock {
+		private final TableReport siteRows;
+		private final TableReport alleleRows;
+		private final List<Object[]> permutationRows;
+		private final int numberOfSites;
+		
+		private SiteBlock(TableReport siteRows, TableReport alleleRows, List<Object[]> permutationRows, int numberOfSites) {
+			this.siteRows = siteRows;
+			this.alleleRows = alleleRows;
+			this.permutationRows = permutationRows;
+			this.numberOfSites = numberOfSites;
+		}
+	}
+	
 	private boolean applySiteFilters() {
 		//does the site pass the filter for biallelic sites
 		//start with the sites to be analyzed
 		if (!myGenoPheno.genotypeTable().hasGenotype()) return true;
 		byte[] siteGeno = myGenoPheno.genotypeAllTaxa(myCurrentSite);
 		int nsites = siteGeno.length;
-		Map<Byte,Integer> genoCountMap = new HashMap<>();
+		
+		//count the observations of each genotype, indexed by unsigned genotype value
+		int[] genoCounts = genotypeClassCounts;
+		Arrays.fill(genoCounts, 0);
 		for (int s = 0; s < nsites; s++) {
-			if (!missingObsForSite.get(s)) {
-				Integer genoCount = genoCountMap.get(siteGeno[s]);
-				if (genoCount == null) {
-					genoCountMap.put(siteGeno[s], 1);
-				} else {
-					genoCountMap.put(siteGeno[s], genoCount + 1);
-				}
-			}
+			if (!missingObsForSite.get(s)) genoCounts[siteGeno[s] & 0xFF]++;
 		}
+		int numberOfClasses = 0;
+		for (int count : genoCounts) if (count > 0) numberOfClasses++;
 		
 		boolean keepSite = true;
 		if (biallelicOnly) {
 			keepSite = false;
 			//the site is biallelic if genoCount = 2 or if genoCount == 3 and one of the genotypes is heterozygous
-			if (genoCountMap.size() == 2) keepSite = true;
-			else if (genoCountMap.size() == 3) {
+			if (numberOfClasses == 2) keepSite = true;
+			else if (numberOfClasses == 3) {
 				int hetCount = 0;
-				for (Byte genoval : genoCountMap.keySet()) {
-					if (GenotypeTableUtils.isHeterozygous(genoval)) hetCount++;
+				for (int g = 0; g < genoCounts.length; g++) {
+					if (genoCounts[g] > 0 && GenotypeTableUtils.isHeterozygous((byte) g)) hetCount++;
 				}
 				if (hetCount == 1) keepSite = true;
 			}
@@ -215,8 +394,9 @@ public abstract class AbstractFixedEffectLM implements FixedEffectLM {
 		if (keepSite && minClassSize > 0) {
 			int numberBigEnough = 0;
 			int numberTooSmall = 0;
-			for (Integer ival : genoCountMap.values()) {
-				if (ival < minClassSize) numberTooSmall++;
+			for (int count : genoCounts) {
+				if (count == 0) continue;
+				if (count < minClassSize) numberTooSmall++;
 				else numberBigEnough++;
 			}
 			
@@ -224,14 +404,9 @@ public abstract class AbstractFixedEffectLM implements FixedEffectLM {
 			if (numberBigEnough < 2) keepSite = false;
 			//if the minimum class size is too small and there are more than two classes set that class to missing
 			else if (numberTooSmall > 0) {
-				for (Byte Bval : genoCountMap.keySet()) {
-					int classSize = genoCountMap.get(Bval);
-					if (classSize < minClassSize) {
-						byte classValue = Bval.byteValue();
-						for (int s = 0; s < nsites; s++) {
-							if (siteGeno[s] == classValue) missingObsForSite.set(s);
-						}
-					}
+				for (int s = 0; s < nsites; s++) {
+					int classSize = genoCounts[siteGeno[s] & 0xFF];
+					if (classSize > 0 && classSize < minClassSize) missingObsForSite.set(s);
 				}
 				getGenotypeAfterUpdatingMissing();
 			}
@@ -240,10 +415,15 @@ public abstract class AbstractFixedEffectLM implements FixedEffectLM {
 		//calculate the minimum class size
 		//if two classes min class size = the smaller of the two class counts
 		//if three classes return second largest site count
-		List<Integer> classSizes = new ArrayList<>(genoCountMap.values());
-		Collections.sort(classSizes);
-		int nclasses = classSizes.size();
-		if (nclasses > 1) myCurrentSiteMinimumClassSize = classSizes.get(nclasses - 2);
+		int largest = 0;
+		int secondLargest = 0;
+		for (int count : genoCounts) {
+			if (count > largest) {
+				secondLargest = largest;
+				largest = count;
+			} else if (count > secondLargest) secondLargest = count;
+		}
+		if (numberOfClasses > 1) myCurrentSiteMinimumClassSize = secondLargest;
 		else myCurrentSiteMinimumClassSize = 0;
 		
 		return keepSite;
@@ -334,8 +514,33 @@ public abstract class AbstractFixedEffectLM implements FixedEffectLM {
 		return modelEffects;
 	}
 	
+	/**
+	 * The base model depends only on which observations are missing, so it is built once for each pattern of missing data
+	 * and reused for other sites with the same pattern. The returned list must not be modified.
+	 * @return		the base model for the current missingObsForSite
+	 */
+	private ArrayList<ModelEffect> cachedBaseModel() {
+		ArrayList<ModelEffect> cachedModel = baseModelCache.get(missingObsForSite);
+		if (cachedModel == null) {
+			cachedModel = baseModel();
+			baseModelCache.put(new OpenBitSet(missingObsForSite), cachedModel);
+		}
+		return cachedModel;
+	}
+	
+	/**
+	 * @return		a map from missing data pattern to a value that only keeps the most recently used patterns
+	 */
+	private static <V> Map<OpenBitSet, V> missingPatternCache() {
+		return new LinkedHashMap<OpenBitSet, V>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<OpenBitSet, V> eldest) {
+				return size() > MAX_CACHED_BASE_MODELS;
+			}
+		};
+	}
+	
 	protected void createPermutedData() {
-		permutedData = new LinkedList<>();
 		double[] y = AssociationUtils.getNonMissingDoubles(allData, missingObsForSite);
 		SweepFastLinearModel sflm = new SweepFastLinearModel(baseModel(), y);
 		DoubleMatrix residuals = sflm.getResiduals();
@@ -351,12 +556,16 @@ public abstract class AbstractFixedEffectLM implements FixedEffectLM {
 			else rand = new Random();
 		}
 		
+		//all permutations are stored in one array
+		permutedData = new PermutedData(numberOfPermutations, y.length);
 		for (int p = 0; p < numberOfPermutations; p++) {
 			LinearModelUtils.shuffle(residuals, rand);
-			DoubleMatrix permdm = predicted.plus(residuals);
-			permutedData.add(permdm);
+			for (int i = 0; i < y.length; i++) permutedData.set(p, i, predicted.get(i, 0) + residuals.get(i, 0));
 		}
 		
+		//base model sums of squares depend on the permuted data, which are different for each trait
+		permutationBaseCache.clear();
+		
 		minP = new double[numberOfPermutations];
 		Arrays.fill(minP, 1.0);
 	}
@@ -403,24 +612,11 @@ public abstract class AbstractFixedEffectLM implements FixedEffectLM {
 	}
 	
 	protected void updateMinP(BitSet missingObsBeforeSite) {
-		boolean useFastMethod = false;
-		int numberOfObsTotal = allData.length;
-		int numberOfMissingBeforeSite = (int) missingObsBeforeSite.cardinality();
-		int sizeOfPermutedData = permutedData.get(0).numberOfRows();
-		BitSet newMissing = new OpenBitSet(sizeOfPermutedData);
-		int permutedDataIndex = -1;
-		for (int i = 0; i < numberOfObsTotal; i++) {
-			if (!missingObsBeforeSite.fastGet(i)) {
-				permutedDataIndex++;
-				if (missingObsForSite.fastGet(i)) newMissing.fastSet(permutedDataIndex);
-			}
-		}
-		
 		if (areTaxaReplicated) {
-			//if taxa are replicated
-			int iter = 0;
-			for (DoubleMatrix pdata : permutedData) {
-				double[] y = AssociationUtils.getNonMissingDoubles(pdata.to1DArray(), newMissing);
+			//if taxa are replicated, the error term is taxa within marker, so fit a model for each permutation
+			BitSet newMissing = missingInPermutedData(missingObsBeforeSite);
+			for (int iter = 0; iter < numberOfPermutations; iter++) {
+				double[] y = AssociationUtils.getNonMissingDoubles(permutedData.permutation(iter), newMissing);
 		        SweepFastLinearModel sflm = new SweepFastLinearModel(myModel, y);
 		        markerSSdf = sflm.getIncrementalSSdf(numberOfBaseEffects);
 		        errorSSdf = sflm.getIncrementalSSdf(taxaEffectNumber);
@@ -432,53 +628,67 @@ public abstract class AbstractFixedEffectLM implements FixedEffectLM {
 		        } catch (Exception e) {
 		        	//do nothing
 		        }
-		        iter++;
 			}
-		} else if (useFastMethod) {
-			int numberOfModelEffects = myModel.size();
-			List<ModelEffect> thisBaseModel = new ArrayList<>(myModel);
-			ModelEffect markerEffect = thisBaseModel.remove(myModel.size() - 1);
-			List<double[]> permutedArrays = permutedData.stream()
-					.map(dm -> dm.to1DArray())
-					.map(da -> AssociationUtils.getNonMissingDoubles(da, newMissing))
-					.collect(Collectors.toList());
-			SolveByOrthogonalizing sbo = SolveByOrthogonalizing.getInstanceFromModel(thisBaseModel, permutedArrays);
-			DoubleMatrix X = markerEffect.getX();
-			SolveByOrthogonalizing.Marker markerRValues = null;
-			if (X.numberOfColumns() == 1) {
-				markerRValues = sbo.solveForR(null, X.to1DArray());
-			} else if (X.numberOfColumns() == 2) {
-				markerRValues = sbo.solveForR(null, X.column(0).to1DArray(), X.column(1).to1DArray());
-			}
-			
-			if (markerRValues != null) {
-				int n = X.numberOfRows();
-				for (int iter = 0; iter < numberOfPermutations; iter++) {
-					if (minP[iter] > markerRValues.vector2()[iter]) minP[iter] = markerRValues.vector2()[iter];
+		} else {
+			//test all permutations at once against the marker columns
+			List<double[]> markerColumns = new ArrayList<>();
+			for (int e = numberOfBaseEffects; e < myModel.size(); e++) markerColumns.addAll(columns(myModel.get(e)));
+			permutedData.updateMinP(permutationBase(missingObsBeforeSite), markerColumns, minP);
+		}
+	}
+	
+	/**
+	 * The base model error sums of squares for the permutations depend only on which observations are missing,
+	 * so they are calculated once for each pattern of missing data.
+	 * @param missingObsBeforeSite		a BitSet with bits set for observations missing in model covariates and data
+	 * @return		the permutation base model for the current missingObsForSite
+	 */
+	private PermutedData.Base permutationBase(BitSet missingObsBeforeSite) {
+		PermutedData.Base base = permutationBaseCache.get(missingObsForSite);
+		if (base == null) {
+			//the index in the permuted data of each observation not missing for this site
+			int numberOfObsTotal = allData.length;
+			int[] observations = new int[numberOfObsTotal - (int) missingObsForSite.cardinality()];
+			int permutedDataIndex = -1;
+			int count = 0;
+			for (int i = 0; i < numberOfObsTotal; i++) {
+				if (!missingObsBeforeSite.fastGet(i)) {
+					permutedDataIndex++;
+					if (!missingObsForSite.fastGet(i)) observations[count++] = permutedDataIndex;
 				}
 			}
 			
-		} else {
-			int iter = 0;
-			int numberOfModelEffects = myModel.size();
-			for (DoubleMatrix pdata : permutedData) {
-				double[] y = AssociationUtils.getNonMissingDoubles(pdata.to1DArray(), newMissing);
-		        SweepFastLinearModel sflm = new SweepFastLinearModel(myModel, y);
-		        markerSSdf = sflm.getIncrementalSSdf(numberOfModelEffects - 1);
-		        errorSSdf = sflm.getResidualSSdf();
-		        double F = markerSSdf[0] / markerSSdf[1] / errorSSdf[0] * errorSSdf[1];
-		        double p;
-		        try {
-		        	p = LinearModelUtils.Ftest(F, markerSSdf[1], errorSSdf[1]);
-		        	if (minP[iter] > p) minP[iter] = p;
-		        } catch (Exception e) {
-		        	//do nothing
-		        }
-				
-				iter++;
+			List<double[]> baseColumns = new ArrayList<>();
+			for (ModelEffect effect : myBaseModel) baseColumns.addAll(columns(effect));
+			base = permutedData.base(observations, baseColumns);
+			permutationBaseCache.put(new OpenBitSet(missingObsForSite), base);
+		}
+		return base;
+	}
+	
+	/**
+	 * @param missingObsBeforeSite		a BitSet with bits set for observations missing in model covariates and data
+	 * @return		a BitSet with bits set for the observations in the permuted data that are missing for this site
+	 */
+	private BitSet missingInPermutedData(BitSet missingObsBeforeSite) {
+		int numberOfObsTotal = allData.length;
+		BitSet newMissing = new OpenBitSet(permutedData.numberOfObservations());
+		int permutedDataIndex = -1;
+		for (int i = 0; i < numberOfObsTotal; i++) {
+			if (!missingObsBeforeSite.fastGet(i)) {
+				permutedDataIndex++;
+				if (missingObsForSite.fastGet(i)) newMissing.fastSet(permutedDataIndex);
 			}
 		}
-		
+		return newMissing;
+	}
+	
+	private static List<double[]> columns(ModelEffect effect) {
+		DoubleMatrix X = effect.getX();
+		int numberOfColumns = X.numberOfColumns();
+		List<double[]> columns = new ArrayList<>(numberOfColumns);
+		for (int c = 0; c < numberOfColumns; c++) columns.add(X.column(c).to1DArray());
+		return columns;
 	}
 	
 	@Override
@@ -524,6 +734,11 @@ public abstract class AbstractFixedEffectLM implements FixedEffectLM {
 		appendAddDomEffects = append;
 	}
 
+	@Override
+	public void maxThreads(int threads) {
+		maxThreads = Math.max(1, threads);
+	}
+
 	/**
 	 * This method is used mainly for testing in order to generate reproducible permutation results. 
 	 * If the seed is not set, the current time is used to initialize the random number generator.
@@ -17,6 +17,15 @@ public class AlleleProbabilityFELM extends AbstractFixedEffectLM {
 	public AlleleProbabilityFELM(Datum data, FixedEffectLMPlugin parentPlugin) {
 		super(data, parentPlugin);
 	}
+
+	private AlleleProbabilityFELM(AlleleProbabilityFELM parent) {
+		super(parent);
+	}
+
+	@Override
+	protected AbstractFixedEffectLM newWorker() {
+		return new AlleleProbabilityFELM(this);
+	}
 	
 	@Override
 	protected void analyzeSite() {
@@ -27,6 +27,7 @@ import net.maizegenetics.taxa.Taxon;
 import net.maizegenetics.taxa.tree.UPGMATree;
 import net.maizegenetics.plugindef.Datum;
 import net.maizegenetics.stats.EMMA.EMMAforDoubleMatrix;
+import net.maizegenetics.stats.EMMA.SpectralEMMA;
 import net.maizegenetics.stats.linearmodels.FactorModelEffect;
 import net.maizegenetics.stats.linearmodels.LinearModelUtils;
 import net.maizegenetics.stats.linearmodels.ModelEffectUtils;
@@ -42,6 +43,10 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import net.maizegenetics.taxa.distance.DistanceMatrixBuilder;
 
@@ -50,6 +55,9 @@ public class CompressedMLMusingDoubleMatrix {
     private static final Logger myLogger = LogManager.getLogger(CompressedMLMusingDoubleMatrix.class);
     private static final List<String> homGenotypes = Arrays.asList("A","C","G","T","Z");
     private static final List<String> hetGenotypes = Arrays.asList("R","W","K","Y","S","M","0");
+    //number of markers tested together. Results are reported after each block
+    //and the spectral method rotates the markers in a block with one matrix product.
+    private static final int MARKERS_PER_BLOCK = 256;
     private final boolean useCompression;
     private final boolean useP3D;
     private final double compression;
@@ -78,6 +86,8 @@ public class CompressedMLMusingDoubleMatrix {
     private boolean useGenotypeCalls = true;
     private boolean useReferenceProbability = false;
     private boolean useAlleleProbabilities = false;
+    private boolean useSpectralRotation = false;
+    private int maxThreads = 1;
     
     public CompressedMLMusingDoubleMatrix(MLMPlugin parentPlugin, Datum dataset, DistanceMatrix kinshipMatrix, boolean useCompression, boolean useP3D, double compression) {
         this.parentPlugin = parentPlugin;
@@ -213,6 +223,25 @@ public class CompressedMLMusingDoubleMatrix {
     public void useAlleleProbabilities(boolean use) {
     	useAlleleProbabilities = use;
     }
+
+    /**
+     * When variance components are re-estimated for each marker (not P3D), ZKZ' is decomposed once per trait
+     * and markers without missing data are tested in the rotated space (see {@link SpectralEMMA}).
+     * Markers with missing data and weighted analyses use EMMA for each marker.
+     * @param use	true to use spectral rotation
+     */
+    public void useSpectralRotation(boolean use) {
+    	useSpectralRotation = use;
+    }
+
+    /**
+     * Markers are independent once the base model has been fit, so they can be tested in parallel.
+     * Results are reported in marker order regardless of the number of threads.
+     * @param threads	the maximum number of threads used to test markers
+     */
+    public void setMaxThreads(int threads) {
+    	maxThreads = Math.max(1, threads);
+    }
     
     public List<Datum> solve() {
     	List<Datum> results = new LinkedList<Datum>();
@@ -386,165 +415,232 @@ public class CompressedMLMusingDoubleMatrix {
 
             //iterate markers
             if (testMarkers) {
-                for (int m = 0; m < numberOfMarkers; m++) {
-                	OpenBitSet missingObsForSite = new OpenBitSet(missing);
-                	missingObsForSite.or(missingForSite(m));
-                	
-                    //only data for which missing=false are in the Z matrix
-                    //the block below finds the rows of Z that have no marker data.
-                    //Those rows/columns will need to be removed from ZKZ or from V, depending on the analysis method.
-                	OpenBitSet missingFromZ = new OpenBitSet(nonMissingObs);
-                	
-                    int nonMissingCount = 0;
-                    for (int i = 0; i < totalObs; i++) {
-                        if (!missing.fastGet(i)) {
-                            if (missingObsForSite.fastGet(i)) {
-                            	missingFromZ.fastSet(nonMissingCount);
-                            }
-                            nonMissingCount++;
+                SpectralEMMA spectral = null;
+                if (useSpectralRotation && !useP3D && W == null && (useGenotypeCalls || useReferenceProbability)) {
+                    spectral = new SpectralEMMA(y, fixed, zk[0].mult(zk[1]).tcrossproduct(zk[0]));
+                }
+                MarkerModel model = new MarkerModel(attr.name(), missing, totalObs, nonMissingObs, y, fixed, zk, baseModeldf, spectral);
+
+                //markers are tested in blocks, so that results are reported in marker order
+                //and only the results for one block are held in memory
+                ExecutorService pool = maxThreads > 1 ? Executors.newFixedThreadPool(maxThreads) : null;
+                try {
+                    for (int start = 0; start < numberOfMarkers; start += MARKERS_PER_BLOCK) {
+                        int end = Math.min(start + MARKERS_PER_BLOCK, numberOfMarkers);
+                        for (MarkerRows rows : testMarkerBlock(model, start, end, pool)) {
+                            if (rows == null) continue;
+                            siteReportBuilder.add(rows.siteRow);
+                            for (Object[] alleleRow : rows.alleleRows) alleleReportBuilder.add(alleleRow);
                         }
+                        iterationsSofar += end - start;
+                        int progress = (int) ((double) iterationsSofar / (double) expectedIterations * 100);
+                        progress = Math.min(99, progress);
+                        parentPlugin.updateProgress(progress);
                     }
+                } finally {
+                    if (pool != null) pool.shutdown();
+                }
+            }
 
-                    //test for all missing
-                    if (nonMissingCount == 0) {
-                        myLogger.error("All values missing for " + myGenotype.siteName(m));
-                        continue;
-                    }
+        }
 
-                    //adjust y for missing data
-                    DoubleMatrix ymarker = AssociationUtils.getNonMissingValues(y, missingFromZ);
+        parentPlugin.updateProgress(100);
 
-                    //adjust the fixed effects
-                    DoubleMatrix fixed2 = AssociationUtils.getNonMissingValues(fixed, missingFromZ);
+        results.addAll(formatResults());
+        
+        return results;
+    }
 
-                    //add marker data to fixed effects
-                    ArrayList<Byte> markerIds = new ArrayList<>();
-                    int nAlleles = 0;
-                    int markerdf = 0;
-                    DoubleMatrix X;
-                    int[] alleleCounts = null;
-                    
-                    if (useGenotypeCalls) {
-                    	byte[] genotypes = ModelEffectUtils.genotypesToUnphasedSorted(AssociationUtils.getNonMissingBytes(myGenoPheno.genotypeAllTaxa(m), missingObsForSite));
-                        FactorModelEffect markerEffect = new FactorModelEffect(ModelEffectUtils.getIntegerLevels(genotypes, markerIds), true);
-                        X = fixed2.concatenate(markerEffect.getX(), false);
-                        nAlleles = markerEffect.getNumberOfLevels();
-                        alleleCounts = markerEffect.getLevelCounts();
-                        markerdf = nAlleles - 1;
-                    } else if (useReferenceProbability) { 
-                        double[] genotypes = AssociationUtils.getNonMissingDoubles(myGenoPheno.referenceProb(m), missingObsForSite);
-                        int nrows = genotypes.length;
-                        X = fixed2.concatenate(DoubleMatrixFactory.DEFAULT.make(nrows, 1, genotypes), false);
-                        nAlleles = 1;
-                        alleleCounts = new int[]{nrows};
-                        markerdf = 1;
-                    } else {
-                    	X = null;
-                    }
-                    
-                    CompressedMLMResult result = new CompressedMLMResult();
-                    //need to add marker information to result once Alignment is stable
-
-                    if (useP3D) {
-                        testMarkerUsingP3D(result, ymarker, X, Vminus.getInverse(missingFromZ, nonMissingObs), markerdf, markerIds);
-                    } else {
-                    	DoubleMatrix Zsel = AssociationUtils.getNonMissingValues(zk[0], missingFromZ);
-                        if (!testMarkerUsingEMMA(result, ymarker, X, zk[1], Zsel, nAlleles, markerIds)) continue;
-                        markerdf = result.modeldf - baseModeldf;
-                    }
+    /**
+     * Tests a single marker. Safe to call from multiple threads for different markers.
+     * @param model	the trait data and base model
+     * @param m	the marker
+     * @param rotatedMarker	the marker design columns rotated by model.spectral or null to test the marker without rotation
+     * @return	the report rows for the marker or null if the marker could not be tested or was filtered
+     */
+    private MarkerRows testMarker(MarkerModel model, int m, double[][] rotatedMarker) {
+    	OpenBitSet missingObsForSite = new OpenBitSet(model.missing);
+    	missingObsForSite.or(missingForSite(m));
+    	
+        //only data for which missing=false are in the Z matrix
+        //the block below finds the rows of Z that have no marker data.
+        //Those rows/columns will need to be removed from ZKZ or from V, depending on the analysis method.
+    	OpenBitSet missingFromZ = new OpenBitSet(model.nonMissingObs);
+    	
+        int nonMissingCount = 0;
+        for (int i = 0; i < model.totalObs; i++) {
+            if (!model.missing.fastGet(i)) {
+                if (missingObsForSite.fastGet(i)) {
+                	missingFromZ.fastSet(nonMissingCount);
+                }
+                nonMissingCount++;
+            }
+        }
 
-                    //if the results are to be filtered on pmax check for that condition
-                    boolean recordTheseResults = true;
-                    if (parentPlugin.isFilterOutput() && result.p > parentPlugin.getMaxp()) {
-                        recordTheseResults = false;
-                    }
+        //test for all missing
+        if (nonMissingCount == 0) {
+            myLogger.error("All values missing for " + myGenotype.siteName(m));
+            return null;
+        }
 
-                    if (recordTheseResults) {
-                        //add result to main
-                        //{"Trait","Marker","Chr","Pos","Locus","Site","df","F","p","errordf","MarkerR2","Genetic Var","Residual Var", "-2LnLikelihood"};
-                    	//results with additive and dominance effects
-                    	//{"Trait","Marker","Chr","Pos","Locus","Site","df","F","p","add_effect","add_F","add_p","dom_effect","dom_F","dom_p","errordf","MarkerR2","Genetic Var","Residual Var", "-2LnLikelihood"}
-                    	
-                        String markername = myGenotype.siteName(m);
-                        String chr = "";
-                        String pos = "";
-                        String locus = myGenotype.chromosomeName(m);
-                        String site = Integer.toString(myGenotype.chromosomalPosition(m));
-                        double errordf = (double) (ymarker.numberOfRows() - result.modeldf);
-
-                        tableRow = new Object[]{attr.name(),
-                        		markername,
-                        		locus,
-                        		site,
-                        		new Integer(markerdf),
-                        		new Double(result.F),
-                        		new Double(result.p),
-                        		new Double(result.addEffect),
-                        		new Double(result.Fadd),
-                        		new Double(result.padd),
-                        		new Double(result.domEffect),
-                        		new Double(result.Fdom),
-                        		new Double(result.pdom),
-                        		new Double(errordf),
-                        		new Double(result.r2),
-                        		new Double(genvar),
-                        		new Double(resvar),
-                        		new Double(-2 * lnlk)};
-                        siteReportBuilder.add(tableRow);
-
-                        //add result to alleles
-                        //"Trait","Marker","Chr","Pos","Allele","Effect", obs
-                        int numberOfRowsKept = totalObs - (int) missingObsForSite.cardinality();
-                        if (useReferenceProbability) {
-                        	tableRow = new Object[]{attr.name(),
-                        			markername,
-                        			locus,
-                        			site,
-                        			"",
-                        			result.beta.get(result.beta.numberOfRows() - 1, 0),
-                        			numberOfRowsKept
-                        	};
-
-                            //record the results
-                        	alleleReportBuilder.add(tableRow);
-                        } else if (nAlleles > 1) {
-                            for (int a = 0; a < nAlleles; a++) {
-                                Double estimate;
-                                if (a < nAlleles - 1) {
-                                    estimate = result.beta.get(result.beta.numberOfRows() - nAlleles + 1 + a, 0);
-                                } else {
-                                    estimate = 0.0;
-                                }
-                                tableRow = new Object[]{attr.name(),
-                                		markername,
-                                		locus,
-                                		site,
-//                                		markerIds.get(a),
-                                		NucleotideAlignmentConstants.getNucleotideIUPAC(markerIds.get(a)),
-                                		estimate,
-                                		alleleCounts[a]
-                                };
-
-                                //record the results
-                            	alleleReportBuilder.add(tableRow);
-                            }
-                        }
+        //adjust y for missing data
+        DoubleMatrix ymarker = AssociationUtils.getNonMissingValues(model.y, missingFromZ);
 
-                    }
-                    iterationsSofar++;
-                    int progress = (int) ((double) iterationsSofar / (double) expectedIterations * 100);
-                    progress = Math.min(99, progress);
-                    parentPlugin.updateProgress(progress);
+        //adjust the fixed effects
+        DoubleMatrix fixed2 = AssociationUtils.getNonMissingValues(model.fixed, missingFromZ);
+
+        //add marker data to fixed effects
+        ArrayList<Byte> markerIds = new ArrayList<>();
+        int nAlleles = 0;
+        int markerdf = 0;
+        DoubleMatrix X;
+        int[] alleleCounts = null;
+        
+        if (useGenotypeCalls) {
+        	byte[] genotypes = ModelEffectUtils.genotypesToUnphasedSorted(AssociationUtils.getNonMissingBytes(myGenoPheno.genotypeAllTaxa(m), missingObsForSite));
+            FactorModelEffect markerEffect = new FactorModelEffect(ModelEffectUtils.getIntegerLevels(genotypes, markerIds), true);
+            X = fixed2.concatenate(markerEffect.getX(), false);
+            nAlleles = markerEffect.getNumberOfLevels();
+            alleleCounts = markerEffect.getLevelCounts();
+            markerdf = nAlleles - 1;
+        } else if (useReferenceProbability) { 
+            double[] genotypes = AssociationUtils.getNonMissingDoubles(myGenoPheno.referenceProb(m), missingObsForSite);
+            int nrows = genotypes.length;
+            X = fixed2.concatenate(DoubleMatrixFactory.DEFAULT.make(nrows, 1, genotypes), false);
+            nAlleles = 1;
+            alleleCounts = new int[]{nrows};
+            markerdf = 1;
+        } else {
+        	X = null;
+        }
+        
+        CompressedMLMResult result = new CompressedMLMResult();
+        result.genvar = model.genvar;
+        result.resvar = model.resvar;
+        result.lnlk = model.lnlk;
+        //need to add marker information to result once Alignment is stable
+
+        if (useP3D) {
+            testMarkerUsingP3D(result, ymarker, X, Vminus.getInverse(missingFromZ, model.nonMissingObs), markerdf, markerIds);
+        } else if (rotatedMarker != null) {
+            if (!testMarkerUsingSpectralEMMA(result, model.spectral, rotatedMarker, markerIds)) return null;
+            markerdf = result.modeldf - model.baseModeldf;
+        } else {
+        	DoubleMatrix Zsel = AssociationUtils.getNonMissingValues(model.zk[0], missingFromZ);
+            if (!testMarkerUsingEMMA(result, ymarker, X, model.zk[1], Zsel, nAlleles, markerIds)) return null;
+            markerdf = result.modeldf - model.baseModeldf;
+        }
+
+        //if the results are to be filtered on pmax check for that condition
+        if (parentPlugin.isFilterOutput() && result.p > parentPlugin.getMaxp()) {
+            return null;
+        }
+
+        MarkerRows rows = new MarkerRows();
+        Object[] tableRow;
+        //add result to main
+        //{"Trait","Marker","Chr","Pos","Locus","Site","df","F","p","errordf","MarkerR2","Genetic Var","Residual Var", "-2LnLikelihood"};
+    	//results with additive and dominance effects
+    	//{"Trait","Marker","Chr","Pos","Locus","Site","df","F","p","add_effect","add_F","add_p","dom_effect","dom_F","dom_p","errordf","MarkerR2","Genetic Var","Residual Var", "-2LnLikelihood"}
+    	
+        String markername = myGenotype.siteName(m);
+        String chr = "";
+        String pos = "";
+        String locus = myGenotype.chromosomeName(m);
+        String site = Integer.toString(myGenotype.chromosomalPosition(m));
+        double errordf = (double) (ymarker.numberOfRows() - result.modeldf);
+
+        tableRow = new Object[]{model.traitName,
+        		markername,
+        		locus,
+        		site,
+        		new Integer(markerdf),
+        		new Double(result.F),
+        		new Double(result.p),
+        		new Double(result.addEffect),
+        		new Double(result.Fadd),
+        		new Double(result.padd),
+        		new Double(result.domEffect),
+        		new Double(result.Fdom),
+        		new Double(result.pdom),
+        		new Double(errordf),
+        		new Double(result.r2),
+        		new Double(result.genvar),
+        		new Double(result.resvar),
+        		new Double(-2 * result.lnlk)};
+        rows.siteRow = tableRow;
+
+        //add result to alleles
+        //"Trait","Marker","Chr","Pos","Allele","Effect", obs
+        int numberOfRowsKept = model.totalObs - (int) missingObsForSite.cardinality();
+        if (useReferenceProbability) {
+        	tableRow = new Object[]{model.traitName,
+        			markername,
+        			locus,
+        			site,
+        			"",
+        			result.beta.get(result.beta.numberOfRows() - 1, 0),
+        			numberOfRowsKept
+        	};
+
+            //record the results
+        	rows.alleleRows.add(tableRow);
+        } else if (nAlleles > 1) {
+            for (int a = 0; a < nAlleles; a++) {
+                Double estimate;
+                if (a < nAlleles - 1) {
+                    estimate = result.beta.get(result.beta.numberOfRows() - nAlleles + 1 + a, 0);
+                } else {
+                    estimate = 0.0;
                 }
-            }
+                tableRow = new Object[]{model.traitName,
+                		markername,
+                		locus,
+                		site,
+//                                		markerIds.get(a),
+                		NucleotideAlignmentConstants.getNucleotideIUPAC(markerIds.get(a)),
+                		estimate,
+                		alleleCounts[a]
+                };
 
+                //record the results
+            	rows.alleleRows.add(tableRow);
+            }
         }
 
-        parentPlugin.updateProgress(100);
+        return rows;
+    }
 
-        results.addAll(formatResults());
-        
-        return results;
+    /**
+     * Tests markers start (inclusive) to end (exclusive), in parallel if pool is not null.
+     * @return	the report rows for each marker, in marker order
+     */
+    private List<MarkerRows> testMarkerBlock(MarkerModel model, int start, int end, ExecutorService pool) {
+        double[][][] rotated = null;
+        if (model.spectral != null) rotated = rotateMarkerBlock(model.spectral, model.missing, model.nonMissingObs, start, end);
+
+        List<MarkerRows> rows = new ArrayList<>(end - start);
+        if (pool == null) {
+            for (int m = start; m < end; m++) {
+                rows.add(testMarker(model, m, rotated == null ? null : rotated[m - start]));
+            }
+            return rows;
+        }
+
+        List<Future<MarkerRows>> futures = new ArrayList<>(end - start);
+        for (int m = start; m < end; m++) {
+            final int marker = m;
+            final double[][] rotatedMarker = rotated == null ? null : rotated[m - start];
+            futures.add(pool.submit(() -> testMarker(model, marker, rotatedMarker)));
+        }
+        try {
+            for (Future<MarkerRows> future : futures) rows.add(future.get());
+        } catch (InterruptedException | ExecutionException e) {
+            for (Future<MarkerRows> future : futures) future.cancel(true);
+            myLogger.debug(e.getMessage(), e);
+            throw new IllegalStateException("CompressedMLMusingDoubleMatrix: testMarkerBlock: problem testing markers: " + e.getMessage());
+        }
+        return rows;
     }
 
 //    private BitSet missingForSiteX(int site) {
@@ -812,9 +908,9 @@ public class CompressedMLMusingDoubleMatrix {
         result.F = Fp[0];
         result.p = Fp[1];
         result.modeldf = emlm.getDfModel();
-        genvar = emlm.getVarRan();
-        resvar = emlm.getVarRes();
-        lnlk = emlm.getLnLikelihood();
+        result.genvar = emlm.getVarRan();
+        result.resvar = emlm.getVarRes();
+        result.lnlk = emlm.getLnLikelihood();
         
         calculateRsquare(X, y, emlm.getInvH(), result, nAlleles - 1);
         
@@ -920,6 +1016,95 @@ public class CompressedMLMusingDoubleMatrix {
 
     }
     
+    public boolean testMarkerUsingSpectralEMMA(CompressedMLMResult result, SpectralEMMA spectral, double[][] rotatedMarker, ArrayList<Byte> markerIds) {
+        SpectralEMMA.Result fit = spectral.fit(rotatedMarker);
+        if (fit == null) {
+            myLogger.error("The fixed effect design matrix has less than full column rank. The analysis will not be run.");
+            return false;
+        }
+
+        result.beta = fit.getBeta();
+        double[] Fp = fit.getMarkerFp();
+        result.F = Fp[0];
+        result.p = Fp[1];
+        result.modeldf = fit.getDfModel();
+        result.r2 = fit.getRsquare();
+        result.genvar = fit.getVarRan();
+        result.resvar = fit.getVarRes();
+        result.lnlk = fit.getLnLikelihood();
+
+        boolean markerTest = markerIds.size() == 3;
+        if (markerTest) {
+        	markerTest = markerTest && !GenotypeTableUtils.isHeterozygous(markerIds.get(0));
+        	markerTest = markerTest && !GenotypeTableUtils.isHeterozygous(markerIds.get(1));
+        	markerTest = markerTest && GenotypeTableUtils.isHeterozygous(markerIds.get(2));
+        }
+        if (markerTest && Fp.length == 8) { //calculate additive and dominance tests and effects
+        	result.addEffect = Fp[2];
+        	result.Fadd = Fp[3];
+        	result.padd = Fp[4];
+        	result.domEffect = Fp[5];
+        	result.Fdom = Fp[6];
+        	result.pdom = Fp[7];
+        }
+        return true;
+    }
+
+    /**
+     * Rotates the marker design columns for sites start (inclusive) to end (exclusive) with a single matrix product.
+     * Sites with missing observations are null, so that they will be tested using EMMA.
+     */
+    private double[][][] rotateMarkerBlock(SpectralEMMA spectral, OpenBitSet missing, int nonMissingObs, int start, int end) {
+        int nsites = end - start;
+        long numberMissing = missing.cardinality();
+        DoubleMatrix[] designs = new DoubleMatrix[nsites];
+        int[] firstColumn = new int[nsites];
+        int totalColumns = 0;
+        for (int s = 0; s < nsites; s++) {
+            OpenBitSet missingObsForSite = new OpenBitSet(missing);
+            missingObsForSite.or(missingForSite(start + s));
+            firstColumn[s] = totalColumns;
+            if (missingObsForSite.cardinality() == numberMissing) {
+                designs[s] = markerColumns(start + s, missingObsForSite, new ArrayList<>());
+                if (designs[s] != null && designs[s].numberOfColumns() > 0) totalColumns += designs[s].numberOfColumns();
+                else designs[s] = null;
+            }
+        }
+
+        double[][][] result = new double[nsites][][];
+        if (totalColumns == 0) return result;
+
+        DoubleMatrix markerMatrix = DoubleMatrixFactory.DEFAULT.make(nonMissingObs, totalColumns);
+        for (int s = 0; s < nsites; s++) {
+            if (designs[s] == null) continue;
+            int ncol = designs[s].numberOfColumns();
+            for (int c = 0; c < ncol; c++) {
+                for (int r = 0; r < nonMissingObs; r++) markerMatrix.set(r, firstColumn[s] + c, designs[s].get(r, c));
+            }
+        }
+
+        double[][] rotated = spectral.rotateColumns(markerMatrix);
+        for (int s = 0; s < nsites; s++) {
+            if (designs[s] == null) continue;
+            result[s] = Arrays.copyOfRange(rotated, firstColumn[s], firstColumn[s] + designs[s].numberOfColumns());
+        }
+        return result;
+    }
+
+    /**
+     * @return	the marker design columns for a site, the same as those added to the fixed effects when testing the marker
+     */
+    private DoubleMatrix markerColumns(int site, OpenBitSet missingObsForSite, ArrayList<Byte> markerIds) {
+        if (useGenotypeCalls) {
+        	byte[] genotypes = ModelEffectUtils.genotypesToUnphasedSorted(AssociationUtils.getNonMissingBytes(myGenoPheno.genotypeAllTaxa(site), missingObsForSite));
+            return new FactorModelEffect(ModelEffectUtils.getIntegerLevels(genotypes, markerIds), true).getX();
+        } else if (useReferenceProbability) {
+            double[] genotypes = AssociationUtils.getNonMissingDoubles(myGenoPheno.referenceProb(site), missingObsForSite);
+            return DoubleMatrixFactory.DEFAULT.make(genotypes.length, 1, genotypes);
+        }
+        return null;
+    }
+
     private void calculateRsquare(DoubleMatrix X, DoubleMatrix y, DoubleMatrix invV, CompressedMLMResult result, int markerdf) {
         //calculate R2
         //from Buse(1973) Am. Stat. 27:106-108.
@@ -1061,6 +1246,53 @@ public class CompressedMLMusingDoubleMatrix {
         int modeldf;
         int markerdf;
         int ngroups;
+        double genvar = Double.NaN;
+        double resvar = Double.NaN;
+        double lnlk = Double.NaN;
+    }
+
+    /**
+     * The data for one trait and its fit without markers, shared by the threads testing markers.
+     */
+    class MarkerModel {
+
+        final String traitName;
+        final OpenBitSet missing;
+        final int totalObs;
+        final int nonMissingObs;
+        final DoubleMatrix y;
+        final DoubleMatrix fixed;
+        final DoubleMatrix[] zk;
+        final int baseModeldf;
+        final double genvar;
+        final double resvar;
+        final double lnlk;
+        final SpectralEMMA spectral;
+
+        MarkerModel(String traitName, OpenBitSet missing, int totalObs, int nonMissingObs, DoubleMatrix y, DoubleMatrix fixed,
+                DoubleMatrix[] zk, int baseModeldf, SpectralEMMA spectral) {
+            this.traitName = traitName;
+            this.missing = missing;
+            this.totalObs = totalObs;
+            this.nonMissingObs = nonMissingObs;
+            this.y = y;
+            this.fixed = fixed;
+            this.zk = zk;
+            this.baseModeldf = baseModeldf;
+            this.genvar = CompressedMLMusingDoubleMatrix.this.genvar;
+            this.resvar = CompressedMLMusingDoubleMatrix.this.resvar;
+            this.lnlk = CompressedMLMusingDoubleMatrix.this.lnlk;
+            this.spectral = spectral;
+        }
+    }
+
+    /**
+     * Statistics and allele effect rows for one marker.
+     */
+    class MarkerRows {
+
+        Object[] siteRow;
+        List<Object[]> alleleRows = new ArrayList<>();
     }
 
     public void setTestMarkers(boolean testMarkers) {
@@ -22,6 +22,15 @@ public class DiscreteSitesFELM extends AbstractFixedEffectLM {
 		super(dataset, parentPlugin);
 	}
 
+	private DiscreteSitesFELM(DiscreteSitesFELM parent) {
+		super(parent);
+	}
+
+	@Override
+	protected AbstractFixedEffectLM newWorker() {
+		return new DiscreteSitesFELM(this);
+	}
+
 	@Override
 	protected void analyzeSite() {
 		myModel = new ArrayList<ModelEffect>(myBaseModel);
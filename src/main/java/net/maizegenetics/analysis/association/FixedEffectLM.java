@@ -77,4 +77,9 @@ public interface FixedEffectLM {
 	 * @param append If true, additive and dominance effects will be add to the stats report for bi-allelic loci.
 	 */
 	public void appendAddDom(boolean append);
+	
+	/**
+	 * @param threads	the maximum number of threads used to test sites. Results do not depend on the number of threads.
+	 */
+	public void maxThreads(int threads);
 }
\ No newline at end of file
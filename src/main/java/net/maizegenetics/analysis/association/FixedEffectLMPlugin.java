@@ -16,6 +16,7 @@ import net.maizegenetics.plugindef.DataSet;
 import net.maizegenetics.plugindef.Datum;
 import net.maizegenetics.plugindef.GeneratePluginCode;
 import net.maizegenetics.plugindef.PluginParameter;
+import net.maizegenetics.prefs.TasselPrefs;
 import net.maizegenetics.util.TableReport;
 
 import net.maizegenetics.util.TableReportUtils;
@@ -113,6 +114,11 @@ public class FixedEffectLMPlugin extends AbstractPlugin {
     		.guiName("Append Effect Estimates to Stats")
 //    		.dependentOnParameter(myGenotypeTable, GENOTYPE_COMP[0])
     		.build();
+    private PluginParameter<Integer> maxThreads = new PluginParameter.Builder<>("maxThreads", TasselPrefs.getMaxThreads(), Integer.class)
+    		.description("The maximum number of threads used to test sites. Results are the same for any number of threads.")
+    		.dependentOnParameter(phenotypeOnly, false)
+    		.guiName("Max Threads")
+    		.build();
 	
     public FixedEffectLMPlugin(Frame parentFrame, boolean isInteractive) {
         super(parentFrame, isInteractive);
@@ -196,6 +202,7 @@ public class FixedEffectLMPlugin extends AbstractPlugin {
         	myLM.biallelicOnly(biallelicOnly.value());
         	myLM.minimumClassSize(minClassSize.value());
         	myLM.appendAddDom(appendAddDom.value());
+        	myLM.maxThreads(maxThreads.value());
         	myLM.solve();
         	if (saveAsFile.value()) return null;
         	else return new DataSet(myLM.datumList(), this);
@@ -591,6 +598,30 @@ public class FixedEffectLMPlugin extends AbstractPlugin {
         anovaReportFilename = new PluginParameter<>(anovaReportFilename, value);
         return this;
     }
+
+    /**
+     * The maximum number of threads used to test sites.
+     * Results are the same for any number of threads.
+     *
+     * @return Max Threads
+     */
+    public Integer maxThreads() {
+        return maxThreads.value();
+    }
+
+    /**
+     * Set Max Threads. The maximum number of threads used
+     * to test sites. Results are the same for any number
+     * of threads.
+     *
+     * @param value Max Threads
+     *
+     * @return this plugin
+     */
+    public FixedEffectLMPlugin maxThreads(Integer value) {
+        maxThreads = new PluginParameter<>(maxThreads, value);
+        return this;
+    }
 }
 
 
@@ -135,7 +135,7 @@ public class GenomicSelectionPlugin extends AbstractPlugin {
             DoubleMatrix fixedEffects = fixedEffectMatrix(myPhenotype);
             
             //Run EMMA using G-BLUP constructor (data, fixed, kinship)
-            DoubleMatrix kinship = DoubleMatrixFactory.DEFAULT.make(myKinship.getClonedDistances());
+            DoubleMatrix kinship = DoubleMatrixFactory.DEFAULT.make(myKinship);
             EMMAforDoubleMatrix runEMMA = new EMMAforDoubleMatrix(phenotype,fixedEffects,kinship);
             runEMMA.setCalculatePEV(true);
             runEMMA.solve();
@@ -219,7 +219,7 @@ public class GenomicSelectionPlugin extends AbstractPlugin {
 //            WriteDistanceMatrix.saveDelimitedDistanceMatrix(myKinship, String.format("/Users/pbradbury/temp/kinship_%s_.txt", traitname));
             
             fixedEffects = fixedEffectMatrix(singlePhenotype);
-            DoubleMatrix kinship = DoubleMatrixFactory.DEFAULT.make(myKinship.getClonedDistances());
+            DoubleMatrix kinship = DoubleMatrixFactory.DEFAULT.make(myKinship);
             
             //Create folds for cross-validation
             //this division automatically rounds down. feature of java, tested to confirm.
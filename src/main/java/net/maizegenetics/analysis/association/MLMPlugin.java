@@ -35,6 +35,7 @@ import net.maizegenetics.phenotype.Phenotype;
 import net.maizegenetics.plugindef.AbstractPlugin;
 import net.maizegenetics.plugindef.DataSet;
 import net.maizegenetics.plugindef.Datum;
+import net.maizegenetics.prefs.TasselPrefs;
 import net.maizegenetics.taxa.distance.DistanceMatrix;
 
 public class MLMPlugin extends AbstractPlugin {
@@ -47,6 +48,29 @@ public class MLMPlugin extends AbstractPlugin {
 		this.useP3D = useP3D;
 	}
 
+	public boolean isUseSpectralRotation() {
+		return useSpectralRotation;
+	}
+
+	/**
+	 * @param useSpectralRotation	if true and P3D is not used, decompose ZKZ' once per trait and test markers
+	 * without missing data in the rotated space instead of running EMMA for each marker
+	 */
+	public void setUseSpectralRotation(boolean useSpectralRotation) {
+		this.useSpectralRotation = useSpectralRotation;
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * @param maxThreads	the maximum number of threads used to test markers. Defaults to the TASSEL max threads preference.
+	 */
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+
 	public boolean isUseGenotype() {
 		return useGenotype;
 	}
@@ -67,6 +91,7 @@ public class MLMPlugin extends AbstractPlugin {
     protected DistanceMatrix kinshipMatrix;
     protected boolean analyzeByColumn;
     protected boolean useP3D = true;
+    protected boolean useSpectralRotation = false;
     protected CompressionType compressionType = CompressionType.None;
     protected double compression = 1;
     private boolean writeOutputToFile = false;
@@ -76,6 +101,7 @@ public class MLMPlugin extends AbstractPlugin {
     private boolean useGenotype = true;
     private boolean useRefProb = false;
     private boolean useAlleleProb = false;
+    private int maxThreads = TasselPrefs.getMaxThreads();
 
     public enum CompressionType {
         Optimum, Custom, None
@@ -186,6 +212,7 @@ public class MLMPlugin extends AbstractPlugin {
             		theAnalysis.useGenotypeCalls(useGenotype);
             		theAnalysis.useReferenceProbability(useRefProb);
             		theAnalysis.useAlleleProbabilities(useAlleleProb);
+            		theAnalysis.setMaxThreads(maxThreads);
 
             	} else {
             		if (compressionType.equals(CompressionType.Optimum)) {
@@ -199,6 +226,8 @@ public class MLMPlugin extends AbstractPlugin {
             		theAnalysis.useGenotypeCalls(useGenotype);
             		theAnalysis.useReferenceProbability(useRefProb);
             		theAnalysis.useAlleleProbabilities(useAlleleProb);
+            		theAnalysis.setMaxThreads(maxThreads);
+            		theAnalysis.useSpectralRotation(useSpectralRotation);
             		
             	}
 
@@ -281,6 +310,10 @@ public class MLMPlugin extends AbstractPlugin {
             useP3D = true;
         } else if (value.equalsIgnoreCase("EachMarker")) {
             useP3D = false;
+            useSpectralRotation = false;
+        } else if (value.equalsIgnoreCase("Spectral")) {
+            useP3D = false;
+            useSpectralRotation = true;
         } else {
             throw new IllegalArgumentException("MLMPlugin: setVarCompEst: don't know how to handle value: " + value);
         }
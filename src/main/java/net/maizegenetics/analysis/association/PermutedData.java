@@ -0,0 +1,178 @@
+package net.maizegenetics.analysis.association;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.maizegenetics.stats.linearmodels.LinearModelUtils;
+
+/**
+ * Permuted data for an experiment-wise permutation test. The values of all permutations are stored in a single array,
+ * permutation by permutation. Rather than fitting a linear model to each permutation, all permutations are tested together
+ * by projecting them onto orthonormal bases of the base model and marker columns (Q'Y), which gives the base model error
+ * and marker sums of squares for every permutation.
+ */
+class PermutedData {
+	//a column is dropped if less than this fraction of its length is orthogonal to the previous columns
+	private static final double TOL = 1e-10;
+
+	private final int numberOfPermutations;
+	private final int numberOfObservations;
+	private final double[] values;
+
+	/**
+	 * @param numberOfPermutations		the number of permutations
+	 * @param numberOfObservations		the number of observations in each permutation
+	 */
+	PermutedData(int numberOfPermutations, int numberOfObservations) {
+		long size = (long) numberOfPermutations * (long) numberOfObservations;
+		if (size > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("PermutedData: init: number of permutations: " + numberOfPermutations + " times number of observations: " + numberOfObservations + " is too large.");
+		}
+		this.numberOfPermutations = numberOfPermutations;
+		this.numberOfObservations = numberOfObservations;
+		values = new double[(int) size];
+	}
+
+	int numberOfPermutations() {
+		return numberOfPermutations;
+	}
+
+	int numberOfObservations() {
+		return numberOfObservations;
+	}
+
+	void set(int permutation, int observation, double value) {
+		values[permutation * numberOfObservations + observation] = value;
+	}
+
+	/**
+	 * @param permutation	a permutation
+	 * @return				a copy of the values for that permutation
+	 */
+	double[] permutation(int permutation) {
+		int start = permutation * numberOfObservations;
+		double[] result = new double[numberOfObservations];
+		System.arraycopy(values, start, result, 0, numberOfObservations);
+		return result;
+	}
+
+	/**
+	 * Calculates the base model error sum of squares for every permutation. The result can be used for all sites with the same
+	 * missing data.
+	 * @param observations		the index of each non-missing observation in the permuted data
+	 * @param baseColumns		the columns of the base model design matrix for the non-missing observations
+	 * @return					the base model
+	 */
+	Base base(int[] observations, List<double[]> baseColumns) {
+		double[][] basis = orthonormalize(baseColumns, Collections.<double[]>emptyList());
+		int numberOfVectors = basis.length;
+		double[] errorSS = new double[numberOfPermutations];
+		double[] coefficients = new double[numberOfVectors];
+		for (int p = 0; p < numberOfPermutations; p++) {
+			int start = p * numberOfObservations;
+			double yty = 0;
+			for (int j = 0; j < numberOfVectors; j++) coefficients[j] = 0;
+			for (int i = 0; i < observations.length; i++) {
+				double y = values[start + observations[i]];
+				yty += y * y;
+				for (int j = 0; j < numberOfVectors; j++) coefficients[j] += basis[j][i] * y;
+			}
+			double modelSS = 0;
+			for (int j = 0; j < numberOfVectors; j++) modelSS += coefficients[j] * coefficients[j];
+			errorSS[p] = yty - modelSS;
+		}
+		return new Base(observations, basis, errorSS);
+	}
+
+	/**
+	 * Tests the marker against every permutation and replaces minP[p] with the p-value for permutation p when that is smaller. Permutations that leave no error
+	 * sum of squares or give an F that cannot be tested are skipped, like the replicated taxa path in AbstractFixedEffectLM.
+	 * @param base				the base model for the observations that are not missing for this site
+	 * @param markerColumns		the columns of the marker design matrix for the non-missing observations
+	 * @param minP				the minimum p-value for each permutation
+	 */
+	void updateMinP(Base base, List<double[]> markerColumns, double[] minP) {
+		List<double[]> baseBasis = new ArrayList<>();
+		Collections.addAll(baseBasis, base.basis);
+		double[][] basis = orthonormalize(markerColumns, baseBasis);
+		int markerDf = basis.length;
+		int errorDf = base.observations.length - base.basis.length - markerDf;
+		if (markerDf == 0 || errorDf <= 0) return;
+
+		int[] observations = base.observations;
+		double[] coefficients = new double[markerDf];
+		for (int p = 0; p < numberOfPermutations; p++) {
+			int start = p * numberOfObservations;
+			for (int j = 0; j < markerDf; j++) coefficients[j] = 0;
+			for (int i = 0; i < observations.length; i++) {
+				double y = values[start + observations[i]];
+				for (int j = 0; j < markerDf; j++) coefficients[j] += basis[j][i] * y;
+			}
+			double markerSS = 0;
+			for (int j = 0; j < markerDf; j++) markerSS += coefficients[j] * coefficients[j];
+			double errorSS = base.errorSS[p] - markerSS;
+			if (errorSS <= 0) continue;
+			double F = markerSS / markerDf / errorSS * errorDf;
+			if (!Double.isFinite(F)) continue;
+			try {
+				double pval = LinearModelUtils.Ftest(F, markerDf, errorDf);
+				if (minP[p] > pval) minP[p] = pval;
+			} catch (Exception e) {
+				//do nothing
+			}
+		}
+	}
+
+	/**
+	 * Modified Gram-Schmidt with a second pass to keep the vectors orthogonal to working precision. Columns that are
+	 * (nearly) linear combinations of basis or of earlier columns are dropped, so the number of vectors returned is the
+	 * number of degrees of freedom added by columns.
+	 * @param columns		the columns to orthonormalize
+	 * @param basis			orthonormal vectors that the result will be orthogonal to
+	 * @return				orthonormal vectors spanning the part of columns not spanned by basis
+	 */
+	private static double[][] orthonormalize(List<double[]> columns, List<double[]> basis) {
+		List<double[]> result = new ArrayList<>();
+		for (double[] column : columns) {
+			double[] vector = column.clone();
+			double originalNorm = Math.sqrt(dotProduct(vector, vector));
+			if (originalNorm == 0) continue;
+			for (int pass = 0; pass < 2; pass++) {
+				for (double[] q : basis) subtractProjection(vector, q);
+				for (double[] q : result) subtractProjection(vector, q);
+			}
+			double norm = Math.sqrt(dotProduct(vector, vector));
+			if (norm <= TOL * originalNorm) continue;
+			for (int i = 0; i < vector.length; i++) vector[i] /= norm;
+			result.add(vector);
+		}
+		return result.toArray(new double[result.size()][]);
+	}
+
+	private static void subtractProjection(double[] vector, double[] unitVector) {
+		double projection = dotProduct(vector, unitVector);
+		for (int i = 0; i < vector.length; i++) vector[i] -= projection * unitVector[i];
+	}
+
+	private static double dotProduct(double[] x, double[] y) {
+		double sum = 0;
+		for (int i = 0; i < x.length; i++) sum += x[i] * y[i];
+		return sum;
+	}
+
+	/**
+	 * The base model for one pattern of missing data
+	 */
+	static class Base {
+		private final int[] observations;
+		private final double[][] basis;
+		private final double[] errorSS;
+
+		private Base(int[] observations, double[][] basis, double[] errorSS) {
+			this.observations = observations;
+			this.basis = basis;
+			this.errorSS = errorSS;
+		}
+	}
+}
@@ -18,6 +18,15 @@ public class ReferenceProbabilityFELM extends AbstractFixedEffectLM {
         super(data, parentPlugin);
     }
 
+    private ReferenceProbabilityFELM(ReferenceProbabilityFELM parent) {
+        super(parent);
+    }
+
+    @Override
+    protected AbstractFixedEffectLM newWorker() {
+        return new ReferenceProbabilityFELM(this);
+    }
+
     @Override
     protected void analyzeSite() {
         myModel = new ArrayList<ModelEffect>(myBaseModel);
@@ -218,6 +218,7 @@ public class WeightedMLMPlugin extends MLMPlugin{
                         theAnalysis.useGenotypeCalls(useGenotype);
                         theAnalysis.useReferenceProbability(useRefProb);
                         theAnalysis.useAlleleProbabilities(useAlleleProb);
+                        theAnalysis.setMaxThreads(getMaxThreads());
 
                 } else {
                         if (compressionType.equals(CompressionType.Optimum)) {
@@ -246,6 +247,8 @@ public class WeightedMLMPlugin extends MLMPlugin{
                         theAnalysis.useGenotypeCalls(useGenotype);
                         theAnalysis.useReferenceProbability(useRefProb);
                         theAnalysis.useAlleleProbabilities(useAlleleProb);
+                        theAnalysis.setMaxThreads(getMaxThreads());
+                        theAnalysis.useSpectralRotation(useSpectralRotation);
                         
                 }
 
@@ -327,6 +330,10 @@ public class WeightedMLMPlugin extends MLMPlugin{
             useP3D = true;
         } else if (value.equalsIgnoreCase("EachMarker")) {
             useP3D = false;
+            useSpectralRotation = false;
+        } else if (value.equalsIgnoreCase("Spectral")) {
+            useP3D = false;
+            useSpectralRotation = true;
         } else {
             throw new IllegalArgumentException("MLMPlugin: setVarCompEst: don't know how to handle value: " + value);
         }
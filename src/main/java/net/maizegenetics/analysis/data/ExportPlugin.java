@@ -79,6 +79,13 @@ public class ExportPlugin extends AbstractPlugin {
                     FileLoadPlugin.TasselFileType.HapmapLIX})
             .build();
 
+    private PluginParameter<Boolean> myLineIndex = new PluginParameter.Builder<>("lineIndex", false, Boolean.class)
+            .description("Whether to write a line index (.lix) with block gzipped (.gz) Hapmap or VCF files.")
+            .dependentOnParameter(myFileType, new FileLoadPlugin.TasselFileType[]{FileLoadPlugin.TasselFileType.VCF,
+                    FileLoadPlugin.TasselFileType.Hapmap,
+                    FileLoadPlugin.TasselFileType.HapmapDiploid})
+            .build();
+
     private PluginParameter<Boolean> myIncludeBranchLengths = new PluginParameter.Builder<>("includeBranchLengths", true, Boolean.class)
             .description("Whether to include branch lengths for Newick formatted files.")
             .dependentOnParameter(myFileType, new FileLoadPlugin.TasselFileType[]{FileLoadPlugin.TasselFileType.Newick})
@@ -108,6 +115,7 @@ public class ExportPlugin extends AbstractPlugin {
                 temp.add(FileLoadPlugin.TasselFileType.HDF5);
                 temp.add(FileLoadPlugin.TasselFileType.VCF);
                 temp.add(FileLoadPlugin.TasselFileType.Plink);
+                temp.add(FileLoadPlugin.TasselFileType.PlinkBed);
                 temp.add(FileLoadPlugin.TasselFileType.Flapjack);
                 temp.add(FileLoadPlugin.TasselFileType.Phylip_Seq);
                 temp.add(FileLoadPlugin.TasselFileType.Phylip_Inter);
@@ -263,11 +271,13 @@ public class ExportPlugin extends AbstractPlugin {
         } else if (fileType() == FileLoadPlugin.TasselFileType.Depth) {
             resultFile = SiteScoresIO.writeDepth(inputAlignment, resultFile);
         } else if (fileType() == FileLoadPlugin.TasselFileType.Hapmap) {
-            resultFile = ExportUtils.writeToHapmap(inputAlignment, false, saveFile(), '\t', includeTaxaAnnotations(), this);
+            resultFile = ExportUtils.writeToHapmap(inputAlignment, false, saveFile(), '\t', includeTaxaAnnotations(), lineIndex(), this);
         } else if (fileType() == FileLoadPlugin.TasselFileType.HapmapDiploid) {
-            resultFile = ExportUtils.writeToHapmap(inputAlignment, true, saveFile(), '\t', includeTaxaAnnotations(), this);
+            resultFile = ExportUtils.writeToHapmap(inputAlignment, true, saveFile(), '\t', includeTaxaAnnotations(), lineIndex(), this);
         } else if (fileType() == FileLoadPlugin.TasselFileType.Plink) {
             resultFile = ExportUtils.writeToPlink(inputAlignment, saveFile(), '\t');
+        } else if (fileType() == FileLoadPlugin.TasselFileType.PlinkBed) {
+            resultFile = ExportUtils.writeToPlinkBed(inputAlignment, saveFile(), this);
         } else if (fileType() == FileLoadPlugin.TasselFileType.Flapjack) {
             resultFile = FlapjackUtils.writeToFlapjack(inputAlignment, saveFile(), '\t');
         } else if (fileType() == FileLoadPlugin.TasselFileType.Phylip_Seq) {
@@ -293,7 +303,7 @@ public class ExportPlugin extends AbstractPlugin {
         } else if (fileType() == FileLoadPlugin.TasselFileType.HDF5) {
             resultFile = ExportUtils.writeGenotypeHDF5(inputAlignment, saveFile(), keepDepth());
         } else if (fileType() == FileLoadPlugin.TasselFileType.VCF) {
-            resultFile = ExportUtils.writeToVCF(inputAlignment, saveFile(), keepDepth(), this);
+            resultFile = ExportUtils.writeToVCF(inputAlignment, saveFile(), keepDepth(), lineIndex(), this);
         } else if (fileType() == FileLoadPlugin.TasselFileType.Avro) {
             resultFile = ExportAvro.write(inputAlignment, saveFile());
         } else {
@@ -490,6 +500,29 @@ public class ExportPlugin extends AbstractPlugin {
         return this;
     }
 
+    /**
+     * Whether to write a line index (.lix) with block gzipped
+     * (.gz) Hapmap or VCF files.
+     *
+     * @return Line Index
+     */
+    public Boolean lineIndex() {
+        return myLineIndex.value();
+    }
+
+    /**
+     * Set Line Index. Whether to write a line index (.lix) with
+     * block gzipped (.gz) Hapmap or VCF files.
+     *
+     * @param value Line Index
+     *
+     * @return this plugin
+     */
+    public ExportPlugin lineIndex(Boolean value) {
+        myLineIndex = new PluginParameter<>(myLineIndex, value);
+        return this;
+    }
+
     /**
      * Whether to include branch lengths for Newick formatted
      * files.
@@ -11,6 +11,7 @@ import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import net.maizegenetics.analysis.gobii.GOBIIPlugin;
 import net.maizegenetics.dna.map.TOPMUtils;
 import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.GenotypeTableBuilder;
 import net.maizegenetics.dna.snp.ImportUtils;
 import net.maizegenetics.dna.snp.ReadSequenceAlignmentUtils;
 import net.maizegenetics.dna.snp.io.*;
@@ -67,6 +68,11 @@ public class FileLoadPlugin extends AbstractPlugin {
             .dependentOnParameter(myFileType, new Object[]{TasselFileType.Unknown, TasselFileType.VCF})
             .build();
 
+    private PluginParameter<Integer> myHDF5CacheSize = new PluginParameter.Builder<>("hdf5CacheSize", 0, Integer.class)
+            .description("HDF5 genotype cache size in megabytes. Zero uses the TASSEL preference (by default a third of max memory, shared by all HDF5 genotype files).")
+            .dependentOnParameter(myFileType, new Object[]{TasselFileType.Unknown, TasselFileType.HDF5})
+            .build();
+
     private String[] myOpenFiles = null;
     private PlinkLoadPlugin myPlinkLoadPlugin = null;
     private ProjectionLoadPlugin myProjectionLoadPlugin = null;
@@ -79,16 +85,16 @@ public class FileLoadPlugin extends AbstractPlugin {
 
         SqrMatrix("Square Matrix"), Sequence("Sequence"), Unknown("Make Best Guess"),
         Fasta("Fasta"), Hapmap("Hapmap"), HapmapLIX("Hapmap LIX"),
-        Plink("Plink"), Phenotype("Phenotype"), ProjectionAlignment("Projection Genotype"),
+        Plink("Plink"), PlinkBed("Plink Binary"), Phenotype("Phenotype"), ProjectionAlignment("Projection Genotype"),
         ProjectPCsandRunModelSelection("Project PCs"),
         Phylip_Seq("Phylip (Sequential)"), Phylip_Inter("Phylip (Interleaved)"), Table("Table"),
-        Serial("Serial"), HapmapDiploid("Hapmap Diploid"), Newick("Newick"), VCF("VCF"),
+        Serial("Serial"), HapmapDiploid("Hapmap Diploid"), Newick("Newick"), VCF("VCF"), VCFLIX("VCF LIX"),
         HDF5("HDF5"), TOPM("TOPM"), HDF5Schema("HDF5 Schema"), Filter("Filter"),
         NumericGenotype("Numeric Genotype"), TaxaList("Taxa List"), PositionList("Position List"),
         SqrMatrixRaw("Raw MultiBLUP Matrix"), SqrMatrixBin("Binary MultiBLUP Matrix"),
         GOBII("GOBII"), Depth("Depth"), ReferenceProbability("Numeric Genotype"), Report("Report"),
         PlinkPhenotype("Plink Phenotype"), SqrMatrixDARwinDIS("DARwin DIS"), Avro("Avro"),
-        Flapjack("Flapjack");
+        Flapjack("Flapjack"), SqrMatrixBinMapped("Binary MultiBLUP Matrix (Memory Mapped)");
 
         private final String myText;
 
@@ -110,6 +116,7 @@ public class FileLoadPlugin extends AbstractPlugin {
     public static final String FILE_EXT_SERIAL_GZ = ".serial.gz";
     public static final String FILE_EXT_HDF5 = ".h5";
     public static final String FILE_EXT_VCF = ".vcf";
+    public static final String FILE_EXT_VCF_GZ_LIX = FILE_EXT_VCF + ".gz" + LineIndexBuilder.LINE_INDEX_FILE_EXTENSION;
     public static final String FILE_EXT_TOPM = ".topm";
     public static final String FILE_EXT_TOPM_H5 = ".topm.h5";
     public static final String FILE_EXT_TOPM_BIN = ".topm.bin";
@@ -163,6 +170,7 @@ public class FileLoadPlugin extends AbstractPlugin {
                 TasselFileType.VCF,
                 TasselFileType.Flapjack,
                 TasselFileType.Plink,
+                TasselFileType.PlinkBed,
                 TasselFileType.ProjectionAlignment,
                 TasselFileType.Sequence,
                 TasselFileType.Fasta,
@@ -314,14 +322,47 @@ public class FileLoadPlugin extends AbstractPlugin {
                     alreadyLoaded.add(thePedFile);
                     GenotypeTable plink = ImportUtils.readFromPLink(thePedFile, myOpenFiles[i], this, sortPositions());
                     tds = new DataSet(new Datum(Utils.getFilename(thePedFile, FileLoadPlugin.FILE_EXT_PLINK_PED), plink, null), this);
+                } else if (PlinkBedIO.isPlinkBed(myOpenFiles[i])) {
+                    myLogger.info("guessAtUnknowns: type: " + TasselFileType.PlinkBed);
+                    String prefix = PlinkBedIO.prefix(myOpenFiles[i]);
+                    alreadyLoaded.add(prefix + PlinkBedIO.FILE_EXT_PLINK_BED);
+                    alreadyLoaded.add(prefix + PlinkBedIO.FILE_EXT_PLINK_BIM);
+                    alreadyLoaded.add(prefix + PlinkBedIO.FILE_EXT_PLINK_FAM);
+                    GenotypeTable plink = ImportUtils.readFromPlinkBed(myOpenFiles[i]);
+                    tds = new DataSet(new Datum(Utils.getFilename(prefix), plink, null), this);
                 } else if (myOpenFiles[i].endsWith(FILE_EXT_SERIAL_GZ)) {
                     myLogger.info("guessAtUnknowns: type: " + TasselFileType.Serial);
                     alreadyLoaded.add(myOpenFiles[i]);
                     tds = processDatum(myOpenFiles[i], TasselFileType.Serial);
+                } else if (myOpenFiles[i].endsWith(MappedGenotypeIO.FILE_EXT_MAPPED_GENOTYPE)) {
+                    myLogger.info("guessAtUnknowns: type: Mapped Genotype");
+                    alreadyLoaded.add(myOpenFiles[i]);
+                    alreadyLoaded.add(myOpenFiles[i] + MappedGenotypeIO.TAXA_SUFFIX);
+                    alreadyLoaded.add(myOpenFiles[i] + MappedGenotypeIO.POSITION_SUFFIX);
+                    GenotypeTable mapped = ImportUtils.readFromMappedGenotype(myOpenFiles[i]);
+                    tds = new DataSet(new Datum(Utils.getFilename(myOpenFiles[i], MappedGenotypeIO.FILE_EXT_MAPPED_GENOTYPE), mapped, null), this);
                 } else if (myOpenFiles[i].endsWith(FILE_EXT_HDF5)) {
                     myLogger.info("guessAtUnknowns: type: " + TasselFileType.HDF5);
                     alreadyLoaded.add(myOpenFiles[i]);
                     tds = processDatum(myOpenFiles[i], TasselFileType.HDF5);
+                } else if (myOpenFiles[i].endsWith(FILE_EXT_VCF + ".gz") && new File(myOpenFiles[i].replaceFirst(FILE_EXT_VCF + ".gz", FILE_EXT_VCF_GZ_LIX)).isFile()) {
+                    String theIndex = myOpenFiles[i].replaceFirst(FILE_EXT_VCF + ".gz", FILE_EXT_VCF_GZ_LIX);
+                    myLogger.info("guessAtUnknowns: type: " + TasselFileType.VCFLIX);
+                    alreadyLoaded.add(myOpenFiles[i]);
+                    alreadyLoaded.add(theIndex);
+                    GenotypeTable vcf = BuilderFromVCFLIX.build(myOpenFiles[i], theIndex);
+                    tds = new DataSet(new Datum(Utils.getFilename(myOpenFiles[i], FILE_EXT_VCF + ".gz"), vcf, null), this);
+                } else if (myOpenFiles[i].endsWith(FILE_EXT_VCF_GZ_LIX)) {
+                    String theVCF = myOpenFiles[i].replaceFirst(FILE_EXT_VCF_GZ_LIX, FILE_EXT_VCF + ".gz");
+                    if (new File(theVCF).isFile()) {
+                        myLogger.info("guessAtUnknowns: type: " + TasselFileType.VCFLIX);
+                        alreadyLoaded.add(myOpenFiles[i]);
+                        alreadyLoaded.add(theVCF);
+                        GenotypeTable vcf = BuilderFromVCFLIX.build(theVCF, myOpenFiles[i]);
+                        tds = new DataSet(new Datum(Utils.getFilename(theVCF, FILE_EXT_VCF + ".gz"), vcf, null), this);
+                    } else {
+                        throw new IllegalStateException("Can't find genotype file for index: " + myOpenFiles[i]);
+                    }
                 } else if (myOpenFiles[i].endsWith(FILE_EXT_VCF) || myOpenFiles[i].endsWith(FILE_EXT_VCF + ".gz")) {
                     myLogger.info("guessAtUnknowns: type: " + TasselFileType.VCF);
                     alreadyLoaded.add(myOpenFiles[i]);
@@ -526,7 +567,8 @@ public class FileLoadPlugin extends AbstractPlugin {
                         inFile = newInfile;
                     }
                     suffix = FILE_EXT_HDF5;
-                    result = ImportUtils.readGuessFormat(inFile);
+                    int cacheSizeMB = (hdf5CacheSize() > 0) ? hdf5CacheSize() : TasselPrefs.getAlignmentHDF5CacheSizeMB();
+                    result = GenotypeTableBuilder.getInstance(inFile, cacheSizeMB, TasselPrefs.getAlignmentHDF5ReadAhead());
                     break;
                 }
                 case HDF5Schema: {
@@ -558,6 +600,15 @@ public class FileLoadPlugin extends AbstractPlugin {
                     result = ReadDistanceMatrix.readBinMultiBlupMatrix(inFile);
                     break;
                 }
+                case PlinkBed: {
+                    suffix = PlinkBedIO.FILE_EXT_PLINK_BED;
+                    result = ImportUtils.readFromPlinkBed(inFile);
+                    break;
+                }
+                case SqrMatrixBinMapped: {
+                    result = ReadDistanceMatrix.mapBinMultiBlupMatrix(inFile);
+                    break;
+                }
                 case Phenotype: {
                     List<Phenotype> phenotypes = new PhenotypeBuilder().fromFile(inFile).build();
                     if (phenotypes.size() != 1) {
@@ -734,6 +785,30 @@ public class FileLoadPlugin extends AbstractPlugin {
         return this;
     }
 
+    /**
+     * HDF5 genotype cache size in megabytes. Zero uses the TASSEL preference
+     * (by default a third of max memory, shared by all HDF5 genotype files).
+     *
+     * @return HDF5 Cache Size
+     */
+    public Integer hdf5CacheSize() {
+        return myHDF5CacheSize.value();
+    }
+
+    /**
+     * Set HDF5 Cache Size. HDF5 genotype cache size in megabytes. Zero uses
+     * the TASSEL preference (by default a third of max memory, shared by all
+     * HDF5 genotype files).
+     *
+     * @param value HDF5 Cache Size
+     *
+     * @return this plugin
+     */
+    public FileLoadPlugin hdf5CacheSize(Integer value) {
+        myHDF5CacheSize = new PluginParameter<>(myHDF5CacheSize, value);
+        return this;
+    }
+
     /**
      * Icon for this plugin to be used in buttons, etc.
      *
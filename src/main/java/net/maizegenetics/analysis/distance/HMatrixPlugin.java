@@ -150,8 +150,6 @@ public class HMatrixPlugin extends AbstractPlugin {
      */
 
     private static DistanceMatrix generateGStarMatrix(DistanceMatrix aMatrix, DistanceMatrix gMatrix, double weight) {
-        double[][] doubleA = aMatrix.getDistances();
-        double[][] doubleG = gMatrix.getDistances();
         List<Taxon> aTaxa = aMatrix.getTaxaList();
         List<Taxon> gTaxa = gMatrix.getTaxaList();
         int size = gTaxa.size();
@@ -159,14 +157,16 @@ public class HMatrixPlugin extends AbstractPlugin {
         for (int i = 0; i < size; i++) {
             int aLocI = aTaxa.indexOf(gTaxa.get(i));
             if (aLocI == -1) { //Because there is no A22 for this taxa, none of its intersections are in A.
-                doubleGStar[i] = doubleG[i];
+                for (int j = 0; j < size; j++) {
+                    doubleGStar[i][j] = gMatrix.getDistance(i, j);
+                }
             } else {
                 for (int j = 0; j < size; j++) {
                     int aLocJ = aTaxa.indexOf(gTaxa.get(j));
                     if (aLocJ == -1) {
-                        doubleGStar[i][j] = doubleG[i][j];
+                        doubleGStar[i][j] = gMatrix.getDistance(i, j);
                     } else {
-                        doubleGStar[i][j] = (weight * doubleG[i][j]) + ((1.0 - weight) * doubleA[aLocI][aLocJ]);
+                        doubleGStar[i][j] = (weight * gMatrix.getDistance(i, j)) + ((1.0 - weight) * aMatrix.getDistance(aLocI, aLocJ));
                     }
                 }
             }
@@ -208,18 +208,15 @@ public class HMatrixPlugin extends AbstractPlugin {
         //A[2]
         matrixOrder.addAll(unionTaxa);
 
-        double[][] aPrime = aInverse.getDistances();
-        double[][] gStarPrime = gStarInverse.getDistances();
-
         int outputSize = aTaxa.size() + gOnlyTaxa.size();
         double[][] hPrime = new double[outputSize][outputSize];
 
         //Combined Matrix entries for A[1][1] are copied from A matrix
-        for (int i = 0; i < aPrime.length; i++) {
+        for (int i = 0; i < aTaxa.size(); i++) {
             int newI = matrixOrder.indexOf(aTaxa.get(i));
-            for (int j = 0; j < aPrime.length; j++) {
+            for (int j = 0; j < aTaxa.size(); j++) {
                 int newJ = matrixOrder.indexOf(aTaxa.get(j));
-                hPrime[newI][newJ] = aPrime[i][j];
+                hPrime[newI][newJ] = aInverse.getDistance(i, j);
             }
         }
         //Add Taxa only in the GMatrix to the A Matrix with an identity of 1 and no other values
@@ -237,7 +234,7 @@ public class HMatrixPlugin extends AbstractPlugin {
             int newI = matrixOrder.indexOf(gTaxa.get(i));
             for (int j = 0; j < gTaxa.size(); j++) {
                 int newJ = matrixOrder.indexOf(gTaxa.get(j));
-                hPrime[newI][newJ] = gStarPrime[i][j];
+                hPrime[newI][newJ] = gStarInverse.getDistance(i, j);
             }
         }
         TaxaListBuilder builder = new TaxaListBuilder();
@@ -257,7 +254,7 @@ public class HMatrixPlugin extends AbstractPlugin {
      * @return Eigenvalue Decomposition of the matrix
      */
     private static EigenvalueDecomposition decompose(DistanceMatrix input) {
-        return DoubleMatrixFactory.DEFAULT.make(input.getDistances()).getEigenvalueDecomposition();
+        return DoubleMatrixFactory.DEFAULT.make(input).getEigenvalueDecomposition();
     }
 
     @Override
@@ -63,6 +63,14 @@ public class KinshipPlugin extends AbstractPlugin {
             .dependentOnParameter(myMethod, new Object[]{KINSHIP_METHOD.Dominance_Centered_IBS})
             .build();
 
+    private PluginParameter<Boolean> myTiled = new PluginParameter.Builder<>("tiled", false, Boolean.class)
+            .guiName("Tiled (Bounded Memory)")
+            .description("Divides the kinship matrix into tiles of taxa that are each computed by one thread, "
+                    + "instead of giving each thread its own copy of the matrix. Memory used is about one matrix "
+                    + "regardless of number of threads. Recommended for large numbers of taxa.")
+            .dependentOnParameter(myMethod, new Object[]{KINSHIP_METHOD.Centered_IBS})
+            .build();
+
     public KinshipPlugin(Frame parentFrame, boolean isInteractive) {
         super(parentFrame, isInteractive);
     }
@@ -115,7 +123,9 @@ public class KinshipPlugin extends AbstractPlugin {
 
             if (current.getData() instanceof GenotypeTable) {
                 GenotypeTable myGenotype = (GenotypeTable) current.getData();
-                if (kinshipMethod() == KINSHIP_METHOD.Centered_IBS) {
+                if ((kinshipMethod() == KINSHIP_METHOD.Centered_IBS) && tiled()) {
+                    kin = TiledEndelmanDistanceMatrix.getInstance(myGenotype, maxAlleles(), this);
+                } else if (kinshipMethod() == KINSHIP_METHOD.Centered_IBS) {
                     kin = EndelmanDistanceMatrix.getInstance(myGenotype, maxAlleles(), this);
                 } else if (kinshipMethod() == KINSHIP_METHOD.Normalized_IBS) {
                     kin = GCTADistanceMatrix.getInstance(myGenotype, this);
@@ -261,4 +271,26 @@ public class KinshipPlugin extends AbstractPlugin {
         myAlgorithmVariation = new PluginParameter<>(myAlgorithmVariation, value);
         return this;
     }
+
+    /**
+     * Whether to compute kinship in tiles of taxa with bounded memory.
+     *
+     * @return Tiled
+     */
+    public Boolean tiled() {
+        return myTiled.value();
+    }
+
+    /**
+     * Set Tiled. Whether to compute kinship in tiles of taxa with bounded
+     * memory. Only used by the Centered_IBS method.
+     *
+     * @param value Tiled
+     *
+     * @return this plugin
+     */
+    public KinshipPlugin tiled(Boolean value) {
+        myTiled = new PluginParameter<>(myTiled, value);
+        return this;
+    }
 }
@@ -0,0 +1,251 @@
+/*
+ *  TiledEndelmanDistanceMatrix
+ */
+package net.maizegenetics.analysis.distance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.genotypecall.AlleleFreqCache;
+import net.maizegenetics.taxa.distance.DistanceMatrix;
+import net.maizegenetics.taxa.distance.DistanceMatrixBuilder;
+import net.maizegenetics.util.GeneralAnnotationStorage;
+import net.maizegenetics.util.ProgressListener;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Computes the same Centered IBS (Endelman) kinship as
+ * {@link EndelmanDistanceMatrix}, but with memory bounded by the result
+ * matrix. Instead of every thread accumulating its own copy of the matrix over
+ * a range of sites, sites are streamed through in blocks, and the output
+ * matrix is divided into square tiles of taxa. Each tile is accumulated by one
+ * thread at a time, so no copies need merging. Use for large numbers of taxa
+ * where a matrix per thread doesn't fit in memory.
+ *
+ * http://www.g3journal.org/content/2/11/1405.full.pdf Equation-13
+ */
+public class TiledEndelmanDistanceMatrix {
+
+    private static final Logger myLogger = LogManager.getLogger(TiledEndelmanDistanceMatrix.class);
+
+    private static final int DEFAULT_MAX_ALLELES = 6;
+
+    //
+    // Number of taxa per side of an output tile. The tile rows and the
+    // centered genotypes for its columns stay in cache while a block of
+    // sites is accumulated.
+    //
+    private static final int TAXA_PER_TILE = 256;
+
+    //
+    // Number of sites centered before each pass over the tiles.
+    //
+    private static final int SITES_PER_BLOCK = 64;
+
+    //
+    // Number of occurrences (0, 1, 2) of allele for all diploid
+    // values. Index is allele (three bits) followed by diploid value
+    // (eight bits). Value -1 means diploid value is unknown. Like
+    // EndelmanDistanceMatrix, only the first three bits of each
+    // haploid value are considered.
+    //
+    private static final byte[] ALLELE_COUNTS = new byte[8 * 256];
+
+    static {
+        for (int allele = 0; allele < 8; allele++) {
+            for (int value = 0; value < 256; value++) {
+                int a = (value >>> 4) & 0x7;
+                int b = value & 0x7;
+                int index = (allele << 8) | value;
+                if ((a == 7) && (b == 7)) {
+                    ALLELE_COUNTS[index] = -1;
+                } else {
+                    ALLELE_COUNTS[index] = (byte) ((a == allele ? 1 : 0) + (b == allele ? 1 : 0));
+                }
+            }
+        }
+    }
+
+    private TiledEndelmanDistanceMatrix() {
+        // utility
+    }
+
+    /**
+     * Compute Endelman Kinship Matrix. Maximum alleles per site to evaluate
+     * defaults to 6.
+     *
+     * @param genotype Genotype Table used to compute kinship
+     *
+     * @return Endelman Kinship Matrix
+     */
+    public static DistanceMatrix getInstance(GenotypeTable genotype) {
+        return getInstance(genotype, DEFAULT_MAX_ALLELES, null);
+    }
+
+    /**
+     * Compute Endelman Kinship Matrix
+     *
+     * @param genotype Genotype Table used to compute kinship
+     * @param maxAlleles maximum alleles per site to evaluate. i.e. Set to 3 to
+     * evaluate the three most frequent allele states.
+     * @param listener Progress listener
+     *
+     * @return Endelman Kinship Matrix
+     */
+    public static DistanceMatrix getInstance(GenotypeTable genotype, int maxAlleles, ProgressListener listener) {
+
+        if ((maxAlleles < 2) || (maxAlleles > 6)) {
+            throw new IllegalArgumentException("TiledEndelmanDistanceMatrix: getInstance: max alleles must be between 2 and 6 inclusive.");
+        }
+
+        long time = System.currentTimeMillis();
+
+        int numTaxa = genotype.numberOfTaxa();
+        int numSites = genotype.numberOfSites();
+
+        DistanceMatrixBuilder builder = DistanceMatrixBuilder.getInstance(genotype.taxa());
+        float[][] rows = new float[numTaxa][];
+        for (int t = 0; t < numTaxa; t++) {
+            rows[t] = builder.row(t);
+        }
+
+        //
+        // Tiles on or below the diagonal, since only lower triangle
+        // of matrix is stored.
+        //
+        int numTileSides = (numTaxa + TAXA_PER_TILE - 1) / TAXA_PER_TILE;
+        int numTiles = numTileSides * (numTileSides + 1) / 2;
+        int[] tileRows = new int[numTiles];
+        int[] tileColumns = new int[numTiles];
+        int tile = 0;
+        for (int r = 0; r < numTileSides; r++) {
+            for (int c = 0; c <= r; c++) {
+                tileRows[tile] = r * TAXA_PER_TILE;
+                tileColumns[tile] = c * TAXA_PER_TILE;
+                tile++;
+            }
+        }
+
+        double sumpk = 0.0;
+        for (int start = 0; start < numSites; start += SITES_PER_BLOCK) {
+
+            int end = Math.min(start + SITES_PER_BLOCK, numSites);
+
+            //
+            // Center allele counts for block of sites. Each site
+            // results in one pseudo-site per evaluated allele.
+            //
+            double[] sumpi = new double[end - start];
+            int blockStart = start;
+            List<float[][]> centered = new ArrayList<>();
+            IntStream.range(start, end).parallel()
+                    .mapToObj(site -> centeredAlleleCounts(genotype, site, maxAlleles, sumpi, blockStart))
+                    .forEachOrdered(centered::add);
+
+            List<float[]> pseudoSites = new ArrayList<>();
+            for (int s = 0; s < sumpi.length; s++) {
+                sumpk += sumpi[s];
+                for (float[] current : centered.get(s)) {
+                    pseudoSites.add(current);
+                }
+            }
+            float[][] block = pseudoSites.toArray(new float[pseudoSites.size()][]);
+
+            IntStream.range(0, numTiles).parallel().forEach(current -> {
+                accumulateTile(rows, block, tileRows[current], Math.min(tileRows[current] + TAXA_PER_TILE, numTaxa), tileColumns[current], Math.min(tileColumns[current] + TAXA_PER_TILE, numTaxa));
+            });
+
+            EndelmanDistanceMatrix.fireProgress((int) ((double) end / (double) numSites * 100.0), listener);
+
+        }
+
+        //
+        // This does the final division of the frequency sum into
+        // the distance sums.
+        //
+        sumpk *= 2.0;
+        for (float[] row : rows) {
+            for (int c = 0; c < row.length; c++) {
+                row[c] = (float) (row[c] / sumpk);
+            }
+        }
+
+        GeneralAnnotationStorage.Builder annotations = GeneralAnnotationStorage.getBuilder();
+        annotations.addAnnotation(DistanceMatrixBuilder.MATRIX_TYPE, KinshipPlugin.KINSHIP_METHOD.Centered_IBS.toString());
+        annotations.addAnnotation(DistanceMatrixBuilder.CENTERED_IBS_SUMPK, sumpk);
+        builder.annotation(annotations.build());
+
+        myLogger.info("TiledEndelmanDistanceMatrix: getInstance: time: " + (System.currentTimeMillis() - time) / 1000 + " seconds");
+
+        return builder.build();
+
+    }
+
+    //
+    // Returns allele count minus two times allele frequency for each taxon
+    // and evaluated allele at given site. Unknown values are zero, so they
+    // add nothing to the sums. Adds p(1 - p) for the evaluated alleles to
+    // sumpi at site offset.
+    //
+    private static float[][] centeredAlleleCounts(GenotypeTable genotype, int site, int maxAlleles, double[] sumpi, int firstSite) {
+
+        byte[] genotypes = genotype.genotypeAllTaxa(site);
+        int[][] alleles = AlleleFreqCache.allelesSortedByFrequencyNucleotide(genotypes);
+        int numAlleles = Math.min(alleles[0].length - 1, maxAlleles - 1);
+        if (numAlleles <= 0) {
+            return new float[0][];
+        }
+
+        int totalAlleleCount = 0;
+        for (int i = 0; i < alleles[1].length; i++) {
+            totalAlleleCount += alleles[1][i];
+        }
+
+        int numTaxa = genotypes.length;
+        float[][] result = new float[numAlleles][];
+        for (int a = 0; a < numAlleles; a++) {
+
+            float alleleFreq = (float) alleles[1][a] / (float) totalAlleleCount;
+            float alleleFreqTimes2 = alleleFreq * 2.0f;
+            sumpi[site - firstSite] += alleleFreq * (1.0 - alleleFreq);
+
+            int offset = (alleles[0][a] & 0x7) << 8;
+            float[] values = new float[numTaxa];
+            for (int t = 0; t < numTaxa; t++) {
+                byte count = ALLELE_COUNTS[offset | (genotypes[t] & 0xFF)];
+                if (count >= 0) {
+                    values[t] = count - alleleFreqTimes2;
+                }
+            }
+            result[a] = values;
+
+        }
+
+        return result;
+
+    }
+
+    //
+    // Adds products of centered values for block of pseudo-sites to
+    // rows [rowStart, rowEnd) and columns [columnStart, columnEnd) of
+    // lower triangular matrix. Inner loop is over contiguous columns,
+    // so it can be vectorized.
+    //
+    private static void accumulateTile(float[][] rows, float[][] block, int rowStart, int rowEnd, int columnStart, int columnEnd) {
+        for (int r = rowStart; r < rowEnd; r++) {
+            float[] row = rows[r];
+            int end = Math.min(columnEnd, r + 1);
+            for (float[] values : block) {
+                float value = values[r];
+                if (value != 0.0f) {
+                    for (int c = columnStart; c < end; c++) {
+                        row[c] += value * values[c];
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -462,37 +462,20 @@ public class RampSeqAlignFromBlastTags extends AbstractPlugin {
         // For each tag on the tags list, run SW against it and store in tagTagAlignMap 
         int totalProcessedTags = 0;
         int tagCount = 0;
+        List<byte[]> sequences = new ArrayList<byte[]>();
+        for (Tag tag : tags) sequences.add(tag.sequence().getBytes());
+        ThreadLocal<TagAligner> aligners = ThreadLocal.withInitial(() -> new TagAligner(match_reward(), mismatch_penalty(), gap_penalty()));
         for (int tidx=0; tidx < tags.size(); tidx++) {
             Tag tag1 = tags.get(tidx);
+            byte[] seq1 = sequences.get(tidx);
         
             totalProcessedTags++;
             tagCount++;
             IntStream.range(tidx+1, tags.size()).parallel().forEach(item -> {
                 //tagTagSW(tag1, tags.get(item), tagAlignInfoMap);
                 Tag tag2 = tags.get(item);
-                String seq1 = tag1.sequence();
-                String seq2 = tag2.sequence();
-                Reader reader1 = new StringReader(seq1);
-                Reader reader2 = new StringReader(seq2);
-
-                PairwiseAlignmentAlgorithm  algorithm;
-                ScoringScheme  scoring;
-                algorithm = new SmithWaterman();
-                scoring = new BasicScoringScheme(match_reward(),mismatch_penalty(),gap_penalty());
-                algorithm.setScoringScheme(scoring);
-                int score = 0;
-
-                try {
-                    algorithm.loadSequences(reader1, reader2);
-                    // for tag-tag alignment, we are only computing the score
-                    score = algorithm.getScore();
-                } catch (IOException ioe) {
-                    ioe.printStackTrace();
-                } catch (InvalidSequenceException ise) { 
-                    ise.printStackTrace();
-                } catch (IncompatibleScoringSchemeException isse) {
-                    isse.printStackTrace();
-                }
+                // for tag-tag alignment, we are only computing the score
+                int score = aligners.get().score(seq1, sequences.get(item));
                 // for tag/tag, we have no chrom or position or strand or alignment position.  Store "null" and -1
                 AlignmentInfo tagAI = new AlignmentInfo(tag2, null, -1, -1, -1, refGenome(),score);
                 tagAlignInfoMap.put(tag1,tagAI);
@@ -531,84 +514,55 @@ public class RampSeqAlignFromBlastTags extends AbstractPlugin {
         // For each tag on the tags list, run SW against it and all refTags and store in tagAlignInfoMap 
         int totalProcessedTags = 0;
         int tagCount = 0;
+        ThreadLocal<TagAligner> aligners = ThreadLocal.withInitial(() -> new TagAligner(match_reward(), mismatch_penalty(), gap_penalty()));
         for (int tidx = 0; tidx < tags.size(); tidx++) {
             totalProcessedTags++;
             tagCount++;
             Tag tag1 = tags.get(tidx);
+            byte[] seq1 = tag1.sequence().getBytes();
 
             refTagDataList.parallelStream().forEach (rtd -> {
                 // Create alignment against both refTag and reverse complement of refTag
                 Tag tag2 = rtd.tag();
-                
-                String seq1 = tag1.sequence();
-                String seq2 = tag2.sequence();
-                Reader reader1 = new StringReader(seq1);
-                Reader reader2 = new StringReader(seq2);
-
-                PairwiseAlignmentAlgorithm  algorithm;
-                ScoringScheme  scoring;
-                PairwiseAlignment alignment;
-
-                algorithm = new SmithWaterman();
-                scoring = new BasicScoringScheme(match_reward(),mismatch_penalty(),gap_penalty());
-                algorithm.setScoringScheme(scoring);
-                int score;
+                TagAligner aligner = aligners.get();
                 int refAlignStartPos = rtd.position();
-                int tagAlignOffset = 0; // ajust incase SW sligns from somewhere in the middle of the tag
-                try {
-                    algorithm.loadSequences(reader1, reader2);                   
-                    alignment = algorithm.getPairwiseAlignment(); // compute alignment
-                    score = algorithm.getScore(); // get score - this is done in getPairwiseAlignment
-                  
-                    // The first sequence given in loadSequences() is loaded into rows. THis is non-refTag
-                    // The second is loaded into columns (matrix[seq1][seq2] - this is the refTag
-                    tagAlignOffset = alignment.getRowStart();
-                    refAlignStartPos += alignment.getColStart();
-                    
-                    if (tagAlignOffset > 0) {
-                        // Tag was not aligned from the beginning,
-                        // add back the bps that were skipped so alignment begins at start of the tag
-                        refAlignStartPos -= tagAlignOffset;
-                    }
-                    // If clipping has dropped us below the start of the reference genome, skip it
-                    if (refAlignStartPos >= 0) {
-                        // The ref tag start position is needed in RepGenSQLite to create a
-                        // RefTagData object.  This is stored in the BiMap and used along with chrom to distinguish
-                        // one tag from another.  The actual alignment position is also needed (refAlignStartPos)
-                        // for the tagAlignments table.
-                        AlignmentInfo tagAI = new AlignmentInfo(tag2,rtd.chromosome(),rtd.position(),refAlignStartPos, 1,refGenome,score);
-                        tagAlignInfoMap.put(tag1, tagAI); // data to be stored into tagAlignments table
-                    }
-                                       
-                    // Now align against the reverse complement of the refTag
-                    reader1 = new StringReader(seq1); // readers must be reset
-                    seq2 = tag2.toReverseComplement();
-                    reader2 = new StringReader(seq2);
-                    algorithm.unloadSequences(); 
-                    algorithm.loadSequences(reader1, reader2);
-                    score = algorithm.getScore(); // get score
-                    alignment = algorithm.getPairwiseAlignment(); // compute alignment                 
-                    tagAlignOffset = alignment.getRowStart();
-                    refAlignStartPos += alignment.getColStart();                    
-                            
-                    if (tagAlignOffset > 0) {
-                        // Tag1 was not aligned from the beginning,
-                        // add back the bps that were skipped so alignment begins at start of the tag
-                        refAlignStartPos -= tagAlignOffset;
-                    }
-                    // If clipping has dropped us below the start of the reference genome, skip it
-                    if (refAlignStartPos >= 0) {
-                        AlignmentInfo tagAI = new AlignmentInfo(tag2,rtd.chromosome(),rtd.position(),refAlignStartPos, 0, refGenome(),score);
-                        tagAlignInfoMap.put(tag1, tagAI); // data to be stored into tagAlignments table
-                    }
-                                       
-                } catch (IOException e) {
-                    e.printStackTrace();
-                } catch (InvalidSequenceException e) {
-                    e.printStackTrace();
-                } catch (IncompatibleScoringSchemeException e) {
-                    e.printStackTrace();
-                }                                        
+
+                // The first sequence is the row sequence, this is the non-refTag
+                // The second is the column sequence, this is the refTag
+                int score = aligner.align(seq1, tag2.sequence().getBytes());
+                int tagAlignOffset = aligner.rowStart(); // ajust incase SW sligns from somewhere in the middle of the tag
+                refAlignStartPos += aligner.colStart();
+
+                if (tagAlignOffset > 0) {
+                    // Tag was not aligned from the beginning,
+                    // add back the bps that were skipped so alignment begins at start of the tag
+                    refAlignStartPos -= tagAlignOffset;
+                }
+                // If clipping has dropped us below the start of the reference genome, skip it
+                if (refAlignStartPos >= 0) {
+                    // The ref tag start position is needed in RepGenSQLite to create a
+                    // RefTagData object.  This is stored in the BiMap and used along with chrom to distinguish
+                    // one tag from another.  The actual alignment position is also needed (refAlignStartPos)
+                    // for the tagAlignments table.
+                    AlignmentInfo tagAI = new AlignmentInfo(tag2,rtd.chromosome(),rtd.position(),refAlignStartPos, 1,refGenome,score);
+                    tagAlignInfoMap.put(tag1, tagAI); // data to be stored into tagAlignments table
+                }
+
+                // Now align against the reverse complement of the refTag
+                score = aligner.align(seq1, tag2.toReverseComplement().getBytes());
+                tagAlignOffset = aligner.rowStart();
+                refAlignStartPos += aligner.colStart();
+
+                if (tagAlignOffset > 0) {
+                    // Tag1 was not aligned from the beginning,
+                    // add back the bps that were skipped so alignment begins at start of the tag
+                    refAlignStartPos -= tagAlignOffset;
+                }
+                // If clipping has dropped us below the start of the reference genome, skip it
+                if (refAlignStartPos >= 0) {
+                    AlignmentInfo tagAI = new AlignmentInfo(tag2,rtd.chromosome(),rtd.position(),refAlignStartPos, 0, refGenome(),score);
+                    tagAlignInfoMap.put(tag1, tagAI); // data to be stored into tagAlignments table
+                }
             }); 
             if (tagCount > 999) {
                 System.out.println("FInished aligning " + totalProcessedTags + " tags, this set took " + (System.nanoTime() - time)/1e9 + " seconds, now load to db ..." );
@@ -643,37 +597,18 @@ public class RampSeqAlignFromBlastTags extends AbstractPlugin {
         long time = System.nanoTime();
         int tagCount = 0;
         int totalProcessedTags = 0;
+        ThreadLocal<TagAligner> aligners = ThreadLocal.withInitial(() -> new TagAligner(match_reward(), mismatch_penalty(), gap_penalty()));
         // For each tag on the reftags list, run SW against all other tags in the list
         for (int tidx = 0; tidx < refTags.size(); tidx++) {
             tagCount++;
             totalProcessedTags++;
             RefTagData tag1 = refTags.get(tidx);
+            byte[] seq1 = tag1.tag().sequence().getBytes();
             final int tIdxFinal = tidx;
             IntStream.range(tidx+1, refTags.size()).parallel().forEach(item -> {
                 RefTagData tag2 = refTags.get(tIdxFinal+1);
-                String seq1 = tag1.tag().sequence();
-                String seq2 = tag2.tag().sequence();
-                Reader reader1 = new StringReader(seq1);
-                Reader reader2 = new StringReader(seq2);
-
-                PairwiseAlignmentAlgorithm  algorithm;
-                ScoringScheme  scoring;
-                algorithm = new SmithWaterman();
-                scoring = new BasicScoringScheme(match_reward(),mismatch_penalty(),gap_penalty());
-                algorithm.setScoringScheme(scoring);
-                int score = 0;
-
-                try {
-                    algorithm.loadSequences(reader1, reader2);
-                    // for reftag-reftag alignment, we are only computing the score
-                    score = algorithm.getScore();
-                } catch (IOException ioe) {
-                    ioe.printStackTrace();
-                } catch (InvalidSequenceException ise) {
-                    ise.printStackTrace();
-                } catch (IncompatibleScoringSchemeException isse) {
-                    isse.printStackTrace();
-                }
+                // for reftag-reftag alignment, we are only computing the score
+                int score = aligners.get().score(seq1, tag2.tag().sequence().getBytes());
                 // for reftag/reftag, we have no alignment position .  Store -1.  
                 // both alignment positions and reference strand (which is 1 for both) are ignored params
                 // for ref-ref alignment.
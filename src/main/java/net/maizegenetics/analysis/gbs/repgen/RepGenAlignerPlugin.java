@@ -6,8 +6,6 @@ package net.maizegenetics.analysis.gbs.repgen;
 import java.awt.Frame;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -18,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 import javax.swing.ImageIcon;
 
@@ -27,14 +26,8 @@ import org.apache.logging.log4j.Logger;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
+import com.google.common.collect.Range;
 
-import net.maizegenetics.analysis.gbs.neobio.BasicScoringScheme;
-import net.maizegenetics.analysis.gbs.neobio.IncompatibleScoringSchemeException;
-import net.maizegenetics.analysis.gbs.neobio.InvalidSequenceException;
-import net.maizegenetics.analysis.gbs.neobio.PairwiseAlignment;
-import net.maizegenetics.analysis.gbs.neobio.PairwiseAlignmentAlgorithm;
-import net.maizegenetics.analysis.gbs.neobio.ScoringScheme;
-import net.maizegenetics.analysis.gbs.neobio.SmithWaterman;
 import net.maizegenetics.dna.map.Chromosome;
 import net.maizegenetics.dna.map.GeneralPosition;
 import net.maizegenetics.dna.map.GenomeSequence;
@@ -88,9 +81,12 @@ import net.maizegenetics.util.Utils;
  *  
  * ALignment data is stored in the tagAlignments table.
  * 
- * Smith Waterman from SourceForge neobio project is used
- * to determine alignment score.  Settings for match rewards, mismatch penalty
+ * Smith Waterman is used to determine alignment score, with the scoring of the
+ * SourceForge neobio project.  Settings for match rewards, mismatch penalty
  * and gap penalty may be changed by user via plugin parameters.
+ * If alignKmerLen is set, only pairs of tags sharing a kmer of that length are
+ * aligned, and tag-tag and refTag-refTag scores are limited to alignBandWidth
+ * diagonals on either side of the shared kmers.
  * 
  * 
  * @author lcj34
@@ -121,6 +117,11 @@ public class RepGenAlignerPlugin extends AbstractPlugin {
             .description("Parameter sent to Smith Waterman aligner for use in calculating penalty when base pairs are mis-matched.").build();
     private PluginParameter<Integer> gap_penalty = new PluginParameter.Builder<Integer>("gap_penalty", -1, Integer.class).guiName("Gap Penalty Amount")
             .description("Parameter sent to Smith Waterman aligner for use in calculating penalty when when a gap is identified.").build();
+    private PluginParameter<Integer> alignKmerLen = new PluginParameter.Builder<Integer>("alignKmerLen", 0, Integer.class).guiName("Alignment Kmer Length")
+            .range(Range.closed(0, TagKmerIndex.MAX_KMER_LENGTH))
+            .description("Length of kmer two tags must share to be aligned with Smith Waterman.  Pairs of tags without a shared kmer are not aligned or stored. \nThe default of 0 aligns every pair of tags.").build();
+    private PluginParameter<Integer> alignBandWidth = new PluginParameter.Builder<Integer>("alignBandWidth", 10, Integer.class).guiName("Alignment Band Width")
+            .description("When alignKmerLen is set, number of diagonals on either side of the shared kmers scored for tag-tag and refTag-refTag alignments. \nA negative value scores the whole Smith Waterman matrix.").build();
     
     static GenomeSequence myRefSequence = null;
 
@@ -585,37 +586,34 @@ public class RepGenAlignerPlugin extends AbstractPlugin {
     // from the tag table (not the refTag table)
     private void calculateTagTagAlignment(List<Tag> tags, Multimap<Tag,AlignmentInfo> tagAlignInfoMap){
         long totalTime = System.nanoTime();
+        List<byte[]> sequences = new ArrayList<byte[]>();
+        for (Tag tag : tags) sequences.add(tag.sequence().getBytes());
+        // with alignKmerLen, only pairs of tags sharing a kmer are aligned
+        TagKmerIndex kmerIndex = alignKmerLen() > 0 ? new TagKmerIndex(sequences, alignKmerLen()) : null;
+        ThreadLocal<TagAligner> aligners = ThreadLocal.withInitial(() -> new TagAligner(match_reward(), mismatch_penalty(), gap_penalty()));
+        ThreadLocal<TagKmerIndex.Search> searches = ThreadLocal.withInitial(() -> kmerIndex == null ? null : kmerIndex.newSearch());
         // For each tag on the tags list, run SW against it and store in tagTagAlignMap 
-        tags.parallelStream().forEach(tag1 -> {
-            for (Tag tag2: tags) {
-                if (tag1.equals(tag2)) continue; // don't aligne against yourself
-                String seq1 = tag1.sequence();
-                String seq2 = tag2.sequence();
-                Reader reader1 = new StringReader(seq1);
-                Reader reader2 = new StringReader(seq2);
-
-                PairwiseAlignmentAlgorithm  algorithm;
-                ScoringScheme  scoring;
-                algorithm = new SmithWaterman();
-                scoring = new BasicScoringScheme(match_reward(),mismatch_penalty(),gap_penalty());
-                algorithm.setScoringScheme(scoring);
-                int score = 0;
- 
-                try {
-                    algorithm.loadSequences(reader1, reader2);
-                    // for tag-tag alignment, we are only computing the score
-                    score = algorithm.getScore();
-                } catch (IOException ioe) {
-                    ioe.printStackTrace();
-                } catch (InvalidSequenceException ise) { 
-                    ise.printStackTrace();
-                } catch (IncompatibleScoringSchemeException isse) {
-                    isse.printStackTrace();
+        IntStream.range(0, tags.size()).parallel().forEach(tidx -> {
+            Tag tag1 = tags.get(tidx);
+            byte[] seq1 = sequences.get(tidx);
+            TagAligner aligner = aligners.get();
+            List<AlignmentInfo> alignments = new ArrayList<AlignmentInfo>();
+            int numCandidates = kmerIndex == null ? tags.size() : searches.get().find(seq1);
+            for (int c = 0; c < numCandidates; c++) {
+                int item = kmerIndex == null ? c : searches.get().candidate(c);
+                if (item == tidx) continue; // don't align against yourself
+                int score;
+                if (kmerIndex == null || alignBandWidth() < 0) {
+                    score = aligner.score(seq1, sequences.get(item));
+                } else {
+                    TagKmerIndex.Search search = searches.get();
+                    score = aligner.score(seq1, sequences.get(item), search.minDiagonal(c) - alignBandWidth(), search.maxDiagonal(c) + alignBandWidth());
                 }
                 // for tag/tag, we have no chrom or position or strand or alignment position.  Store "null" and -1
-                AlignmentInfo tagAI = new AlignmentInfo(tag2, null, -1, -1, -1, refGenome(),score);
-                tagAlignInfoMap.put(tag1,tagAI);
+                alignments.add(new AlignmentInfo(tags.get(item), null, -1, -1, -1, refGenome(), score));
             }
+            // one insert per tag, rather than one per pair, into the synchronized map
+            tagAlignInfoMap.putAll(tag1, alignments);
         });
         System.out.println("Number of tags: " + tags.size() + ", TotalTime for calculateTagTagAlignment was " + (System.nanoTime() - totalTime) / 1e9 + " seconds");
     }
@@ -624,83 +622,69 @@ public class RepGenAlignerPlugin extends AbstractPlugin {
     private void calculateTagRefTagAlignment(List<Tag> tags, List<RefTagData> refTagDataList,
             Multimap<Tag,AlignmentInfo> tagAlignInfoMap, String refGenome){
         long totalTime = System.nanoTime();
+        // The reference tags and their reverse complements, refTag i is at 2*i and its reverse complement at 2*i+1
+        List<byte[]> refSequences = new ArrayList<byte[]>();
+        for (RefTagData rtd : refTagDataList) {
+            refSequences.add(rtd.tag().sequence().getBytes());
+            refSequences.add(rtd.tag().toReverseComplement().getBytes());
+        }
+        // with alignKmerLen, a tag is only aligned to the refTags sharing a kmer with either strand
+        TagKmerIndex kmerIndex = alignKmerLen() > 0 ? new TagKmerIndex(refSequences, alignKmerLen()) : null;
+        ThreadLocal<TagAligner> aligners = ThreadLocal.withInitial(() -> new TagAligner(match_reward(), mismatch_penalty(), gap_penalty()));
+        ThreadLocal<TagKmerIndex.Search> searches = ThreadLocal.withInitial(() -> kmerIndex == null ? null : kmerIndex.newSearch());
         // For each tag on the tags list, run SW against it and store in tagAlignInfoMap  
-        tags.parallelStream().forEach(tag1 -> {          
-            for (RefTagData rtd : refTagDataList) {
+        tags.parallelStream().forEach(tag1 -> {
+            byte[] seq1 = tag1.sequence().getBytes();
+            TagAligner aligner = aligners.get();
+            List<AlignmentInfo> alignments = new ArrayList<AlignmentInfo>();
+            int[] refTagIndices;
+            if (kmerIndex == null) {
+                refTagIndices = IntStream.range(0, refTagDataList.size()).toArray();
+            } else {
+                TagKmerIndex.Search search = searches.get();
+                int numCandidates = search.find(seq1);
+                refTagIndices = IntStream.range(0, numCandidates).map(c -> search.candidate(c) / 2).sorted().distinct().toArray();
+            }
+            for (int refIdx : refTagIndices) {
                 // Create alignment against both refTag and reverse complement of refTag
+                RefTagData rtd = refTagDataList.get(refIdx);
                 Tag tag2 = rtd.tag();
-                
-                String seq1 = tag1.sequence();
-                String seq2 = tag2.sequence();
-                Reader reader1 = new StringReader(seq1);
-                Reader reader2 = new StringReader(seq2);
-
-                PairwiseAlignmentAlgorithm  algorithm;
-                ScoringScheme  scoring;
-                PairwiseAlignment alignment;
-
-                algorithm = new SmithWaterman();
-                scoring = new BasicScoringScheme(match_reward(),mismatch_penalty(),gap_penalty());
-                algorithm.setScoringScheme(scoring);
-                int score;
                 int refAlignStartPos = rtd.position();
-                int tagAlignOffset = 0; // ajust incase SW sligns from somewhere in the middle of the tag
-                try {
-                    algorithm.loadSequences(reader1, reader2);
-                    score = algorithm.getScore(); // get score
-                    alignment = algorithm.getPairwiseAlignment(); // compute alignment
-                  
-                    // The first sequence given in loadSequences() is loaded into rows. THis is non-refTag
-                    // The second is loaded into columns (matrix[seq1][seq2] - this is the refTag
-                    tagAlignOffset = alignment.getRowStart();
-                    refAlignStartPos += alignment.getColStart();
-                    
-                    if (tagAlignOffset > 0) {
-                        // Tag was not aligned from the beginning,
-                        // add back the bps that were skipped so alignment begins at start of the tag
-                        refAlignStartPos -= tagAlignOffset;
-                    }
-                    // If clipping has dropped us below the start of the reference genome, skip it
-                    if (refAlignStartPos >= 0) {
-                        // The ref tag start position is needed in RepGenSQLite to create a
-                        // RefTagData object.  This is stored in the BiMap and used along with chrom to distinguish
-                        // one tag from another.  The actual alignment position is also needed (refAlignStartPos)
-                        // for the tagAlignments table.
-                        AlignmentInfo tagAI = new AlignmentInfo(tag2,rtd.chromosome(),rtd.position(),refAlignStartPos, 1,refGenome,score);
-                        tagAlignInfoMap.put(tag1, tagAI); // data to be stored into tagAlignments table
-                    }
-                                       
-                    // Now align against the reverse complement of the refTag
-                    reader1 = new StringReader(seq1); // readers must be reset
-                    seq2 = tag2.toReverseComplement();
-                    reader2 = new StringReader(seq2);
-                    algorithm.unloadSequences(); 
-                    algorithm.loadSequences(reader1, reader2);
-                    score = algorithm.getScore(); // get score
-                    alignment = algorithm.getPairwiseAlignment(); // compute alignment                 
-                    tagAlignOffset = alignment.getRowStart();
-                    refAlignStartPos += alignment.getColStart();                    
-                            
-                    if (tagAlignOffset > 0) {
-                        // Tag1 was not aligned from the beginning,
-                        // add back the bps that were skipped so alignment begins at start of the tag
-                        refAlignStartPos -= tagAlignOffset;
-                    }
-                    // If clipping has dropped us below the start of the reference genome, skip it
-                    if (refAlignStartPos >= 0) {
-                        AlignmentInfo tagAI = new AlignmentInfo(tag2,rtd.chromosome(),rtd.position(),refAlignStartPos, 0, refGenome(),score);
-                        tagAlignInfoMap.put(tag1, tagAI); // data to be stored into tagAlignments table
-                    }
-                                       
-                } catch (IOException e) {
-                    e.printStackTrace();
-                } catch (InvalidSequenceException e) {
-                    e.printStackTrace();
-                } catch (IncompatibleScoringSchemeException e) {
-                    e.printStackTrace();
-                }                                        
 
-            } 
+                // The first sequence is the row sequence, this is the non-refTag
+                // The second is the column sequence, this is the refTag
+                int score = aligner.align(seq1, refSequences.get(2 * refIdx));
+                int tagAlignOffset = aligner.rowStart(); // ajust incase SW sligns from somewhere in the middle of the tag
+                refAlignStartPos += aligner.colStart();
+                if (tagAlignOffset > 0) {
+                    // Tag was not aligned from the beginning,
+                    // add back the bps that were skipped so alignment begins at start of the tag
+                    refAlignStartPos -= tagAlignOffset;
+                }
+                // If clipping has dropped us below the start of the reference genome, skip it
+                if (refAlignStartPos >= 0) {
+                    // The ref tag start position is needed in RepGenSQLite to create a
+                    // RefTagData object.  This is stored in the BiMap and used along with chrom to distinguish
+                    // one tag from another.  The actual alignment position is also needed (refAlignStartPos)
+                    // for the tagAlignments table.
+                    alignments.add(new AlignmentInfo(tag2,rtd.chromosome(),rtd.position(),refAlignStartPos, 1,refGenome,score));
+                }
+
+                // Now align against the reverse complement of the refTag
+                score = aligner.align(seq1, refSequences.get(2 * refIdx + 1));
+                tagAlignOffset = aligner.rowStart();
+                refAlignStartPos += aligner.colStart();
+                if (tagAlignOffset > 0) {
+                    // Tag1 was not aligned from the beginning,
+                    // add back the bps that were skipped so alignment begins at start of the tag
+                    refAlignStartPos -= tagAlignOffset;
+                }
+                // If clipping has dropped us below the start of the reference genome, skip it
+                if (refAlignStartPos >= 0) {
+                    alignments.add(new AlignmentInfo(tag2,rtd.chromosome(),rtd.position(),refAlignStartPos, 0, refGenome(),score));
+                }
+            }
+            tagAlignInfoMap.putAll(tag1, alignments); // data to be stored into tagAlignments table
         });
         System.out.println("Num tags: " + tags.size() + ", Num refTags: " + refTagDataList.size() + ", TotalTime for calculateTagRefTagAlignment was " + (System.nanoTime() - totalTime) / 1e9 + " seconds");
     }
@@ -709,39 +693,36 @@ public class RepGenAlignerPlugin extends AbstractPlugin {
     private void calculateRefRefAlignment(List<RefTagData> refTags, Multimap<Tag,Position> refTagPosMap,
             Multimap<RefTagData,AlignmentInfo> refTagAlignInfoMap){
         long totalTime = System.nanoTime();
+        List<byte[]> sequences = new ArrayList<byte[]>();
+        for (RefTagData refTag : refTags) sequences.add(refTag.tag().sequence().getBytes());
+        // with alignKmerLen, only pairs of refTags sharing a kmer are aligned
+        TagKmerIndex kmerIndex = alignKmerLen() > 0 ? new TagKmerIndex(sequences, alignKmerLen()) : null;
+        ThreadLocal<TagAligner> aligners = ThreadLocal.withInitial(() -> new TagAligner(match_reward(), mismatch_penalty(), gap_penalty()));
+        ThreadLocal<TagKmerIndex.Search> searches = ThreadLocal.withInitial(() -> kmerIndex == null ? null : kmerIndex.newSearch());
         // For each tag on the reftags list, run SW against all other tags in the list
-       refTags.parallelStream().forEach(tag1 -> {
-            for (RefTagData tag2: refTags) {
-                if (tag1.equals(tag2)) continue; // don't align against yourself
-                String seq1 = tag1.tag().sequence();
-                String seq2 = tag2.tag().sequence();
-                Reader reader1 = new StringReader(seq1);
-                Reader reader2 = new StringReader(seq2);
-
-                PairwiseAlignmentAlgorithm  algorithm;
-                ScoringScheme  scoring;
-                algorithm = new SmithWaterman();
-                scoring = new BasicScoringScheme(match_reward(),mismatch_penalty(),gap_penalty());
-                algorithm.setScoringScheme(scoring);
-                int score = 0;
-
-                try {
-                    algorithm.loadSequences(reader1, reader2);
-                    // for reftag-reftag alignment, we are only computing the score
-                    score = algorithm.getScore();
-                } catch (IOException ioe) {
-                    ioe.printStackTrace();
-                } catch (InvalidSequenceException ise) {
-                    ise.printStackTrace();
-                } catch (IncompatibleScoringSchemeException isse) {
-                    isse.printStackTrace();
+        IntStream.range(0, refTags.size()).parallel().forEach(tidx -> {
+            RefTagData tag1 = refTags.get(tidx);
+            byte[] seq1 = sequences.get(tidx);
+            TagAligner aligner = aligners.get();
+            List<AlignmentInfo> alignments = new ArrayList<AlignmentInfo>();
+            int numCandidates = kmerIndex == null ? refTags.size() : searches.get().find(seq1);
+            for (int c = 0; c < numCandidates; c++) {
+                int item = kmerIndex == null ? c : searches.get().candidate(c);
+                if (item == tidx) continue; // don't align against yourself
+                int score;
+                if (kmerIndex == null || alignBandWidth() < 0) {
+                    score = aligner.score(seq1, sequences.get(item));
+                } else {
+                    TagKmerIndex.Search search = searches.get();
+                    score = aligner.score(seq1, sequences.get(item), search.minDiagonal(c) - alignBandWidth(), search.maxDiagonal(c) + alignBandWidth());
                 }
                 // for reftag/reftag, we have no alignment position .  Store -1.  
                 // both alignment positions and reference strand (which is 1 for both) are ignored params
                 // for ref-ref alignment.
-                AlignmentInfo tagAI = new AlignmentInfo(tag2.tag(),tag2.chromosome(),tag2.position(),-1, 1,refGenome(),score);
-                refTagAlignInfoMap.put(tag1,tagAI);
+                RefTagData tag2 = refTags.get(item);
+                alignments.add(new AlignmentInfo(tag2.tag(),tag2.chromosome(),tag2.position(),-1, 1,refGenome(),score));
             }
+            refTagAlignInfoMap.putAll(tag1, alignments);
         }); 
         System.out.println("Number of refTags: " + refTags.size() + ", TotalTime for calculateREfRefAlignment was " + (System.nanoTime() - totalTime) / 1e9 + " seconds");
     }
@@ -1134,4 +1115,58 @@ public class RepGenAlignerPlugin extends AbstractPlugin {
         gap_penalty = new PluginParameter<>(gap_penalty, value);
         return this;
     }
+
+    /**
+     * Length of kmer two tags must share to be aligned with
+     * Smith Waterman.  Pairs of tags without a shared kmer
+     * are not aligned or stored.
+     * The default of 0 aligns every pair of tags.
+     *
+     * @return Alignment Kmer Length
+     */
+    public Integer alignKmerLen() {
+        return alignKmerLen.value();
+    }
+
+    /**
+     * Set Alignment Kmer Length. Length of kmer two tags must
+     * share to be aligned with Smith Waterman.  Pairs of tags
+     * without a shared kmer are not aligned or stored.
+     * The default of 0 aligns every pair of tags.
+     *
+     * @param value Alignment Kmer Length
+     *
+     * @return this plugin
+     */
+    public RepGenAlignerPlugin alignKmerLen(Integer value) {
+        alignKmerLen = new PluginParameter<>(alignKmerLen, value);
+        return this;
+    }
+
+    /**
+     * When alignKmerLen is set, number of diagonals on either
+     * side of the shared kmers scored for tag-tag and refTag-refTag
+     * alignments.
+     * A negative value scores the whole Smith Waterman matrix.
+     *
+     * @return Alignment Band Width
+     */
+    public Integer alignBandWidth() {
+        return alignBandWidth.value();
+    }
+
+    /**
+     * Set Alignment Band Width. When alignKmerLen is set,
+     * number of diagonals on either side of the shared kmers
+     * scored for tag-tag and refTag-refTag alignments.
+     * A negative value scores the whole Smith Waterman matrix.
+     *
+     * @param value Alignment Band Width
+     *
+     * @return this plugin
+     */
+    public RepGenAlignerPlugin alignBandWidth(Integer value) {
+        alignBandWidth = new PluginParameter<>(alignBandWidth, value);
+        return this;
+    }
 }
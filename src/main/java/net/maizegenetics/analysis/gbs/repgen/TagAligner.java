@@ -0,0 +1,169 @@
+package net.maizegenetics.analysis.gbs.repgen;
+
+import java.util.Arrays;
+
+/**
+ * Smith Waterman local alignment of two sequences with a linear gap penalty, using only two rows of the dynamic
+ * programming matrix.  The scores are the same as those of
+ * {@link net.maizegenetics.analysis.gbs.neobio.SmithWaterman} with a
+ * {@link net.maizegenetics.analysis.gbs.neobio.BasicScoringScheme}, and {@link #align(byte[], byte[])} also finds the
+ * same alignment start as the neobio traceback, without storing the matrix.
+ *
+ * The score can be limited to a band of diagonals, for example around the diagonals of kmers shared by the
+ * sequences (see {@link TagKmerIndex}).  Cells outside the band are treated as 0, so a banded score is the score of
+ * the best alignment inside the band, and is never more than the full score.
+ *
+ * The rows are reused between alignments, so an aligner is not thread safe.  Use one aligner for each thread, for
+ * example with a ThreadLocal.
+ */
+public class TagAligner {
+
+    private final int myMatchReward;
+    private final int myMismatchPenalty;
+    private final int myGapPenalty;
+
+    private int[] myPreviousRow = new int[0];
+    private int[] myCurrentRow = new int[0];
+    // start of the best alignment ending at each cell of the two rows, only used by align()
+    private int[] myPreviousRowStart = new int[0];
+    private int[] myCurrentRowStart = new int[0];
+    private int[] myPreviousColStart = new int[0];
+    private int[] myCurrentColStart = new int[0];
+
+    private int myRowStart = 0;
+    private int myColStart = 0;
+
+    /**
+     * @param matchReward score of a substitution of equal bases
+     * @param mismatchPenalty score of a substitution of different bases
+     * @param gapPenalty score of an insertion or deletion
+     */
+    public TagAligner(int matchReward, int mismatchPenalty, int gapPenalty) {
+        myMatchReward = matchReward;
+        myMismatchPenalty = mismatchPenalty;
+        myGapPenalty = gapPenalty;
+    }
+
+    /**
+     * @return score of the best local alignment of the two sequences
+     */
+    public int score(byte[] seq1, byte[] seq2) {
+        return compute(seq1, seq2, -seq1.length, seq2.length, false);
+    }
+
+    /**
+     * Scores only the cells of the diagonals from minDiagonal to maxDiagonal, where the diagonal of a pair of bases is
+     * the position in seq2 minus the position in seq1.
+     *
+     * @return score of the best local alignment inside the band, which may be less than the full score
+     */
+    public int score(byte[] seq1, byte[] seq2, int minDiagonal, int maxDiagonal) {
+        return compute(seq1, seq2, minDiagonal, maxDiagonal, false);
+    }
+
+    /**
+     * Finds the score and the start of the best local alignment of the two sequences.  The start is available from
+     * {@link #rowStart()} and {@link #colStart()} until the next alignment.
+     *
+     * @return score of the best local alignment of the two sequences
+     */
+    public int align(byte[] seq1, byte[] seq2) {
+        return compute(seq1, seq2, -seq1.length, seq2.length, true);
+    }
+
+    /**
+     * @return number of bases of seq1 before the last alignment, like
+     * {@link net.maizegenetics.analysis.gbs.neobio.PairwiseAlignment#getRowStart()}
+     */
+    public int rowStart() {
+        return myRowStart;
+    }
+
+    /**
+     * @return number of bases of seq2 before the last alignment, like
+     * {@link net.maizegenetics.analysis.gbs.neobio.PairwiseAlignment#getColStart()}
+     */
+    public int colStart() {
+        return myColStart;
+    }
+
+    private int compute(byte[] seq1, byte[] seq2, int minDiagonal, int maxDiagonal, boolean findStart) {
+        int rows = seq1.length;
+        int cols = seq2.length;
+        ensureCapacity(cols + 1);
+        int[] previous = myPreviousRow;
+        int[] current = myCurrentRow;
+        int[] previousRowStart = myPreviousRowStart;
+        int[] currentRowStart = myCurrentRowStart;
+        int[] previousColStart = myPreviousColStart;
+        int[] currentColStart = myCurrentColStart;
+        Arrays.fill(previous, 0, cols + 1, 0);
+
+        // like neobio, the best cell is the first cell with the maximum score in row order
+        int maxScore = 0;
+        int maxRowStart = 0;
+        int maxColStart = 0;
+        for (int r = 1; r <= rows; r++) {
+            int first = Math.max(1, r + minDiagonal);
+            int last = Math.min(cols, r + maxDiagonal);
+            if (first > cols) break;
+            if (last < first) continue;
+            byte base1 = seq1[r - 1];
+            current[first - 1] = 0;
+            if (last < cols) current[last + 1] = 0;
+            int left = 0;
+            for (int c = first; c <= last; c++) {
+                int diagonal = previous[c - 1];
+                int substitution = diagonal + (base1 == seq2[c - 1] ? myMatchReward : myMismatchPenalty);
+                int insertion = left + myGapPenalty;
+                int deletion = previous[c] + myGapPenalty;
+                int value = Math.max(Math.max(insertion, substitution), Math.max(deletion, 0));
+                current[c] = value;
+                if (findStart && value > 0) {
+                    // same order of preference as the neobio traceback: insertion, substitution, deletion.  The
+                    // alignment starts at the last cell on the path with a score of 0.
+                    if (value == insertion) {
+                        currentRowStart[c] = left == 0 ? r : currentRowStart[c - 1];
+                        currentColStart[c] = left == 0 ? c - 1 : currentColStart[c - 1];
+                    } else if (value == substitution) {
+                        currentRowStart[c] = diagonal == 0 ? r - 1 : previousRowStart[c - 1];
+                        currentColStart[c] = diagonal == 0 ? c - 1 : previousColStart[c - 1];
+                    } else {
+                        currentRowStart[c] = previous[c] == 0 ? r - 1 : previousRowStart[c];
+                        currentColStart[c] = previous[c] == 0 ? c : previousColStart[c];
+                    }
+                }
+                if (value > maxScore) {
+                    maxScore = value;
+                    if (findStart) {
+                        maxRowStart = currentRowStart[c];
+                        maxColStart = currentColStart[c];
+                    }
+                }
+                left = value;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+            swap = previousRowStart;
+            previousRowStart = currentRowStart;
+            currentRowStart = swap;
+            swap = previousColStart;
+            previousColStart = currentColStart;
+            currentColStart = swap;
+        }
+        myRowStart = maxRowStart;
+        myColStart = maxColStart;
+        return maxScore;
+    }
+
+    private void ensureCapacity(int length) {
+        if (myPreviousRow.length >= length) return;
+        myPreviousRow = new int[length];
+        myCurrentRow = new int[length];
+        myPreviousRowStart = new int[length];
+        myCurrentRowStart = new int[length];
+        myPreviousColStart = new int[length];
+        myCurrentColStart = new int[length];
+    }
+}
@@ -0,0 +1,218 @@
+package net.maizegenetics.analysis.gbs.repgen;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of the kmers of a list of sequences, used to find the sequences sharing at least one kmer with a query before
+ * aligning them with {@link TagAligner}.  Pairs of sequences without a shared kmer are not aligned, which avoids
+ * aligning every sequence against every other sequence.
+ *
+ * The kmers are stored 2 bits per base in a sorted long array, with the sequence and position of each occurrence in
+ * int arrays, so the index has no object per kmer.  Kmers containing a base other than A, C, G or T are not indexed.
+ *
+ * The index can be shared by threads.  Each thread needs its own {@link Search}.
+ */
+public class TagKmerIndex {
+
+    public static final int MAX_KMER_LENGTH = 31;
+
+    private final int myKmerLength;
+    private final int myNumberOfSequences;
+    // distinct kmers, sorted
+    private final long[] myKmers;
+    // occurrences of myKmers[k] are from myOffsets[k] to myOffsets[k + 1]
+    private final int[] myOffsets;
+    private final int[] mySequences;
+    private final int[] myPositions;
+
+    /**
+     * @param sequences sequences to index
+     * @param kmerLength length of the kmers, from 1 to 31
+     */
+    public TagKmerIndex(List<byte[]> sequences, int kmerLength) {
+        if (kmerLength < 1 || kmerLength > MAX_KMER_LENGTH) {
+            throw new IllegalArgumentException("TagKmerIndex: init: kmer length must be between 1 and " + MAX_KMER_LENGTH + ": " + kmerLength);
+        }
+        myKmerLength = kmerLength;
+        myNumberOfSequences = sequences.size();
+
+        int total = 0;
+        for (byte[] sequence : sequences) total += Math.max(0, sequence.length - kmerLength + 1);
+        long[] kmers = new long[total];
+        int[] sequenceOfKmer = new int[total];
+        int[] positionOfKmer = new int[total];
+        int count = 0;
+        for (int s = 0; s < sequences.size(); s++) {
+            byte[] sequence = sequences.get(s);
+            long mask = kmerMask(kmerLength);
+            long kmer = 0;
+            int validBases = 0;
+            for (int i = 0; i < sequence.length; i++) {
+                int code = baseCode(sequence[i]);
+                if (code < 0) {
+                    validBases = 0;
+                    continue;
+                }
+                kmer = ((kmer << 2) | code) & mask;
+                if (++validBases < kmerLength) continue;
+                kmers[count] = kmer;
+                sequenceOfKmer[count] = s;
+                positionOfKmer[count] = i - kmerLength + 1;
+                count++;
+            }
+        }
+
+        long[] distinct = Arrays.copyOf(kmers, count);
+        Arrays.sort(distinct);
+        int numberOfKmers = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || distinct[i] != distinct[i - 1]) distinct[numberOfKmers++] = distinct[i];
+        }
+        myKmers = Arrays.copyOf(distinct, numberOfKmers);
+
+        // counting sort of the occurrences by kmer
+        int[] kmerIndex = new int[count];
+        myOffsets = new int[numberOfKmers + 1];
+        for (int i = 0; i < count; i++) {
+            kmerIndex[i] = Arrays.binarySearch(myKmers, kmers[i]);
+            myOffsets[kmerIndex[i] + 1]++;
+        }
+        for (int k = 0; k < numberOfKmers; k++) myOffsets[k + 1] += myOffsets[k];
+        int[] next = Arrays.copyOf(myOffsets, numberOfKmers);
+        mySequences = new int[count];
+        myPositions = new int[count];
+        for (int i = 0; i < count; i++) {
+            int occurrence = next[kmerIndex[i]]++;
+            mySequences[occurrence] = sequenceOfKmer[i];
+            myPositions[occurrence] = positionOfKmer[i];
+        }
+    }
+
+    public int kmerLength() {
+        return myKmerLength;
+    }
+
+    public int numberOfSequences() {
+        return myNumberOfSequences;
+    }
+
+    /**
+     * @return new search of this index, for use by one thread
+     */
+    public Search newSearch() {
+        return new Search();
+    }
+
+    private static long kmerMask(int kmerLength) {
+        return (1L << (2 * kmerLength)) - 1;
+    }
+
+    private static int baseCode(byte base) {
+        switch (base) {
+            case 'A':
+            case 'a':
+                return 0;
+            case 'C':
+            case 'c':
+                return 1;
+            case 'G':
+            case 'g':
+                return 2;
+            case 'T':
+            case 't':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Finds the indexed sequences sharing kmers with a query sequence.  For each of these candidates, the range of
+     * diagonals of the shared kmers is kept, so the alignment can be limited to a band around them with
+     * {@link TagAligner#score(byte[], byte[], int, int)}.  The arrays are reused between queries, so a search is not
+     * thread safe.
+     */
+    public final class Search {
+
+        private final int[] mySharedKmers = new int[myNumberOfSequences];
+        private final int[] myMinDiagonal = new int[myNumberOfSequences];
+        private final int[] myMaxDiagonal = new int[myNumberOfSequences];
+        private int[] myCandidates = new int[16];
+        private int myNumberOfCandidates = 0;
+
+        private Search() {
+        }
+
+        /**
+         * Finds the sequences sharing at least one kmer with the query.  The candidates are available from
+         * {@link #candidate(int)} until the next query.
+         *
+         * @return number of candidates
+         */
+        public int find(byte[] query) {
+            for (int i = 0; i < myNumberOfCandidates; i++) mySharedKmers[myCandidates[i]] = 0;
+            myNumberOfCandidates = 0;
+            long mask = kmerMask(myKmerLength);
+            long kmer = 0;
+            int validBases = 0;
+            for (int i = 0; i < query.length; i++) {
+                int code = baseCode(query[i]);
+                if (code < 0) {
+                    validBases = 0;
+                    continue;
+                }
+                kmer = ((kmer << 2) | code) & mask;
+                if (++validBases < myKmerLength) continue;
+                int k = Arrays.binarySearch(myKmers, kmer);
+                if (k < 0) continue;
+                int queryPosition = i - myKmerLength + 1;
+                for (int o = myOffsets[k]; o < myOffsets[k + 1]; o++) {
+                    int sequence = mySequences[o];
+                    int diagonal = myPositions[o] - queryPosition;
+                    if (mySharedKmers[sequence]++ == 0) {
+                        if (myNumberOfCandidates == myCandidates.length) {
+                            myCandidates = Arrays.copyOf(myCandidates, 2 * myCandidates.length);
+                        }
+                        myCandidates[myNumberOfCandidates++] = sequence;
+                        myMinDiagonal[sequence] = diagonal;
+                        myMaxDiagonal[sequence] = diagonal;
+                    } else if (diagonal < myMinDiagonal[sequence]) {
+                        myMinDiagonal[sequence] = diagonal;
+                    } else if (diagonal > myMaxDiagonal[sequence]) {
+                        myMaxDiagonal[sequence] = diagonal;
+                    }
+                }
+            }
+            return myNumberOfCandidates;
+        }
+
+        /**
+         * @return index of the candidate in the indexed sequences
+         */
+        public int candidate(int i) {
+            return myCandidates[i];
+        }
+
+        /**
+         * @return number of occurrences in the candidate of the kmers of the query
+         */
+        public int sharedKmers(int i) {
+            return mySharedKmers[myCandidates[i]];
+        }
+
+        /**
+         * @return smallest diagonal (position in the candidate minus position in the query) of a shared kmer
+         */
+        public int minDiagonal(int i) {
+            return myMinDiagonal[myCandidates[i]];
+        }
+
+        /**
+         * @return largest diagonal (position in the candidate minus position in the query) of a shared kmer
+         */
+        public int maxDiagonal(int i) {
+            return myMaxDiagonal[myCandidates[i]];
+        }
+    }
+}
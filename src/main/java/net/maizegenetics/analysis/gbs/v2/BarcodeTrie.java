@@ -29,6 +29,7 @@ public class BarcodeTrie{
             root.addWord(word.toUpperCase());
             String bcode = word;
             barcodeInformation.put(bcode, barcode);
+            setBarcode(bcode, barcode);
         }
     }
     
@@ -41,9 +42,21 @@ public class BarcodeTrie{
         root.addWord(barcodeAlone.toUpperCase());
         String bcode = barcodeAlone;
         barcodeInformation.put(bcode, barcode);
+        setBarcode(bcode, barcode);
  
     }
 
+    /**
+     * Stores the barcode at the node for word, for lookups on bytes
+     */
+    private void setBarcode(String word, Barcode barcode) {
+        TrieNode node = root;
+        for (int i = 0; i < word.length() && node != null; i++) {
+            node = node.getNode(Character.toUpperCase(word.charAt(i)));
+        }
+        if (node != null && word.equals(word.toUpperCase())) node.barcode = barcode;
+    }
+
     /**
      * Add a collection of barcodes to the trie.
      * @param barcodes
@@ -134,6 +147,30 @@ public class BarcodeTrie{
     }
 
 
+    /**
+     * Find the longest prefix of a read stored as ASCII bytes.  Gives the same
+     * result as {@link #longestPrefix(String)} without creating any objects.
+     * @param sequence bytes containing the read
+     * @param offset start of the read in sequence
+     * @param length length of the read
+     */
+    public Barcode longestPrefix(byte[] sequence, int offset, int length){
+        TrieNode crawl = root;
+        Barcode result = null;
+        for (int level = 0; level < length-1; level++){
+            int ch = sequence[offset + level];
+            if(ch<'A' || ch>'T') {
+                ch=Character.toUpperCase(ch);
+                if(ch<'A' || ch>'T') return null;
+            }
+            TrieNode child = crawl.children[ch - 'A'];
+            if (child == null) break;
+            crawl = child;
+            if (crawl.isWord) result = crawl.barcode;
+        }
+        return result;
+    }
+
     public static void main(String args[]){
     }
 
@@ -143,6 +180,7 @@ public class BarcodeTrie{
         public boolean isLeaf; // Quick way to check if any children exist
         public boolean isWord; // does this node represent teh last character
         public char character; //character the node represents
+        public Barcode barcode; // barcode of the word ending at this node
 
 
         /**
@@ -0,0 +1,330 @@
+package net.maizegenetics.analysis.gbs.v2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import net.maizegenetics.util.Utils;
+
+/**
+ * Reads a FASTQ file in chunks of records so that the records of a single file can be processed by several threads.
+ * One thread reads the file and copies the sequence and quality lines of each record into a byte array.  The chunks
+ * are processed by worker threads, each with its own state, so workers do not need to share any data while
+ * processing.  Chunks are reused, so the number of chunks in memory is fixed and no objects are created per read.
+ */
+public class FastqChunkReader {
+
+    public static final int DEFAULT_RECORDS_PER_CHUNK = 4096;
+    private static final int INITIAL_CHUNK_BYTES = 1 << 20;
+    private static final int READ_BUFFER_SIZE = 1 << 22;
+
+    private final InputStream myInputStream;
+    private final byte[] myBuffer = new byte[READ_BUFFER_SIZE];
+    private int myBufferPosition = 0;
+    private int myBufferLimit = 0;
+    private long myNumberOfRecords = 0;
+
+    private FastqChunkReader(InputStream inputStream) {
+        myInputStream = inputStream;
+    }
+
+    /**
+     * Processes the records of a FASTQ file with several threads
+     *
+     * @param fastqFile FASTQ file, which may be gzipped
+     * @param numberOfThreads number of worker threads.  If less than 2, the records are processed by the calling
+     * thread.
+     * @param newState creates the state of each worker, for example counts of tags
+     * @param processor processes one chunk of records, updating the state of the worker
+     * @param <S> type of worker state
+     *
+     * @return the state of each worker
+     *
+     * @throws IOException if the file can not be read
+     */
+    public static <S> List<S> process(Path fastqFile, int numberOfThreads, Supplier<S> newState, ChunkProcessor<S> processor) throws IOException {
+        InputStream input = Utils.getInputStream(fastqFile.toString());
+        if (input == null) {
+            throw new IOException("FastqChunkReader: process: unable to open: " + fastqFile);
+        }
+        try (InputStream inputStream = input) {
+            FastqChunkReader reader = new FastqChunkReader(inputStream);
+            if (numberOfThreads < 2) {
+                S state = newState.get();
+                Chunk chunk = new Chunk(DEFAULT_RECORDS_PER_CHUNK);
+                while (reader.readChunk(chunk)) {
+                    processor.process(state, chunk);
+                }
+                List<S> result = new ArrayList<>();
+                result.add(state);
+                return result;
+            }
+            return reader.processInParallel(numberOfThreads, newState, processor);
+        }
+    }
+
+    private <S> List<S> processInParallel(int numberOfThreads, Supplier<S> newState, ChunkProcessor<S> processor) throws IOException {
+        // the free chunks limit the number of chunks read ahead of the workers
+        int numberOfChunks = 2 * numberOfThreads;
+        BlockingQueue<Chunk> freeChunks = new ArrayBlockingQueue<>(numberOfChunks);
+        for (int i = 0; i < numberOfChunks; i++) freeChunks.add(new Chunk(DEFAULT_RECORDS_PER_CHUNK));
+        BlockingQueue<Chunk> fullChunks = new LinkedBlockingQueue<>();
+        Chunk endOfFile = new Chunk(0);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(numberOfThreads);
+        List<Future<S>> workers = new ArrayList<>();
+        try {
+            for (int t = 0; t < numberOfThreads; t++) {
+                workers.add(pool.submit(() -> {
+                    S state = null;
+                    try {
+                        state = newState.get();
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                    while (true) {
+                        Chunk chunk = fullChunks.take();
+                        if (chunk == endOfFile) break;
+                        // after a failure, chunks are only returned so the reader does not wait forever
+                        if (failure.get() == null) {
+                            try {
+                                processor.process(state, chunk);
+                            } catch (Throwable e) {
+                                failure.compareAndSet(null, e);
+                            }
+                        }
+                        freeChunks.put(chunk);
+                    }
+                    return state;
+                }));
+            }
+
+            try {
+                while (failure.get() == null) {
+                    Chunk chunk = freeChunks.take();
+                    if (!readChunk(chunk)) break;
+                    fullChunks.put(chunk);
+                }
+                for (int t = 0; t < numberOfThreads; t++) fullChunks.put(endOfFile);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("FastqChunkReader: processInParallel: interrupted");
+            }
+
+            List<S> result = new ArrayList<>();
+            for (Future<S> worker : workers) {
+                try {
+                    result.add(worker.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("FastqChunkReader: processInParallel: interrupted");
+                } catch (ExecutionException e) {
+                    failure.compareAndSet(null, e.getCause());
+                }
+            }
+            Throwable e = failure.get();
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            if (e instanceof Error) throw (Error) e;
+            if (e != null) throw new IllegalStateException("FastqChunkReader: processInParallel: " + e.getMessage(), e);
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Fills chunk with the next records
+     *
+     * @return false if there are no more records
+     */
+    private boolean readChunk(Chunk chunk) throws IOException {
+        chunk.clear(myNumberOfRecords);
+        while (chunk.myNumberOfRecords < chunk.myMaxRecords) {
+            if (skipLine() < 0) break;
+            int record = chunk.myNumberOfRecords;
+            chunk.mySequenceOffset[record] = chunk.myLength;
+            if (readLine(chunk) < 0) break;
+            chunk.mySequenceLength[record] = chunk.myLength - chunk.mySequenceOffset[record];
+            skipLine();
+            chunk.myQualityOffset[record] = chunk.myLength;
+            readLine(chunk);
+            chunk.myQualityLength[record] = chunk.myLength - chunk.myQualityOffset[record];
+            chunk.myNumberOfRecords++;
+            myNumberOfRecords++;
+        }
+        return chunk.myNumberOfRecords > 0;
+    }
+
+    private boolean fill() throws IOException {
+        int read = myInputStream.read(myBuffer);
+        while (read == 0) read = myInputStream.read(myBuffer);
+        if (read < 0) return false;
+        myBufferPosition = 0;
+        myBufferLimit = read;
+        return true;
+    }
+
+    /**
+     * @return number of bytes skipped, or -1 at end of file
+     */
+    private int skipLine() throws IOException {
+        int skipped = 0;
+        while (true) {
+            if (myBufferPosition == myBufferLimit && !fill()) return skipped == 0 ? -1 : skipped;
+            byte b = myBuffer[myBufferPosition++];
+            if (b == '\n') return skipped;
+            skipped++;
+        }
+    }
+
+    /**
+     * Appends the next line, without the line terminator, to the chunk
+     *
+     * @return number of bytes in the line, or -1 at end of file
+     */
+    private int readLine(Chunk chunk) throws IOException {
+        int start = chunk.myLength;
+        boolean any = false;
+        while (true) {
+            if (myBufferPosition == myBufferLimit && !fill()) break;
+            any = true;
+            int end = myBufferPosition;
+            while (end < myBufferLimit && myBuffer[end] != '\n') end++;
+            chunk.append(myBuffer, myBufferPosition, end - myBufferPosition);
+            if (end < myBufferLimit) {
+                myBufferPosition = end + 1;
+                break;
+            }
+            myBufferPosition = end;
+        }
+        if (!any) return -1;
+        if (chunk.myLength > start && chunk.myData[chunk.myLength - 1] == '\r') chunk.myLength--;
+        return chunk.myLength - start;
+    }
+
+    /**
+     * Processes one chunk of records using the state of one worker
+     */
+    @FunctionalInterface
+    public interface ChunkProcessor<S> {
+
+        void process(S state, Chunk chunk);
+    }
+
+    /**
+     * Sequence and quality lines of consecutive records.  The lines are stored without line terminators in one byte
+     * array.
+     */
+    public static final class Chunk {
+
+        private final int myMaxRecords;
+        private final int[] mySequenceOffset;
+        private final int[] mySequenceLength;
+        private final int[] myQualityOffset;
+        private final int[] myQualityLength;
+        private byte[] myData;
+        private int myLength = 0;
+        private int myNumberOfRecords = 0;
+        private long myFirstRecord = 0;
+
+        private Chunk(int maxRecords) {
+            myMaxRecords = maxRecords;
+            mySequenceOffset = new int[maxRecords];
+            mySequenceLength = new int[maxRecords];
+            myQualityOffset = new int[maxRecords];
+            myQualityLength = new int[maxRecords];
+            myData = new byte[maxRecords == 0 ? 0 : INITIAL_CHUNK_BYTES];
+        }
+
+        private void clear(long firstRecord) {
+            myLength = 0;
+            myNumberOfRecords = 0;
+            myFirstRecord = firstRecord;
+        }
+
+        private void append(byte[] source, int offset, int length) {
+            if (myLength + length > myData.length) {
+                myData = Arrays.copyOf(myData, Math.max(myData.length * 2, myLength + length));
+            }
+            System.arraycopy(source, offset, myData, myLength, length);
+            myLength += length;
+        }
+
+        /**
+         * @return bytes of the sequence and quality lines.  The array belongs to the chunk and is overwritten when
+         * the chunk is reused.
+         */
+        public byte[] data() {
+            return myData;
+        }
+
+        public int numberOfRecords() {
+            return myNumberOfRecords;
+        }
+
+        /**
+         * @return number of the record in the file, starting at 1
+         */
+        public long recordNumber(int record) {
+            return myFirstRecord + record + 1;
+        }
+
+        public int sequenceOffset(int record) {
+            return mySequenceOffset[record];
+        }
+
+        public int sequenceLength(int record) {
+            return mySequenceLength[record];
+        }
+
+        public int qualityOffset(int record) {
+            return myQualityOffset[record];
+        }
+
+        public int qualityLength(int record) {
+            return myQualityLength[record];
+        }
+
+        /**
+         * @return sequence of a record starting at position start
+         */
+        public String sequence(int record, int start) {
+            return new String(myData, mySequenceOffset[record] + start, mySequenceLength[record] - start, StandardCharsets.US_ASCII);
+        }
+
+        /**
+         * Returns the position of the first low quality base of a record, like
+         * {@link net.maizegenetics.dna.BaseEncoder#getFirstLowQualityPos(String, int, int)}
+         *
+         * @param record record
+         * @param minQual minimum quality score
+         * @param qualityScoreBase quality score base, 33 or 64
+         *
+         * @return position of the first base with a quality score less than minQual, or the number of quality scores
+         * if there is none
+         */
+        public int firstLowQualityPosition(int record, int minQual, int qualityScoreBase) {
+            int offset = myQualityOffset[record];
+            int length = myQualityLength[record];
+            int threshold = minQual + qualityScoreBase;
+            for (int i = 0; i < length; i++) {
+                if (myData[offset + i] < threshold) return i;
+            }
+            return length;
+        }
+    }
+}
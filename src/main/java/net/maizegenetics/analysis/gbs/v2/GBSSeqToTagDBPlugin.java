@@ -1,7 +1,6 @@
 package net.maizegenetics.analysis.gbs.v2;
 
 import java.awt.Frame;
-import java.io.BufferedReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -10,9 +9,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.LongAdder;
-import java.util.stream.IntStream;
 
 import javax.swing.ImageIcon;
 
@@ -21,22 +17,19 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import net.maizegenetics.analysis.gbs.Barcode;
-import net.maizegenetics.dna.BaseEncoder;
 import net.maizegenetics.dna.tag.Tag;
-import net.maizegenetics.dna.tag.TagBuilder;
 import net.maizegenetics.dna.tag.TagDataSQLite;
 import net.maizegenetics.dna.tag.TagDataWriter;
-import net.maizegenetics.dna.tag.TaxaDistBuilder;
 import net.maizegenetics.dna.tag.TaxaDistribution;
 import net.maizegenetics.plugindef.AbstractPlugin;
 import net.maizegenetics.plugindef.DataSet;
 import net.maizegenetics.plugindef.Datum;
 import net.maizegenetics.plugindef.PluginParameter;
+import net.maizegenetics.prefs.TasselPrefs;
 import net.maizegenetics.taxa.TaxaList;
 import net.maizegenetics.taxa.TaxaListIOUtils;
 import net.maizegenetics.taxa.Taxon;
 import net.maizegenetics.util.DirectoryCrawler;
-import net.maizegenetics.util.Utils;
 
 /**
  * Develops a discovery TBT file from a set of GBS sequence files.
@@ -78,9 +71,10 @@ public class GBSSeqToTagDBPlugin extends AbstractPlugin {
             .description("Number of flow cells being processed simultaneously").build();
     private PluginParameter<Boolean> myDeleteOldData = new PluginParameter.Builder<Boolean>("deleteOldData",true,Boolean.class).guiName("Delete Old Data")
             .description("Delete existing SNP quality data from db tables").build();
-    LongAdder roughTagCnt = new LongAdder();
+    private PluginParameter<Integer> myMaxThreads = new PluginParameter.Builder<>("maxThreads", TasselPrefs.getMaxThreads(), Integer.class).guiName("Max Threads").required(false)
+            .description("Maximum number of threads.  Threads not needed for the files in a batch are used to process the reads of each file in parallel").build();
 
-    private TagDistributionMap tagCntMap;
+    private TagCounter tagCounter;
     private boolean taglenException;
     protected static int readEndCutSiteRemnantLength;
     private Trie ahoCorasickTrie; // import from ahocorasick-0.2.1.jar
@@ -127,18 +121,10 @@ public class GBSSeqToTagDBPlugin extends AbstractPlugin {
         return np;
     }
     
-    private long[] calcTagMapStats(TagDistributionMap tagCntMap) {
-        long totalDepth=0, memory=0;
-        int cnt=0;
-        for (Map.Entry<Tag, TaxaDistribution> entry : tagCntMap.entrySet()) {       	
-            memory+=entry.getValue().memorySize();
-            memory+=25;
-            totalDepth+=entry.getValue().totalDepth();
-            cnt++;
-        }
-        int currentSize = tagCntMap.size();
-        memory+=tagCntMap.size()*2*16;  //estimate for the map size
-        long[] stats={currentSize,memory, totalDepth,totalDepth/cnt};
+    private long[] calcTagMapStats(TagCounter tagCounter) {
+        long currentSize = tagCounter.size();
+        long totalDepth = tagCounter.totalDepth();
+        long[] stats={currentSize,tagCounter.memorySize(), totalDepth,totalDepth/currentSize};
         System.out.printf("Map Tags:%,d  Memory:%,d  TotalDepth:%,d  AvgDepthPerTag:%d%n",stats[0],stats[1],stats[2],stats[3]);
         return stats;
     }
@@ -148,7 +134,7 @@ public class GBSSeqToTagDBPlugin extends AbstractPlugin {
         if (!myEnzyme.isEmpty()) {
             // Add likelyReadEnds for later processing
             EnzymeList.Enzyme enzyme = EnzymeList.defaultCache.getEnzyme(enzyme()); 
-            likelyReadEndStrings = enzyme.likelyReadEnd; // for removeSecondCutSiteIndexOf()
+            likelyReadEndStrings = enzyme.likelyReadEnd; // for ReadTagExtractor
             readEndCutSiteRemnantLength = enzyme.readEndCutSiteRemnantLength;
         }
         
@@ -156,8 +142,7 @@ public class GBSSeqToTagDBPlugin extends AbstractPlugin {
     @Override
     public DataSet processData(DataSet input) {
         int batchSize = myBatchSize.value();
-        float loadFactor = 0.95f;
-        tagCntMap = new TagDistributionMap (myMaxKmerNumber.value(),loadFactor, 128, this.minKmerCount());        
+        Map<Tag, TaxaDistribution> tagCntMap = new HashMap<>();
         try {
             //Get the list of fastq files
             Path keyPath= Paths.get(keyFile()).toAbsolutePath();
@@ -182,6 +167,7 @@ public class GBSSeqToTagDBPlugin extends AbstractPlugin {
             
             // Check if user wants to clear existing db. 
             TagDataWriter tdw = null;
+            Map<Tag, TaxaDistribution> existingTDM = null;
             if (Files.exists(Paths.get(myOutputDB.value()))) {
                 if (deleteOldData()) {
                     try {
@@ -210,13 +196,22 @@ public class GBSSeqToTagDBPlugin extends AbstractPlugin {
                         ((TagDataSQLite)tdw).close();
                         return null;
                     }
-                    // Grab existing data from db, append to empty tagCntMap
-                    Map<Tag, TaxaDistribution> existingTDM = tdw.getAllTagsTaxaMap(); 
-                    tagCntMap.putAll(existingTDM);
+                    // Grab existing data from db, it is added to the empty tagCounter below
+                    existingTDM = tdw.getAllTagsTaxaMap(); 
                     tdw.clearTagTaxaDistributionData(); // clear old data - it will be re-added at the end.
                 }
             } 
             if (tdw == null) tdw=new TagDataSQLite(myOutputDB.value());
+            int maxTaxa = masterTaxaList.size();
+            int maxTagLength = kmerLength();
+            if (existingTDM != null) {
+                for (Tag tag : existingTDM.keySet()) maxTagLength = Math.max(maxTagLength, tag.seqLength());
+            }
+            tagCounter = new TagCounter(maxTaxa, maxTagLength);
+            if (existingTDM != null) {
+                for (Map.Entry<Tag, TaxaDistribution> entry : existingTDM.entrySet()) tagCounter.add(entry.getKey(), entry.getValue());
+                existingTDM = null;
+            }
             taglenException = false;
             for (int i = 0; i < inputSeqFiles.size(); i+=batchSize) {
                 int end = i+batchSize;
@@ -224,11 +219,15 @@ public class GBSSeqToTagDBPlugin extends AbstractPlugin {
                 ArrayList<Path> sub = new ArrayList();
                 for (int j = i; j < end; j++) sub.add(inputSeqFiles.get(j));
                 System.out.println("\nStart processing batch " + String.valueOf(i/batchSize+1));
+                // threads not needed for whole files are used to process the reads of each file in parallel
+                // each thread counts into a shard of its own, and the shards are added to tagCounter at the end of the batch
+                int threadsPerFile = Math.max(1, maxThreads() / sub.size());
+                TagCounterShards shards = new TagCounterShards(tagCounter, sub.size() * threadsPerFile);
                 sub.parallelStream()
                 .forEach(inputSeqFile -> {
                     try {
                         processFastQFile(masterTaxaList,keyPath, inputSeqFile, enzyme(),
-                                minimumQualityScore(), tagCntMap, kmerLength());
+                                minimumQualityScore(), shards, kmerLength(), threadsPerFile);
                     } catch (StringIndexOutOfBoundsException oobe) {
                         oobe.printStackTrace();
                         myLogger.error(oobe.getMessage());
@@ -237,26 +236,25 @@ public class GBSSeqToTagDBPlugin extends AbstractPlugin {
                     }
                 });
                 if (taglenException == true) return null; // Tag length failure from processFastQ - halt processing
+                shards.merge();
 
                 System.out.println("\nKmers are added from batch "+String.valueOf(i/batchSize+1) + ". Total batch number: " + batchNum);
-                int currentSize = tagCntMap.size();
+                long currentSize = tagCounter.size();
                 System.out.println("Current number: " + String.valueOf(currentSize) + ". Max kmer number: " + String.valueOf(myMaxKmerNumber.value()));
                 System.out.println(String.valueOf((float)currentSize/(float)myMaxKmerNumber.value()) + " of max tag number");
 
                 if (currentSize > 0) { // calcTagMapStats() gets "divide by 0" error when size == 0
-                    this.calcTagMapStats(tagCntMap);
+                    this.calcTagMapStats(tagCounter);
                     System.out.println();
                     //make sure don't lose rare ones, need to set maxTagNumber large enough
-                    removeTagsWithoutReplication(tagCntMap);
-                    if (tagCntMap.size() == 0) {
+                    removeTagsWithoutReplication(tagCounter);
+                    if (tagCounter.size() == 0) {
                         System.out.println("WARNING:  After removing tags without replication, there are NO  tags left in the database");
                     } else {
-                        this.calcTagMapStats(tagCntMap);
+                        this.calcTagMapStats(tagCounter);
                         System.out.println();
-                        System.out.println("Kmer number is reduced to " + tagCntMap.size()+"\n");  
+                        System.out.println("Kmer number is reduced to " + tagCounter.size()+"\n");  
                     }                   
-                    this.roughTagCnt.reset();
-                    this.roughTagCnt.add(tagCntMap.size());
                 } else {
                     System.out.println("WARNING: Current tagcntmap size is 0 after processing batch " + String.valueOf(i/batchSize+1) );
                     System.out.println("  This could happen if your total number of good barcoded reads is 0, or if there are no kmers that contain the min specified count");
@@ -270,11 +268,10 @@ public class GBSSeqToTagDBPlugin extends AbstractPlugin {
                 System.out.println("\n");
             }
             System.out.println("\nAll the batch are processed");
-            tagCntMap.removeTagByCount(myMinKmerCount.value());
-            System.out.println("By removing kmers with minCount of " + myMinKmerCount.value() + "Kmer number is reduced to " + tagCntMap.size()+"\n");
-            
-            // now done in processFastQ
-            //removeSecondCutSitesFromMap(new GBSEnzyme(enzyme()));
+            tagCounter.removeTagsByCount(myMinKmerCount.value());
+            System.out.println("By removing kmers with minCount of " + myMinKmerCount.value() + "Kmer number is reduced to " + tagCounter.size()+"\n");
+            tagCntMap = tagCounter.toTaxaDistributionMap();
+            tagCounter = null;
 
             tdw.putTaxaList(masterTaxaList);
             tdw.putAllTag(tagCntMap.keySet());
@@ -287,68 +284,52 @@ public class GBSSeqToTagDBPlugin extends AbstractPlugin {
     }
     
     private void processFastQFile(TaxaList masterTaxaList, Path keyPath, Path fastQPath, String enzymeName,
-                     int minQuality, TagDistributionMap masterTagTaxaMap, int preferredTagLength) throws StringIndexOutOfBoundsException {
+                     int minQuality, TagCounterShards shards, int preferredTagLength, int numberOfThreads) throws StringIndexOutOfBoundsException {
     	ArrayList<Taxon> tl=GBSUtils.getLaneAnnotatedTaxaList(keyPath, fastQPath);
     	if (tl.size() == 0) return; 
         BarcodeTrie barcodeTrie=GBSUtils.initializeBarcodeTrie(tl, masterTaxaList, EnzymeList.defaultCache.getEnzyme(enzymeName));
         try {
-        	processFastQ(fastQPath,barcodeTrie,masterTaxaList,masterTagTaxaMap,preferredTagLength,minQuality);
+        	processFastQ(fastQPath,barcodeTrie,shards,preferredTagLength,minQuality,numberOfThreads);
         } catch (StringIndexOutOfBoundsException oobe) {
         	throw oobe; // Let processData() handle it - we want to stop processing on this error
         }        
     }
 
-    private void processFastQ(Path fastqFile, BarcodeTrie barcodeTrie, TaxaList masterTaxaList,
-                              TagDistributionMap masterTagTaxaMap, int preferredTagLength, int minQual) throws StringIndexOutOfBoundsException{
-        int allReads=0, goodBarcodedReads = 0, lowQualityReads = 0;
-        int maxTaxaNumber=masterTaxaList.size();
-        int checkSize = 10000000;
+    /**
+     * State of one worker thread processing a fastq file.  Tags are counted into a shard borrowed from
+     * {@link TagCounterShards}, so workers do not lock while counting.
+     */
+    private static class FastQWorker {
+        private final ReadTagExtractor tagExtractor;
+        private final TagCounter shard;
+        private long allReads = 0;
+        private long goodBarcodedReads = 0;
+        private long lowQualityReads = 0;
+
+        private FastQWorker(ReadTagExtractor tagExtractor, TagCounter shard) {
+            this.tagExtractor = tagExtractor;
+            this.shard = shard;
+        }
+    }
+
+    private void processFastQ(Path fastqFile, BarcodeTrie barcodeTrie, TagCounterShards shards,
+                              int preferredTagLength, int minQual, int numberOfThreads) throws StringIndexOutOfBoundsException{
+        long allReads=0, goodBarcodedReads = 0, lowQualityReads = 0;
         myLogger.info("processing file " + fastqFile.toString());
         try {
             int qualityScoreBase=GBSUtils.determineQualityScoreBase(fastqFile);
-            BufferedReader br = Utils.getBufferedReader(fastqFile.toString(), 1 << 22);
             long time=System.nanoTime();
-            String[] seqAndQual;
- 
-            while ((seqAndQual=GBSUtils.readFastQBlock(br,allReads)) != null) {
-                allReads++;
-                //After quality score is read, decode barcode using the current sequence & quality  score
-                Barcode barcode=barcodeTrie.longestPrefix(seqAndQual[0]);
-                if(barcode==null) continue;
-                if(minQual>0) {
-                    //todo move getFirstLowQualityPos into this class?
-                    if(BaseEncoder.getFirstLowQualityPos(seqAndQual[1],minQual, qualityScoreBase)<(barcode.getBarLength()+preferredTagLength)){
-                    	lowQualityReads++;
-                    	continue;
-                    }
-                }
-
-                int barcodeLen = barcode.getBarLength();               
-                if (seqAndQual[0].length() - barcodeLen < preferredTagLength) {
-                	String errMsg = "\n\nERROR processing " + fastqFile.toString() + "\n" +
-                			"Reading entry number " + allReads + " fails the length test.\n" +
-                			"Sequence length " + seqAndQual[0].length() + " minus barcode length "+ barcodeLen +
-                			" is less than kmerLength " + preferredTagLength + ".\n" +
-                			"Re-run your files with either a shorter kmerLength value or a higher minimum quality score.\n";
-                	throw new StringIndexOutOfBoundsException(errMsg);
-                }
-                // This one has best performance
-                Tag tag = removeSecondCutSiteIndexOf(seqAndQual[0].substring(barcodeLen),preferredTagLength);
-                
-                //Tag tag=TagBuilder.instance(seqAndQual[0].substring(barcodeLen, barcodeLen + preferredTagLength)).build();
-                if(tag==null) continue;   //null occurs when any base was not A, C, G, T
-                goodBarcodedReads++;
-                TaxaDistribution taxaDistribution=masterTagTaxaMap.get(tag);
-                if(taxaDistribution==null) {
-                    masterTagTaxaMap.put(tag,TaxaDistBuilder.create(maxTaxaNumber,barcode.getTaxaIndex()));
-                    this.roughTagCnt.increment();
-                } else {
-                    taxaDistribution.increment(barcode.getTaxaIndex());
-                }
-                if (allReads % checkSize == 0) {
-                    myLogger.info("Total Reads:" + allReads + " Reads with barcode and cut site overhang:" + goodBarcodedReads
-                            + " rate:" + (System.nanoTime()-time)/allReads +" ns/read. Current tag count:" + this.roughTagCnt);
-                }
+            List<FastQWorker> workers = FastqChunkReader.process(fastqFile, numberOfThreads, () -> new FastQWorker(new ReadTagExtractor(likelyReadEndStrings,
+                            readEndCutSiteRemnantLength, enzyme().equalsIgnoreCase("ApeKI"), preferredTagLength, minimumKmerLength()), shards.borrow()),
+                    (worker, chunk) -> {
+                        processFastQChunk(fastqFile, chunk, barcodeTrie, worker, preferredTagLength, minQual, qualityScoreBase, time);
+                        shards.flushIfFull(worker.shard);
+                    });
+            for (FastQWorker worker : workers) {
+                shards.release(worker.shard);
+                allReads += worker.allReads;
+                goodBarcodedReads += worker.goodBarcodedReads;
+                lowQualityReads += worker.lowQualityReads;
             }
             myLogger.info("Summary for "+fastqFile.toString()+"\n"+
                     "Total number of reads in lane=" + allReads +"\n"+
@@ -356,8 +337,6 @@ public class GBSSeqToTagDBPlugin extends AbstractPlugin {
                     "Total number of low quality reads=" + lowQualityReads+"\n"+
                     "Timing process (sorting, collapsing, and writing TagCount to file)."+"\n"+
                     "Process took " + (System.nanoTime() - time)/1e6 + " milliseconds.");
-            System.out.println("tagCntMap size: "+masterTagTaxaMap.size());
-            br.close();
         } catch (StringIndexOutOfBoundsException oobe) {
         	throw oobe; // pass it up to print error and stop processing
         } catch (Exception e) {
@@ -367,110 +346,54 @@ public class GBSSeqToTagDBPlugin extends AbstractPlugin {
         }
     }
 
-    // This should be moved to GBSUtils as it is used in Production as well
-    private Tag removeSecondCutSiteIndexOf(String seq, int preferredLength) {
-        Tag tag = null;
-        
-        // handle overlapping cutsite for ApeKI enzyme
-        if (enzyme().equalsIgnoreCase("ApeKI")) {
-            if (seq.startsWith("CAGCTGC") || seq.startsWith("CTGCAGC")) {
-                seq = seq.substring(3,seq.length());
-            }             
-        }
-        int indexOfReadEnd = -1;
-        String shortSeq = seq.substring(20);
-        for (String readEnd: likelyReadEndStrings){
-            int indx = shortSeq.indexOf(readEnd);
-            if (indx > 0 ) {
-                if (indexOfReadEnd < 0 || indx < indexOfReadEnd) {
-                    indexOfReadEnd = indx;
-                } 
-            }
-        }
-        
-        int tagLen = indexOfReadEnd + 20 + readEndCutSiteRemnantLength;
-        if (indexOfReadEnd > 0 &&
-                (tagLen < preferredLength)) {            
-            if (tagLen < minimumKmerLength()) { // Tag is shorter than user specified minimum length - toss it
-                return null;
-            }
-            // trim tag to sequence up to & including the cut site
-            tag = TagBuilder.instance(seq.substring(0, tagLen)).build();
-        } else {
-            int seqEnd = (byte) Math.min(seq.length(), preferredLength);
-            return TagBuilder.instance(seq.substring(0,seqEnd)).build();
-        }
-        return tag;
-    }
-    
-    // THis method now obsolete, replaced with removeSecondCutSiteAhoC
-    private void removeSecondCutSitesFromMap(EnzymeList.Enzyme enzyme) {
-        //this is a little tricky as you cannot add entries at the same time as removing entries to a map
-        System.out.println("GBSSeqToTagDBPlugin.removeSecondCutSitesFromMap started Initial Size:"+tagCntMap.size());
-        String[] likelyReadEnd=enzyme.likelyReadEnd;
-        long time=System.nanoTime();
-
-        Map<Tag,TaxaDistribution> shortTags=new HashMap<>(tagCntMap.size()/5);
-        int belowMinSize=0, shortExisting=0;
-        for (Tag origTag : tagCntMap.keySet()) {
-            int minCutSite=Integer.MAX_VALUE;
-            String origTagSequence = origTag.sequence();
-            for (String potentialCutSite : likelyReadEnd) {
-            	int p = origTagSequence.indexOf(potentialCutSite, 1);
-                if(p>0) minCutSite=Math.min(minCutSite,p);
+    private void processFastQChunk(Path fastqFile, FastqChunkReader.Chunk chunk, BarcodeTrie barcodeTrie, FastQWorker worker,
+                                   int preferredTagLength, int minQual, int qualityScoreBase, long time) throws StringIndexOutOfBoundsException {
+        int checkSize = 10000000;
+        byte[] data = chunk.data();
+        worker.allReads += chunk.numberOfRecords();
+        for (int r = 0; r < chunk.numberOfRecords(); r++) {
+            long readNumber = chunk.recordNumber(r);
+            if (readNumber % checkSize == 0) {
+                myLogger.info("Total Reads:" + readNumber + " rate:" + (System.nanoTime()-time)/readNumber +" ns/read. Tag count of thread:" + worker.shard.size());
             }
-            if (minCutSite!=Integer.MAX_VALUE && minCutSite > 1) {
-                if(minCutSite<minimumKmerLength()) {
-                    tagCntMap.remove(origTag);
-                    belowMinSize++;
+            //After quality score is read, decode barcode using the current sequence & quality  score
+            int sequenceLength = chunk.sequenceLength(r);
+            Barcode barcode=barcodeTrie.longestPrefix(data, chunk.sequenceOffset(r), sequenceLength);
+            if(barcode==null) continue;
+            if(minQual>0) {
+                if(chunk.firstLowQualityPosition(r, minQual, qualityScoreBase)<(barcode.getBarLength()+preferredTagLength)){
+                    worker.lowQualityReads++;
                     continue;
                 }
-                TaxaDistribution currentTaxaDist=tagCntMap.remove(origTag);
-                Tag t = TagBuilder.instance(origTagSequence.substring(0, minCutSite + enzyme.readEndCutSiteRemnantLength())).build();
-                TaxaDistribution existingTD=shortTags.get(t);
-                if(existingTD!=null) {
-                    if(currentTaxaDist==null || existingTD==null) {
-                        System.out.println("We have a problem");
-                    }
-                    currentTaxaDist=TaxaDistBuilder.combine(currentTaxaDist,existingTD);
-                    shortExisting++; //System.out.println("existingTD="+t);
-                }
-                shortTags.put(t, currentTaxaDist);
-                //if(ttemp!=null) shortExisting++;
-               // System.out.println(origTag+" -> "+t);
             }
+
+            int barcodeLen = barcode.getBarLength();               
+            if (sequenceLength - barcodeLen < preferredTagLength) {
+                String errMsg = "\n\nERROR processing " + fastqFile.toString() + "\n" +
+                        "Reading entry number " + readNumber + " fails the length test.\n" +
+                        "Sequence length " + sequenceLength + " minus barcode length "+ barcodeLen +
+                        " is less than kmerLength " + preferredTagLength + ".\n" +
+                        "Re-run your files with either a shorter kmerLength value or a higher minimum quality score.\n";
+                throw new StringIndexOutOfBoundsException(errMsg);
+            }
+            int tagLength = worker.tagExtractor.extract(data, chunk.sequenceOffset(r) + barcodeLen, sequenceLength - barcodeLen);
+            if(tagLength<0) continue;   //occurs when any base was not A, C, G, T or the tag is shorter than the minimum kmer length
+            worker.shard.increment(worker.tagExtractor.encodedTag(), tagLength, barcode.getTaxaIndex());
+            worker.goodBarcodedReads++;
         }
-        System.out.println("After removal tagCntMap.size() = " + tagCntMap.size());
-        System.out.println("After removal shortTags.size() = " + shortTags.size());
-        System.out.println("belowMinSize = " + belowMinSize);
-        System.out.println("shortExisting = " + shortExisting);
-        System.out.println("removeSecondCutSite: Process took " + (System.nanoTime() - time)/1e6 + " milliseconds.");
-        tagCntMap.putAll(shortTags);
-        System.out.println("After combining again tagCntMap.size() = " + tagCntMap.size());
     }
-    
+
     /**
      * This method removes all tags are are never repeated in a single sample (taxa).  The concept is that
      * all biologically real tag should show up twice somewhere.  This could be called at the end of every
      * flowcell to test all the novel tags.
      */
-    private static void removeTagsWithoutReplication (TagDistributionMap masterTagTaxaMap) {
-        int currentSize = masterTagTaxaMap.size();
+    private static void removeTagsWithoutReplication (TagCounter tagCounter) {
+        long currentSize = tagCounter.size();
         int minTaxa=2;
         System.out.println("Starting removeTagsWithoutReplication. Current tag number: " + currentSize);
-        LongAdder tagsRemoved=new LongAdder();
-        masterTagTaxaMap.entrySet().parallelStream().forEach(t -> {
-            TaxaDistribution td = t.getValue();
-            if(td.totalDepth()<2*minTaxa) {
-                masterTagTaxaMap.remove(t.getKey());
-                tagsRemoved.increment();
-            } 
-            else if(IntStream.of(td.depths()).filter(depth -> depth>1).count()<minTaxa) {
-                masterTagTaxaMap.remove(t.getKey());
-                tagsRemoved.increment();
-            }
-        });
-        System.out.println("Finished removeTagsWithoutReplication.  tagsRemoved = " + tagsRemoved + ". Current tag number: " + String.valueOf(currentSize-tagsRemoved.intValue()));
+        long tagsRemoved = tagCounter.removeTagsWithoutReplication(minTaxa);
+        System.out.println("Finished removeTagsWithoutReplication.  tagsRemoved = " + tagsRemoved + ". Current tag number: " + String.valueOf(currentSize-tagsRemoved));
     }
     
     public void setTagLenException() {
@@ -713,6 +636,29 @@ public class GBSSeqToTagDBPlugin extends AbstractPlugin {
         myDeleteOldData = new PluginParameter<>(myDeleteOldData, value);
         return this;
     }
+
+    /**
+     * Maximum number of threads
+     *
+     * @return Max Threads
+     */
+    public Integer maxThreads() {
+        return myMaxThreads.value();
+    }
+
+    /**
+     * Set Max Threads. Threads not needed for the files in
+     * a batch are used to process the reads of each file in
+     * parallel.
+     *
+     * @param value Max Threads
+     *
+     * @return this plugin
+     */
+    public GBSSeqToTagDBPlugin maxThreads(Integer value) {
+        myMaxThreads = new PluginParameter<>(myMaxThreads, value);
+        return this;
+    }
     @Override
     public ImageIcon getIcon() {
         return null;
@@ -727,59 +673,4 @@ public class GBSSeqToTagDBPlugin extends AbstractPlugin {
     public String getToolTipText() {
         return "Input GBS Sequence to Tag/Taxa tables in DB";
     }
-
-    /**
-     * This ConcurrentHashMap constrain the size of the map, and purges low distribution count tags when the size needs
-     * to be reduced.
-     */
-    static class TagDistributionMap extends ConcurrentHashMap<Tag,TaxaDistribution> {
-        private final int maxTagNum;
-        private int minDepthToRetainInMap=2;
-        private final int minCount;
-        
-        TagDistributionMap (int maxTagNumber, float loadFactor, int concurrencyLevel, int minCount) {
-            super((maxTagNumber*2), loadFactor, concurrencyLevel);
-            maxTagNum = maxTagNumber;
-            this.minCount = minCount;
-        }
-        
-        @Override
-        public TaxaDistribution put(Tag key, TaxaDistribution value) {
-            return super.put(key, value);
-        }
-
-        public synchronized void removeTagByCount(int minCnt) {
-            entrySet().parallelStream()
-                    .filter(e -> e.getValue().totalDepth()<minCnt)
-                    .forEach(e -> remove(e.getKey()));
-        }
-        
-            
-        public long estimateMapMemorySize() {
-            long size=0;
-            int cnt=0;
-            for (Map.Entry<Tag, TaxaDistribution> entry : entrySet()) {
-                size+=8+16+1; //Tag size
-                size+=16; //Map references
-                size+=entry.getValue().memorySize();
-                cnt++;
-                if(cnt>10000) break;
-        }
-            long estSize=(size()/cnt)*size;
-            return estSize;
-        }
-
-        public long[] depthDistribution() {
-            long[] base2bins=new long[34];
-            int cnt=0;
-            for (Map.Entry<Tag, TaxaDistribution> entry : entrySet()) {
-                base2bins[31-Integer.numberOfLeadingZeros(entry.getValue().totalDepth())]++;
-                cnt++;
-               // if(cnt>100000) break;
-            }
-            return base2bins;
-        }
-    }
 }
-
-
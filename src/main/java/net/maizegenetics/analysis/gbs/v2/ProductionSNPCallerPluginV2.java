@@ -4,7 +4,6 @@
 package net.maizegenetics.analysis.gbs.v2;
 
 import java.awt.Frame;
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -26,7 +25,6 @@ import java.util.concurrent.atomic.LongAdder;
 import javax.swing.ImageIcon;
 
 import net.maizegenetics.analysis.gbs.Barcode;
-import net.maizegenetics.dna.BaseEncoder;
 import net.maizegenetics.dna.map.PositionList;
 import net.maizegenetics.dna.snp.Allele;
 import net.maizegenetics.dna.snp.ExportUtils;
@@ -44,11 +42,11 @@ import net.maizegenetics.dna.tag.TagDataSQLite;
 import net.maizegenetics.plugindef.AbstractPlugin;
 import net.maizegenetics.plugindef.DataSet;
 import net.maizegenetics.plugindef.PluginParameter;
+import net.maizegenetics.prefs.TasselPrefs;
 import net.maizegenetics.taxa.TaxaList;
 import net.maizegenetics.taxa.TaxaListIOUtils;
 import net.maizegenetics.taxa.Taxon;
 import net.maizegenetics.util.DirectoryCrawler;
-import net.maizegenetics.util.Utils;
 
 import org.ahocorasick.trie.Emit;
 import org.ahocorasick.trie.Trie;
@@ -124,6 +122,8 @@ public class ProductionSNPCallerPluginV2 extends AbstractPlugin {
             .description("Number of flow cells being processed simultaneously").build();
     private PluginParameter<Integer> myMinQualScore = new PluginParameter.Builder<>("mnQS", 0, Integer.class).guiName("Minimum quality score").required(false)
             .description("Minimum quality score within the barcode and read length to be accepted").build();
+    private PluginParameter<Integer> myMaxThreads = new PluginParameter.Builder<>("maxThreads", TasselPrefs.getMaxThreads(), Integer.class).guiName("Max Threads").required(false)
+            .description("Maximum number of threads.  Threads not needed for the files in a batch are used to process the reads of each file in parallel").build();
     //private PluginParameter<Boolean> myStacksLikelihood = new PluginParameter.Builder<>("sL", false, Boolean.class).guiName("Use Stacks Likelihood")
     //        .description("Use STACKS likelihood method to call heterozygotes (default: use tasselGBS likelihood ratio method)").build();
 
@@ -173,7 +173,7 @@ public class ProductionSNPCallerPluginV2 extends AbstractPlugin {
             // Add likelyReadEnds to the ahoCorasick trie
             EnzymeList.Enzyme enzyme = EnzymeList.defaultCache.getEnzyme(enzyme()); 
  
-            likelyReadEndStrings = enzyme.likelyReadEnd; // for removeSecondCutSiteIndexOf()
+            likelyReadEndStrings = enzyme.likelyReadEnd; // for ReadTagExtractor
             readEndCutSiteRemnantLength = enzyme.readEndCutSiteRemnantLength;
 //            // the junit test runs about a second faster average 15.5 vs 16.5) without Trie().removeOverlaps();
 //            String[] likelyReadEnd = enzyme.likelyReadEnd();
@@ -247,10 +247,12 @@ public class ProductionSNPCallerPluginV2 extends AbstractPlugin {
             ArrayList<Path> sub = new ArrayList<Path>();
             for (int jdx = idx; jdx < end; jdx++) sub.add(inputSeqFiles.get(jdx));
             System.out.println("\nStart processing batch " + String.valueOf(idx/batchSize+1));
+            // threads not needed for whole files are used to process the reads of each file in parallel
+            int threadsPerFile = Math.max(1, maxThreads() / sub.size());
             sub.parallelStream()
             .forEach(inputSeqFile -> {
                 try {
-                    processFastQFile(masterTaxaList,keyPath, inputSeqFile, enzyme(),canonicalTag,kmerLength(), minimumQualityScore());
+                    processFastQFile(masterTaxaList,keyPath, inputSeqFile, enzyme(),canonicalTag,kmerLength(), minimumQualityScore(), threadsPerFile);
                 } catch (StringIndexOutOfBoundsException oobe) {
                     oobe.printStackTrace();
                     myLogger.error(oobe.getMessage());
@@ -321,109 +323,105 @@ public class ProductionSNPCallerPluginV2 extends AbstractPlugin {
     }
 
     private void processFastQFile(TaxaList masterTaxaList, Path keyPath, Path fastQPath, String enzymeName,
-            Map<Tag,Tag> canonicalTags, int preferredTagLength, int minQual) throws StringIndexOutOfBoundsException{
+            Map<Tag,Tag> canonicalTags, int preferredTagLength, int minQual, int numberOfThreads) throws StringIndexOutOfBoundsException{
         ArrayList<Taxon> tl=GBSUtils.getLaneAnnotatedTaxaList(keyPath, fastQPath);
         BarcodeTrie barcodeTrie=GBSUtils.initializeBarcodeTrie(tl, masterTaxaList, EnzymeList.defaultCache.getEnzyme(enzymeName));
         try {
-            processFastQ(fastQPath,barcodeTrie,canonicalTags,preferredTagLength, minQual);
+            processFastQ(fastQPath,barcodeTrie,canonicalTags,preferredTagLength, minQual, numberOfThreads);
         } catch (StringIndexOutOfBoundsException oobe) {
             throw oobe; // let processData() handle it
         }
 
     }
 
+    /**
+     * Tags and counts for one worker thread processing a fastq file.  They are added to the shared maps when the
+     * file is finished, so workers do not compete for the synchronized maps for every read.
+     */
+    private static class FastQWorker {
+        private final ReadTagExtractor tagExtractor;
+        private final Multimap<Taxon,Tag> tagsByTaxon = ArrayListMultimap.create();
+        private final Map<String, Integer> rawReadCounts = new HashMap<>();
+        private final Map<String, Integer> matchedReadCounts = new HashMap<>();
+        private long allReads = 0;
+        private long goodBarcodedReads = 0;
+        private long lowQualityReads = 0;
+
+        private FastQWorker(ReadTagExtractor tagExtractor) {
+            this.tagExtractor = tagExtractor;
+        }
+    }
+
     private void processFastQ(Path fastqFile, BarcodeTrie barcodeTrie, Map<Tag,Tag> canonicalTags, 
-            int preferredTagLength, int minQual) throws StringIndexOutOfBoundsException {
-        int allReads=0, goodBarcodedReads = 0, lowQualityReads = 0;
+            int preferredTagLength, int minQual, int numberOfThreads) throws StringIndexOutOfBoundsException {
+        long allReads=0, goodBarcodedReads = 0, lowQualityReads = 0;
         try {
             int qualityScoreBase=GBSUtils.determineQualityScoreBase(fastqFile);
-            BufferedReader br = Utils.getBufferedReader(fastqFile.toString(), 1 << 22);
             long time=System.nanoTime();
-            String[] seqAndQual;
-            while ((seqAndQual=GBSUtils.readFastQBlock(br, allReads)) != null) {
-                allReads++;
-                // Decode barcode using the current sequence & quality  score
-                Barcode barcode=barcodeTrie.longestPrefix(seqAndQual[0]);               
-                if(barcode==null) continue;
-                if(minQual>0) {
-                    //todo move getFirstLowQualityPos into this class?
-                    if(BaseEncoder.getFirstLowQualityPos(seqAndQual[1],minQual, qualityScoreBase)<(barcode.getBarLength()+preferredTagLength)){
-                        lowQualityReads++;
-                        continue;
-                    }
-                }
-                rawReadCountsForFullSampleName.put(barcode.getTaxaName(), rawReadCountsForFullSampleName.get(barcode.getTaxaName()) + 1);
-                int barcodeLen = barcode.getBarLength();
-                if (seqAndQual[0].length() - barcodeLen < preferredTagLength) {
-                    String errMsg = "\n\nERROR processing " + fastqFile.toString() + "\n" +
-                            "Reading entry number " + allReads + " fails the length test.\n" +
-                            "Sequence length " + seqAndQual[0].length() + " minus barcode length "+ barcodeLen +
-                            " is less than kmerLength " + preferredTagLength + ".\n" +
-                            "Re-run your files with either a shorter kmerLength value or a higher minimum quality score.\n";
-                    throw new StringIndexOutOfBoundsException(errMsg);
-                }
- 
-                Tag tag = removeSecondCutSiteIndexOf(seqAndQual[0].substring(barcodeLen),preferredTagLength);
-                //Tag tag = removeSecondCutSiteAhoC(seqAndQual[0].substring(barcodeLen),preferredTagLength);
-                //Tag tag= TagBuilder.instance(seqAndQual[0].substring(barcode.getBarLength(), barcode.getBarLength() + preferredTagLength)).build();
-                if(tag==null) continue;   //null occurs when any base was not A, C, G, T
-                goodBarcodedReads++;
-                Tag canonicalTag=canonicalTags.get(tag);
-                if(canonicalTag!=null) {
-                    tagCntMap.put(barcode.getTaxon(),canonicalTag);
-                    matchedReadCountsForFullSampleName.put(barcode.getTaxaName(), matchedReadCountsForFullSampleName.get(barcode.getTaxaName()) + 1);
-                }
-                if (allReads % 1000000 == 0) {
-                    myLogger.info("Total Reads:" + allReads + " Reads with barcode and cut site overhang:" + goodBarcodedReads
-                            + " rate:" + (System.nanoTime()-time)/allReads +" ns/read");
-                }
+            List<FastQWorker> workers = FastqChunkReader.process(fastqFile, numberOfThreads, () -> new FastQWorker(new ReadTagExtractor(likelyReadEndStrings,
+                            readEndCutSiteRemnantLength, enzyme().equalsIgnoreCase("ApeKI"), preferredTagLength, 0)),
+                    (worker, chunk) -> processFastQChunk(fastqFile, chunk, barcodeTrie, canonicalTags, worker, preferredTagLength, minQual, qualityScoreBase, time));
+            for (FastQWorker worker : workers) {
+                tagCntMap.putAll(worker.tagsByTaxon);
+                worker.rawReadCounts.forEach((name, count) -> rawReadCountsForFullSampleName.merge(name, count, Integer::sum));
+                worker.matchedReadCounts.forEach((name, count) -> matchedReadCountsForFullSampleName.merge(name, count, Integer::sum));
+                allReads += worker.allReads;
+                goodBarcodedReads += worker.goodBarcodedReads;
+                lowQualityReads += worker.lowQualityReads;
             }
             myLogger.info("Total number of reads in lane=" + allReads);
             myLogger.info("Total number of good barcoded reads=" + goodBarcodedReads);
             myLogger.info("Total number of low quality reads=" + lowQualityReads);
             myLogger.info("Timing process (sorting, collapsing, and writing TagCount to file).");
             myLogger.info("Process took " + (System.nanoTime() - time)/1e6 + " milliseconds for file " + fastqFile.toString());
-            br.close();
         } catch (Exception e) {
             myLogger.error("Good Barcodes Read: " + goodBarcodedReads);
             e.printStackTrace();
         }
     }
 
+    private void processFastQChunk(Path fastqFile, FastqChunkReader.Chunk chunk, BarcodeTrie barcodeTrie, Map<Tag,Tag> canonicalTags,
+            FastQWorker worker, int preferredTagLength, int minQual, int qualityScoreBase, long time) throws StringIndexOutOfBoundsException {
+        byte[] data = chunk.data();
+        worker.allReads += chunk.numberOfRecords();
+        for (int r = 0; r < chunk.numberOfRecords(); r++) {
+            long readNumber = chunk.recordNumber(r);
+            if (readNumber % 1000000 == 0) {
+                myLogger.info("Total Reads:" + readNumber + " rate:" + (System.nanoTime()-time)/readNumber +" ns/read");
+            }
+            // Decode barcode using the current sequence & quality  score
+            int sequenceLength = chunk.sequenceLength(r);
+            Barcode barcode=barcodeTrie.longestPrefix(data, chunk.sequenceOffset(r), sequenceLength);
+            if(barcode==null) continue;
+            if(minQual>0) {
+                if(chunk.firstLowQualityPosition(r, minQual, qualityScoreBase)<(barcode.getBarLength()+preferredTagLength)){
+                    worker.lowQualityReads++;
+                    continue;
+                }
+            }
+            worker.rawReadCounts.merge(barcode.getTaxaName(), 1, Integer::sum);
+            int barcodeLen = barcode.getBarLength();
+            if (sequenceLength - barcodeLen < preferredTagLength) {
+                String errMsg = "\n\nERROR processing " + fastqFile.toString() + "\n" +
+                        "Reading entry number " + readNumber + " fails the length test.\n" +
+                        "Sequence length " + sequenceLength + " minus barcode length "+ barcodeLen +
+                        " is less than kmerLength " + preferredTagLength + ".\n" +
+                        "Re-run your files with either a shorter kmerLength value or a higher minimum quality score.\n";
+                throw new StringIndexOutOfBoundsException(errMsg);
+            }
 
-    // Using indexOf() is much faster than using Aho-C trie to find
-    // the second cut site.  (junits ran on average of 15.81281 seconds
-    // for aho-c after 5 runs, vs 13.53204 for 5 runs using indexOf method)
-    private Tag removeSecondCutSiteIndexOf(String seq, int preferredLength) {
-        Tag tag = null;
-        
-        // handle overlapping cutsite for ApeKI enzyme
-        if (enzyme().equalsIgnoreCase("ApeKI")) {
-            if (seq.startsWith("CAGCTGC") || seq.startsWith("CTGCAGC")) {
-                seq = seq.substring(3,seq.length());
-            }             
-        }
-        int indexOfReadEnd = -1;
-        String shortSeq = seq.substring(20);
-        for (String readEnd: likelyReadEndStrings){
-            int indx = shortSeq.indexOf(readEnd);
-            if (indx > 0 ) {
-                if (indexOfReadEnd < 0 || indx < indexOfReadEnd) {
-                    indexOfReadEnd = indx;
-                } 
+            if(worker.tagExtractor.extract(data, chunk.sequenceOffset(r) + barcodeLen, sequenceLength - barcodeLen)<0) continue;   //occurs when any base was not A, C, G, T
+            Tag tag = worker.tagExtractor.tag();
+            worker.goodBarcodedReads++;
+            Tag canonicalTag=canonicalTags.get(tag);
+            if(canonicalTag!=null) {
+                worker.tagsByTaxon.put(barcode.getTaxon(),canonicalTag);
+                worker.matchedReadCounts.merge(barcode.getTaxaName(), 1, Integer::sum);
             }
         }
-        if (indexOfReadEnd > 0 &&
-                (indexOfReadEnd + 20 + readEndCutSiteRemnantLength < preferredLength)) {
-            // trim tag to sequence up to & including the cut site
-            tag = TagBuilder.instance(seq.substring(0, indexOfReadEnd + 20 + readEndCutSiteRemnantLength)).build();
- 
-        } else {
-            int seqEnd = (byte) Math.min(seq.length(), preferredLength);
-            return TagBuilder.instance(seq.substring(0,seqEnd)).build();
-        }
-        return tag;
     }
+
+
     private Tag removeSecondCutSiteAhoC(String seq, int preferredLength) {
         // Removes the second cut site BEFORE we trim the tag.
         // this preserves the cut site incase it shows up in the middle       
@@ -879,6 +877,29 @@ public class ProductionSNPCallerPluginV2 extends AbstractPlugin {
         myBatchSize = new PluginParameter<>(myBatchSize, value);
         return this;
     }
+
+    /**
+     * Maximum number of threads
+     *
+     * @return Max Threads
+     */
+    public Integer maxThreads() {
+        return myMaxThreads.value();
+    }
+
+    /**
+     * Set Max Threads. Threads not needed for the files in
+     * a batch are used to process the reads of each file in
+     * parallel.
+     *
+     * @param value Max Threads
+     *
+     * @return this plugin
+     */
+    public ProductionSNPCallerPluginV2 maxThreads(Integer value) {
+        myMaxThreads = new PluginParameter<>(myMaxThreads, value);
+        return this;
+    }
     /**
      * Minimum quality score within the barcode and read length
      * to be accepted
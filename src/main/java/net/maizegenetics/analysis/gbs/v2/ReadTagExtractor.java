@@ -0,0 +1,249 @@
+package net.maizegenetics.analysis.gbs.v2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.maizegenetics.dna.tag.Tag;
+import net.maizegenetics.dna.tag.TagBuilder;
+
+/**
+ * Finds the tag in a read after the barcode has been removed, working directly on the bytes of the read.  The tag
+ * is trimmed at the first likely read end (second cut site) found after the first 20 bases, when that is before the
+ * preferred tag length.  The read is encoded in 2 bits per base once, and the read ends are found by comparing a
+ * rolling 2 bit window of the read to each read end, so no objects are created for a read except the final Tag.
+ *
+ * Gives the same tags as the String methods previously in GBSSeqToTagDBPlugin and ProductionSNPCallerPluginV2: a
+ * read end is only used if its first occurrence after the first 20 bases does not start at base 20.
+ *
+ * An extractor is not thread safe.  Use one extractor for each thread.
+ */
+public class ReadTagExtractor {
+
+    // read ends are only searched for starting at this position
+    private static final int MIN_READ_END_POSITION = 20;
+    private static final byte[] APEKI_OVERLAP_1 = {'C', 'A', 'G', 'C', 'T', 'G', 'C'};
+    private static final byte[] APEKI_OVERLAP_2 = {'C', 'T', 'G', 'C', 'A', 'G', 'C'};
+    private static final int APEKI_OVERLAP_TRIM = 3;
+
+    // 2 bit code of upper case bases, the code plus 4 for lower case bases, and -1 for other characters
+    private static final byte[] BASE_CODES = new byte[256];
+
+    static {
+        Arrays.fill(BASE_CODES, (byte) -1);
+        BASE_CODES['A'] = 0;
+        BASE_CODES['C'] = 1;
+        BASE_CODES['G'] = 2;
+        BASE_CODES['T'] = 3;
+        BASE_CODES['a'] = 4;
+        BASE_CODES['c'] = 5;
+        BASE_CODES['g'] = 6;
+        BASE_CODES['t'] = 7;
+    }
+
+    private final int myReadEndCutSiteRemnantLength;
+    private final boolean myTrimApeKIOverlap;
+    private final int myPreferredLength;
+    private final int myMinimumLength;
+
+    // read ends of up to 32 upper case A, C, G or T, compared with the rolling window
+    private final long[] myReadEndCodes;
+    private final long[] myReadEndMasks;
+    private final int[] myReadEndLengths;
+    private final int myMaxReadEndLength;
+    // read ends of at least 4 bases indexed by their last 4 bases, so most positions need only one lookup
+    private final int[][] myReadEndsBySuffix = new int[256][];
+    // read ends shorter than 4 bases, checked at every position
+    private final int[] myShortReadEnds;
+    // other read ends, compared byte by byte
+    private final byte[][] myOtherReadEnds;
+
+    private final boolean[] myReadEndSeen;
+    private final long[] myEncodedTag;
+    private int myTagLength = 0;
+
+    /**
+     * @param likelyReadEnds likely read ends of the enzyme
+     * @param readEndCutSiteRemnantLength length of the cut site remnant kept at the end of a trimmed tag
+     * @param trimApeKIOverlap whether to remove the first 3 bases of reads starting with an overlapping ApeKI cut
+     * site
+     * @param preferredLength maximum tag length
+     * @param minimumLength minimum length of a tag trimmed at a read end
+     */
+    public ReadTagExtractor(String[] likelyReadEnds, int readEndCutSiteRemnantLength, boolean trimApeKIOverlap, int preferredLength, int minimumLength) {
+        myReadEndCutSiteRemnantLength = readEndCutSiteRemnantLength;
+        myTrimApeKIOverlap = trimApeKIOverlap;
+        myPreferredLength = preferredLength;
+        myMinimumLength = minimumLength;
+
+        List<String> encodable = new ArrayList<>();
+        List<byte[]> others = new ArrayList<>();
+        for (String readEnd : likelyReadEnds) {
+            if (readEnd.isEmpty()) continue;
+            if (readEnd.length() <= 32 && readEnd.matches("[ACGT]+")) encodable.add(readEnd);
+            else others.add(readEnd.getBytes());
+        }
+        myReadEndCodes = new long[encodable.size()];
+        myReadEndMasks = new long[encodable.size()];
+        myReadEndLengths = new int[encodable.size()];
+        int maxLength = 0;
+        for (int p = 0; p < encodable.size(); p++) {
+            String readEnd = encodable.get(p);
+            long code = 0;
+            for (int i = 0; i < readEnd.length(); i++) code = (code << 2) | BASE_CODES[readEnd.charAt(i)];
+            myReadEndCodes[p] = code;
+            myReadEndMasks[p] = readEnd.length() == 32 ? -1L : (1L << (2 * readEnd.length())) - 1;
+            myReadEndLengths[p] = readEnd.length();
+            maxLength = Math.max(maxLength, readEnd.length());
+        }
+        myMaxReadEndLength = maxLength;
+        List<Integer> shortReadEnds = new ArrayList<>();
+        for (int p = 0; p < myReadEndCodes.length; p++) {
+            if (myReadEndLengths[p] < 4) {
+                shortReadEnds.add(p);
+                continue;
+            }
+            int suffix = (int) (myReadEndCodes[p] & 0xFF);
+            int[] current = myReadEndsBySuffix[suffix];
+            current = current == null ? new int[1] : Arrays.copyOf(current, current.length + 1);
+            current[current.length - 1] = p;
+            myReadEndsBySuffix[suffix] = current;
+        }
+        myShortReadEnds = shortReadEnds.stream().mapToInt(Integer::intValue).toArray();
+        myOtherReadEnds = others.toArray(new byte[others.size()][]);
+        myReadEndSeen = new boolean[myReadEndCodes.length];
+        myEncodedTag = new long[Math.max(1, (preferredLength + 31) / 32)];
+    }
+
+    /**
+     * Finds the tag in a read.  The tag is available from {@link #encodedTag()} and {@link #tag()} until the next
+     * read is extracted.
+     *
+     * @param read bytes containing the read
+     * @param offset start of the read after the barcode
+     * @param length length of the read after the barcode
+     *
+     * @return length of the tag, or -1 if there is no tag because a base is not A, C, G or T or the tag is too short
+     */
+    public int extract(byte[] read, int offset, int length) {
+        myTagLength = 0;
+        if (myTrimApeKIOverlap && (startsWith(read, offset, length, APEKI_OVERLAP_1) || startsWith(read, offset, length, APEKI_OVERLAP_2))) {
+            offset += APEKI_OVERLAP_TRIM;
+            length -= APEKI_OVERLAP_TRIM;
+        }
+        if (length < MIN_READ_END_POSITION) return -1;
+
+        // a read end only trims the tag if it starts before this
+        int lastReadEndStart = myPreferredLength - myReadEndCutSiteRemnantLength - 1;
+        int fullLength = Math.min(length, myPreferredLength);
+        int scanLength = Math.min(length, Math.max(fullLength, lastReadEndStart + myMaxReadEndLength));
+
+        Arrays.fill(myEncodedTag, 0);
+        Arrays.fill(myReadEndSeen, false);
+        int readEndStart = Integer.MAX_VALUE;
+        int firstInvalid = Integer.MAX_VALUE;
+        long window = 0;
+        int upperCaseRun = 0;
+        for (int i = 0; i < scanLength; i++) {
+            int code = BASE_CODES[read[offset + i] & 0xFF];
+            if (code < 0) {
+                if (firstInvalid == Integer.MAX_VALUE) firstInvalid = i;
+                upperCaseRun = 0;
+                continue;
+            }
+            if (i < fullLength) myEncodedTag[i >>> 5] |= (long) (code & 3) << (62 - 2 * (i & 31));
+            window = (window << 2) | (code & 3);
+            upperCaseRun = code < 4 ? upperCaseRun + 1 : 0;
+            if (i < MIN_READ_END_POSITION) continue;
+            for (int p : myShortReadEnds) {
+                readEndStart = checkReadEnd(p, i, window, upperCaseRun, readEndStart);
+            }
+            if (upperCaseRun < 4) continue;
+            int[] readEnds = myReadEndsBySuffix[(int) window & 0xFF];
+            if (readEnds == null) continue;
+            for (int p : readEnds) {
+                readEndStart = checkReadEnd(p, i, window, upperCaseRun, readEndStart);
+            }
+        }
+        for (byte[] readEnd : myOtherReadEnds) {
+            int start = indexOf(read, offset, scanLength, readEnd);
+            if (start > MIN_READ_END_POSITION && start < readEndStart) readEndStart = start;
+        }
+
+        int tagLength;
+        if (readEndStart <= lastReadEndStart) {
+            // trim tag to sequence up to & including the cut site
+            tagLength = readEndStart + myReadEndCutSiteRemnantLength;
+            if (tagLength < myMinimumLength) return -1;
+        } else {
+            tagLength = fullLength;
+        }
+        if (firstInvalid < tagLength) return -1;
+
+        // clear the bases after the end of the tag
+        int lastWord = (tagLength - 1) >>> 5;
+        int basesInLastWord = tagLength - 32 * lastWord;
+        if (basesInLastWord < 32) myEncodedTag[lastWord] &= -1L << (64 - 2 * basesInLastWord);
+        for (int w = lastWord + 1; w < myEncodedTag.length; w++) myEncodedTag[w] = 0;
+        myTagLength = tagLength;
+        return tagLength;
+    }
+
+    /**
+     * Checks whether read end p ends at position end
+     *
+     * @return start of the first read end found so far
+     */
+    private int checkReadEnd(int p, int end, long window, int upperCaseRun, int readEndStart) {
+        int readEndLength = myReadEndLengths[p];
+        int start = end - readEndLength + 1;
+        if (myReadEndSeen[p] || start < MIN_READ_END_POSITION || upperCaseRun < readEndLength) return readEndStart;
+        if ((window & myReadEndMasks[p]) != myReadEndCodes[p]) return readEndStart;
+        // only the first occurrence counts, and it is ignored if it is at the first position searched
+        myReadEndSeen[p] = true;
+        return start > MIN_READ_END_POSITION && start < readEndStart ? start : readEndStart;
+    }
+
+    /**
+     * @return 2 bit encoding of the last tag found, as used by {@link TagBuilder}.  The array is reused for the
+     * next read, and may have more longs than needed for the tag.
+     */
+    public long[] encodedTag() {
+        return myEncodedTag;
+    }
+
+    /**
+     * @return length of the last tag found, or 0 if there was none
+     */
+    public int tagLength() {
+        return myTagLength;
+    }
+
+    /**
+     * @return last tag found, or null if there was none
+     */
+    public Tag tag() {
+        if (myTagLength == 0) return null;
+        return TagBuilder.instance(Arrays.copyOf(myEncodedTag, (myTagLength + 31) / 32), (short) myTagLength).build();
+    }
+
+    private static boolean startsWith(byte[] read, int offset, int length, byte[] prefix) {
+        if (length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (read[offset + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return start of the first occurrence of readEnd starting at or after MIN_READ_END_POSITION, or -1
+     */
+    private static int indexOf(byte[] read, int offset, int length, byte[] readEnd) {
+        for (int start = MIN_READ_END_POSITION; start + readEnd.length <= length; start++) {
+            int i = 0;
+            while (i < readEnd.length && read[offset + start + i] == readEnd[i]) i++;
+            if (i == readEnd.length) return start;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,549 @@
+package net.maizegenetics.analysis.gbs.v2;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import net.maizegenetics.dna.tag.Tag;
+import net.maizegenetics.dna.tag.TagBuilder;
+import net.maizegenetics.dna.tag.TaxaDistBuilder;
+import net.maizegenetics.dna.tag.TaxaDistribution;
+
+/**
+ * Counts reads by tag and taxon without creating Tag or TaxaDistribution objects.  Tags are stored by their 2 bit
+ * encoding (as in {@link TagBuilder}) in open addressing hash tables.  The tags are divided into partitions by hash.
+ *
+ * Only {@link #addAll(List)} is thread safe.  It locks each partition while adding to it, so threads can count reads
+ * into counters of their own without locking and add them to a shared counter at any time (see
+ * {@link TagCounterShards}).  Other methods of the shared counter must not be called while counters are being added,
+ * except {@link #size()}, which is then approximate.
+ *
+ * The depths of a tag are stored like {@link TaxaDistBuilder#create(int, int[])}: the taxon index is in the first
+ * three bytes of an int and the depth is in the last byte as an unsigned byte.  A taxon with a depth greater than 255
+ * has more than one value.  The first value for a tag is stored with the key, so most tags need no other objects.
+ *
+ */
+public class TagCounter {
+
+    private static final int NUMBER_OF_PARTITIONS = 64;
+    private static final int PARTITION_SHIFT = 64 - Integer.numberOfTrailingZeros(NUMBER_OF_PARTITIONS);
+    private static final int MAX_DEPTH_PER_VALUE = 255;
+    private static final int MAX_TAXA = 1 << 24;
+
+    private final int myMaxTaxa;
+    private final int myLongsPerTag;
+    private final Partition[] myPartitions;
+    private final long[] myEncodedTag;
+
+    /**
+     * @param maxTaxa number of taxa
+     * @param maxTagLength length of the longest tag that will be counted
+     */
+    public TagCounter(int maxTaxa, int maxTagLength) {
+        if (maxTaxa > MAX_TAXA) {
+            throw new IllegalArgumentException("TagCounter: init: number of taxa: " + maxTaxa + " is more than the maximum: " + MAX_TAXA);
+        }
+        myMaxTaxa = maxTaxa;
+        myLongsPerTag = Math.max(1, (maxTagLength + 31) / 32);
+        myPartitions = new Partition[NUMBER_OF_PARTITIONS];
+        for (int i = 0; i < NUMBER_OF_PARTITIONS; i++) {
+            myPartitions[i] = new Partition(myLongsPerTag);
+        }
+        myEncodedTag = new long[myLongsPerTag];
+    }
+
+    /**
+     * Counts one read of a tag for a taxon
+     *
+     * @param sequence tag sequence
+     * @param taxon taxon index
+     *
+     * @return false if the sequence has a base other than A, C, G or T and was not counted
+     */
+    public boolean increment(String sequence, int taxon) {
+        if (!encode(sequence, myEncodedTag)) return false;
+        add(myEncodedTag, 0, (short) sequence.length(), taxon, 1);
+        return true;
+    }
+
+    /**
+     * Encodes a tag sequence into key
+     *
+     * @return false if the sequence is empty or has a base other than A, C, G or T
+     */
+    private boolean encode(String sequence, long[] key) {
+        int length = sequence.length();
+        if (length == 0) return false;
+        if (length > myLongsPerTag * 32) {
+            throw new IllegalArgumentException("TagCounter: increment: tag length: " + length + " is longer than the maximum: " + myLongsPerTag * 32);
+        }
+        Arrays.fill(key, 0);
+        for (int i = 0; i < length; i++) {
+            long code;
+            switch (sequence.charAt(i)) {
+                case 'A':
+                case 'a':
+                    code = 0;
+                    break;
+                case 'C':
+                case 'c':
+                    code = 1;
+                    break;
+                case 'G':
+                case 'g':
+                    code = 2;
+                    break;
+                case 'T':
+                case 't':
+                    code = 3;
+                    break;
+                default:
+                    return false;
+            }
+            key[i >>> 5] |= code << (62 - 2 * (i & 31));
+        }
+        return true;
+    }
+
+    /**
+     * Counts one read of a tag that is already 2 bit encoded, for example by {@link ReadTagExtractor}
+     *
+     * @param seq2Bit 2 bit encoding of the tag as used by {@link TagBuilder}, with the bits after the end of the tag
+     * set to zero.  Longs after the end of the tag are ignored.
+     * @param length tag length
+     * @param taxon taxon index
+     */
+    public void increment(long[] seq2Bit, int length, int taxon) {
+        add(copyKey(seq2Bit, length, myEncodedTag), 0, (short) length, taxon, 1);
+    }
+
+    private long[] copyKey(long[] seq2Bit, int length, long[] key) {
+        if (length > myLongsPerTag * 32) {
+            throw new IllegalArgumentException("TagCounter: increment: tag length: " + length + " is longer than the maximum: " + myLongsPerTag * 32);
+        }
+        int longsForTag = (length + 31) / 32;
+        System.arraycopy(seq2Bit, 0, key, 0, longsForTag);
+        Arrays.fill(key, longsForTag, myLongsPerTag, 0);
+        return key;
+    }
+
+    /**
+     * Adds the depths of a tag, for example from an existing database
+     *
+     * @param tag tag
+     * @param taxaDistribution depths of the tag for each taxon
+     */
+    public void add(Tag tag, TaxaDistribution taxaDistribution) {
+        long[] seq2Bit = tag.seq2Bit();
+        if (seq2Bit.length > myLongsPerTag) {
+            throw new IllegalArgumentException("TagCounter: add: tag length: " + tag.seqLength() + " is longer than the maximum: " + myLongsPerTag * 32);
+        }
+        long[] key = Arrays.copyOf(seq2Bit, myLongsPerTag);
+        int[] depths = taxaDistribution.depths();
+        for (int taxon = 0; taxon < depths.length; taxon++) {
+            if (depths[taxon] > 0) add(key, 0, tag.seqLength(), taxon, depths[taxon]);
+        }
+    }
+
+    private void add(long[] key, int offset, short length, int taxon, int depth) {
+        long hash = hash(key, offset, myLongsPerTag, length);
+        myPartitions[(int) (hash >>> PARTITION_SHIFT)].add(key, offset, length, hash, taxon, depth);
+    }
+
+    /**
+     * Adds the counts from other counters to this one.  Partitions are merged in parallel, each under its lock, so
+     * several threads can add to this counter at once.  Other counters are not changed.
+     *
+     * @param others counters with the same number of taxa and tag length
+     */
+    public void addAll(List<TagCounter> others) {
+        for (TagCounter other : others) {
+            if (other.myLongsPerTag != myLongsPerTag || other.myMaxTaxa != myMaxTaxa) {
+                throw new IllegalArgumentException("TagCounter: addAll: counters must have the same number of taxa and maximum tag length.");
+            }
+        }
+        IntStream.range(0, NUMBER_OF_PARTITIONS).parallel().forEach(p -> {
+            synchronized (myPartitions[p]) {
+                for (TagCounter other : others) {
+                    myPartitions[p].addAll(other.myPartitions[p]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes all tags, keeping the tables allocated so the counter can be reused
+     */
+    public void clear() {
+        for (Partition partition : myPartitions) partition.clear();
+    }
+
+    /**
+     * Removes tags that are not repeated in at least minTaxa taxa.  The concept is that all biologically real tags
+     * should show up twice somewhere.
+     *
+     * @param minTaxa minimum number of taxa with a depth of at least two
+     *
+     * @return number of tags removed
+     */
+    public long removeTagsWithoutReplication(int minTaxa) {
+        return retain(partition -> slot -> partition.totalDepth(slot) >= 2 * minTaxa && partition.hasTaxaWithReplication(slot, minTaxa));
+    }
+
+    /**
+     * Removes tags with total depth less than minCount
+     *
+     * @param minCount minimum total depth
+     *
+     * @return number of tags removed
+     */
+    public long removeTagsByCount(int minCount) {
+        return retain(partition -> slot -> partition.totalDepth(slot) >= minCount);
+    }
+
+    private long retain(java.util.function.Function<Partition, IntPredicate> keep) {
+        long sizeBefore = size();
+        IntStream.range(0, NUMBER_OF_PARTITIONS).parallel().forEach(p -> myPartitions[p].retain(keep.apply(myPartitions[p])));
+        return sizeBefore - size();
+    }
+
+    /**
+     * @return number of taxa
+     */
+    public int maxTaxa() {
+        return myMaxTaxa;
+    }
+
+    /**
+     * @return length of the longest tag that can be counted
+     */
+    public int maxTagLength() {
+        return myLongsPerTag * 32;
+    }
+
+    /**
+     * @return number of tags
+     */
+    public long size() {
+        long result = 0;
+        for (Partition partition : myPartitions) result += partition.size;
+        return result;
+    }
+
+    /**
+     * @return sum of depths of all tags
+     */
+    public long totalDepth() {
+        long result = 0;
+        for (Partition partition : myPartitions) {
+            for (int slot = 0; slot < partition.lengths.length; slot++) {
+                if (partition.lengths[slot] != 0) result += partition.totalDepth(slot);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return estimated bytes used by this counter
+     */
+    public long memorySize() {
+        long result = 0;
+        for (Partition partition : myPartitions) result += partition.memorySize();
+        return result;
+    }
+
+    /**
+     * @return estimated bytes used by the hash tables, without the extra values of taxa with high depth.  Faster than
+     * {@link #memorySize()}.
+     */
+    public long tableMemorySize() {
+        long result = 0;
+        for (Partition partition : myPartitions) result += partition.tableMemorySize();
+        return result;
+    }
+
+    /**
+     * Creates the tags and taxa distributions, for example to write to a database.  Call after rare tags have been
+     * removed, since this creates objects for every tag.
+     *
+     * @return map of tag to taxa distribution
+     */
+    public Map<Tag, TaxaDistribution> toTaxaDistributionMap() {
+        Map<Tag, TaxaDistribution> result = new HashMap<>((int) (size() * 4 / 3 + 1));
+        for (Partition partition : myPartitions) {
+            for (int slot = 0; slot < partition.lengths.length; slot++) {
+                short length = partition.lengths[slot];
+                if (length == 0) continue;
+                long[] seq2Bit = Arrays.copyOfRange(partition.keys, slot * myLongsPerTag, slot * myLongsPerTag + (length + 31) / 32);
+                result.put(TagBuilder.instance(seq2Bit, length).build(), partition.taxaDistribution(slot, myMaxTaxa));
+            }
+        }
+        return result;
+    }
+
+    private static long hash(long[] key, int offset, int longsPerTag, short length) {
+        long h = length;
+        for (int i = 0; i < longsPerTag; i++) {
+            h = (h ^ key[offset + i]) * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 31;
+        }
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Open addressing hash table for the tags in one partition.  Empty slots have length 0.
+     */
+    private static final class Partition {
+
+        private static final int INITIAL_CAPACITY = 1 << 10;
+        private static final float LOAD_FACTOR = 0.75f;
+
+        private final int longsPerTag;
+        private long[] keys;
+        private short[] lengths;
+        private int[] firstTaxaDepth;
+        private int[][] moreTaxaDepths;
+        private int size = 0;
+
+        Partition(int longsPerTag) {
+            this.longsPerTag = longsPerTag;
+            allocate(INITIAL_CAPACITY);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity * longsPerTag];
+            lengths = new short[capacity];
+            firstTaxaDepth = new int[capacity];
+            moreTaxaDepths = new int[capacity][];
+        }
+
+        /**
+         * @return slot holding the tag, or the empty slot where it should be added
+         */
+        private int findSlot(long[] key, int offset, short length, long hash) {
+            int mask = lengths.length - 1;
+            int slot = (int) hash & mask;
+            while (true) {
+                if (lengths[slot] == 0) return slot;
+                if (lengths[slot] == length) {
+                    int start = slot * longsPerTag;
+                    boolean same = true;
+                    for (int i = 0; i < longsPerTag; i++) {
+                        if (keys[start + i] != key[offset + i]) {
+                            same = false;
+                            break;
+                        }
+                    }
+                    if (same) return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        void add(long[] key, int offset, short length, long hash, int taxon, int depth) {
+            int slot = findSlot(key, offset, length, hash);
+            if (lengths[slot] == 0) {
+                if (size + 1 > LOAD_FACTOR * lengths.length) {
+                    grow();
+                    slot = findSlot(key, offset, length, hash);
+                }
+                System.arraycopy(key, offset, keys, slot * longsPerTag, longsPerTag);
+                lengths[slot] = length;
+                size++;
+            }
+            addTaxaDepth(slot, taxon, depth);
+        }
+
+        void addAll(Partition other) {
+            for (int otherSlot = 0; otherSlot < other.lengths.length; otherSlot++) {
+                short length = other.lengths[otherSlot];
+                if (length == 0) continue;
+                int offset = otherSlot * longsPerTag;
+                long hash = hash(other.keys, offset, longsPerTag, length);
+                int value = other.firstTaxaDepth[otherSlot];
+                add(other.keys, offset, length, hash, value >>> 8, value & 0xFF);
+                int[] more = other.moreTaxaDepths[otherSlot];
+                if (more != null) {
+                    int slot = findSlot(other.keys, offset, length, hash);
+                    for (int taxaDepth : more) {
+                        if (taxaDepth == 0) break;
+                        addTaxaDepth(slot, taxaDepth >>> 8, taxaDepth & 0xFF);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds depth to the values for taxon, filling the existing value before adding another
+         */
+        private void addTaxaDepth(int slot, int taxon, int depth) {
+            if (depth <= 0) return;
+            int first = firstTaxaDepth[slot];
+            if (first == 0) {
+                int added = Math.min(depth, MAX_DEPTH_PER_VALUE);
+                firstTaxaDepth[slot] = (taxon << 8) | added;
+                depth -= added;
+            } else if ((first >>> 8) == taxon) {
+                int added = Math.min(depth, MAX_DEPTH_PER_VALUE - (first & 0xFF));
+                firstTaxaDepth[slot] = first + added;
+                depth -= added;
+            }
+            if (depth == 0) return;
+
+            int[] more = moreTaxaDepths[slot];
+            int index = 0;
+            if (more != null) {
+                for (; index < more.length; index++) {
+                    int value = more[index];
+                    if (value == 0) break;
+                    if ((value >>> 8) == taxon) {
+                        int added = Math.min(depth, MAX_DEPTH_PER_VALUE - (value & 0xFF));
+                        more[index] = value + added;
+                        depth -= added;
+                        if (depth == 0) return;
+                    }
+                }
+            }
+            while (depth > 0) {
+                if (more == null) {
+                    more = new int[2];
+                    moreTaxaDepths[slot] = more;
+                } else if (index == more.length) {
+                    more = Arrays.copyOf(more, more.length * 2);
+                    moreTaxaDepths[slot] = more;
+                }
+                int added = Math.min(depth, MAX_DEPTH_PER_VALUE);
+                more[index++] = (taxon << 8) | added;
+                depth -= added;
+            }
+        }
+
+        int totalDepth(int slot) {
+            int result = firstTaxaDepth[slot] & 0xFF;
+            int[] more = moreTaxaDepths[slot];
+            if (more != null) {
+                for (int value : more) {
+                    if (value == 0) break;
+                    result += value & 0xFF;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return true if at least minTaxa taxa have a depth of at least two
+         */
+        boolean hasTaxaWithReplication(int slot, int minTaxa) {
+            int first = firstTaxaDepth[slot];
+            int count = (first & 0xFF) > 1 ? 1 : 0;
+            if (count >= minTaxa) return true;
+            int[] more = moreTaxaDepths[slot];
+            if (more == null) return false;
+
+            // A taxon only has more than one value if the earlier ones are full, so only those taxa need to be
+            // checked for duplicates
+            Set<Integer> fullTaxa = null;
+            if ((first & 0xFF) == MAX_DEPTH_PER_VALUE) {
+                fullTaxa = new HashSet<>();
+                fullTaxa.add(first >>> 8);
+            }
+            for (int value : more) {
+                if (value == 0) break;
+                if ((value & 0xFF) < 2) continue;
+                int taxon = value >>> 8;
+                if (fullTaxa != null && fullTaxa.contains(taxon)) continue;
+                if ((value & 0xFF) == MAX_DEPTH_PER_VALUE) {
+                    if (fullTaxa == null) fullTaxa = new HashSet<>();
+                    fullTaxa.add(taxon);
+                }
+                count++;
+                if (count >= minTaxa) return true;
+            }
+            return false;
+        }
+
+        TaxaDistribution taxaDistribution(int slot, int maxTaxa) {
+            Map<Integer, Integer> depthByTaxon = new HashMap<>();
+            int first = firstTaxaDepth[slot];
+            depthByTaxon.merge(first >>> 8, first & 0xFF, Integer::sum);
+            int[] more = moreTaxaDepths[slot];
+            if (more != null) {
+                for (int value : more) {
+                    if (value == 0) break;
+                    depthByTaxon.merge(value >>> 8, value & 0xFF, Integer::sum);
+                }
+            }
+            int[] taxa = depthByTaxon.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            int[] depths = new int[taxa.length];
+            for (int i = 0; i < taxa.length; i++) depths[i] = depthByTaxon.get(taxa[i]);
+            return TaxaDistBuilder.create(maxTaxa, taxa, depths);
+        }
+
+        void clear() {
+            Arrays.fill(lengths, (short) 0);
+            Arrays.fill(firstTaxaDepth, 0);
+            Arrays.fill(moreTaxaDepths, null);
+            size = 0;
+        }
+
+        private void grow() {
+            rehash(lengths.length * 2, slot -> true);
+        }
+
+        void retain(IntPredicate keep) {
+            int kept = 0;
+            for (int slot = 0; slot < lengths.length; slot++) {
+                if (lengths[slot] != 0 && keep.test(slot)) kept++;
+            }
+            if (kept == size) return;
+            int capacity = INITIAL_CAPACITY;
+            while (kept > LOAD_FACTOR * capacity) capacity *= 2;
+            rehash(capacity, keep);
+        }
+
+        /**
+         * Moves the tags accepted by keep to new tables with the given capacity
+         */
+        private void rehash(int capacity, IntPredicate keep) {
+            long[] oldKeys = keys;
+            short[] oldLengths = lengths;
+            int[] oldFirst = firstTaxaDepth;
+            int[][] oldMore = moreTaxaDepths;
+            boolean[] kept = new boolean[oldLengths.length];
+            for (int slot = 0; slot < oldLengths.length; slot++) {
+                kept[slot] = oldLengths[slot] != 0 && keep.test(slot);
+            }
+
+            allocate(capacity);
+            size = 0;
+            for (int oldSlot = 0; oldSlot < oldLengths.length; oldSlot++) {
+                if (!kept[oldSlot]) continue;
+                int offset = oldSlot * longsPerTag;
+                int slot = findSlot(oldKeys, offset, oldLengths[oldSlot], hash(oldKeys, offset, longsPerTag, oldLengths[oldSlot]));
+                System.arraycopy(oldKeys, offset, keys, slot * longsPerTag, longsPerTag);
+                lengths[slot] = oldLengths[oldSlot];
+                firstTaxaDepth[slot] = oldFirst[oldSlot];
+                moreTaxaDepths[slot] = oldMore[oldSlot];
+                size++;
+            }
+        }
+
+        long tableMemorySize() {
+            return (long) lengths.length * (8L * longsPerTag + 2 + 4 + 8);
+        }
+
+        long memorySize() {
+            long result = tableMemorySize();
+            for (int[] more : moreTaxaDepths) {
+                if (more != null) result += 16 + 4L * more.length;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package net.maizegenetics.analysis.gbs.v2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Per-thread TagCounters, so that worker threads count reads without locking.  A worker borrows a shard, counts into
+ * it with {@link TagCounter#increment(long[], int, int)} and releases it when done.  A shard that grows past its share
+ * of memory is added to the shared counter and cleared, so memory does not grow with the number of threads.  Released
+ * shards are reused by later workers and added to the shared counter by {@link #merge()}.
+ */
+class TagCounterShards {
+
+    private final TagCounter myTarget;
+    private final long myMaxShardBytes;
+    private final ConcurrentLinkedQueue<TagCounter> myFreeShards = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Shards share a quarter of the maximum heap.
+     *
+     * @param target shared counter
+     * @param numberOfThreads maximum number of threads counting at once
+     */
+    TagCounterShards(TagCounter target, int numberOfThreads) {
+        this(target, Runtime.getRuntime().maxMemory() / 4 / Math.max(1, numberOfThreads));
+    }
+
+    /**
+     * @param target shared counter
+     * @param maxShardBytes size of the hash tables of a shard above which it is added to the shared counter
+     */
+    TagCounterShards(TagCounter target, long maxShardBytes) {
+        myTarget = target;
+        myMaxShardBytes = maxShardBytes;
+    }
+
+    /**
+     * @return shard for the calling thread only, until it is released
+     */
+    TagCounter borrow() {
+        TagCounter shard = myFreeShards.poll();
+        if (shard == null) shard = new TagCounter(myTarget.maxTaxa(), myTarget.maxTagLength());
+        return shard;
+    }
+
+    /**
+     * Adds the shard to the shared counter and clears it if it uses more than its share of memory
+     */
+    void flushIfFull(TagCounter shard) {
+        if (shard.tableMemorySize() > myMaxShardBytes) {
+            myTarget.addAll(Collections.singletonList(shard));
+            shard.clear();
+        }
+    }
+
+    /**
+     * Returns a shard, keeping its counts until {@link #merge()}
+     */
+    void release(TagCounter shard) {
+        myFreeShards.add(shard);
+    }
+
+    /**
+     * Adds all released shards to the shared counter and drops them.  Call after all workers have released their
+     * shards.
+     */
+    void merge() {
+        List<TagCounter> shards = new ArrayList<>();
+        TagCounter shard;
+        while ((shard = myFreeShards.poll()) != null) shards.add(shard);
+        if (!shards.isEmpty()) myTarget.addAll(shards);
+    }
+}
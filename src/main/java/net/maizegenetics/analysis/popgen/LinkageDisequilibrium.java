@@ -12,15 +12,26 @@ import net.maizegenetics.dna.snp.GenotypeTable;
 import net.maizegenetics.dna.snp.GenotypeTableBuilder;
 import net.maizegenetics.stats.statistics.FisherExact;
 import net.maizegenetics.util.BitSet;
+import net.maizegenetics.util.BitUtil;
 import net.maizegenetics.util.OpenBitSet;
 import net.maizegenetics.util.ProgressListener;
 import net.maizegenetics.util.TableReport;
+import net.maizegenetics.util.Utils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.Serializable;
 import java.io.StringWriter;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 /**
  * This class calculates D' and r^2 estimates of linkage disequilibrium. It also
@@ -46,6 +57,15 @@ import java.util.Arrays;
  * from SSR to SNPs these methods are less relevant. Researchers should convert
  * to biallelic - either by ignoring rarer classes or collapsing rarer states.
  * <p>
+ * Tests are calculated in parallel in blocks of consecutive tests. Results are
+ * kept in primitive arrays indexed by test, rather than one object per test.
+ * <p>
+ * If an output file is set (setOutputFile()), site pairs passing the r^2 and
+ * p-value thresholds are written to the file as they are calculated and
+ * nothing is kept per test. Instead, mean r^2 is accumulated in bins of
+ * physical distance (LD decay), so memory doesn't grow with the number of
+ * tests.
+ * <p>
  * TODO: Add 3x3 (genotype) mode.
  *
  * @version $Id: LinkageDisequilibrium.java,v 2
@@ -90,6 +110,10 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
         Haplotype, Homozygous, Genotype
     };
     private static final Logger myLogger = LogManager.getLogger(LinkageDisequilibrium.class);
+    // Number of consecutive tests calculated by one task
+    private static final int TESTS_PER_BLOCK = 4096;
+    // Maximum number of sites whose allele words are cached by one task
+    private static final int MAX_CACHED_SITES = 1024;
     private GenotypeTable myAlignment;
 //    private Alignment mySBitAlignment;
     private int myMinTaxaForEstimate = 20;
@@ -98,10 +122,31 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
     private long myTotalTests = 0;
     private testDesign myCurrDesign = testDesign.SlidingWindow;
     /**
-     * HashMap of results Key = (site1*siteNum + site2), Value = float[rsqr,d',
-     * pvalue, sampleSize]
+     * Results indexed by test. See getTestIndex()
      */
-    private OpenLongObjectHashMap myMapResults;
+    private float[] myRSqr;
+    private float[] myDPrime;
+    private float[] myPValue;
+    private int[] mySampleSize;
+    /**
+     * Test index of each site pair for site list design. Key = (site1*siteNum
+     * + site2), Value = test index
+     */
+    private OpenLongObjectHashMap mySiteListIndices;
+    private final AtomicLong myNumTestsDone = new AtomicLong();
+    /**
+     * Streaming output. Pairs are written to this file instead of kept in
+     * memory.
+     */
+    private String myOutputFile = null;
+    private float myMinR2 = 0.0f;
+    private float myMaxPValue = 1.0f;
+    private int myDecayBinWidth = 1000;
+    private int myNumDecayBins = 100;
+    private long[] myDecayCounts;
+    private double[] myDecayR2Sums;
+    private long myNumPairsWritten = 0;
+    private final AtomicInteger myLastProgress = new AtomicInteger(-1);
     private ProgressListener myListener = null;
     private FisherExact myFisherExact;
     private boolean myIsAccumulativeReport = false;
@@ -147,6 +192,73 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
         myHetTreatment = hetTreatment;
     }
 
+    /**
+     * Sets file (.gz for compressed) to which site pairs are written as they
+     * are calculated. Results are not kept in memory, and the table report of
+     * this becomes the LD decay by distance bins (unless accumulative r^2
+     * report). Must be set before run().
+     *
+     * @param filename output file name
+     */
+    public void setOutputFile(String filename) {
+        myOutputFile = filename;
+    }
+
+    public String getOutputFile() {
+        return myOutputFile;
+    }
+
+    /**
+     * Sets minimum r^2 of site pairs written to output file.
+     *
+     * @param minR2 minimum r^2
+     */
+    public void setMinR2(float minR2) {
+        myMinR2 = minR2;
+    }
+
+    public float getMinR2() {
+        return myMinR2;
+    }
+
+    /**
+     * Sets maximum p-value of site pairs written to output file.
+     *
+     * @param maxPValue maximum p-value
+     */
+    public void setMaxPValue(float maxPValue) {
+        myMaxPValue = maxPValue;
+    }
+
+    public float getMaxPValue() {
+        return myMaxPValue;
+    }
+
+    /**
+     * Sets distance bins used to accumulate LD decay when writing to output
+     * file. Site pairs on the same chromosome at least binWidth * numBins bp
+     * apart are not binned.
+     *
+     * @param binWidth width of bins (bp)
+     * @param numBins number of bins
+     */
+    public void setDecayBins(int binWidth, int numBins) {
+        if ((binWidth < 1) || (numBins < 1)) {
+            throw new IllegalArgumentException("LinkageDisequilibrium: setDecayBins: bin width and number of bins must be positive.");
+        }
+        myDecayBinWidth = binWidth;
+        myNumDecayBins = numBins;
+    }
+
+    /**
+     * Returns number of site pairs written to output file.
+     *
+     * @return number of pairs written
+     */
+    public long getNumPairsWritten() {
+        return myNumPairsWritten;
+    }
+
     /**
      * starts the thread to calculate LD
      */
@@ -184,8 +296,25 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
         if (myIsAccumulativeReport) {
             myAccumulativeInterval = 1.0f / (float) myNumAccumulativeBins;
             myAccumulativeRValueBins = new int[myNumAccumulativeBins + 1];
-        } else {
-            myMapResults = new OpenLongObjectHashMap((int)numSites);
+        }
+        if (myOutputFile != null) {
+            myDecayCounts = new long[myNumDecayBins];
+            myDecayR2Sums = new double[myNumDecayBins];
+        } else if (!myIsAccumulativeReport) {
+            if (myTotalTests > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("LinkageDisequilibrium: initMatrices: too many tests to keep results in memory: " + myTotalTests + ". Use accumulative report.");
+            }
+            int numTests = (int) myTotalTests;
+            myRSqr = new float[numTests];
+            myDPrime = new float[numTests];
+            myPValue = new float[numTests];
+            mySampleSize = new int[numTests];
+            if (myCurrDesign == testDesign.SiteList) {
+                mySiteListIndices = new OpenLongObjectHashMap(numTests);
+                for (int i = 0; i < numTests; i++) {
+                    mySiteListIndices.put(getMapKey(getRowFromIndex(i), getColFromIndex(i)), Integer.valueOf(i));
+                }
+            }
         }
 
     }
@@ -194,6 +323,62 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
         return (c < r) ? (((long) c * myAlignment.numberOfSites()) + r) : (((long) r * myAlignment.numberOfSites()) + c);
     }
 
+    /**
+     * Returns index of the test for the given site pair. This is the inverse
+     * of getRowFromIndex() and getColFromIndex().
+     *
+     * @param site1 site 1
+     * @param site2 site 2
+     *
+     * @return test index or -1 if pair not tested
+     */
+    private int getTestIndex(int site1, int site2) {
+
+        if (myRSqr == null) {
+            return -1;
+        }
+
+        long row = Math.max(site1, site2);
+        long col = Math.min(site1, site2);
+        if ((row == col) || (col < 0) || (row >= myAlignment.numberOfSites())) {
+            return -1;
+        }
+
+        long index;
+        switch (myCurrDesign) {
+            case All:
+                index = row * (row - 1) / 2 + col;
+                break;
+            case SlidingWindow:
+                long w = myWindowSize;
+                if (row - col > w) {
+                    return -1;
+                } else if (row <= w) {
+                    index = row * (row - 1) / 2 + col;
+                } else {
+                    index = w * (w + 1) / 2 + (row - w - 1) * w + col - (row - w);
+                }
+                break;
+            case SiteByAll:
+                if (row == myTestSite) {
+                    index = col;
+                } else if (col == myTestSite) {
+                    index = row - 1;
+                } else {
+                    return -1;
+                }
+                break;
+            case SiteList:
+                Integer result = (Integer) mySiteListIndices.get(getMapKey((int) row, (int) col));
+                return (result == null) ? -1 : result;
+            default:
+                return -1;
+        }
+
+        return (index < myTotalTests) ? (int) index : -1;
+
+    }
+
     public static LDResult calculateBitLDForHaplotype(boolean ignoreHets, int minTaxaForEstimate, GenotypeTable alignment, int site1, int site2) {
         FisherExact fisherExact = FisherExact.getInstance((2 * alignment.numberOfTaxa()) + 10);
         BitSet rMj = alignment.allelePresenceForAllTaxa(site1, WHICH_ALLELE.Major);
@@ -220,32 +405,211 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
         } else {
             workingAlignment = myAlignment;
         }
-        for (long currTest = 0; currTest < myTotalTests; currTest++) {
+        // Creates bit storage before tests are distributed to threads
+        workingAlignment.bitStorage(WHICH_ALLELE.Major);
+        workingAlignment.bitStorage(WHICH_ALLELE.Minor);
+
+        myNumTestsDone.set(0);
+        long numBlocks = (myTotalTests + TESTS_PER_BLOCK - 1) / TESTS_PER_BLOCK;
+        if (myOutputFile == null) {
+            LongStream.range(0, numBlocks).parallel().forEach(block -> calculateBlock(workingAlignment, block, null));
+            return;
+        }
+
+        // Blocks are calculated in waves, so only one wave of output is held in memory
+        long blocksPerWave = 4L * Runtime.getRuntime().availableProcessors();
+        myNumPairsWritten = 0;
+        try (BufferedWriter writer = Utils.getBufferedWriter(myOutputFile)) {
+            writer.write("Locus1\tPosition1\tSite1\tLocus2\tPosition2\tSite2\tDist_bp\tR^2\tDPrime\tpDiseq\tN\n");
+            for (long wave = 0; wave < numBlocks; wave += blocksPerWave) {
+                List<StringBuilder> outputs = LongStream.range(wave, Math.min(wave + blocksPerWave, numBlocks)).parallel()
+                        .mapToObj(block -> {
+                            StringBuilder output = new StringBuilder();
+                            calculateBlock(workingAlignment, block, output);
+                            return output;
+                        })
+                        .collect(Collectors.toList());
+                for (StringBuilder output : outputs) {
+                    writer.append(output);
+                }
+            }
+        } catch (IOException e) {
+            myLogger.debug(e.getMessage(), e);
+            throw new IllegalStateException("LinkageDisequilibrium: calculateBitLDForHaplotype: problem writing: " + myOutputFile + "\n" + e.getMessage());
+        }
+        myLogger.info("calculateBitLDForHaplotype: wrote " + myNumPairsWritten + " of " + myTotalTests + " site pairs to: " + myOutputFile);
+    }
+
+    /**
+     * Calculates tests of given block. Allele words of sites are cached for
+     * the block, since consecutive tests share sites.
+     *
+     * @param alignment genotypes
+     * @param block block index
+     * @param output if not null, pairs passing thresholds are appended here
+     * rather than stored by test index
+     */
+    private void calculateBlock(GenotypeTable alignment, long block, StringBuilder output) {
+
+        long startTest = block * TESTS_PER_BLOCK;
+        long endTest = Math.min(startTest + TESTS_PER_BLOCK, myTotalTests);
+
+        int numWords = BitUtil.bits2words(alignment.numberOfTaxa());
+        Map<Integer, long[][]> siteWords = new LinkedHashMap<Integer, long[][]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, long[][]> eldest) {
+                return size() > MAX_CACHED_SITES;
+            }
+        };
+
+        int[] bins = myIsAccumulativeReport ? new int[myNumAccumulativeBins + 1] : null;
+        long[] decayCounts = (output != null) ? new long[myNumDecayBins] : null;
+        double[] decayR2Sums = (output != null) ? new double[myNumDecayBins] : null;
+        long numWritten = 0;
+        float minR2 = (output != null) ? myMinR2 : -1.0f;
+        int[][] contig = new int[2][2];
+        for (long currTest = startTest; currTest < endTest; currTest++) {
             int r = getRowFromIndex(currTest);
             int c = getColFromIndex(currTest);
-            int currentProgress = (int) (100.0 * ((double) currTest / (double) myTotalTests));
-            fireProgress(currentProgress);
-            BitSet rMj = workingAlignment.allelePresenceForAllTaxa(r, WHICH_ALLELE.Major);
-            BitSet rMn = workingAlignment.allelePresenceForAllTaxa(r, WHICH_ALLELE.Minor);
-            BitSet cMj = workingAlignment.allelePresenceForAllTaxa(c, WHICH_ALLELE.Major);
-            BitSet cMn = workingAlignment.allelePresenceForAllTaxa(c, WHICH_ALLELE.Minor);
-            LDResult ldr = getLDForSitePair(rMj, rMn, cMj, cMn, 2, myMinTaxaForEstimate, -1.0f, myFisherExact,r,c);
-            if (myIsAccumulativeReport) {
+            long[][] rWords = siteWords.computeIfAbsent(r, site -> alleleWords(alignment, site, numWords));
+            long[][] cWords = siteWords.computeIfAbsent(c, site -> alleleWords(alignment, site, numWords));
+            haplotypeCounts(rWords[0], rWords[1], cWords[0], cWords[1], contig);
+            LDResult ldr = getLDForCounts(contig, 2, myMinTaxaForEstimate, minR2, myFisherExact, r, c);
+            if (output != null) {
+                if (writeResult(ldr, output, decayCounts, decayR2Sums)) {
+                    numWritten++;
+                }
+            }
+            if (bins != null) {
                 if (Float.isNaN(ldr.r2())) {
-                    myAccumulativeRValueBins[myNumAccumulativeBins]++;
+                    bins[myNumAccumulativeBins]++;
                 } else if (ldr.r2() == 1.0f) {
-                    myAccumulativeRValueBins[myNumAccumulativeBins - 1]++;
+                    bins[myNumAccumulativeBins - 1]++;
                 } else {
                     int index = (int) Math.floor(ldr.r2() / myAccumulativeInterval);
-                    myAccumulativeRValueBins[index]++;
+                    bins[index]++;
                 }
-            } else {
-                long key = getMapKey(r, c);
-                myMapResults.put(key, ldr);
+            } else if (output == null) {
+                int index = (int) currTest;
+                myRSqr[index] = ldr.r2();
+                myDPrime[index] = ldr.dPrime();
+                myPValue[index] = ldr.p();
+                mySampleSize[index] = ldr.n();
+            }
+        }
+
+        if (bins != null) {
+            synchronized (myAccumulativeRValueBins) {
+                for (int i = 0; i < bins.length; i++) {
+                    myAccumulativeRValueBins[i] += bins[i];
+                }
+            }
+        }
+
+        if (output != null) {
+            synchronized (myDecayCounts) {
+                for (int i = 0; i < myNumDecayBins; i++) {
+                    myDecayCounts[i] += decayCounts[i];
+                    myDecayR2Sums[i] += decayR2Sums[i];
+                }
+                myNumPairsWritten += numWritten;
             }
+        }
+
+        long done = myNumTestsDone.addAndGet(endTest - startTest);
+        int currentProgress = (int) (100.0 * ((double) done / (double) myTotalTests));
+        int last = myLastProgress.get();
+        if ((currentProgress > last) && myLastProgress.compareAndSet(last, currentProgress)) {
+            fireProgress(currentProgress);
+        }
 
-        } //end of currTest
-        if (myMapResults != null) myMapResults.trimToSize();
+    }
+
+    /**
+     * Adds result to LD decay bins, and appends it to output if it passes the
+     * r^2 and p-value thresholds.
+     *
+     * @return whether result was appended
+     */
+    private boolean writeResult(LDResult ldr, StringBuilder output, long[] decayCounts, double[] decayR2Sums) {
+
+        float r2 = ldr.r2();
+        if (Float.isNaN(r2)) {
+            return false;
+        }
+
+        int site1 = ldr.site1();
+        int site2 = ldr.site2();
+        String locus1 = myAlignment.chromosomeName(site1);
+        String locus2 = myAlignment.chromosomeName(site2);
+        int position1 = myAlignment.chromosomalPosition(site1);
+        int position2 = myAlignment.chromosomalPosition(site2);
+        boolean sameLocus = locus1.equals(locus2);
+        int distance = Math.abs(position1 - position2);
+        if (sameLocus) {
+            int bin = distance / myDecayBinWidth;
+            if (bin < myNumDecayBins) {
+                decayCounts[bin]++;
+                decayR2Sums[bin] += r2;
+            }
+        }
+
+        if ((r2 < myMinR2) || !(ldr.p() <= myMaxPValue)) {
+            return false;
+        }
+
+        output.append(locus1).append('\t').append(position1).append('\t').append(site1).append('\t');
+        output.append(locus2).append('\t').append(position2).append('\t').append(site2).append('\t');
+        if (sameLocus) {
+            output.append(distance);
+        } else {
+            output.append(NA);
+        }
+        output.append('\t').append(r2).append('\t').append(ldr.dPrime()).append('\t').append(ldr.p()).append('\t').append(ldr.n()).append('\n');
+        return true;
+
+    }
+
+    /**
+     * Returns major [0] and minor [1] allele presence words of all taxa for
+     * given site.
+     */
+    private static long[][] alleleWords(GenotypeTable alignment, int site, int numWords) {
+        BitSet major = alignment.allelePresenceForAllTaxa(site, WHICH_ALLELE.Major);
+        BitSet minor = alignment.allelePresenceForAllTaxa(site, WHICH_ALLELE.Minor);
+        return new long[][]{Arrays.copyOf(major.getBits(), numWords), Arrays.copyOf(minor.getBits(), numWords)};
+    }
+
+    /**
+     * Fills the 2x2 haplotype contingency table of two sites with one pass
+     * over the allele words. Word arrays must have equal length.
+     *
+     * @param rMj site 1 major allele words
+     * @param rMn site 1 minor allele words
+     * @param cMj site 2 major allele words
+     * @param cMn site 2 minor allele words
+     * @param contig contingency table to fill. [0][0] = major:major, [1][0] =
+     * minor:major, [0][1] = major:minor, [1][1] = minor:minor
+     */
+    static void haplotypeCounts(long[] rMj, long[] rMn, long[] cMj, long[] cMn, int[][] contig) {
+        int majMaj = 0;
+        int majMin = 0;
+        int minMaj = 0;
+        int minMin = 0;
+        for (int i = 0, n = rMj.length; i < n; i++) {
+            long rj = rMj[i];
+            long rn = rMn[i];
+            long cj = cMj[i];
+            long cn = cMn[i];
+            majMaj += Long.bitCount(rj & cj);
+            majMin += Long.bitCount(rj & cn);
+            minMaj += Long.bitCount(rn & cj);
+            minMin += Long.bitCount(rn & cn);
+        }
+        contig[0][0] = majMaj;
+        contig[0][1] = majMin;
+        contig[1][0] = minMaj;
+        contig[1][1] = minMin;
     }
 
     private void calculateBitLDWithHets() {
@@ -319,19 +683,30 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
             int minMinorCnt, int minCnt, float minR2, FisherExact myFisherExact, int site1Index, int site2Index) {
         // float[] results = {Float.NaN, Float.NaN, Float.NaN, Float.NaN};
         if(myFisherExact==null) myFisherExact=FisherExact.getInstance((2 * (int)rMj.size()) + 10);
-        LDResult.Builder results = new LDResult.Builder(site1Index,site2Index);
-        int n = 0;
         int[][] contig = new int[2][2];
-        n += contig[1][1] = (int) OpenBitSet.intersectionCount(rMn, cMn);
-        n += contig[1][0] = (int) OpenBitSet.intersectionCount(rMn, cMj);
+        contig[1][1] = (int) OpenBitSet.intersectionCount(rMn, cMn);
+        contig[1][0] = (int) OpenBitSet.intersectionCount(rMn, cMj);
+        if (contig[1][0] + contig[1][1] < minMinorCnt) {
+            return new LDResult.Builder(site1Index, site2Index).build();
+        }
+        contig[0][1] = (int) OpenBitSet.intersectionCount(rMj, cMn);
+        contig[0][0] = (int) OpenBitSet.intersectionCount(rMj, cMj);
+        return getLDForCounts(contig, minMinorCnt, minCnt, minR2, myFisherExact, site1Index, site2Index);
+    }
+
+    /**
+     * Estimates LD from the 2x2 haplotype contingency table of a site pair.
+     * See getLDForSitePair()
+     */
+    private static LDResult getLDForCounts(int[][] contig, int minMinorCnt, int minCnt, float minR2, FisherExact myFisherExact, int site1Index, int site2Index) {
+        LDResult.Builder results = new LDResult.Builder(site1Index,site2Index);
         if (contig[1][0] + contig[1][1] < minMinorCnt) {
             return results.build();
         }
-        n += contig[0][1] = (int) OpenBitSet.intersectionCount(rMj, cMn);
         if (contig[0][1] + contig[1][1] < minMinorCnt) {
             return results.build();
         }
-        n += contig[0][0] = (int) OpenBitSet.intersectionCount(rMj, cMj);
+        int n = contig[0][0] + contig[0][1] + contig[1][0] + contig[1][1];
         results.n(n);
         if (n < minCnt) {
             return results.build();
@@ -434,12 +809,11 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
      * @return P-value
      */
     public double getPVal(int r, int c) {
-        long key = getMapKey(r, c);
-        LDResult result = (LDResult) myMapResults.get(key);
-        if (result == null) {
+        int index = getTestIndex(r, c);
+        if (index < 0) {
             return Float.NaN;
         }
-        return result.p();
+        return myPValue[index];
     }
 
     /**
@@ -451,12 +825,11 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
      * @return number of gametes
      */
     public int getSampleSize(int r, int c) {
-        long key = getMapKey(r, c);
-        LDResult result = (LDResult) myMapResults.get(key);
-        if (result == null) {
+        int index = getTestIndex(r, c);
+        if (index < 0) {
             return 0;
         }
-        return result.n();
+        return mySampleSize[index];
     }
 
     /**
@@ -467,12 +840,11 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
      * @return D'
      */
     public float getDPrime(int r, int c) {
-        long key = getMapKey(r, c);
-        LDResult result = (LDResult) myMapResults.get(key);
-        if (result == null) {
+        int index = getTestIndex(r, c);
+        if (index < 0) {
             return Float.NaN;
         }
-        return result.dPrime();
+        return myDPrime[index];
     }
 
     /**
@@ -483,12 +855,11 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
      * @return r^2
      */
     public float getRSqr(int r, int c) {
-        long key = getMapKey(r, c);
-        LDResult result = (LDResult) myMapResults.get(key);
-        if (result == null) {
+        int index = getTestIndex(r, c);
+        if (index < 0) {
             return Float.NaN;
         }
-        return result.r2();
+        return myRSqr[index];
     }
 
     public int getX(int row) {
@@ -527,7 +898,7 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
         }
         sw.write("\n");
 
-        for (long r = 0; r < myTotalTests; r++) {
+        for (long r = 0, n = getRowCount(); r < n; r++) {
             Object[] theRow = getRow(r);
             for (int i = 0; i < theRow.length; i++) {
                 sw.write(theRow[i].toString());
@@ -542,6 +913,8 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
         String[] annotatedLabels = null;
         if (myIsAccumulativeReport) {
             annotatedLabels = new String[]{"R2BinMin", "R2BinMax", "Count"};
+        } else if (myOutputFile != null) {
+            annotatedLabels = new String[]{"DistBinMin_bp", "DistBinMax_bp", "NumPairs", "MeanR^2"};
         } else {
             annotatedLabels = new String[]{"Locus1", "Position1", "Site1",
                 "NumberOfStates1", "States1", "Frequency1", "Locus2", "Position2",
@@ -566,6 +939,14 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
                 data[2] = Integer.valueOf(myAccumulativeRValueBins[(int) row]);
             }
             return data;
+        } else if (myOutputFile != null) {
+            Object[] data = new Object[4];
+            long count = (myDecayCounts == null) ? 0 : myDecayCounts[(int) row];
+            data[0] = Long.valueOf(row * myDecayBinWidth);
+            data[1] = Long.valueOf((row + 1) * myDecayBinWidth);
+            data[2] = Long.valueOf(count);
+            data[3] = (count == 0) ? Double.NaN : Double.valueOf(myDecayR2Sums[(int) row] / (double) count);
+            return data;
         } else {
             int labelOffset = 0;
             Object[] data = new Object[17];
@@ -598,10 +979,10 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
             } else {
                 data[labelOffset++] = NA;
             }
-            data[labelOffset++] = getRSqr(r, c);
-            data[labelOffset++] = getDPrime(r, c);
-            data[labelOffset++] = getPVal(r, c);
-            data[labelOffset++] = getSampleSize(r, c);
+            data[labelOffset++] = myRSqr[(int) row];
+            data[labelOffset++] = myDPrime[(int) row];
+            data[labelOffset++] = myPValue[(int) row];
+            data[labelOffset++] = mySampleSize[(int) row];
 
             return data;
         }
@@ -622,6 +1003,8 @@ public class LinkageDisequilibrium extends Thread implements Serializable, Table
     public long getRowCount() {
         if (myIsAccumulativeReport) {
             return myNumAccumulativeBins + 1;
+        } else if (myOutputFile != null) {
+            return myNumDecayBins;
         } else {
             return myTotalTests;
         }
@@ -42,6 +42,11 @@ public class LinkageDisequilibriumPlugin extends AbstractPlugin {
     private String myPossibleAlignmentName;
     private int[] myPossibleSiteList;
     private LinkageDisequilibrium.HetTreatment myHetTreatment = LinkageDisequilibrium.HetTreatment.Homozygous;
+    private String myOutputFile = null;
+    private float myMinR2 = 0.0f;
+    private float myMaxPValue = 1.0f;
+    private int myDecayBinWidth = 1000;
+    private int myNumDecayBins = 100;
 
     /**
      * Creates a new instance of LinkageDisequilibriumPlugin
@@ -132,6 +137,12 @@ public class LinkageDisequilibriumPlugin extends AbstractPlugin {
                 setTestSiteFromName(aa);
             }
             LinkageDisequilibrium theLD = new LinkageDisequilibrium(aa, myWindowSize, myLDType, myTestSite, this, myIsAccumulateResults, myNumAccumulateIntervals, myPossibleSiteList, myHetTreatment);
+            if (myOutputFile != null) {
+                theLD.setOutputFile(myOutputFile);
+                theLD.setMinR2(myMinR2);
+                theLD.setMaxPValue(myMaxPValue);
+                theLD.setDecayBins(myDecayBinWidth, myNumDecayBins);
+            }
             theLD.run();
             Datum td = new Datum("LD:" + input.getName(), theLD, "LD Analysis");
             DataSet tds = new DataSet(td, this);
@@ -223,6 +234,73 @@ public class LinkageDisequilibriumPlugin extends AbstractPlugin {
         return myHetTreatment;
     }
 
+    /**
+     * Sets file (.gz for compressed) to which site pairs are written as they
+     * are calculated instead of kept in memory. The resulting table is the LD
+     * decay by distance bins.
+     *
+     * @param filename output file
+     */
+    public void setOutputFile(String filename) {
+        myOutputFile = filename;
+    }
+
+    public String getOutputFile() {
+        return myOutputFile;
+    }
+
+    /**
+     * Sets minimum r^2 of site pairs written to the output file.
+     *
+     * @param minR2 minimum r^2
+     */
+    public void setMinR2(float minR2) {
+        myMinR2 = minR2;
+    }
+
+    public float getMinR2() {
+        return myMinR2;
+    }
+
+    /**
+     * Sets maximum p-value of site pairs written to the output file.
+     *
+     * @param maxPValue maximum p-value
+     */
+    public void setMaxPValue(float maxPValue) {
+        myMaxPValue = maxPValue;
+    }
+
+    public float getMaxPValue() {
+        return myMaxPValue;
+    }
+
+    /**
+     * Sets width (bp) of LD decay bins used with output file.
+     *
+     * @param binWidth bin width
+     */
+    public void setDecayBinWidth(int binWidth) {
+        myDecayBinWidth = binWidth;
+    }
+
+    public int getDecayBinWidth() {
+        return myDecayBinWidth;
+    }
+
+    /**
+     * Sets number of LD decay bins used with output file.
+     *
+     * @param numBins number of bins
+     */
+    public void setNumDecayBins(int numBins) {
+        myNumDecayBins = numBins;
+    }
+
+    public int getNumDecayBins() {
+        return myNumDecayBins;
+    }
+
     private void setTestSiteFromName(GenotypeTable aa) {
         //Find index of any sites with the given names
         int[] matches = IntStream.range(0, aa.numberOfSites())
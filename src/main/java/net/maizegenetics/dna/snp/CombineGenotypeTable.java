@@ -18,9 +18,11 @@ import net.maizegenetics.dna.snp.score.AlleleDepth;
 import net.maizegenetics.dna.snp.score.Dosage;
 import net.maizegenetics.dna.snp.score.SiteScore.SITE_SCORE_TYPE;
 import net.maizegenetics.dna.snp.genotypecall.CombineGenotypeCallTable;
+import net.maizegenetics.dna.snp.genotypecall.SiteGenotypes;
 import net.maizegenetics.util.GeneralAnnotationStorage;
 
 import java.util.*;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -996,6 +998,21 @@ public class CombineGenotypeTable implements GenotypeTable {
         return myGenotype.stream(taxon);
     }
 
+    @Override
+    public IntStream intStreamGenotype() {
+        return myGenotype.intStream();
+    }
+
+    @Override
+    public IntStream intStreamGenotype(int taxon) {
+        return myGenotype.intStream(taxon);
+    }
+
+    @Override
+    public Stream<SiteGenotypes> streamSiteGenotypes() {
+        return myGenotype.siteStream();
+    }
+
     @Override
     public boolean hasSiteTranslations() {
         return false;
@@ -9,6 +9,7 @@ import net.maizegenetics.dna.map.PositionList;
 import net.maizegenetics.dna.snp.bit.BitStorage;
 import net.maizegenetics.dna.snp.bit.DynamicBitStorage;
 import net.maizegenetics.dna.snp.genotypecall.GenotypeCallTable;
+import net.maizegenetics.dna.snp.genotypecall.SiteGenotypes;
 import net.maizegenetics.dna.snp.score.AlleleDepth;
 import net.maizegenetics.dna.snp.score.AlleleProbability;
 import net.maizegenetics.dna.snp.score.ReferenceProbability;
@@ -25,6 +26,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -592,6 +594,21 @@ public class CoreGenotypeTable implements GenotypeTable {
         return myGenotype.stream(taxon);
     }
 
+    @Override
+    public IntStream intStreamGenotype() {
+        return myGenotype.intStream();
+    }
+
+    @Override
+    public IntStream intStreamGenotype(int taxon) {
+        return myGenotype.intStream(taxon);
+    }
+
+    @Override
+    public Stream<SiteGenotypes> streamSiteGenotypes() {
+        return myGenotype.siteStream();
+    }
+
     @Override
     public boolean hasSiteTranslations() {
         return myGenotypeTranslate.hasSiteTranslations();
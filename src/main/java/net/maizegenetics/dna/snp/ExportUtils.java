@@ -8,6 +8,10 @@ import com.google.common.collect.Multimap;
 
 import net.maizegenetics.dna.WHICH_ALLELE;
 import net.maizegenetics.dna.map.Position;
+import net.maizegenetics.dna.snp.io.LineIndexBuilder;
+import net.maizegenetics.dna.snp.io.MappedGenotypeIO;
+import net.maizegenetics.dna.snp.io.PlinkBedIO;
+import net.maizegenetics.dna.snp.io.ParallelSiteWriter;
 import net.maizegenetics.dna.snp.io.VCFUtil;
 import net.maizegenetics.taxa.TaxaList;
 import net.maizegenetics.taxa.Taxon;
@@ -20,6 +24,7 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPOutputStream;
@@ -107,103 +112,123 @@ public class ExportUtils {
     }
 
     public static String writeToHapmap(GenotypeTable alignment, boolean diploid, String filename, char delimChar, boolean includeTaxaAnnotations, ProgressListener listener) {
+        return writeToHapmap(alignment, diploid, filename, delimChar, includeTaxaAnnotations, false, listener);
+    }
+
+    /**
+     * Write a GenotypeTable to HapMap format. Blocks of sites are formatted
+     * in parallel and written in order.
+     *
+     * @param alignment genotype table
+     * @param diploid true uses phased two letter encoding, false one letter
+     * unphased
+     * @param filename outfile name (will add ".hmp.txt" if needed). Names
+     * ending with ".gz" are written block gzipped (BGZF).
+     * @param delimChar delimiter character normally tab
+     * @param includeTaxaAnnotations whether to write taxa annotations
+     * @param writeLineIndex whether to also write a line index (.lix) for
+     * random access. Requires a ".gz" file name and tab delimiter.
+     * @param listener progress listener, (null if unneeded)
+     * @return name of the outfile with the appropriate suffix
+     */
+    public static String writeToHapmap(GenotypeTable alignment, boolean diploid, String filename, char delimChar, boolean includeTaxaAnnotations, boolean writeLineIndex, ProgressListener listener) {
         if (delimChar != ' ' && delimChar != '\t') {
             throw new IllegalArgumentException("Delimiter charater must be either a blank space or a tab.");
         }
 
-        BufferedWriter bw = null;
+        String fullFileName = Utils.addSuffixIfNeeded(filename, ".hmp.txt", new String[]{".hmp.txt", ".hmp.txt.gz"});
+        if (writeLineIndex && (delimChar != '\t' || !fullFileName.endsWith(".gz"))) {
+            throw new IllegalArgumentException("A line index requires a tab delimited, block gzipped (.hmp.txt.gz) file: " + fullFileName);
+        }
         try {
-            String fullFileName = Utils.addSuffixIfNeeded(filename, ".hmp.txt", new String[]{".hmp.txt", ".hmp.txt.gz"});
-            bw = Utils.getBufferedWriter(fullFileName);
+            StringBuilder header = new StringBuilder();
             if (includeTaxaAnnotations) {
                 for (Taxon taxon : alignment.taxa()) {
                     GeneralAnnotation annotation = taxon.getAnnotation();
                     if ((annotation == null) || (annotation.numAnnotations() == 0)) {
                         continue;
                     }
-                    bw.write("##SAMPLE=" + taxon.toStringWithVCFAnnotation() + "\n");
+                    header.append("##SAMPLE=").append(taxon.toStringWithVCFAnnotation()).append("\n");
                 }
             }
-            bw.write(Joiner.on(delimChar).join("rs#", "alleles", "chrom", "pos", "strand", "assembly#", "center", "protLSID",
+            header.append(Joiner.on(delimChar).join("rs#", "alleles", "chrom", "pos", "strand", "assembly#", "center", "protLSID",
                     "assayLSID", "panelLSID", "QCcode"));
-            bw.write(delimChar);
+            header.append(delimChar);
             int numTaxa = alignment.numberOfTaxa();
             for (int taxa = 0; taxa < numTaxa; taxa++) {
                 String sequenceID = alignment.taxaName(taxa).trim();
-                bw.write(sequenceID);
+                header.append(sequenceID);
                 if (taxa != numTaxa - 1) {
-                    bw.write(delimChar);
+                    header.append(delimChar);
                 }
             }
-            bw.write("\n");
-            int numSites = alignment.numberOfSites();
-            for (int site = 0; site < numSites; site++) {
-                bw.write(alignment.siteName(site));
-                bw.write(delimChar);
-                byte[] genotypes = alignment.genotypeAllTaxa(site);
-                // which alleles are present among the genotypes
-                int[][] sortedAlleles = AlleleFreqCache.allelesSortedByFrequencyNucleotide(genotypes);
-                int numAlleles = sortedAlleles[0].length;
-                if (numAlleles == 0) {
-                    bw.write("NA"); //if data does not exist
-                } else if (numAlleles == 1) {
-                    bw.write(alignment.genotypeAsString(site, (byte) sortedAlleles[0][0]));
-                } else {
-                    bw.write(alignment.genotypeAsString(site, (byte) sortedAlleles[0][0]));
-                    for (int allele = 1; allele < sortedAlleles[0].length; allele++) {
-                        if (sortedAlleles[0][allele] != GenotypeTable.UNKNOWN_ALLELE) {
-                            bw.write('/');
-                            bw.write(alignment.genotypeAsString(site, (byte) sortedAlleles[0][allele]));  // will write out a third allele if it exists
-                        }
-                    }
-                }
-                bw.write(delimChar);
-                bw.write(Joiner.on(delimChar).join(alignment.chromosomeName(site), String.valueOf(alignment.chromosomalPosition(site)),
-                        "+", "NA", "NA", "NA", "NA", "NA", "NA"));
-                bw.write(delimChar);
-                for (int taxa = 0; taxa < numTaxa; taxa++) {
-                    if (diploid == false) {
-                        String baseIUPAC = null;
-                        try {
-                            baseIUPAC = alignment.diploidAsString(site, genotypes[taxa]);
-                        } catch (Exception e) {
-                            String[] b = alignment.genotypeAsStringArray(taxa, site);
-                            bw.close();
-                            myLogger.debug(e.getMessage(), e);
-                            throw new IllegalArgumentException("There is no String representation for diploid values: " + b[0] + ":" + b[1] + " getBase(): 0x" + Integer.toHexString(alignment.genotype(taxa, site)) + "\nTry Exporting as Diploid Values.");
-                        }
-                        if ((baseIUPAC == null) || baseIUPAC.equals("?")) {
-                            String[] b = alignment.genotypeAsStringArray(taxa, site);
-                            bw.close();
-                            throw new IllegalArgumentException("There is no String representation for diploid values: " + b[0] + ":" + b[1] + " getBase(): 0x" + Integer.toHexString(alignment.genotype(taxa, site)) + "\nTry Exporting as Diploid Values.");
-                        }
-                        bw.write(baseIUPAC);
-                    } else {
-                        byte[] temp = GenotypeTableUtils.getDiploidValues(genotypes[taxa]);
-                        bw.write(alignment.genotypeAsString(site, temp[0]));
-                        bw.write(alignment.genotypeAsString(site, temp[1]));
-                    }
-                    if (taxa != (numTaxa - 1)) {
-                        bw.write(delimChar);
-                    }
-                }
-                bw.write("\n");
-
-                if (listener != null) {
-                    listener.progress((int) (((double) (site + 1) / (double) numSites) * 100.0), null);
-                }
+            header.append("\n");
+
+            ParallelSiteWriter writer = new ParallelSiteWriter(fullFileName, alignment.numberOfSites(),
+                    (site, builder) -> appendHapmapSite(alignment, site, diploid, delimChar, builder))
+                    .header(header.toString())
+                    .progressListener(listener);
+            if (writeLineIndex) {
+                writer.lineIndex(1, LineIndexBuilder.NUM_HAPMAP_COLUMNS_IN_INDEX);
             }
+            writer.write();
             return fullFileName;
         } catch (Exception e) {
             myLogger.debug(e.getMessage(), e);
             throw new IllegalArgumentException("Error writing Hapmap file: " + filename + ": " + ExceptionUtils.getExceptionCauses(e));
-        } finally {
-            try {
-                bw.close();
-            } catch (Exception e) {
-                e.printStackTrace();
+        }
+    }
+
+    private static void appendHapmapSite(GenotypeTable alignment, int site, boolean diploid, char delimChar, StringBuilder bw) {
+        int numTaxa = alignment.numberOfTaxa();
+        bw.append(alignment.siteName(site));
+        bw.append(delimChar);
+        byte[] genotypes = alignment.genotypeAllTaxa(site);
+        // which alleles are present among the genotypes
+        int[][] sortedAlleles = AlleleFreqCache.allelesSortedByFrequencyNucleotide(genotypes);
+        int numAlleles = sortedAlleles[0].length;
+        if (numAlleles == 0) {
+            bw.append("NA"); //if data does not exist
+        } else if (numAlleles == 1) {
+            bw.append(alignment.genotypeAsString(site, (byte) sortedAlleles[0][0]));
+        } else {
+            bw.append(alignment.genotypeAsString(site, (byte) sortedAlleles[0][0]));
+            for (int allele = 1; allele < sortedAlleles[0].length; allele++) {
+                if (sortedAlleles[0][allele] != GenotypeTable.UNKNOWN_ALLELE) {
+                    bw.append('/');
+                    bw.append(alignment.genotypeAsString(site, (byte) sortedAlleles[0][allele]));  // will write out a third allele if it exists
+                }
             }
         }
+        bw.append(delimChar);
+        bw.append(Joiner.on(delimChar).join(alignment.chromosomeName(site), String.valueOf(alignment.chromosomalPosition(site)),
+                "+", "NA", "NA", "NA", "NA", "NA", "NA"));
+        bw.append(delimChar);
+        for (int taxa = 0; taxa < numTaxa; taxa++) {
+            if (diploid == false) {
+                String baseIUPAC = null;
+                try {
+                    baseIUPAC = alignment.diploidAsString(site, genotypes[taxa]);
+                } catch (Exception e) {
+                    String[] b = alignment.genotypeAsStringArray(taxa, site);
+                    myLogger.debug(e.getMessage(), e);
+                    throw new IllegalArgumentException("There is no String representation for diploid values: " + b[0] + ":" + b[1] + " getBase(): 0x" + Integer.toHexString(alignment.genotype(taxa, site)) + "\nTry Exporting as Diploid Values.");
+                }
+                if ((baseIUPAC == null) || baseIUPAC.equals("?")) {
+                    String[] b = alignment.genotypeAsStringArray(taxa, site);
+                    throw new IllegalArgumentException("There is no String representation for diploid values: " + b[0] + ":" + b[1] + " getBase(): 0x" + Integer.toHexString(alignment.genotype(taxa, site)) + "\nTry Exporting as Diploid Values.");
+                }
+                bw.append(baseIUPAC);
+            } else {
+                byte[] temp = GenotypeTableUtils.getDiploidValues(genotypes[taxa]);
+                bw.append(alignment.genotypeAsString(site, temp[0]));
+                bw.append(alignment.genotypeAsString(site, temp[1]));
+            }
+            if (taxa != (numTaxa - 1)) {
+                bw.append(delimChar);
+            }
+        }
+        bw.append("\n");
     }
 
     /**
@@ -217,194 +242,235 @@ public class ExportUtils {
         return writeToVCF(gt,filename,keepDepth,null);
     }
     public static String writeToVCF(GenotypeTable gt, String filename, boolean keepDepth, ProgressListener listener) {
+        return writeToVCF(gt, filename, keepDepth, false, listener);
+    }
+
+    /**
+     * Writes given alignment to a VCF file. Blocks of sites are formatted in
+     * parallel and written in order.
+     *
+     * @param gt genotype table
+     * @param filename outfile name (will add ".vcf" if needed). Names ending
+     * with ".gz" are written block gzipped (BGZF).
+     * @param keepDepth whether to write depth if present
+     * @param writeLineIndex whether to also write a line index (.lix) for
+     * random access. Requires a ".gz" file name.
+     * @param listener progress listener, (null if unneeded)
+     * @return name of the outfile with the appropriate suffix
+     */
+    public static String writeToVCF(GenotypeTable gt, String filename, boolean keepDepth, boolean writeLineIndex, ProgressListener listener) {
         final char delimChar = '\t';
         boolean hasDepth = gt.hasDepth() && keepDepth;
         try {
 
             filename = Utils.addSuffixIfNeeded(filename, ".vcf", new String[]{".vcf", ".vcf.gz"});
-            BufferedWriter bw = Utils.getBufferedWriter(filename);
-            bw.write("##fileformat=VCFv4.0");
-            bw.newLine();
+            StringBuilder bw = new StringBuilder();
+            bw.append("##fileformat=VCFv4.0");
+            bw.append('\n');
             if (!gt.hasReference()) {
-                bw.write("##Tassel=<ID=GenotypeTable,Version=5,Description=\"Reference allele is not known. The major allele was used as reference allele\">");
-                bw.newLine();
+                bw.append("##Tassel=<ID=GenotypeTable,Version=5,Description=\"Reference allele is not known. The major allele was used as reference allele\">");
+                bw.append('\n');
             }
-            bw.write("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">");
-            bw.newLine();
-            bw.write("##FORMAT=<ID=AD,Number=.,Type=Integer,Description=\"Allelic depths for the reference and alternate alleles in the order listed\">");
-            bw.newLine();
-            bw.write("##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Read Depth (only filtered reads used for calling)\">");
-            bw.newLine();
-            bw.write("##FORMAT=<ID=GQ,Number=1,Type=Float,Description=\"Genotype Quality\">");
-            bw.newLine();
-            bw.write("##FORMAT=<ID=PL,Number=.,Type=Float,Description=\"Normalized, Phred-scaled likelihoods for AA,AB,BB genotypes where A=ref and B=alt; not applicable if site is not biallelic\">");
-            bw.newLine();
-            bw.write("##INFO=<ID=NS,Number=1,Type=Integer,Description=\"Number of Samples With Data\">");
-            bw.newLine();
-            bw.write("##INFO=<ID=DP,Number=1,Type=Integer,Description=\"Total Depth\">");
-            bw.newLine();
-            bw.write("##INFO=<ID=AF,Number=.,Type=Float,Description=\"Allele Frequency\">");
-            bw.newLine();
-            writeVCFSampleAnnotationToWriter(gt, bw);
-            bw.write("#CHROM" + delimChar + "POS" + delimChar + "ID" + delimChar + "REF" + delimChar + "ALT" + delimChar + "QUAL" + delimChar + "FILTER" + delimChar + "INFO" + delimChar + "FORMAT");
+            bw.append("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">");
+            bw.append('\n');
+            bw.append("##FORMAT=<ID=AD,Number=.,Type=Integer,Description=\"Allelic depths for the reference and alternate alleles in the order listed\">");
+            bw.append('\n');
+            bw.append("##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Read Depth (only filtered reads used for calling)\">");
+            bw.append('\n');
+            bw.append("##FORMAT=<ID=GQ,Number=1,Type=Float,Description=\"Genotype Quality\">");
+            bw.append('\n');
+            bw.append("##FORMAT=<ID=PL,Number=.,Type=Float,Description=\"Normalized, Phred-scaled likelihoods for AA,AB,BB genotypes where A=ref and B=alt; not applicable if site is not biallelic\">");
+            bw.append('\n');
+            bw.append("##INFO=<ID=NS,Number=1,Type=Integer,Description=\"Number of Samples With Data\">");
+            bw.append('\n');
+            bw.append("##INFO=<ID=DP,Number=1,Type=Integer,Description=\"Total Depth\">");
+            bw.append('\n');
+            bw.append("##INFO=<ID=AF,Number=.,Type=Float,Description=\"Allele Frequency\">");
+            bw.append('\n');
+            appendVCFSampleAnnotation(gt, bw);
+            bw.append("#CHROM" + delimChar + "POS" + delimChar + "ID" + delimChar + "REF" + delimChar + "ALT" + delimChar + "QUAL" + delimChar + "FILTER" + delimChar + "INFO" + delimChar + "FORMAT");
             for (int taxa = 0; taxa < gt.numberOfTaxa(); taxa++) {
                 String taxonName = gt.taxaName(taxa).trim();
-                bw.write(delimChar + taxonName);
+                bw.append(delimChar + taxonName);
+            }
+            bw.append('\n');
+
+            LongAdder noAlleles = new LongAdder();
+            ParallelSiteWriter writer = new ParallelSiteWriter(filename, gt.numberOfSites(), (site, builder) -> {
+                if (!appendVCFSite(gt, site, hasDepth, builder)) {
+                    noAlleles.increment();
+                }
+            }).header(bw.toString()).progressListener(listener);
+            if (writeLineIndex) {
+                writer.lineIndex(0, LineIndexBuilder.NUM_VCF_COLUMNS_IN_INDEX);
             }
-            bw.newLine();
+            writer.write();
+            if (noAlleles.sum() > 0) {
+                myLogger.warn("Warning: " + noAlleles.sum() + " sites have no alleles.");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new IllegalArgumentException("Error writing VCF file: " + filename + ": " + ExceptionUtils.getExceptionCauses(e));
+        }
+        return filename;
+    }
 
-            int noAlleles = 0;
-            for (int site = 0; site < gt.numberOfSites(); site++) {
-                int numSites = gt.numberOfSites();
-                Position p = gt.positions().get(site);
-                String[] knownVariants = p.getKnownVariants();
-                byte refAllele = p.getAllele(WHICH_ALLELE.Reference);
-                int[] sortedAlleles = gt.allelesSortedByFrequency(site)[0]; // which alleles are actually present among the genotypes
+    /**
+     * Appends the VCF line of a site.
+     *
+     * @return false if the site has no alleles
+     */
+    private static boolean appendVCFSite(GenotypeTable gt, int site, boolean hasDepth, StringBuilder bw) {
+        final char delimChar = '\t';
+            Position p = gt.positions().get(site);
+            String[] knownVariants = p.getKnownVariants();
+            byte refAllele = p.getAllele(WHICH_ALLELE.Reference);
+            int[] sortedAlleles = gt.allelesSortedByFrequency(site)[0]; // which alleles are actually present among the genotypes
 
 
 
-                //ZRM22 March 18 2016 move to add reference into sortedAlleles array if its missing
-                int[] sortedAllelesTemp = VCFUtil.resolveRefSorted(sortedAlleles, refAllele);
+            //ZRM22 March 18 2016 move to add reference into sortedAlleles array if its missing
+            int[] sortedAllelesTemp = VCFUtil.resolveRefSorted(sortedAlleles, refAllele);
 
-                //ZRM22 June 6 2016 fix variants with ref allele
+            //ZRM22 June 6 2016 fix variants with ref allele
 
 
-                sortedAlleles = sortedAllelesTemp;
-                //ZRM22 Jan7 Remake
-                //If knownVariants.length is greater than 0 its either from a VCF file or Hapmap
-                if(knownVariants.length>0) {
+            sortedAlleles = sortedAllelesTemp;
+            //ZRM22 Jan7 Remake
+            //If knownVariants.length is greater than 0 its either from a VCF file or Hapmap
+            if(knownVariants.length>0) {
 
-                    //ReOrder based on variant alleles
-                    //Store a tempSortedAlleles so we can appropriately handle hapmap to vcf
-                    //int[] tempSortedAlleles = new int[knownVariants.length];
+                //ReOrder based on variant alleles
+                //Store a tempSortedAlleles so we can appropriately handle hapmap to vcf
+                //int[] tempSortedAlleles = new int[knownVariants.length];
 
-                    //ArrayList to hold the Sorted Alleles Indices Temporarily as the ordering will change
-                    ArrayList<Integer> tempSortedAlleles = new ArrayList<Integer>();
+                //ArrayList to hold the Sorted Alleles Indices Temporarily as the ordering will change
+                ArrayList<Integer> tempSortedAlleles = new ArrayList<Integer>();
 
-                    //Loop through all the knownVariants and check to see if we have an indel
-                    boolean knownVariantIndel = VCFUtil.indelInKnownVariant(knownVariants);
+                //Loop through all the knownVariants and check to see if we have an indel
+                boolean knownVariantIndel = VCFUtil.indelInKnownVariant(knownVariants);
 
 
-                    //If we do have an indel, we can add the variants after picking off the first character to the tempSortedAlleles
-                    if(knownVariantIndel) {
-                        //Loop through the variants
-                        for(int i = 0; i < knownVariants.length; i++) {
-                            //Pull off the first character if it exists
-                            if(knownVariants[i].length()>1) {
-                                String parsedVariant = knownVariants[i].substring(1);
-                                tempSortedAlleles.add((int)NucleotideAlignmentConstants.getNucleotideAlleleByte(parsedVariant.charAt(0)));
-                            }
-                            else {
-                                //Mark as deletion
-                                tempSortedAlleles.add((int)NucleotideAlignmentConstants.getNucleotideAlleleByte('-'));
-                            }
+                //If we do have an indel, we can add the variants after picking off the first character to the tempSortedAlleles
+                if(knownVariantIndel) {
+                    //Loop through the variants
+                    for(int i = 0; i < knownVariants.length; i++) {
+                        //Pull off the first character if it exists
+                        if(knownVariants[i].length()>1) {
+                            String parsedVariant = knownVariants[i].substring(1);
+                            tempSortedAlleles.add((int)NucleotideAlignmentConstants.getNucleotideAlleleByte(parsedVariant.charAt(0)));
                         }
-                    } else {
-                        //If we dont have an indel, we can add it to the allele array
-                        if(sortedAlleles.length<knownVariants.length){
-                            //Clear it out, we probably dont need to do this
-                            tempSortedAlleles = new ArrayList<Integer>();
+                        else {
+                            //Mark as deletion
+                            tempSortedAlleles.add((int)NucleotideAlignmentConstants.getNucleotideAlleleByte('-'));
                         }
-                        int nIndex = -1;
+                    }
+                } else {
+                    //If we dont have an indel, we can add it to the allele array
+                    if(sortedAlleles.length<knownVariants.length){
+                        //Clear it out, we probably dont need to do this
+                        tempSortedAlleles = new ArrayList<Integer>();
+                    }
+                    int nIndex = -1;
+                    for(int i = 0; i<knownVariants.length; i++) {
+                        //ZRM22 Mar 22
+                        if(knownVariants[i].charAt(0)!='N') {
+                            tempSortedAlleles.add((int)NucleotideAlignmentConstants.getNucleotideAlleleByte(knownVariants[i].charAt(0)));
+                        }
+                        else {
+                            //If N is in our known Variants list but we do not have an indel, we need to remove it
+                            nIndex = i;
+                        }
+                    }
+                    if(nIndex != -1) {
+                        //if we have an N we need to resize KnownVariants
+                        String[] knownVariantsSmall = new String[knownVariants.length-1];
                         for(int i = 0; i<knownVariants.length; i++) {
-                            //ZRM22 Mar 22
-                            if(knownVariants[i].charAt(0)!='N') {
-                                tempSortedAlleles.add((int)NucleotideAlignmentConstants.getNucleotideAlleleByte(knownVariants[i].charAt(0)));
+                            if(i < nIndex) {
+                                knownVariantsSmall[i] = knownVariants[i];
                             }
-                            else {
-                                //If N is in our known Variants list but we do not have an indel, we need to remove it
-                                nIndex = i;
-                            }
-                        }
-                        if(nIndex != -1) {
-                            //if we have an N we need to resize KnownVariants
-                            String[] knownVariantsSmall = new String[knownVariants.length-1];
-                            for(int i = 0; i<knownVariants.length; i++) {
-                                if(i < nIndex) {
-                                    knownVariantsSmall[i] = knownVariants[i];
-                                }
-                                else if(i > nIndex) {
-                                    knownVariantsSmall[i-1] = knownVariants[i];
-                                }
+                            else if(i > nIndex) {
+                                knownVariantsSmall[i-1] = knownVariants[i];
                             }
-                            knownVariants = knownVariantsSmall;
                         }
+                        knownVariants = knownVariantsSmall;
                     }
-                    //END ZRM22 Jan7
+                }
+                //END ZRM22 Jan7
+
+                //Make a copy of KnownVaraints in case we need to add some
+                ArrayList<String> knownVariantsList = new ArrayList<String>();
+                boolean indelsExist = false;
+                boolean indelsInKnownVariants = VCFUtil.indelInKnownVariant(knownVariants);
+                if(indelsInKnownVariants) {
+                    indelsExist = true;
+                }
 
-                    //Make a copy of KnownVaraints in case we need to add some
-                    ArrayList<String> knownVariantsList = new ArrayList<String>();
-                    boolean indelsExist = false;
-                    boolean indelsInKnownVariants = VCFUtil.indelInKnownVariant(knownVariants);
-                    if(indelsInKnownVariants) {
+                //Go through sorted alleles and also check for indels
+                for(int i = 0 ;i<sortedAlleles.length; i++) {
+                    if(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)sortedAlleles[i]).equals("-")) {
                         indelsExist = true;
                     }
+                }
+                //Move To Function/
 
-                    //Go through sorted alleles and also check for indels
-                    for(int i = 0 ;i<sortedAlleles.length; i++) {
-                        if(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)sortedAlleles[i]).equals("-")) {
-                            indelsExist = true;
-                        }
+                for(String variant:knownVariants) {
+                    if(indelsExist && !indelsInKnownVariants) {
+                        knownVariantsList.add("N"+variant);
                     }
-                    //Move To Function/
-
-                    for(String variant:knownVariants) {
-                        if(indelsExist && !indelsInKnownVariants) {
-                            knownVariantsList.add("N"+variant);
-                        }
-                        else {
-                            knownVariantsList.add(variant);
-                        }
+                    else {
+                        knownVariantsList.add(variant);
                     }
-                    //ZRM Jun6 fix to force Ref annotated alleles to stay in REF for export
-                    //Need to reorder the variants based on the original sorting
-                    ArrayList<Integer> sortedAllelesList = new ArrayList<Integer>();
-                    HashMap<Integer,String> sortedAlleleKnownVariantMap = new HashMap<Integer, String>();
-                    for(int i = 0; i < sortedAlleles.length; i++) {
-                        //Add it to the new sorted list
-                        sortedAllelesList.add(sortedAlleles[i]);
-                        if(!tempSortedAlleles.contains(sortedAlleles[i])) {
-                            //Check for an indel
-                            if(indelsExist) {
-                                if(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)sortedAlleles[i]).equals("-")) {
-                                    //Add an Entry to the sortedAllele, knownVariant mapping
-                                    sortedAlleleKnownVariantMap.put(sortedAlleles[i],"N");
-                                }
-                                else {
-                                    sortedAlleleKnownVariantMap.put(sortedAlleles[i],NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)sortedAlleles[i]));
-                                }
+                }
+                //ZRM Jun6 fix to force Ref annotated alleles to stay in REF for export
+                //Need to reorder the variants based on the original sorting
+                ArrayList<Integer> sortedAllelesList = new ArrayList<Integer>();
+                HashMap<Integer,String> sortedAlleleKnownVariantMap = new HashMap<Integer, String>();
+                for(int i = 0; i < sortedAlleles.length; i++) {
+                    //Add it to the new sorted list
+                    sortedAllelesList.add(sortedAlleles[i]);
+                    if(!tempSortedAlleles.contains(sortedAlleles[i])) {
+                        //Check for an indel
+                        if(indelsExist) {
+                            if(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)sortedAlleles[i]).equals("-")) {
+                                //Add an Entry to the sortedAllele, knownVariant mapping
+                                sortedAlleleKnownVariantMap.put(sortedAlleles[i],"N");
                             }
                             else {
                                 sortedAlleleKnownVariantMap.put(sortedAlleles[i],NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)sortedAlleles[i]));
                             }
                         }
                         else {
-                            //Find the index in tempSortedAlleles
-                            int variantIndex = tempSortedAlleles.indexOf(sortedAlleles[i]);
-                            //Use it to get the correct KnownVariant
-                            sortedAlleleKnownVariantMap.put(sortedAlleles[i],knownVariants[variantIndex]);
+                            sortedAlleleKnownVariantMap.put(sortedAlleles[i],NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)sortedAlleles[i]));
                         }
                     }
-                    //loop through tempSortedAlleles and make sure we have them all
-                    //Else add to the end
-                    for(int i = 0; i < tempSortedAlleles.size(); i++) {
-                        if(!sortedAllelesList.contains(tempSortedAlleles.get(i))) {
-                            sortedAllelesList.add(tempSortedAlleles.get(i));
-                            sortedAlleleKnownVariantMap.put(tempSortedAlleles.get(i),knownVariantsList.get(i));
-                        }
+                    else {
+                        //Find the index in tempSortedAlleles
+                        int variantIndex = tempSortedAlleles.indexOf(sortedAlleles[i]);
+                        //Use it to get the correct KnownVariant
+                        sortedAlleleKnownVariantMap.put(sortedAlleles[i],knownVariants[variantIndex]);
                     }
-                    int[] sortedAllelesExtended = new int[sortedAllelesList.size()];
-                    for(int i = 0; i < sortedAllelesExtended.length; i++) {
-                        sortedAllelesExtended[i] = sortedAllelesList.get(i);
+                }
+                //loop through tempSortedAlleles and make sure we have them all
+                //Else add to the end
+                for(int i = 0; i < tempSortedAlleles.size(); i++) {
+                    if(!sortedAllelesList.contains(tempSortedAlleles.get(i))) {
+                        sortedAllelesList.add(tempSortedAlleles.get(i));
+                        sortedAlleleKnownVariantMap.put(tempSortedAlleles.get(i),knownVariantsList.get(i));
                     }
-                    sortedAlleles = sortedAllelesExtended;
+                }
+                int[] sortedAllelesExtended = new int[sortedAllelesList.size()];
+                for(int i = 0; i < sortedAllelesExtended.length; i++) {
+                    sortedAllelesExtended[i] = sortedAllelesList.get(i);
+                }
+                sortedAlleles = sortedAllelesExtended;
 
-                    String[] knownVariantsExtended = new String[sortedAllelesList.size()];
-                    for(int i = 0; i < knownVariantsExtended.length; i++) {
-                        knownVariantsExtended[i] = sortedAlleleKnownVariantMap.get(sortedAllelesList.get(i));
-                    }
-                    knownVariants = knownVariantsExtended;
-                    //TODO Cleanup
+                String[] knownVariantsExtended = new String[sortedAllelesList.size()];
+                for(int i = 0; i < knownVariantsExtended.length; i++) {
+                    knownVariantsExtended[i] = sortedAlleleKnownVariantMap.get(sortedAllelesList.get(i));
+                }
+                knownVariants = knownVariantsExtended;
+                //TODO Cleanup
 //                    //Go through sorted alleles
 //                    for(int i = 0 ;i<sortedAlleles.length; i++) {
 //                    //If a sorted allele is not in tempSortedAlleles,
@@ -439,306 +505,306 @@ public class ExportUtils {
 //                    }
 //                    sortedAlleles = sortedAllelesExtended;
 //                    //sortedAlleles = tempSortedAlleles.toArray(new int[tempSortedAlleles.size()]);
-                }
-                else {
-                    //No known variants, but we need to handle indels
-                    int indelIndex = -1;
-                    //loop through sorted alleles
-                    for(int i = 0; i<sortedAlleles.length; i++) {
-                        //if we find an indel mark the index and set a boolean
-                        if(sortedAlleles[i] == (int)NucleotideAlignmentConstants.getNucleotideAlleleByte('-')) {
-                            indelIndex = i;
-                            break;
-                        }
-                    }
-
-                    knownVariants = new String[sortedAlleles.length];
-                    for(int i = 0; i<knownVariants.length; i++) {
-                        if(indelIndex==-1) {
-                            knownVariants[i] = ""+ NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)sortedAlleles[i]);
-                        }
-                        else {
-                            if(indelIndex == i) {
-                                knownVariants[i] = "N";
-                            }
-                            else {
-                                knownVariants[i] = "N"+NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)sortedAlleles[i]);
-                            }
-                        }
+            }
+            else {
+                //No known variants, but we need to handle indels
+                int indelIndex = -1;
+                //loop through sorted alleles
+                for(int i = 0; i<sortedAlleles.length; i++) {
+                    //if we find an indel mark the index and set a boolean
+                    if(sortedAlleles[i] == (int)NucleotideAlignmentConstants.getNucleotideAlleleByte('-')) {
+                        indelIndex = i;
+                        break;
                     }
-
                 }
 
-                int nAlleles = sortedAlleles.length;
-                HashMap<String,Integer> alleleRedirectMap = new HashMap<String,Integer>();
-                String[] alleleRedirect = new String[16];
-                Arrays.fill(alleleRedirect, ".");
-                for (int i = 0; i < sortedAlleles.length; i++) {
-                    alleleRedirect[sortedAlleles[i]] = "" + i;
-                    alleleRedirectMap.put(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte) sortedAlleles[i]), i);
-                }
-
-                bw.write(gt.chromosomeName(site)); // chromosome
-                bw.write(delimChar);
-                bw.write(gt.chromosomalPosition(site) + ""); // position
-                bw.write(delimChar);
-                bw.write(gt.siteName(site)); // site name
-                bw.write(delimChar);
-                if (nAlleles == 0) {                                                  //used to be ==0
-                    //System.out.println("A0:"+gt.chromosomeName(site)+":"+gt.chromosomalPosition(site));
-                    noAlleles++;
-                    bw.write(".\t.\t.\tPASS\t.\tGT");
-                    for (int taxa = 0; taxa < gt.numberOfTaxa(); taxa++) {
-                        bw.write("\t./.");
+                knownVariants = new String[sortedAlleles.length];
+                for(int i = 0; i<knownVariants.length; i++) {
+                    if(indelIndex==-1) {
+                        knownVariants[i] = ""+ NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)sortedAlleles[i]);
                     }
-                    bw.newLine();
-                    continue;
-                }
-                //bw.write(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte) sortedAlleles[0])); // ref allele
-                //Fix for indels 8_27
-                if(knownVariants.length==0) {
-                    bw.write(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte) sortedAlleles[0])); // ref allele
-                }
-                else {
-                    bw.write(knownVariants[0]);
-                }
-                bw.write(delimChar);
-
-                StringBuilder altAllelesBuilder = new StringBuilder("");
-
-                //ZRM 8_27
-                String altString = "";
-                int indelIndex = -1;
-
-                if(knownVariants.length==0 || knownVariants.length<sortedAlleles.length) {
-                    ArrayList<String> altAlleles = new ArrayList<String>();
-                    for(int aa = 1; aa<sortedAlleles.length; aa++) {
-                        //Ramu Fix
-                        //altAlleles.add(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte) sortedAlleles[aa]));
-                        //UNCOMMENT BEFORE COMMIT
-                        if(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte) sortedAlleles[aa]) != "-") {
-                            altAlleles.add(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte) sortedAlleles[aa]));
+                    else {
+                        if(indelIndex == i) {
+                            knownVariants[i] = "N";
                         }
                         else {
-                            indelIndex = aa;
+                            knownVariants[i] = "N"+NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)sortedAlleles[i]);
                         }
                     }
-                    altString = altAlleles.stream().collect(Collectors.joining(","));
-                }
-                else {
-                    altString = Arrays.stream(knownVariants, 1, knownVariants.length).collect(Collectors.joining(","));
                 }
 
-                if(altString.length()==0) {
-                    altString = ".";
-                }
+            }
 
-                ////bw.write(altAllelesBuilder.toString()); // alt alleles
-                bw.write(altString);
-                bw.write(delimChar);
-
-                bw.write("."); // qual score
-                bw.write(delimChar);
-
-                bw.write("PASS"); // filter
-                bw.write(delimChar);
-
-                //INFO
-                GeneralAnnotation ga = p.getAnnotation();
-                String annotationHolder=ga.getAnnotationKeys().stream().sorted()
-                        .filter(k->!k.equals("VARIANT"))
-                        .filter(k -> !(k.equals("DP") && hasDepth)) //Get rid of the DP tag if we have depth in the genotype table already.  
-                        .map(key->{
-                            String[] annos=ga.getTextAnnotation(key);
-                            if(annos[0].equals("TRUE")) return key;
-                            return key+Arrays.stream(annos).collect(Collectors.joining(",","=",""));
-                        })
-                        .collect(Collectors.joining(";"));
-                if (hasDepth) {
-                    //bw.write("DP=" + gt.depth().depthForSite(site)); // DP
-                    //To Fix bug where ";DP=100" string would occur
-                    if(annotationHolder.equals("")) {
-                        annotationHolder += "DP=" + gt.depth().depthForSite(site);
-                    }
-                    else if(annotationHolder.equals(".")) {
-                        //Fix bug where we have .;DP=100 showing up.
-                        annotationHolder = "DP="+ gt.depth().depthForSite(site);
+            int nAlleles = sortedAlleles.length;
+            HashMap<String,Integer> alleleRedirectMap = new HashMap<String,Integer>();
+            String[] alleleRedirect = new String[16];
+            Arrays.fill(alleleRedirect, ".");
+            for (int i = 0; i < sortedAlleles.length; i++) {
+                alleleRedirect[sortedAlleles[i]] = "" + i;
+                alleleRedirectMap.put(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte) sortedAlleles[i]), i);
+            }
+
+            bw.append(gt.chromosomeName(site)); // chromosome
+            bw.append(delimChar);
+            bw.append(gt.chromosomalPosition(site) + ""); // position
+            bw.append(delimChar);
+            bw.append(gt.siteName(site)); // site name
+            bw.append(delimChar);
+            if (nAlleles == 0) {                                                  //used to be ==0
+                //System.out.println("A0:"+gt.chromosomeName(site)+":"+gt.chromosomalPosition(site));
+                bw.append(".\t.\t.\tPASS\t.\tGT");
+                for (int taxa = 0; taxa < gt.numberOfTaxa(); taxa++) {
+                    bw.append("\t./.");
+                }
+                bw.append('\n');
+                return false;
+            }
+            //bw.append(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte) sortedAlleles[0])); // ref allele
+            //Fix for indels 8_27
+            if(knownVariants.length==0) {
+                bw.append(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte) sortedAlleles[0])); // ref allele
+            }
+            else {
+                bw.append(knownVariants[0]);
+            }
+            bw.append(delimChar);
+
+            StringBuilder altAllelesBuilder = new StringBuilder("");
+
+            //ZRM 8_27
+            String altString = "";
+            int indelIndex = -1;
+
+            if(knownVariants.length==0 || knownVariants.length<sortedAlleles.length) {
+                ArrayList<String> altAlleles = new ArrayList<String>();
+                for(int aa = 1; aa<sortedAlleles.length; aa++) {
+                    //Ramu Fix
+                    //altAlleles.add(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte) sortedAlleles[aa]));
+                    //UNCOMMENT BEFORE COMMIT
+                    if(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte) sortedAlleles[aa]) != "-") {
+                        altAlleles.add(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte) sortedAlleles[aa]));
                     }
                     else {
-                        annotationHolder += ";DP=" + gt.depth().depthForSite(site);
+                        indelIndex = aa;
                     }
                 }
-                if(!annotationHolder.equals("")) {
-                    bw.write(annotationHolder);
+                altString = altAlleles.stream().collect(Collectors.joining(","));
+            }
+            else {
+                altString = Arrays.stream(knownVariants, 1, knownVariants.length).collect(Collectors.joining(","));
+            }
+
+            if(altString.length()==0) {
+                altString = ".";
+            }
+
+            ////bw.append(altAllelesBuilder.toString()); // alt alleles
+            bw.append(altString);
+            bw.append(delimChar);
+
+            bw.append("."); // qual score
+            bw.append(delimChar);
+
+            bw.append("PASS"); // filter
+            bw.append(delimChar);
+
+            //INFO
+            GeneralAnnotation ga = p.getAnnotation();
+            String annotationHolder=ga.getAnnotationKeys().stream().sorted()
+                    .filter(k->!k.equals("VARIANT"))
+                    .filter(k -> !(k.equals("DP") && hasDepth)) //Get rid of the DP tag if we have depth in the genotype table already.  
+                    .map(key->{
+                        String[] annos=ga.getTextAnnotation(key);
+                        if(annos[0].equals("TRUE")) return key;
+                        return key+Arrays.stream(annos).collect(Collectors.joining(",","=",""));
+                    })
+                    .collect(Collectors.joining(";"));
+            if (hasDepth) {
+                //bw.append("DP=" + gt.depth().depthForSite(site)); // DP
+                //To Fix bug where ";DP=100" string would occur
+                if(annotationHolder.equals("")) {
+                    annotationHolder += "DP=" + gt.depth().depthForSite(site);
+                }
+                else if(annotationHolder.equals(".")) {
+                    //Fix bug where we have .;DP=100 showing up.
+                    annotationHolder = "DP="+ gt.depth().depthForSite(site);
                 }
                 else {
-                    bw.write("."); // DP
+                    annotationHolder += ";DP=" + gt.depth().depthForSite(site);
                 }
-                bw.write(delimChar);
+            }
+            if(!annotationHolder.equals("")) {
+                bw.append(annotationHolder);
+            }
+            else {
+                bw.append("."); // DP
+            }
+            bw.append(delimChar);
 
-                if (hasDepth) {
-                    bw.write("GT:AD:DP:GQ:PL");
-                } else {
-                    bw.write("GT");
+            if (hasDepth) {
+                bw.append("GT:AD:DP:GQ:PL");
+            } else {
+                bw.append("GT");
+            }
+            byte[] genotypes = gt.genotypeAllTaxa(site);
+            for (int taxa = 0; taxa < gt.numberOfTaxa(); taxa++) {
+                bw.append(delimChar);
+                // GT = genotype
+                byte[] values = GenotypeTableUtils.getDiploidValues(genotypes[taxa]);
+                if(knownVariants.length>0) {
+                    bw.append(alleleRedirect[values[0]]).append('/').append(alleleRedirect[values[1]]);
                 }
-                for (int taxa = 0; taxa < gt.numberOfTaxa(); taxa++) {
-                    bw.write(delimChar);
-                    // GT = genotype
-                    byte[] values = gt.genotypeArray(taxa, site);
-                    if(knownVariants.length>0) {
-                        bw.write(alleleRedirect[values[0]]+"/"+alleleRedirect[values[1]]);
-                    }
-                    else {
-                        //Ramu Fix
+                else {
+                    //Ramu Fix
 //                        if(alleleRedirect[values[0]].equals(".")) {
-//                            bw.write(alleleRedirect[values[0]]);
+//                            bw.append(alleleRedirect[values[0]]);
 //                        }
 //                        else {
 //                            if(indelIndex != -1 && Integer.parseInt(alleleRedirect[values[0]]) > indelIndex) {
-//                                bw.write(""+(Integer.parseInt(alleleRedirect[values[0]]) -1 ));
+//                                bw.append(""+(Integer.parseInt(alleleRedirect[values[0]]) -1 ));
 //                            }
 //                            else {
-//                                bw.write(alleleRedirect[values[0]]);
+//                                bw.append(alleleRedirect[values[0]]);
 //                            }
 //                        }
 
-                        //handle if no Known Variants(from a different file type)
-                        if(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)values[0]).equals("-")) {
-                            //TODO handle Missing better
-                            bw.write(".");
+                    //handle if no Known Variants(from a different file type)
+                    if(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)values[0]).equals("-")) {
+                        //TODO handle Missing better
+                        bw.append(".");
+                    }
+                    else {
+                        if(alleleRedirect[values[0]].equals(".")) {
+                            bw.append(alleleRedirect[values[0]]);
                         }
                         else {
-                            if(alleleRedirect[values[0]].equals(".")) {
-                                bw.write(alleleRedirect[values[0]]);
+                            if(indelIndex != -1 && Integer.parseInt(alleleRedirect[values[0]]) > indelIndex) {
+                                bw.append(""+(Integer.parseInt(alleleRedirect[values[0]]) -1 ));
                             }
                             else {
-                                if(indelIndex != -1 && Integer.parseInt(alleleRedirect[values[0]]) > indelIndex) {
-                                    bw.write(""+(Integer.parseInt(alleleRedirect[values[0]]) -1 ));
-                                }
-                                else {
-                                    bw.write(alleleRedirect[values[0]]);
-                                }
+                                bw.append(alleleRedirect[values[0]]);
                             }
                         }
+                    }
 
-                        bw.write("/");
+                    bw.append("/");
 
-                        //Ramu Fix
+                    //Ramu Fix
 //                        if(alleleRedirect[values[1]].equals(".")) {
-//                            bw.write(alleleRedirect[values[1]]);
+//                            bw.append(alleleRedirect[values[1]]);
 //                        }
 //                        else {
 //                            if(indelIndex != -1 && Integer.parseInt(alleleRedirect[values[1]]) > indelIndex) {
-//                                bw.write(""+(Integer.parseInt(alleleRedirect[values[1]]) -1));
+//                                bw.append(""+(Integer.parseInt(alleleRedirect[values[1]]) -1));
 //                            }
 //                            else {
-//                                bw.write(alleleRedirect[values[1]]);
+//                                bw.append(alleleRedirect[values[1]]);
 //                            }
 //                        }
 
-                        if(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)values[1]).equals("-")) {
-                            bw.write(".");
+                    if(NucleotideAlignmentConstants.getHaplotypeNucleotide((byte)values[1]).equals("-")) {
+                        bw.append(".");
+                    }
+                    else {
+                        if(alleleRedirect[values[1]].equals(".")) {
+                            bw.append(alleleRedirect[values[1]]);
                         }
                         else {
-                            if(alleleRedirect[values[1]].equals(".")) {
-                                bw.write(alleleRedirect[values[1]]);
+                            if(indelIndex != -1 && Integer.parseInt(alleleRedirect[values[1]]) > indelIndex) {
+                                bw.append(""+(Integer.parseInt(alleleRedirect[values[1]]) -1));
                             }
                             else {
-                                if(indelIndex != -1 && Integer.parseInt(alleleRedirect[values[1]]) > indelIndex) {
-                                    bw.write(""+(Integer.parseInt(alleleRedirect[values[1]]) -1));
-                                }
-                                else {
-                                    bw.write(alleleRedirect[values[1]]);
-                                }
+                                bw.append(alleleRedirect[values[1]]);
                             }
                         }
                     }
-                    if (!(hasDepth)) {
-                        continue;
-                    }
-                    bw.write(":");
-
-                    // AD
-                    int[] siteAlleleDepths = gt.depthForAlleles(taxa, site);
-                    int siteTotalDepth = 0;
-
-                    ArrayList<Integer> depthsList = new ArrayList<Integer>();
-                    //Fix missing commas in depth information
-                    for(int ss = 0; ss < sortedAlleles.length; ss++) {
-                        if(ss!=indelIndex && sortedAlleles[ss]<siteAlleleDepths.length) {
-                            try {
-                                depthsList.add(siteAlleleDepths[sortedAlleles[ss]]);
-                                siteTotalDepth += siteAlleleDepths[sortedAlleles[ss]];
-                            }
-                            catch(Exception e) {
-                                System.out.println(Arrays.toString(alleleRedirect));
-                                System.out.println(altString);
-                                System.out.println(Arrays.toString(siteAlleleDepths));
-                                System.out.println(Arrays.toString(sortedAlleles));
-                                System.out.println(ss);
-                                throw e;
-                            }
-                            //TODO Cleanup
+                }
+                if (!(hasDepth)) {
+                    continue;
+                }
+                bw.append(":");
+
+                // AD
+                int[] siteAlleleDepths = gt.depthForAlleles(taxa, site);
+                int siteTotalDepth = 0;
+
+                ArrayList<Integer> depthsList = new ArrayList<Integer>();
+                //Fix missing commas in depth information
+                for(int ss = 0; ss < sortedAlleles.length; ss++) {
+                    if(ss!=indelIndex && sortedAlleles[ss]<siteAlleleDepths.length) {
+                        try {
+                            depthsList.add(siteAlleleDepths[sortedAlleles[ss]]);
+                            siteTotalDepth += siteAlleleDepths[sortedAlleles[ss]];
+                        }
+                        catch(Exception e) {
+                            System.out.println(Arrays.toString(alleleRedirect));
+                            System.out.println(altString);
+                            System.out.println(Arrays.toString(siteAlleleDepths));
+                            System.out.println(Arrays.toString(sortedAlleles));
+                            System.out.println(ss);
+                            throw e;
+                        }
+                        //TODO Cleanup
 //                            depthsList.add(AlleleDepthUtil.depthByteToInt((byte)siteAlleleDepths[sortedAlleles[ss]]));
 //                            siteTotalDepth += AlleleDepthUtil.depthByteToInt((byte)siteAlleleDepths[sortedAlleles[ss]]);
-                        }
                     }
+                }
 
-                    bw.write(depthsList.stream().map((depth)->""+depth).collect(Collectors.joining(",")));
+                bw.append(depthsList.stream().map((depth)->""+depth).collect(Collectors.joining(",")));
 //
 //                    for (int ss = 0; ss < sortedAlleles.length; ss++) {
-//                        //bw.write("" + AlleleDepthUtil.decode(siteAlleleDepths[sortedAlleles[ss]]));
+//                        //bw.append("" + AlleleDepthUtil.decode(siteAlleleDepths[sortedAlleles[ss]]));
 //                        if(ss!=indelIndex) {
-//                            bw.write("" + siteAlleleDepths[sortedAlleles[ss]]);
+//                            bw.append("" + siteAlleleDepths[sortedAlleles[ss]]);
 //                            if (ss < sortedAlleles.length - 1 && ss+1!=indelIndex) {
-//                                bw.write(',');
+//                                bw.append(',');
 //                            }
 //                            siteTotalDepth += siteAlleleDepths[sortedAlleles[ss]];
 //                        }
 //
 //                    }
-                    bw.write(":");
-                    // DP
-                    bw.write(siteTotalDepth + "");
-
-                    int[] scores = new int[]{-1, -1, -1, -1};
-                    if (values[0] != GenotypeTable.UNKNOWN_ALLELE) {
-                        int altDepth = (sortedAlleles.length < 2 || sortedAlleles[1]>=siteAlleleDepths.length) ? 0 : siteAlleleDepths[sortedAlleles[1]];
-                        altDepth = (altDepth<0) ? 0 : altDepth;
-                        //int refDepth = (siteAlleleDepths[sortedAlleles[0]]==-1) ? 0 : siteAlleleDepths[sortedAlleles[0]];
-
-                        //Check to see if either the major or alt allele has depth
-                        if(siteAlleleDepths[sortedAlleles[0]] >= 0 && altDepth >= 0) {
-                            scores = VCFUtil.getScore(siteAlleleDepths[sortedAlleles[0]], altDepth);
-                            bw.write(":");
-                            // GQ
-                            bw.write(scores[3] + "");
-                            bw.write(":");
-                            // PL
-                            int k = sortedAlleles.length - 1;
-                            int[] fullPL = new int[(k * (k+1)/2)+k+1];
-
-
-                            //Set all the values to 255 as Higher PL means its less likely to be correct
-                            //Zero PL means the probability of error is 0
-                            Arrays.fill(fullPL,255);
-
-                            //Leaving these indicies in expanded form so we know its correct
-                            //it should really just be in positions 0,1, and 2 regardless of number of sites
-                            //(k*(k+1)/2)+j
-                            //If we only have 1 allele we should only have 1 likelihood
-                            if(fullPL.length==1) {
-                                fullPL[0] = scores[0];
-                            }
-                            else {
-                                fullPL[(0 * (0 + 1)/2) + 0] = scores[0];
-                                fullPL[(1 * (1 + 1)/2) + 0] = scores[1];
-                                fullPL[(1 * (1 + 1)/2) + 1] = scores[2];
-                            }
-                            for(int i = 0; i < fullPL.length-1; i++) {
-                                bw.write(fullPL[i] + ",");
-                            }
-                            bw.write(""+fullPL[fullPL.length-1]);
+                bw.append(":");
+                // DP
+                bw.append(siteTotalDepth + "");
+
+                int[] scores = new int[]{-1, -1, -1, -1};
+                if (values[0] != GenotypeTable.UNKNOWN_ALLELE) {
+                    int altDepth = (sortedAlleles.length < 2 || sortedAlleles[1]>=siteAlleleDepths.length) ? 0 : siteAlleleDepths[sortedAlleles[1]];
+                    altDepth = (altDepth<0) ? 0 : altDepth;
+                    //int refDepth = (siteAlleleDepths[sortedAlleles[0]]==-1) ? 0 : siteAlleleDepths[sortedAlleles[0]];
+
+                    //Check to see if either the major or alt allele has depth
+                    if(siteAlleleDepths[sortedAlleles[0]] >= 0 && altDepth >= 0) {
+                        scores = VCFUtil.getScore(siteAlleleDepths[sortedAlleles[0]], altDepth);
+                        bw.append(":");
+                        // GQ
+                        bw.append(scores[3] + "");
+                        bw.append(":");
+                        // PL
+                        int k = sortedAlleles.length - 1;
+                        int[] fullPL = new int[(k * (k+1)/2)+k+1];
+
+
+                        //Set all the values to 255 as Higher PL means its less likely to be correct
+                        //Zero PL means the probability of error is 0
+                        Arrays.fill(fullPL,255);
+
+                        //Leaving these indicies in expanded form so we know its correct
+                        //it should really just be in positions 0,1, and 2 regardless of number of sites
+                        //(k*(k+1)/2)+j
+                        //If we only have 1 allele we should only have 1 likelihood
+                        if(fullPL.length==1) {
+                            fullPL[0] = scores[0];
+                        }
+                        else {
+                            fullPL[(0 * (0 + 1)/2) + 0] = scores[0];
+                            fullPL[(1 * (1 + 1)/2) + 0] = scores[1];
+                            fullPL[(1 * (1 + 1)/2) + 1] = scores[2];
+                        }
+                        for(int i = 0; i < fullPL.length-1; i++) {
+                            bw.append(fullPL[i] + ",");
+                        }
+                        bw.append(""+fullPL[fullPL.length-1]);
 
 //                            //Leaving these indicies in expanded form so we know its correct
 //                            //it should really just be in positions 0,1, and 2 regardless of number of sites
@@ -747,36 +813,23 @@ public class ExportUtils {
 //                            fullPL[(1 * (1 + 1)/2) + 0] = scores[1];
 //                            fullPL[(1 * (1 + 1)/2) + 1] = scores[2];
 //                            for(int i = 0; i < fullPL.length-1; i++) {
-//                                bw.write(fullPL[i] + ",");
+//                                bw.append(fullPL[i] + ",");
 //                            }
-//                            bw.write(""+fullPL[fullPL.length-1]);
+//                            bw.append(""+fullPL[fullPL.length-1]);
 //                            //
-//                            //bw.write(scores[0] + "," + scores[1] + "," + scores[2]);
-                        }
+//                            //bw.append(scores[0] + "," + scores[1] + "," + scores[2]);
                     }
+                }
 //                    else {
 //                        //If unknown just write out :0:0:0,0,0
-//                        bw.write(":0:0,0,0");
+//                        bw.append(":0:0,0,0");
 //                    }
-                }
-                bw.newLine();
-                if (listener != null) {
-                    listener.progress((int) (((double) (site + 1) / (double) numSites) * 100.0), null);
-                }
             }
-            if (noAlleles > 0) {
-                myLogger.warn("Warning: " + noAlleles + " sites have no alleles.");
-            }
-            bw.flush();
-            bw.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new IllegalArgumentException("Error writing VCF file: " + filename + ": " + ExceptionUtils.getExceptionCauses(e));
-        }
-        return filename;
+            bw.append('\n');
+        return true;
     }
 
-    private static void writeVCFSampleAnnotationToWriter(GenotypeTable gt, BufferedWriter bw) throws IOException {
+    private static void appendVCFSampleAnnotation(GenotypeTable gt, StringBuilder bw) {
         for (Taxon taxon : gt.taxa()) {
             GeneralAnnotation annotation = taxon.getAnnotation();
             if ((annotation == null) || (annotation.numAnnotations() == 0)) {
@@ -784,8 +837,8 @@ public class ExportUtils {
             }
             Multimap annoMap = taxon.getAnnotation().getAnnotationAsMap();
             String annoString = Joiner.on(',').withKeyValueSeparator("=").join(annoMap.entries());
-            bw.write("##SAMPLE=<ID=" + taxon.getName() + "," + annoString + ">");
-            bw.newLine();
+            bw.append("##SAMPLE=<ID=" + taxon.getName() + "," + annoString + ">");
+            bw.append('\n');
         }
     }
 
@@ -1015,6 +1068,36 @@ public class ExportUtils {
         }
     }
 
+    /**
+     * Writes genotype table to the memory mapped binary genotype format
+     * (.t5g), which can be opened without loading genotypes into memory.
+     *
+     * @param gt genotype table
+     * @param filename output file name
+     * @param siteMajor true to store all taxa of a site together, false to
+     * store all sites of a taxon together
+     *
+     * @return final filename
+     */
+    public static String writeToMappedGenotype(GenotypeTable gt, String filename, boolean siteMajor) {
+        return MappedGenotypeIO.write(gt, filename, siteMajor, null);
+    }
+
+    /**
+     * Writes genotype table to PLINK binary genotype files (.bed, .bim and
+     * .fam), one site at a time. Only the two most common alleles of each site
+     * are kept.
+     *
+     * @param gt genotype table
+     * @param filename output file name or prefix
+     * @param listener progress listener (can be null)
+     *
+     * @return .bed file name
+     */
+    public static String writeToPlinkBed(GenotypeTable gt, String filename, ProgressListener listener) {
+        return PlinkBedIO.write(gt, filename, listener);
+    }
+
     public static String writeAlignmentToSerialGZ(GenotypeTable sba, String outFile) {
 
         long time = System.currentTimeMillis();
@@ -1,10 +1,12 @@
 package net.maizegenetics.dna.snp;
 
 import java.util.Set;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import net.maizegenetics.dna.WHICH_ALLELE;
 import net.maizegenetics.dna.snp.genotypecall.GenotypeCallTable;
+import net.maizegenetics.dna.snp.genotypecall.SiteGenotypes;
 import net.maizegenetics.dna.map.Chromosome;
 import net.maizegenetics.dna.map.PositionList;
 import net.maizegenetics.dna.snp.bit.BitStorage;
@@ -951,6 +953,31 @@ public interface GenotypeTable {
 
     public Stream<Byte> streamGenotype(int taxon);
 
+    /**
+     * Unboxed version of streamGenotype(). Values are diploid genotype bytes
+     * widened to int.
+     *
+     * @return IntStream over the genotype calls
+     */
+    public IntStream intStreamGenotype();
+
+    /**
+     * Unboxed version of streamGenotype(taxon).
+     *
+     * @param taxon taxon
+     *
+     * @return IntStream over the genotype calls of taxon
+     */
+    public IntStream intStreamGenotype(int taxon);
+
+    /**
+     * Parallel Stream over sites. Each element holds the genotypes of all taxa
+     * at one site.
+     *
+     * @return Stream over sites
+     */
+    public Stream<SiteGenotypes> streamSiteGenotypes();
+
     public boolean hasSiteTranslations();
 
     public int[] siteTranslations();
@@ -7,6 +7,8 @@ import ch.systemsx.cisd.hdf5.HDF5Factory;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import ch.systemsx.cisd.hdf5.IHDF5Writer;
 import ch.systemsx.cisd.hdf5.IHDF5WriterConfigurator;
+import net.maizegenetics.dna.map.Chromosome;
+import net.maizegenetics.dna.map.GeneralPosition;
 import net.maizegenetics.dna.map.Position;
 import net.maizegenetics.dna.map.PositionList;
 import net.maizegenetics.dna.map.PositionListBuilder;
@@ -15,6 +17,7 @@ import net.maizegenetics.dna.snp.genotypecall.GenotypeCallTableBuilder;
 import net.maizegenetics.dna.snp.genotypecall.GenotypeMergeRule;
 import net.maizegenetics.dna.snp.genotypecall.MaskGenotypeCallTable;
 import net.maizegenetics.dna.snp.score.*;
+import net.maizegenetics.prefs.TasselPrefs;
 import net.maizegenetics.taxa.TaxaList;
 import net.maizegenetics.taxa.TaxaListBuilder;
 import net.maizegenetics.taxa.Taxon;
@@ -170,7 +173,9 @@ public class GenotypeTableBuilder {
      */
     private GenotypeTableBuilder(String hdf5File, TaxaList taxaList, int numberOfSites) {
         IHDF5WriterConfigurator config = HDF5Factory.configure(hdf5File);
-        config.dontUseExtendableDataTypes();
+        if (numberOfSites >= 0) {
+            config.dontUseExtendableDataTypes();
+        }
         writer = config.writer();
         if (HDF5Utils.doesGenotypeModuleExist(writer) && HDF5Utils.isHDF5GenotypeLocked(writer)) {
             writer.close();
@@ -178,12 +183,21 @@ public class GenotypeTableBuilder {
         }
         this.taxaList = taxaList;
         setupGenotypeTaxaInHDF5(writer);
-        posListBuilder = new PositionListBuilder(numberOfSites);
-        byte[] missingGenotypes = new byte[numberOfSites];
-        Arrays.fill(missingGenotypes, GenotypeTable.UNKNOWN_DIPLOID_ALLELE);
-        for (Taxon taxon : taxaList) {
-            HDF5Utils.addTaxon(writer, taxon);
-            HDF5Utils.writeHDF5GenotypesCalls(writer, taxon.getName(), missingGenotypes);
+        if (numberOfSites >= 0) {
+            posListBuilder = new PositionListBuilder(numberOfSites);
+            byte[] missingGenotypes = new byte[numberOfSites];
+            Arrays.fill(missingGenotypes, GenotypeTable.UNKNOWN_DIPLOID_ALLELE);
+            for (Taxon taxon : taxaList) {
+                HDF5Utils.addTaxon(writer, taxon);
+                HDF5Utils.writeHDF5GenotypesCalls(writer, taxon.getName(), missingGenotypes);
+            }
+        } else {
+            // number of sites unknown, datasets are extended as site blocks are added
+            posListBuilder = new PositionListBuilder();
+            for (Taxon taxon : taxaList) {
+                HDF5Utils.addTaxon(writer, taxon);
+                HDF5Utils.createExtendableHDF5GenotypesCalls(writer, taxon.getName());
+            }
         }
 
         this.myBuildType = BuildType.SITE_INC;
@@ -316,6 +330,22 @@ public class GenotypeTableBuilder {
         return new GenotypeTableBuilder(newHDF5File, taxaList, numberOfPositions);
     }
 
+    /**
+     * Build an GenotypeTable by site block (1<<16 sites) when the number of
+     * positions (sites) is not known from the beginning. The HDF5 datasets
+     * grow as site blocks are added, so the input does not need to be read
+     * twice to count sites. Blocks can be added in any order, but every block
+     * except the last must be full.
+     *
+     * @param taxaList
+     * @param newHDF5File
+     *
+     * @return builder to add site blocks to
+     */
+    public static GenotypeTableBuilder getSiteIncremental(TaxaList taxaList, String newHDF5File) {
+        return new GenotypeTableBuilder(newHDF5File, taxaList, -1);
+    }
+
     public static GenotypeTable getInstance(GenotypeTable original, GenotypeCallTable newGenotypes) {
         return getInstance(newGenotypes, original.positions(), original.taxa(), original.depth(), original.alleleProbability(), original.referenceProbability(), original.dosage(), original.annotations());
     }
@@ -430,10 +460,25 @@ public class GenotypeTableBuilder {
     }
 
     public static GenotypeTable getInstance(String hdf5File) {
+        return getInstance(hdf5File, TasselPrefs.getAlignmentHDF5CacheSizeMB(), TasselPrefs.getAlignmentHDF5ReadAhead());
+    }
+
+    /**
+     * Opens HDF5 genotype file with given genotype cache size.
+     *
+     * @param hdf5File name of the file
+     * @param cacheSizeMB cache size in megabytes. Zero or less shares a third
+     * of max memory among all HDF5 genotype files opened that way
+     * @param readAhead whether to read ahead when sites are scanned
+     * sequentially
+     *
+     * @return alignment backed by HDF5 file
+     */
+    public static GenotypeTable getInstance(String hdf5File, int cacheSizeMB, boolean readAhead) {
         IHDF5Reader reader = HDF5Factory.openForReading(hdf5File);
         TaxaList tL = new TaxaListBuilder().buildFromHDF5Genotypes(reader);
         PositionList pL = PositionListBuilder.getInstance(reader);
-        GenotypeCallTable geno = GenotypeCallTableBuilder.buildHDF5(reader);
+        GenotypeCallTable geno = GenotypeCallTableBuilder.buildHDF5(reader, cacheSizeMB, readAhead);
         AlleleDepth depth = AlleleDepthBuilder.getInstance(reader);
         return GenotypeTableBuilder.getInstance(geno, pL, tL, depth, null, null, null, HDF5Utils.readHDF5Annotation(reader, Tassel5HDF5Constants.ROOT, GenotypeTable.GENOTYPE_TABLE_ANNOTATIONS));
     }
@@ -539,6 +584,10 @@ public class GenotypeTableBuilder {
         }
         int s = startSite;
         System.out.println("startSite = [" + startSite + "], blkPositionList = [" + blkPositionList.size() + "], blockGenotypes = [" + blockGenotypes.length + "], blockDepths = [" + blockDepths + "]");
+        // grows the position list when the number of sites was not known in advance
+        for (int i = posListBuilder.size(), n = startSite + blkPositionList.size(); i < n; i++) {
+            posListBuilder.add(new GeneralPosition.Builder(Chromosome.UNKNOWN, i).build());
+        }
         for (Position position : blkPositionList) {
             posListBuilder.set(s++, position);
         }
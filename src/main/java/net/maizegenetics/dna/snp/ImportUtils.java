@@ -23,6 +23,8 @@ import net.maizegenetics.dna.snp.genotypecall.GenotypeCallTable;
 import net.maizegenetics.dna.snp.genotypecall.GenotypeCallTableBuilder;
 import net.maizegenetics.dna.snp.io.BuilderFromHapMap;
 import net.maizegenetics.dna.snp.io.BuilderFromPLINK;
+import net.maizegenetics.dna.snp.io.MappedGenotypeIO;
+import net.maizegenetics.dna.snp.io.PlinkBedIO;
 import net.maizegenetics.plugindef.DataSet;
 import net.maizegenetics.taxa.TaxaList;
 import net.maizegenetics.taxa.TaxaListBuilder;
@@ -187,6 +189,29 @@ public class ImportUtils {
         return builder.build();
     }
 
+    /**
+     * Opens a memory mapped binary genotype file (.t5g).
+     *
+     * @param filename file name
+     *
+     * @return genotype table
+     */
+    public static GenotypeTable readFromMappedGenotype(final String filename) {
+        return MappedGenotypeIO.read(filename);
+    }
+
+    /**
+     * Opens PLINK binary genotype files (.bed, .bim and .fam). The .bed file
+     * is memory mapped and decoded on demand.
+     *
+     * @param filename .bed, .bim or .fam file name, or their prefix
+     *
+     * @return genotype table
+     */
+    public static GenotypeTable readFromPlinkBed(final String filename) {
+        return PlinkBedIO.read(filename);
+    }
+
     public static GenotypeTable readFromPLink(final String pedFilename, final String mapFilename, ProgressListener listener) {
         return BuilderFromPLINK.getBuilder(pedFilename, mapFilename, listener).build();
     }
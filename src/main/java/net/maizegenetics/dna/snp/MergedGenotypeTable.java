@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.BiFunction;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import net.maizegenetics.dna.WHICH_ALLELE;
@@ -13,6 +14,7 @@ import net.maizegenetics.dna.snp.bit.BitStorage;
 import net.maizegenetics.dna.snp.score.AlleleDepth;
 import net.maizegenetics.dna.snp.genotypecall.GenotypeCallTable;
 import net.maizegenetics.dna.snp.genotypecall.MergedGenotypeCallTable;
+import net.maizegenetics.dna.snp.genotypecall.SiteGenotypes;
 import net.maizegenetics.dna.snp.score.AlleleProbability;
 import net.maizegenetics.dna.snp.score.Dosage;
 import net.maizegenetics.dna.snp.score.ReferenceProbability;
@@ -628,6 +630,21 @@ public class MergedGenotypeTable implements GenotypeTable {
         return null;
     }
 
+    @Override
+    public IntStream intStreamGenotype() {
+        return myGenotype.intStream();
+    }
+
+    @Override
+    public IntStream intStreamGenotype(int taxon) {
+        return myGenotype.intStream(taxon);
+    }
+
+    @Override
+    public Stream<SiteGenotypes> streamSiteGenotypes() {
+        return myGenotype.siteStream();
+    }
+
     @Override
     public boolean hasSiteTranslations() {
         return false;
@@ -11,6 +11,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import net.maizegenetics.dna.BaseEncoder;
 import net.maizegenetics.dna.WHICH_ALLELE;
@@ -22,6 +23,7 @@ import net.maizegenetics.dna.map.PositionListBuilder;
 import net.maizegenetics.dna.map.TOPMInterface;
 import net.maizegenetics.dna.snp.bit.BitStorage;
 import net.maizegenetics.dna.snp.genotypecall.GenotypeCallTable;
+import net.maizegenetics.dna.snp.genotypecall.SiteGenotypes;
 import net.maizegenetics.dna.snp.score.AlleleDepth;
 import net.maizegenetics.dna.snp.score.AlleleProbability;
 import net.maizegenetics.dna.snp.score.Dosage;
@@ -760,6 +762,21 @@ public class TOPMGenotypeTable implements GenotypeTable {
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    @Override
+    public IntStream intStreamGenotype() {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public IntStream intStreamGenotype(int taxon) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public Stream<SiteGenotypes> streamSiteGenotypes() {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
     @Override
     public boolean hasSiteTranslations() {
         return false;
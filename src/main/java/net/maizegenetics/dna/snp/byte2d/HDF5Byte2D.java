@@ -4,14 +4,16 @@
 package net.maizegenetics.dna.snp.byte2d;
 
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 
 import net.maizegenetics.taxa.TaxaList;
 import net.maizegenetics.taxa.TaxaListBuilder;
 import net.maizegenetics.util.Tassel5HDF5Constants;
 import net.maizegenetics.util.HDF5Utils;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import net.maizegenetics.dna.snp.score.SiteScore;
 
 /**
@@ -22,12 +24,14 @@ public class HDF5Byte2D extends AbstractByte2D {
 
     private static final int MAX_CACHE_SIZE = 1 << 16;
     private static final int HDF5_BLOCK = 1 << 16;
-    private final Map<Long, byte[]> myCache = new LinkedHashMap<Long, byte[]>((3 * MAX_CACHE_SIZE) / 2) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
-            return size() > MAX_CACHE_SIZE;
-        }
-    };
+    private final LoadingCache<Long, byte[]> myCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHE_SIZE)
+            .build(new CacheLoader<Long, byte[]>() {
+                @Override
+                public byte[] load(Long key) {
+                    return readValues((int) (key >>> 33));
+                }
+            });
 
     private final IHDF5Reader myReader;
     private final int myNumSites;
@@ -47,24 +51,25 @@ public class HDF5Byte2D extends AbstractByte2D {
         return (long) taxon << 33;
     }
 
-    private byte[] cacheValues(int taxon, long key) {
-        byte[] data = HDF5Utils.getHDF5GenotypeSiteScores(myReader, myTaxa.taxaName(taxon), siteScoreType().name());
+    private byte[] readValues(int taxon) {
+        String taxonName = myTaxa.taxaName(taxon);
+        byte[] data;
+        synchronized (myReader) {
+            data = HDF5Utils.getHDF5GenotypeSiteScores(myReader, taxonName, siteScoreType().name());
+        }
         if (data == null) {
-            return null;
-        } else {
-            myCache.put(key, data);
-            return data;
+            throw new IllegalStateException("HDF5Byte2D: readValues: no " + siteScoreType().name() + " values for taxon: " + taxonName);
         }
+        return data;
     }
 
     @Override
     public byte valueForAllele(int taxon, int site) {
-        long key = getCacheKey(taxon, site);
-        byte[] data = myCache.get(key);
-        if (data == null) {
-            data = cacheValues(taxon, key);
+        try {
+            return myCache.get(getCacheKey(taxon, site))[site];
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("HDF5Byte2D: valueForAllele: Error getting value from cache: " + e.getMessage());
         }
-        return data[site];
     }
 
 }
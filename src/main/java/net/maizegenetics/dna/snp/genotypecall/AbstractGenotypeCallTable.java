@@ -19,6 +19,7 @@ import static java.util.Spliterator.ORDERED;
 import static java.util.Spliterator.SIZED;
 import static java.util.Spliterator.SUBSIZED;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -641,7 +642,7 @@ abstract class AbstractGenotypeCallTable implements GenotypeCallTable {
         int numSites = end - start;
         byte[] result = new byte[numSites];
         for (int i = start; i < end; i++) {
-            result[i] = genotype(taxon, i);
+            result[i - start] = genotype(taxon, i);
         }
         return result;
     }
@@ -680,6 +681,33 @@ abstract class AbstractGenotypeCallTable implements GenotypeCallTable {
         return new AbstractGenotypeCallTableSpliterator<>(0, 0, numberOfSites(), numberOfTaxa() - 1, numberOfSites());
     }
 
+    @Override
+    public IntStream intStream() {
+        return IntStream.range(0, numberOfTaxa()).parallel().flatMap(this::intStream);
+    }
+
+    @Override
+    public IntStream intStream(int taxon) {
+        return intStream(genotypeForAllSites(taxon));
+    }
+
+    /**
+     * Unboxed parallel Stream over given values.
+     */
+    static IntStream intStream(byte[] values) {
+        return IntStream.range(0, values.length).parallel().map(i -> values[i]);
+    }
+
+    @Override
+    public Stream<SiteGenotypes> siteStream() {
+        return siteStream(0, numberOfSites());
+    }
+
+    @Override
+    public Stream<SiteGenotypes> siteStream(int startSite, int endSite) {
+        return IntStream.range(startSite, endSite).parallel().mapToObj(site -> new SiteGenotypes(site, genotypeForAllTaxa(site)));
+    }
+
     class AbstractGenotypeCallTableSpliterator<T extends Byte> implements Spliterator<Byte> {
 
         protected int myTaxaOrigin;
@@ -0,0 +1,284 @@
+/*
+ *  AbstractLineIndexGenotypeCallTable
+ */
+package net.maizegenetics.dna.snp.genotypecall;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import net.maizegenetics.dna.snp.NucleotideAlignmentConstants;
+import net.maizegenetics.dna.snp.io.LineIndex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Genotypes of a block gzipped text file with one line per site, read from the
+ * file as sites are accessed using a {@link LineIndex}. Blocks of lines are
+ * decoded when first touched, followed by look ahead blocks, and kept in a
+ * cache. Subclasses decode the lines of a file format.
+ *
+ * @author Terry Casstevens
+ */
+public abstract class AbstractLineIndexGenotypeCallTable extends AbstractGenotypeCallTable {
+
+    private static final Logger myLogger = LogManager.getLogger(AbstractLineIndexGenotypeCallTable.class);
+    private static final int NUM_LOOK_AHEAD_BLOCKS = 103;
+
+    private final String myFilename;
+    private final LineIndex myIndex;
+    private final int myNumLinesPerInterval;
+    private final ConcurrentLinkedQueue<BlockCompressedInputStream> myReaders = new ConcurrentLinkedQueue<>();
+    private final CopyOnWriteArraySet<Integer> myCurrentlyProcessingBlocks = new CopyOnWriteArraySet<>();
+
+    private final Cache<Integer, byte[][]> myGenoCache;
+
+    private final Cache<Integer, byte[]> mySmallGenoCache;
+
+    private final ConcurrentHashMap<Integer, CompletableFuture<byte[]>> myFutureQueue = new ConcurrentHashMap<>();
+
+    private final ForkJoinPool myThreadPool;
+
+    protected AbstractLineIndexGenotypeCallTable(int numTaxa, int numSites, boolean phased, LineIndex index, String filename) {
+        super(numTaxa, numSites, phased, NucleotideAlignmentConstants.NUCLEOTIDE_ALLELES);
+        myIndex = index;
+        myNumLinesPerInterval = index.numLinesPerInterval();
+        myFilename = filename;
+
+        long oneThirdMemory = Runtime.getRuntime().maxMemory() / (numTaxa * myNumLinesPerInterval * 3);
+        int maxCacheSize = (int) Math.min((long) (110 * Runtime.getRuntime().availableProcessors()), oneThirdMemory);
+
+        myGenoCache = CacheBuilder.newBuilder()
+                .initialCapacity(maxCacheSize)
+                .maximumSize(maxCacheSize)
+                .build();
+
+        mySmallGenoCache = CacheBuilder.newBuilder()
+                .initialCapacity(1000)
+                .maximumSize(1000)
+                .build();
+
+        myThreadPool = ForkJoinPool.commonPool();
+
+    }
+
+    private byte[] getFromCache(int site) {
+
+        int blockNumber = site / myNumLinesPerInterval;
+
+        byte[][] result = myGenoCache.getIfPresent(blockNumber);
+
+        if (result == null) {
+
+            CompletableFuture<byte[]> future = new CompletableFuture<>();
+            CompletableFuture<byte[]> temp = myFutureQueue.putIfAbsent(site, future);
+            if (temp != null) {
+                future = temp;
+            }
+            if (myCurrentlyProcessingBlocks.add(blockNumber)) {
+                myThreadPool.submit(new ProcessLines(site));
+            }
+
+            try {
+                result = myGenoCache.getIfPresent(blockNumber);
+                if (result != null) {
+                    myFutureQueue.remove(site);
+                    future.complete(result[site % myNumLinesPerInterval]);
+                    return result[site % myNumLinesPerInterval];
+                } else {
+                    return future.get();
+                }
+            } catch (Exception e) {
+                myLogger.error(e.getMessage(), e);
+                throw new IllegalStateException("AbstractLineIndexGenotypeCallTable: getFromCache: Error getting site: " + site + ": " + e.getMessage());
+            }
+
+        }
+
+        return result[site % myNumLinesPerInterval];
+
+    }
+
+    private BlockCompressedInputStream getReader() {
+        BlockCompressedInputStream reader = myReaders.poll();
+        if (reader == null) {
+            try {
+                reader = new BlockCompressedInputStream(new File(myFilename));
+            } catch (Exception e) {
+                myLogger.error(e.getMessage(), e);
+            }
+        }
+        return reader;
+    }
+
+    @Override
+    public byte genotype(int taxon, int site) {
+        try {
+            byte[] result = mySmallGenoCache.getIfPresent(site);
+            if (result != null) {
+                return result[taxon];
+            } else {
+                result = getFromCache(site);
+                mySmallGenoCache.put(site, result);
+                return result[taxon];
+            }
+        } catch (Exception ex) {
+            myLogger.error(ex.getMessage(), ex);
+            throw new IllegalStateException("AbstractLineIndexGenotypeCallTable: genotype: Error getting genotype from cache: " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public byte[] genotypeForAllTaxa(int site) {
+        byte[] result = new byte[myTaxaCount];
+        System.arraycopy(getFromCache(site), 0, result, 0, myTaxaCount);
+        return result;
+    }
+
+    @Override
+    public String genotypeAsString(int taxon, int site) {
+        return NucleotideAlignmentConstants.getNucleotideIUPAC(genotype(taxon, site));
+    }
+
+    @Override
+    public String diploidAsString(int site, byte value) {
+        return NucleotideAlignmentConstants.getNucleotideIUPAC(value);
+    }
+
+    @Override
+    public void transposeData(boolean siteInnerLoop) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public boolean isSiteOptimized() {
+        return true;
+    }
+
+    /**
+     * Parse line from file to genotypes for a site.
+     *
+     * @param input input line
+     * @param site site
+     *
+     * @return genotypes for all taxa
+     */
+    protected abstract byte[] parseLine(String input, int site);
+
+    private class ProcessLines implements Runnable {
+
+        private int myStartSite;
+        private int myCurrentBlock;
+        private final int mySeekIndex;
+        private final int myProcessBlock;
+
+        public ProcessLines(int site) {
+            myProcessBlock = site / myNumLinesPerInterval;
+            myStartSite = myProcessBlock * myNumLinesPerInterval;
+            mySeekIndex = myStartSite / myNumLinesPerInterval;
+        }
+
+        @Override
+        public void run() {
+
+            if (myStartSite >= mySiteCount) {
+                return;
+            }
+
+            myCurrentBlock = myProcessBlock;
+            BlockCompressedInputStream reader = getReader();
+            try {
+
+                reader.seek(myIndex.virtualOffset(mySeekIndex));
+
+                int numSites = Math.min(myNumLinesPerInterval, mySiteCount - myStartSite);
+                byte[][] result = new byte[numSites][];
+                for (int i = 0; i < numSites; i++) {
+                    result[i] = parseLine(reader.readLine(), myStartSite + i);
+                    CompletableFuture<byte[]> future = myFutureQueue.remove(myStartSite + i);
+                    if (future != null) {
+                        future.complete(result[i]);
+                    }
+                }
+                myGenoCache.put(myProcessBlock, result);
+                // This get to prevent early eviction from cache
+                myGenoCache.getIfPresent(myProcessBlock);
+                myCurrentlyProcessingBlocks.remove(myProcessBlock);
+                for (int i = 0; i < numSites; i++) {
+                    CompletableFuture<byte[]> future = myFutureQueue.remove(myStartSite + i);
+                    if (future != null) {
+                        future.complete(result[i]);
+                    }
+                }
+                myStartSite += myNumLinesPerInterval;
+                if (myStartSite >= mySiteCount) {
+                    return;
+                }
+
+                for (int b = 1; b < NUM_LOOK_AHEAD_BLOCKS; b++) {
+
+                    if (myGenoCache.getIfPresent(myProcessBlock + b) != null) {
+                        return;
+                    }
+                    if (!myCurrentlyProcessingBlocks.add(myProcessBlock + b)) {
+                        return;
+                    }
+                    myCurrentBlock = myProcessBlock + b;
+
+                    numSites = Math.min(myNumLinesPerInterval, mySiteCount - myStartSite);
+                    result = new byte[numSites][];
+                    for (int i = 0; i < numSites; i++) {
+                        result[i] = parseLine(reader.readLine(), myStartSite + i);
+                    }
+                    myGenoCache.put(myProcessBlock + b, result);
+                    // This get to prevent early eviction from cache
+                    myGenoCache.getIfPresent(myProcessBlock + b);
+                    myCurrentlyProcessingBlocks.remove(myProcessBlock + b);
+                    for (int i = 0; i < numSites; i++) {
+                        CompletableFuture<byte[]> future = myFutureQueue.remove(myStartSite + i);
+                        if (future != null) {
+                            future.complete(result[i]);
+                        }
+                    }
+                    myStartSite += myNumLinesPerInterval;
+                    if (myStartSite >= mySiteCount) {
+                        return;
+                    }
+                }
+
+            } catch (Exception e) {
+                myLogger.error(e.getMessage(), e);
+                failBlock(e);
+            } finally {
+                if (reader != null) {
+                    myReaders.add(reader);
+                }
+            }
+
+        }
+
+        /**
+         * Releases the block that failed, so a later request can try it
+         * again, and fails the requests waiting on its sites.
+         */
+        private void failBlock(Exception e) {
+            myCurrentlyProcessingBlocks.remove(myCurrentBlock);
+            int startSite = myCurrentBlock * myNumLinesPerInterval;
+            int endSite = Math.min(startSite + myNumLinesPerInterval, mySiteCount);
+            for (int site = startSite; site < endSite; site++) {
+                CompletableFuture<byte[]> future = myFutureQueue.remove(site);
+                if (future != null) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+
+    }
+
+}
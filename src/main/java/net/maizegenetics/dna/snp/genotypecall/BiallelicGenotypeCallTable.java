@@ -0,0 +1,274 @@
+/*
+ *  BiallelicGenotypeCallTable
+ */
+package net.maizegenetics.dna.snp.genotypecall;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.NucleotideAlignmentConstants;
+import net.maizegenetics.util.OpenBitSet;
+import net.maizegenetics.util.SuperByteMatrix;
+
+/**
+ * In memory GenotypeCallTable for nucleotide data where every site has at most
+ * two alleles. Each call is stored as a two bit code split over two bit planes
+ * per taxon (2 bits per call instead of 8). Codes are expanded to the diploid
+ * nucleotide byte encoding only when returned.
+ *
+ * <pre>
+ * low high  call
+ *  0    0   homozygous first allele of site
+ *  1    0   heterozygous
+ *  0    1   homozygous second allele of site
+ *  1    1   unknown
+ * </pre>
+ *
+ * Taxon level counts (i.e. heterozygous, non-missing) are calculated with word
+ * level operations on the bit planes.
+ *
+ * @see GenotypeCallTableBuilder#packBiallelic(boolean)
+ */
+class BiallelicGenotypeCallTable extends AbstractGenotypeCallTable {
+
+    // Number of sites packed per task. Multiple of 64, so tasks never share words.
+    private static final int SITES_PER_BLOCK = 64 * 64;
+
+    private static final int UNKNOWN_CODE = 3;
+
+    private final OpenBitSet[] myLowBits;
+    private final OpenBitSet[] myHighBits;
+
+    // Diploid value of each code, indexed by site * 4 + code
+    private final byte[] myValues;
+
+    private BiallelicGenotypeCallTable(OpenBitSet[] lowBits, OpenBitSet[] highBits, byte[] values, int numSites, boolean phased) {
+        super(lowBits.length, numSites, phased, NucleotideAlignmentConstants.NUCLEOTIDE_ALLELES);
+        myLowBits = lowBits;
+        myHighBits = highBits;
+        myValues = values;
+    }
+
+    /**
+     * Packs given genotypes, if every site has at most two alleles, calls are
+     * either fully known or fully unknown, and heterozygous calls at a site
+     * all have the same allele order.
+     *
+     * @param genotype genotypes
+     * @param phased whether phased
+     *
+     * @return packed genotypes or null if genotypes can't be packed without
+     * loss
+     */
+    static BiallelicGenotypeCallTable getInstance(SuperByteMatrix genotype, boolean phased) {
+
+        int numTaxa = genotype.getNumRows();
+        int numSites = genotype.getNumColumns();
+        if ((numTaxa == 0) || (numSites == 0) || (numSites > Integer.MAX_VALUE / 4)) {
+            return null;
+        }
+
+        OpenBitSet[] lowBits = new OpenBitSet[numTaxa];
+        OpenBitSet[] highBits = new OpenBitSet[numTaxa];
+        for (int t = 0; t < numTaxa; t++) {
+            lowBits[t] = new OpenBitSet(numSites);
+            highBits[t] = new OpenBitSet(numSites);
+        }
+        byte[] values = new byte[numSites * 4];
+
+        int numBlocks = (numSites + SITES_PER_BLOCK - 1) / SITES_PER_BLOCK;
+        boolean packed = IntStream.range(0, numBlocks).parallel().allMatch(block -> {
+            int start = block * SITES_PER_BLOCK;
+            int end = Math.min(start + SITES_PER_BLOCK, numSites);
+            return packBlock(genotype, lowBits, highBits, values, start, end);
+        });
+
+        if (packed) {
+            return new BiallelicGenotypeCallTable(lowBits, highBits, values, numSites, phased);
+        } else {
+            return null;
+        }
+
+    }
+
+    private static boolean packBlock(SuperByteMatrix genotype, OpenBitSet[] lowBits, OpenBitSet[] highBits, byte[] values, int start, int end) {
+
+        int numSites = end - start;
+        byte[] first = new byte[numSites];
+        byte[] second = new byte[numSites];
+        byte[] het = new byte[numSites];
+        Arrays.fill(first, GenotypeTable.UNKNOWN_ALLELE);
+        Arrays.fill(second, GenotypeTable.UNKNOWN_ALLELE);
+        Arrays.fill(het, GenotypeTable.UNKNOWN_DIPLOID_ALLELE);
+
+        for (int t = 0, numTaxa = lowBits.length; t < numTaxa; t++) {
+            OpenBitSet low = lowBits[t];
+            OpenBitSet high = highBits[t];
+            for (int s = start; s < end; s++) {
+
+                byte value = genotype.get(t, s);
+                if (value == GenotypeTable.UNKNOWN_DIPLOID_ALLELE) {
+                    low.fastSet(s);
+                    high.fastSet(s);
+                    continue;
+                }
+
+                int i = s - start;
+                byte a = (byte) ((value >>> 4) & 0xf);
+                byte b = (byte) (value & 0xf);
+                if ((a == GenotypeTable.UNKNOWN_ALLELE) || (b == GenotypeTable.UNKNOWN_ALLELE)) {
+                    return false;
+                }
+
+                if (a == b) {
+                    if ((first[i] == GenotypeTable.UNKNOWN_ALLELE) || (first[i] == a)) {
+                        first[i] = a;
+                    } else if ((second[i] == GenotypeTable.UNKNOWN_ALLELE) || (second[i] == a)) {
+                        second[i] = a;
+                        high.fastSet(s);
+                    } else {
+                        return false;
+                    }
+                } else {
+                    if (het[i] == GenotypeTable.UNKNOWN_DIPLOID_ALLELE) {
+                        if (first[i] == GenotypeTable.UNKNOWN_ALLELE) {
+                            first[i] = a;
+                            second[i] = b;
+                        } else if (second[i] == GenotypeTable.UNKNOWN_ALLELE) {
+                            if (first[i] == a) {
+                                second[i] = b;
+                            } else if (first[i] == b) {
+                                second[i] = a;
+                            } else {
+                                return false;
+                            }
+                        } else if (!(((first[i] == a) && (second[i] == b)) || ((first[i] == b) && (second[i] == a)))) {
+                            return false;
+                        }
+                        het[i] = value;
+                    } else if (het[i] != value) {
+                        return false;
+                    }
+                    low.fastSet(s);
+                }
+
+            }
+        }
+
+        for (int s = start; s < end; s++) {
+            int i = s - start;
+            int offset = s << 2;
+            values[offset] = (first[i] == GenotypeTable.UNKNOWN_ALLELE) ? GenotypeTable.UNKNOWN_DIPLOID_ALLELE : (byte) ((first[i] << 4) | first[i]);
+            values[offset + 1] = het[i];
+            values[offset + 2] = (second[i] == GenotypeTable.UNKNOWN_ALLELE) ? GenotypeTable.UNKNOWN_DIPLOID_ALLELE : (byte) ((second[i] << 4) | second[i]);
+            values[offset + UNKNOWN_CODE] = GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+        }
+
+        return true;
+
+    }
+
+    @Override
+    public byte genotype(int taxon, int site) {
+        int code = (myLowBits[taxon].fastGet(site) ? 1 : 0) | (myHighBits[taxon].fastGet(site) ? 2 : 0);
+        return myValues[(site << 2) | code];
+    }
+
+    @Override
+    public byte[] genotypeForAllSites(int taxon) {
+        return genotypeForSiteRange(taxon, 0, mySiteCount);
+    }
+
+    @Override
+    public byte[] genotypeForSiteRange(int taxon, int start, int end) {
+        long[] low = myLowBits[taxon].getBits();
+        long[] high = myHighBits[taxon].getBits();
+        byte[] result = new byte[end - start];
+        int site = start;
+        while (site < end) {
+            int word = site >>> 6;
+            long lowWord = low[word] >>> (site & 0x3f);
+            long highWord = high[word] >>> (site & 0x3f);
+            int wordEnd = Math.min((word + 1) << 6, end);
+            for (; site < wordEnd; site++) {
+                int code = (int) (lowWord & 0x1) | (int) ((highWord & 0x1) << 1);
+                result[site - start] = myValues[(site << 2) | code];
+                lowWord >>>= 1;
+                highWord >>>= 1;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public byte[] genotypeAllSites(int taxon) {
+        return genotypeForAllSites(taxon);
+    }
+
+    @Override
+    public byte[] genotypeRange(int taxon, int startSite, int endSite) {
+        return genotypeForSiteRange(taxon, startSite, endSite);
+    }
+
+    @Override
+    public boolean isHeterozygous(int taxon, int site) {
+        return myLowBits[taxon].fastGet(site) && !myHighBits[taxon].fastGet(site);
+    }
+
+    @Override
+    public int heterozygousCountForTaxon(int taxon) {
+        return (int) OpenBitSet.andNotCount(myLowBits[taxon], myHighBits[taxon]);
+    }
+
+    @Override
+    public int totalNonMissingForTaxon(int taxon) {
+        return mySiteCount - (int) OpenBitSet.intersectionCount(myLowBits[taxon], myHighBits[taxon]);
+    }
+
+    @Override
+    public int totalGametesNonMissingForTaxon(int taxon) {
+        // Calls are never partially unknown
+        return 2 * totalNonMissingForTaxon(taxon);
+    }
+
+    @Override
+    public String genotypeAsString(int taxon, int site) {
+        return NucleotideAlignmentConstants.getNucleotideIUPAC(genotype(taxon, site));
+    }
+
+    @Override
+    public String genotypeAsStringRange(int taxon, int startSite, int endSite) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = startSite; i < endSite; i++) {
+            builder.append(genotypeAsString(taxon, i));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String diploidAsString(int site, byte value) {
+        return NucleotideAlignmentConstants.getNucleotideIUPAC(value);
+    }
+
+    @Override
+    public int maxNumAlleles() {
+        return NucleotideAlignmentConstants.NUMBER_NUCLEOTIDE_ALLELES;
+    }
+
+    @Override
+    public boolean retainsRareAlleles() {
+        return false;
+    }
+
+    @Override
+    public void transposeData(boolean siteInnerLoop) {
+        // Nothing to do. Bit planes are small enough to keep in one orientation.
+    }
+
+    @Override
+    public boolean isSiteOptimized() {
+        return false;
+    }
+
+}
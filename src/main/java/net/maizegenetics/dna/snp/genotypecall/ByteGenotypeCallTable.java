@@ -3,6 +3,7 @@
  */
 package net.maizegenetics.dna.snp.genotypecall;
 
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import net.maizegenetics.util.SuperByteMatrix;
@@ -105,4 +106,24 @@ class ByteGenotypeCallTable extends AbstractGenotypeCallTable {
         return myGenotype.stream(taxon);
     }
 
+    /**
+     * Uses whichever orientation has the sites of a taxon contiguous, if it
+     * exists.
+     */
+    @Override
+    public IntStream intStream(int taxon) {
+        SuperByteMatrix matrix = (mySiteInnerLoop != null) ? mySiteInnerLoop : myGenotype;
+        return intStream(matrix.getAllColumns(taxon));
+    }
+
+    /**
+     * Uses whichever orientation has the taxa of a site contiguous, if it
+     * exists.
+     */
+    @Override
+    public Stream<SiteGenotypes> siteStream(int startSite, int endSite) {
+        SuperByteMatrix matrix = (myTaxonInnerLoop != null) ? myTaxonInnerLoop : myGenotype;
+        return IntStream.range(startSite, endSite).parallel().mapToObj(site -> new SiteGenotypes(site, matrix.getAllRows(site)));
+    }
+
 }
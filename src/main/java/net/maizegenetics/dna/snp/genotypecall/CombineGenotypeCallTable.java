@@ -5,6 +5,9 @@
  */
 package net.maizegenetics.dna.snp.genotypecall;
 
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
 /**
  *
  * @author Terry Casstevens
@@ -139,4 +142,28 @@ public class CombineGenotypeCallTable extends AbstractGenotypeCallTable {
         return myGenotypeCallTables[0].isSiteOptimized();
     }
 
+    @Override
+    public IntStream intStream(int taxon) {
+        IntStream result = IntStream.empty();
+        for (GenotypeCallTable current : myGenotypeCallTables) {
+            result = IntStream.concat(result, current.intStream(taxon));
+        }
+        return result.parallel();
+    }
+
+    @Override
+    public Stream<SiteGenotypes> siteStream(int startSite, int endSite) {
+        Stream<SiteGenotypes> result = Stream.empty();
+        for (int i = 0; i < myGenotypeCallTables.length; i++) {
+            int offset = mySiteOffsets[i];
+            int start = Math.max(startSite, offset) - offset;
+            int end = Math.min(endSite, mySiteOffsets[i + 1]) - offset;
+            if (start < end) {
+                result = Stream.concat(result, myGenotypeCallTables[i].siteStream(start, end)
+                        .map(block -> new SiteGenotypes(block.site() + offset, block.genotypes())));
+            }
+        }
+        return result.parallel();
+    }
+
 }
@@ -67,18 +67,33 @@ class FilterGenotypeCallTable extends AbstractGenotypeCallTable {
         } else if (!myTranslate.hasTaxaTranslations()) {
             return myBaseGenotype.genotypeForAllTaxa(myTranslate.site(site));
         } else {
-            byte[] orig = myBaseGenotype.genotypeForAllTaxa(myTranslate.site(site));
-            int[] translations = myTranslate.taxaTranslations();
-            int numTaxa = myTranslate.numTaxa();
-            byte[] result = new byte[numTaxa];
-            for (int i = 0; i < numTaxa; i++) {
-                if (translations[i] == -1) {
-                    result[i] = GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
-                } else {
-                    result[i] = orig[translations[i]];
-                }
+            return translateTaxa(myBaseGenotype.genotypeForAllTaxa(myTranslate.site(site)));
+        }
+    }
+
+    private byte[] translateTaxa(byte[] orig) {
+        int[] translations = myTranslate.taxaTranslations();
+        int numTaxa = myTranslate.numTaxa();
+        byte[] result = new byte[numTaxa];
+        for (int i = 0; i < numTaxa; i++) {
+            if (translations[i] == -1) {
+                result[i] = GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+            } else {
+                result[i] = orig[translations[i]];
             }
-            return result;
+        }
+        return result;
+    }
+
+    @Override
+    public Stream<SiteGenotypes> siteStream(int startSite, int endSite) {
+        if (myTranslate.hasSiteTranslations()) {
+            return super.siteStream(startSite, endSite);
+        } else if (!myTranslate.hasTaxaTranslations()) {
+            return myBaseGenotype.siteStream(startSite, endSite);
+        } else {
+            return myBaseGenotype.siteStream(startSite, endSite)
+                    .map(block -> new SiteGenotypes(block.site(), translateTaxa(block.genotypes())));
         }
     }
 
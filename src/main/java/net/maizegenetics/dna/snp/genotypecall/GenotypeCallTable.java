@@ -3,6 +3,7 @@
  */
 package net.maizegenetics.dna.snp.genotypecall;
 
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -528,4 +529,40 @@ public interface GenotypeCallTable {
     public Stream<Byte> stream();
 
     public Stream<Byte> stream(int taxon);
+
+    /**
+     * Returns an unboxed Stream over the genotype calls in the same order as
+     * stream(). Values are the diploid genotype bytes widened to int.
+     *
+     * @return IntStream over the genotype calls
+     */
+    public IntStream intStream();
+
+    /**
+     * Returns an unboxed Stream over the genotype calls of given taxon.
+     *
+     * @param taxon taxon
+     *
+     * @return IntStream over the genotype calls of taxon
+     */
+    public IntStream intStream(int taxon);
+
+    /**
+     * Returns a parallel Stream over sites. Each element holds the genotypes
+     * of all taxa at one site.
+     *
+     * @return Stream over sites
+     */
+    public Stream<SiteGenotypes> siteStream();
+
+    /**
+     * Returns a parallel Stream over sites from startSite (inclusive) to
+     * endSite (exclusive).
+     *
+     * @param startSite start site
+     * @param endSite end site
+     *
+     * @return Stream over sites
+     */
+    public Stream<SiteGenotypes> siteStream(int startSite, int endSite);
 }
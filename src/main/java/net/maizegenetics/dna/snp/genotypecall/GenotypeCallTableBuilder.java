@@ -38,6 +38,7 @@ public class GenotypeCallTableBuilder {
 
     private SuperByteMatrix myGenotype;
     private boolean myIsPhased = false;
+    private boolean myPackBiallelic = false;
     private String[][] myAlleleEncodings = NucleotideAlignmentConstants.NUCLEOTIDE_ALLELES;
 
     private GenotypeCallTableBuilder(SuperByteMatrix genotype) {
@@ -251,10 +252,32 @@ public class GenotypeCallTableBuilder {
         myGenotype.reorderColumns(newIndices);
     }
 
+    /**
+     * Whether nucleotide genotypes with at most two alleles per site are
+     * packed to two bits per call by build(). Default is false. Packing
+     * happens after all genotypes have been set, so it does not lower the
+     * peak memory of building, only the memory held afterwards. Packed calls
+     * are expanded on every read and can't be transposed.
+     *
+     * @param pack whether to pack
+     *
+     * @return this builder
+     */
+    public GenotypeCallTableBuilder packBiallelic(boolean pack) {
+        myPackBiallelic = pack;
+        return this;
+    }
+
     public GenotypeCallTable build() {
         SuperByteMatrix temp = myGenotype;
         myGenotype = null;
         if (NucleotideAlignmentConstants.isNucleotideEncodings(myAlleleEncodings)) {
+            if (myPackBiallelic) {
+                GenotypeCallTable packed = BiallelicGenotypeCallTable.getInstance(temp, myIsPhased);
+                if (packed != null) {
+                    return packed;
+                }
+            }
             return new NucleotideGenotypeCallTable(temp, myIsPhased);
         } else {
             return new ByteGenotypeCallTable(temp, myIsPhased, myAlleleEncodings);
@@ -268,4 +291,31 @@ public class GenotypeCallTableBuilder {
     public static GenotypeCallTable buildHDF5(IHDF5Reader reader) {
         return HDF5ByteGenotypeCallTable.getInstance(reader);
     }
+
+    /**
+     * Opens genotypes in HDF5 file with given cache size.
+     *
+     * @param reader reader
+     * @param cacheSizeMB cache size in megabytes. Zero or less shares a third
+     * of max memory among all HDF5 genotype files opened that way
+     * @param readAhead whether to read ahead when sites are scanned
+     * sequentially
+     *
+     * @return genotypes
+     */
+    public static GenotypeCallTable buildHDF5(IHDF5Reader reader, int cacheSizeMB, boolean readAhead) {
+        return HDF5ByteGenotypeCallTable.getInstance(reader, cacheSizeMB, readAhead);
+    }
+
+    /**
+     * Opens a memory mapped binary genotype file. Genotypes are not loaded
+     * into memory and can be read concurrently without locking.
+     *
+     * @param filename file name
+     *
+     * @return genotype call table
+     */
+    public static GenotypeCallTable buildMapped(String filename) {
+        return MappedGenotypeCallTable.getInstance(filename);
+    }
 }
@@ -6,18 +6,29 @@ package net.maizegenetics.dna.snp.genotypecall;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 
 import net.maizegenetics.dna.snp.GenotypeTable;
 import net.maizegenetics.dna.snp.NucleotideAlignmentConstants;
+import net.maizegenetics.prefs.TasselPrefs;
 import net.maizegenetics.taxa.TaxaList;
 import net.maizegenetics.taxa.TaxaListBuilder;
+import net.maizegenetics.util.CacheStatisticsReporter;
 import net.maizegenetics.util.Tassel5HDF5Constants;
 import net.maizegenetics.util.HDF5Utils;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.Spliterator;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -26,12 +37,18 @@ import org.apache.logging.log4j.Logger;
 
 /**
  * HDF5 implementation of GenotypeTable. Uses caching of GenotypeTable,
- * alleleCounts, MAF, and siteCoverage
+ * alleleCounts, MAF, and siteCoverage. Caches are bounded by bytes (see
+ * TasselPrefs.getAlignmentHDF5CacheSizeMB()). Tables opened with the default
+ * size share one set of caches per process. When a taxon is read
+ * sequentially by site, the next block is read ahead in the background.
+ * JHDF5 serializes all calls into the native HDF5 library through one global
+ * lock, so reads from the file are done one at a time no matter how many
+ * threads ask. Read ahead only overlaps reading with the caller's work.
  *
  * @author Ed Buckler
  * @author Terry Casstevens
  */
-class HDF5ByteGenotypeCallTable extends AbstractGenotypeCallTable {
+class HDF5ByteGenotypeCallTable extends AbstractGenotypeCallTable implements CacheStatisticsReporter {
 
     private static final Logger myLogger = LogManager.getLogger(HDF5ByteGenotypeCallTable.class);
 
@@ -43,45 +60,109 @@ class HDF5ByteGenotypeCallTable extends AbstractGenotypeCallTable {
      */
     private static final int HDF5_GENOTYPE_BLOCK_SIZE = 1 << SHIFT_AMOUNT;
     public static final int SITE_BLOCK_MASK = ~(HDF5_GENOTYPE_BLOCK_SIZE - 1);
+    /**
+     * Approximate bytes used by a cache entry in addition to its arrays
+     */
+    private static final int CACHE_ENTRY_OVERHEAD = 128;
+    /**
+     * Bytes per site of SiteBlockAttr (6 int counts, 6 byte order, 2 floats)
+     */
+    private static final int SITE_ANNO_BYTES_PER_SITE = 6 * 4 + 6 + 4 + 4;
+    /**
+     * Number of sites per batch in siteStream(). Divides
+     * HDF5_GENOTYPE_BLOCK_SIZE so a batch never spans two blocks.
+     */
+    private static final int SITE_STREAM_BATCH = 1024;
+    private static final ExecutorService READ_AHEAD_POOL = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), r -> {
+        Thread thread = new Thread(r, "HDF5ByteGenotypeCallTable read ahead");
+        thread.setDaemon(true);
+        return thread;
+    });
     private final IHDF5Reader myHDF5Reader;
+    private final boolean myReadAhead;
+    private final LongAdder myNumReadAhead = new LongAdder();
+    private final Set<Long> myPendingReadAhead = ConcurrentHashMap.newKeySet();
 
-    private final LoadingCache<Long, byte[]> myGenoCache;
-    private final CacheLoader<Long, byte[]> myGenoLoader = new CacheLoader<Long, byte[]>() {
+    private final boolean mySharedCaches;
+
+    private final LoadingCache<CacheKey, byte[]> myGenoCache;
+    private static final CacheLoader<CacheKey, byte[]> GENO_LOADER = new CacheLoader<CacheKey, byte[]>() {
         @Override
-        public byte[] load(Long key) {
-            long offset = getSiteStartFromKey(key) << SHIFT_AMOUNT;
-            byte[] data;
-            synchronized (myHDF5Reader) {
-                data = myHDF5Reader.int8().readArrayBlockWithOffset(getTaxaGenoPath(getTaxonFromKey(key)), HDF5_GENOTYPE_BLOCK_SIZE, offset);
-            }
-            return data;
+        public byte[] load(CacheKey key) {
+            byte[] result = key.myTable.readBlock(key.myKey);
+            key.myTable.readAhead(key.myKey);
+            return result;
+        }
+    };
+
+    private final LoadingCache<CacheKey, SiteBlockAttr> mySiteAnnoCache; //key = start site
+    private static final CacheLoader<CacheKey, SiteBlockAttr> SITE_ANNO_LOADER = new CacheLoader<CacheKey, SiteBlockAttr>() {
+        @Override
+        public SiteBlockAttr load(CacheKey key) {
+            return key.myTable.readSiteBlockAttr((int) key.myKey);
         }
     };
 
-    private final LoadingCache<Integer, SiteBlockAttr> mySiteAnnoCache; //key = site
-    private final CacheLoader<Integer, SiteBlockAttr> siteAnnotLoader = new CacheLoader<Integer, SiteBlockAttr>() {
-        int lastCachedStartSite = Integer.MIN_VALUE;
-        int[][] af;
-        byte[][] afOrder;
-        float[] maf;
-        float[] paf;
+    /**
+     * Caches used by all tables opened with the default cache size, so
+     * together they stay within a third of max memory no matter how many
+     * files are open. Created when first used.
+     */
+    private static final class DefaultCaches {
+
+        private static final long CACHE_SIZE = Runtime.getRuntime().maxMemory() / 3;
+        private static final LoadingCache<CacheKey, byte[]> GENOTYPES = genoCache(CACHE_SIZE);
+        private static final LoadingCache<CacheKey, SiteBlockAttr> SITE_ANNOTATIONS = siteAnnoCache(CACHE_SIZE);
+
+    }
+
+    /**
+     * Key of a cached block. Includes the table, so blocks of several tables
+     * can be kept in one cache. A table stays reachable while any of its
+     * blocks are cached.
+     */
+    private static final class CacheKey {
+
+        private final HDF5ByteGenotypeCallTable myTable;
+        private final long myKey;
+
+        private CacheKey(HDF5ByteGenotypeCallTable table, long key) {
+            myTable = table;
+            myKey = key;
+        }
 
         @Override
-        public SiteBlockAttr load(Integer key) {
-            int startSite = getStartSite(key);
-            int length = Math.min(HDF5_GENOTYPE_BLOCK_SIZE, numberOfSites() - startSite);
-            System.out.println("Reading from HDF5 site anno:" + startSite);
-            System.out.println("");
-            synchronized (myHDF5Reader) {
-                af = myHDF5Reader.int32().readMatrixBlockWithOffset(Tassel5HDF5Constants.ALLELE_CNT, 6, length, 0l, startSite);
-                afOrder = myHDF5Reader.int8().readMatrixBlockWithOffset(Tassel5HDF5Constants.ALLELE_FREQ_ORD, 6, length, 0l, startSite);
-                maf = myHDF5Reader.float32().readArrayBlockWithOffset(Tassel5HDF5Constants.MAF, length, startSite);
-                paf = myHDF5Reader.float32().readArrayBlockWithOffset(Tassel5HDF5Constants.SITECOV, length, startSite);
-                lastCachedStartSite = startSite;
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CacheKey)) {
+                return false;
             }
-            return new SiteBlockAttr(startSite, afOrder, af, maf, paf);
+            CacheKey other = (CacheKey) obj;
+            return (myTable == other.myTable) && (myKey == other.myKey);
         }
-    };
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(myTable) + Long.hashCode(myKey);
+        }
+
+    }
+
+    // site annotations get an eighth of the cache, but at least one block
+    private static LoadingCache<CacheKey, SiteBlockAttr> siteAnnoCache(long cacheSize) {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(Math.max(cacheSize / 8, (long) HDF5_GENOTYPE_BLOCK_SIZE * SITE_ANNO_BYTES_PER_SITE + CACHE_ENTRY_OVERHEAD))
+                .weigher((CacheKey key, SiteBlockAttr value) -> value.maf.length * SITE_ANNO_BYTES_PER_SITE + CACHE_ENTRY_OVERHEAD)
+                .recordStats()
+                .build(SITE_ANNO_LOADER);
+    }
+
+    private static LoadingCache<CacheKey, byte[]> genoCache(long cacheSize) {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(Math.max(cacheSize - cacheSize / 8, HDF5_GENOTYPE_BLOCK_SIZE + CACHE_ENTRY_OVERHEAD))
+                .weigher((CacheKey key, byte[] value) -> value.length + CACHE_ENTRY_OVERHEAD)
+                .recordStats()
+                .build(GENO_LOADER);
+    }
 
     private class SiteBlockAttr {
 
@@ -128,6 +209,10 @@ class HDF5ByteGenotypeCallTable extends AbstractGenotypeCallTable {
         return ((long) taxon << 33) + (site / HDF5_GENOTYPE_BLOCK_SIZE);
     }
 
+    private CacheKey genoKey(int taxon, int site) {
+        return new CacheKey(this, getCacheKey(taxon, site));
+    }
+
     private static int getTaxonFromKey(long key) {
         return (int) (key >>> 33);
     }
@@ -144,7 +229,76 @@ class HDF5ByteGenotypeCallTable extends AbstractGenotypeCallTable {
         return genotypePaths[taxon];
     }
 
-    private HDF5ByteGenotypeCallTable(IHDF5Reader reader, int numTaxa, int numSites, boolean phased, String[][] alleleEncodings) {
+    private SiteBlockAttr readSiteBlockAttr(int startSite) {
+        int length = Math.min(HDF5_GENOTYPE_BLOCK_SIZE, numberOfSites() - startSite);
+        myLogger.debug("Reading from HDF5 site anno: " + startSite);
+        synchronized (myHDF5Reader) {
+            int[][] af = myHDF5Reader.int32().readMatrixBlockWithOffset(Tassel5HDF5Constants.ALLELE_CNT, 6, length, 0l, startSite);
+            byte[][] afOrder = myHDF5Reader.int8().readMatrixBlockWithOffset(Tassel5HDF5Constants.ALLELE_FREQ_ORD, 6, length, 0l, startSite);
+            float[] maf = myHDF5Reader.float32().readArrayBlockWithOffset(Tassel5HDF5Constants.MAF, length, startSite);
+            float[] paf = myHDF5Reader.float32().readArrayBlockWithOffset(Tassel5HDF5Constants.SITECOV, length, startSite);
+            return new SiteBlockAttr(startSite, afOrder, af, maf, paf);
+        }
+    }
+
+    private byte[] readBlock(long key) {
+        long offset = (long) getSiteStartFromKey(key) << SHIFT_AMOUNT;
+        String path = getTaxaGenoPath(getTaxonFromKey(key));
+        synchronized (myHDF5Reader) {
+            return myHDF5Reader.int8().readArrayBlockWithOffset(path, HDF5_GENOTYPE_BLOCK_SIZE, offset);
+        }
+    }
+
+    /**
+     * Called when a caller's request misses the cache. If the block before
+     * the one just loaded is cached, the taxon is likely being scanned by
+     * site, so the following block is read in the background. The read ahead
+     * block is put directly in the cache rather than loaded through the cache
+     * loader, so it doesn't trigger further read ahead and isn't counted in
+     * the cache stats.
+     */
+    private void readAhead(long key) {
+        if (!myReadAhead) {
+            return;
+        }
+        long next = key + 1;
+        if (((long) getSiteStartFromKey(next) << SHIFT_AMOUNT) >= numberOfSites()) {
+            return;
+        }
+        Map<CacheKey, byte[]> cached = myGenoCache.asMap();
+        CacheKey nextKey = new CacheKey(this, next);
+        if (cached.containsKey(new CacheKey(this, key - 1)) && !cached.containsKey(nextKey) && myPendingReadAhead.add(next)) {
+            myNumReadAhead.increment();
+            READ_AHEAD_POOL.execute(() -> {
+                try {
+                    if (!cached.containsKey(nextKey)) {
+                        cached.putIfAbsent(nextKey, readBlock(next));
+                    }
+                } catch (Exception e) {
+                    myLogger.debug(e.getMessage(), e);
+                } finally {
+                    myPendingReadAhead.remove(next);
+                }
+            });
+        }
+    }
+
+    /**
+     * Whether the genotype block containing the given site of a taxon is
+     * cached. Doesn't affect the cache stats.
+     */
+    boolean isCached(int taxon, int site) {
+        return myGenoCache.asMap().containsKey(genoKey(taxon, site));
+    }
+
+    /**
+     * Number of read ahead blocks scheduled but not yet in the cache.
+     */
+    int numPendingReadAhead() {
+        return myPendingReadAhead.size();
+    }
+
+    private HDF5ByteGenotypeCallTable(IHDF5Reader reader, int numTaxa, int numSites, boolean phased, String[][] alleleEncodings, long cacheSize, boolean readAhead) {
         super(numTaxa, numSites, phased, alleleEncodings);
         genotypePaths = new String[numTaxa];
         TaxaList tL = new TaxaListBuilder().buildFromHDF5Genotypes(reader);  //not the most efficient thing to do, but ensures sort is the same.
@@ -152,30 +306,64 @@ class HDF5ByteGenotypeCallTable extends AbstractGenotypeCallTable {
             genotypePaths[i] = Tassel5HDF5Constants.getGenotypesCallsPath(tL.taxaName(i));
         }
         myHDF5Reader = reader;
-        long oneThirdMemory = Runtime.getRuntime().maxMemory() / 196608l;
-        long oneColumnBlockForEachProcess = numTaxa * Runtime.getRuntime().availableProcessors();
-        myGenoCache = CacheBuilder.newBuilder()
-                .maximumSize(Math.min(oneThirdMemory, oneColumnBlockForEachProcess))
-                .build(myGenoLoader);
-        mySiteAnnoCache = CacheBuilder.newBuilder()
-                .maximumSize(150)
-                .build(siteAnnotLoader);
+        myReadAhead = readAhead;
+        mySharedCaches = cacheSize <= 0;
+        if (mySharedCaches) {
+            myLogger.debug("HDF5ByteGenotypeCallTable: default caches shared by all tables: " + DefaultCaches.CACHE_SIZE + " bytes read ahead: " + readAhead);
+            myGenoCache = DefaultCaches.GENOTYPES;
+            mySiteAnnoCache = DefaultCaches.SITE_ANNOTATIONS;
+        } else {
+            myLogger.debug("HDF5ByteGenotypeCallTable: cache: " + cacheSize + " bytes read ahead: " + readAhead);
+            myGenoCache = genoCache(cacheSize);
+            mySiteAnnoCache = siteAnnoCache(cacheSize);
+        }
     }
 
     static HDF5ByteGenotypeCallTable getInstance(IHDF5Reader reader) {
+        return getInstance(reader, TasselPrefs.getAlignmentHDF5CacheSizeMB(), TasselPrefs.getAlignmentHDF5ReadAhead());
+    }
+
+    /**
+     * Opens genotypes in HDF5 file.
+     *
+     * @param reader reader
+     * @param cacheSizeMB cache size in megabytes. Zero or less uses caches
+     * shared by all tables opened this way, together a third of max memory
+     * @param readAhead whether to read ahead when scanning sites
+     *
+     * @return genotypes
+     */
+    static HDF5ByteGenotypeCallTable getInstance(IHDF5Reader reader, int cacheSizeMB, boolean readAhead) {
         if (!HDF5Utils.isHDF5GenotypeLocked(reader)) {
             throw new IllegalStateException("The Genotype module of this HDF5 file hasn't been locked, and therefore can't be opened for reading. This could occur if the file was created using the -ko (keep open) option when running the plugin ProductionSNPCallerPluginV2. Please check your file, close if appropriate, and try again.");
         }
         int numTaxa = reader.int32().getAttr(Tassel5HDF5Constants.GENOTYPES_ATTRIBUTES_PATH, Tassel5HDF5Constants.GENOTYPES_NUM_TAXA);
         int numSites = reader.int32().getAttr(Tassel5HDF5Constants.POSITION_ATTRIBUTES_PATH, Tassel5HDF5Constants.POSITION_NUM_SITES);
         String[][] alleleEncodings = NucleotideAlignmentConstants.NUCLEOTIDE_ALLELES;
-        return new HDF5ByteGenotypeCallTable(reader, numTaxa, numSites, false, alleleEncodings);
+        long cacheSize = (cacheSizeMB > 0) ? (long) cacheSizeMB << 20 : 0;
+        return new HDF5ByteGenotypeCallTable(reader, numTaxa, numSites, false, alleleEncodings, cacheSize, readAhead);
+    }
+
+    @Override
+    public Map<String, CacheStats> cacheStats() {
+        Map<String, CacheStats> result = new LinkedHashMap<>();
+        result.put("HDF5 genotypes", myGenoCache.stats());
+        result.put("HDF5 site annotations", mySiteAnnoCache.stats());
+        return result;
+    }
+
+    @Override
+    public String cacheStatistics() {
+        String shared = mySharedCaches ? "HDF5 caches are shared by all genotype tables opened with the default cache size\n" : "";
+        return CacheStatisticsReporter.super.cacheStatistics()
+                + shared
+                + "HDF5 genotype read ahead blocks: " + myNumReadAhead.sum() + "\n";
     }
 
     @Override
     public byte genotype(int taxon, int site) {
         try {
-            byte[] data = myGenoCache.get(getCacheKey(taxon, site));
+            byte[] data = myGenoCache.get(genoKey(taxon, site));
             return data[site % HDF5_GENOTYPE_BLOCK_SIZE];
         } catch (ExecutionException ex) {
             myLogger.error(ex.getMessage(), ex);
@@ -183,6 +371,57 @@ class HDF5ByteGenotypeCallTable extends AbstractGenotypeCallTable {
         }
     }
 
+    private byte[] genotypeBlock(int taxon, int site) {
+        try {
+            return myGenoCache.get(genoKey(taxon, site));
+        } catch (ExecutionException ex) {
+            myLogger.error(ex.getMessage(), ex);
+            throw new IllegalStateException("HDF5ByteGenotyeCallTable: genotypeBlock: Error getting genotypes from cache: " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public byte[] genotypeForAllSites(int taxon) {
+        return genotypeForSiteRange(taxon, 0, numberOfSites());
+    }
+
+    @Override
+    public byte[] genotypeForSiteRange(int taxon, int start, int end) {
+        byte[] result = new byte[end - start];
+        int site = start;
+        while (site < end) {
+            byte[] data = genotypeBlock(taxon, site);
+            int offset = site % HDF5_GENOTYPE_BLOCK_SIZE;
+            int length = Math.min(end - site, HDF5_GENOTYPE_BLOCK_SIZE - offset);
+            System.arraycopy(data, offset, result, site - start, length);
+            site += length;
+        }
+        return result;
+    }
+
+    /**
+     * Sites are read in batches. For each batch, the block of each taxon is
+     * fetched from the cache once, rather than once per site.
+     */
+    @Override
+    public Stream<SiteGenotypes> siteStream(int startSite, int endSite) {
+        int numTaxa = numberOfTaxa();
+        int firstBatch = startSite / SITE_STREAM_BATCH;
+        int lastBatch = (endSite + SITE_STREAM_BATCH - 1) / SITE_STREAM_BATCH;
+        return IntStream.range(firstBatch, lastBatch).parallel().boxed().flatMap(batch -> {
+            int start = Math.max(startSite, batch * SITE_STREAM_BATCH);
+            int end = Math.min(endSite, (batch + 1) * SITE_STREAM_BATCH);
+            byte[][] result = new byte[end - start][numTaxa];
+            for (int t = 0; t < numTaxa; t++) {
+                byte[] data = genotypeBlock(t, start);
+                for (int s = start; s < end; s++) {
+                    result[s - start][t] = data[s % HDF5_GENOTYPE_BLOCK_SIZE];
+                }
+            }
+            return IntStream.range(start, end).mapToObj(s -> new SiteGenotypes(s, result[s - start]));
+        });
+    }
+
     @Override
     public String genotypeAsString(int taxon, int site) {
         return NucleotideAlignmentConstants.getNucleotideIUPAC(genotype(taxon, site));
@@ -196,7 +435,7 @@ class HDF5ByteGenotypeCallTable extends AbstractGenotypeCallTable {
     @Override
     public int[][] allelesSortedByFrequency(int site) {
         try {
-            SiteBlockAttr sa = mySiteAnnoCache.get(getStartSite(site));
+            SiteBlockAttr sa = mySiteAnnoCache.get(new CacheKey(this, getStartSite(site)));
             return sa.getAllelesSortedByFrequency(site);
         } catch (ExecutionException e) {
             e.printStackTrace();
@@ -207,7 +446,7 @@ class HDF5ByteGenotypeCallTable extends AbstractGenotypeCallTable {
     @Override
     public double minorAlleleFrequency(int site) {
         try {
-            SiteBlockAttr sa = mySiteAnnoCache.get(getStartSite(site));
+            SiteBlockAttr sa = mySiteAnnoCache.get(new CacheKey(this, getStartSite(site)));
             return sa.getMAF(site);
         } catch (ExecutionException e) {
             e.printStackTrace();
@@ -252,7 +491,7 @@ class HDF5ByteGenotypeCallTable extends AbstractGenotypeCallTable {
             for (; myTaxaOrigin < myTaxaFence; myTaxaOrigin++) {
                 while (mySiteOrigin < myNumSites) {
                     try {
-                        byte[] data = myGenoCache.get(getCacheKey(myTaxaOrigin, mySiteOrigin));
+                        byte[] data = myGenoCache.get(genoKey(myTaxaOrigin, mySiteOrigin));
                         int startIndex = mySiteOrigin % HDF5_GENOTYPE_BLOCK_SIZE;
                         int endIndex = data.length;
                         for (int i = startIndex; i < endIndex; i++) {
@@ -268,7 +507,7 @@ class HDF5ByteGenotypeCallTable extends AbstractGenotypeCallTable {
             }
             while (mySiteOrigin < mySiteFence) {
                 try {
-                    byte[] data = myGenoCache.get(getCacheKey(myTaxaOrigin, mySiteOrigin));
+                    byte[] data = myGenoCache.get(genoKey(myTaxaOrigin, mySiteOrigin));
                     int startIndex = mySiteOrigin % HDF5_GENOTYPE_BLOCK_SIZE;
                     int endIndex = Math.min(data.length, mySiteFence - mySiteOrigin);
                     for (int i = startIndex; i < endIndex; i++) {
@@ -0,0 +1,61 @@
+/*
+ *  LineIndexVCFGenotypeCallTable
+ */
+package net.maizegenetics.dna.snp.genotypecall;
+
+import net.maizegenetics.dna.snp.io.LineIndex;
+import net.maizegenetics.dna.snp.io.VCFGenotypeParser;
+
+/**
+ * Genotypes of a block gzipped VCF file, decoded from the file as sites are
+ * accessed using a {@link LineIndex}. Only the GT field of each sample is
+ * read.
+ */
+public class LineIndexVCFGenotypeCallTable extends AbstractLineIndexGenotypeCallTable {
+
+    private final int myRefColumn;
+    private final int myAltColumn;
+    private final int myFormatColumn;
+    private final int myFirstSampleColumn;
+
+    private LineIndexVCFGenotypeCallTable(int numTaxa, int numSites, boolean phased, LineIndex index, String filename, int refColumn, int altColumn, int formatColumn, int firstSampleColumn) {
+        super(numTaxa, numSites, phased, index, filename);
+        myRefColumn = refColumn;
+        myAltColumn = altColumn;
+        myFormatColumn = formatColumn;
+        myFirstSampleColumn = firstSampleColumn;
+    }
+
+    /**
+     * @param numTaxa number of taxa
+     * @param numSites number of sites
+     * @param phased whether genotypes are phased
+     * @param index line index of the VCF file
+     * @param filename block gzipped VCF file
+     * @param refColumn index of the REF column
+     * @param altColumn index of the ALT column
+     * @param formatColumn index of the FORMAT column, or -1 if absent
+     * @param firstSampleColumn index of the first sample column
+     *
+     * @return genotype call table
+     */
+    public static LineIndexVCFGenotypeCallTable getInstance(int numTaxa, int numSites, boolean phased, LineIndex index, String filename, int refColumn, int altColumn, int formatColumn, int firstSampleColumn) {
+        return new LineIndexVCFGenotypeCallTable(numTaxa, numSites, phased, index, filename, refColumn, altColumn, formatColumn, firstSampleColumn);
+    }
+
+    @Override
+    protected byte[] parseLine(String input, int site) {
+        byte[] data = new byte[myTaxaCount];
+        int numValues;
+        try {
+            numValues = VCFGenotypeParser.parseSite(input, myRefColumn, myAltColumn, myFormatColumn, myFirstSampleColumn, data);
+        } catch (Exception e) {
+            throw new IllegalStateException("LineIndexVCFGenotypeCallTable: Site: " + site + ": " + e.getMessage());
+        }
+        if (numValues != myTaxaCount) {
+            throw new IllegalStateException("LineIndexVCFGenotypeCallTable: Site: " + site + " has " + numValues + " values but there are " + myTaxaCount + " taxa.");
+        }
+        return data;
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ *  MappedGenotypeCallTable
+ */
+package net.maizegenetics.dna.snp.genotypecall;
+
+import net.maizegenetics.dna.snp.NucleotideAlignmentConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * GenotypeCallTable backed by a memory mapped binary file. The file is a
+ * fixed size header followed by the diploid genotype bytes as a flat matrix
+ * stored either taxon-major (all sites of a taxon together) or site-major (all
+ * taxa of a site together). The matrix is mapped in chunks of whole rows, so
+ * files larger than 2 GB are supported.
+ * <p>
+ * Reads use absolute gets on read-only mapped buffers, so any number of
+ * threads can read concurrently without locking. Paging is left to the
+ * operating system.
+ * <p>
+ * Header (big endian): magic (8 bytes), version (int), site-major flag (byte),
+ * phased flag (byte), 2 bytes reserved, number of taxa (int), number of sites
+ * (int), data offset (long). The data offset is page aligned.
+ *
+ * @see net.maizegenetics.dna.snp.io.MappedGenotypeIO
+ */
+public class MappedGenotypeCallTable extends AbstractGenotypeCallTable {
+
+    private static final Logger myLogger = LogManager.getLogger(MappedGenotypeCallTable.class);
+
+    public static final byte[] MAGIC = new byte[]{'T', '5', 'G', 'E', 'N', 'O', 0, 1};
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 4096;
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+    private final String myFilename;
+    private final boolean myIsSiteMajor;
+    private final int myRowLength;
+    private final int myRowsPerChunk;
+    private final MappedByteBuffer[] myChunks;
+
+    private MappedGenotypeCallTable(String filename, int numTaxa, int numSites, boolean phased, boolean siteMajor, long dataOffset, FileChannel channel) throws IOException {
+        super(numTaxa, numSites, phased, NucleotideAlignmentConstants.NUCLEOTIDE_ALLELES);
+        myFilename = filename;
+        myIsSiteMajor = siteMajor;
+        int numRows = siteMajor ? numSites : numTaxa;
+        myRowLength = siteMajor ? numTaxa : numSites;
+        myRowsPerChunk = (int) Math.max(1, Math.min(numRows, MAX_CHUNK_SIZE / Math.max(1, myRowLength)));
+        int numChunks = (numRows + myRowsPerChunk - 1) / myRowsPerChunk;
+        long expectedSize = dataOffset + (long) numRows * (long) myRowLength;
+        if (channel.size() < expectedSize) {
+            throw new IllegalStateException("MappedGenotypeCallTable: file: " + filename + " is truncated. Expected: " + expectedSize + " bytes but found: " + channel.size());
+        }
+        myChunks = new MappedByteBuffer[numChunks];
+        for (int c = 0; c < numChunks; c++) {
+            int rows = Math.min(myRowsPerChunk, numRows - c * myRowsPerChunk);
+            long start = dataOffset + (long) c * (long) myRowsPerChunk * (long) myRowLength;
+            myChunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, start, (long) rows * (long) myRowLength);
+        }
+    }
+
+    /**
+     * Opens a memory mapped genotype file.
+     *
+     * @param filename file name
+     *
+     * @return genotype call table
+     */
+    public static MappedGenotypeCallTable getInstance(String filename) {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+             FileChannel channel = file.getChannel()) {
+            DataInputStream header = new DataInputStream(Channels.newInputStream(channel));
+            byte[] magic = new byte[MAGIC.length];
+            header.readFully(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IllegalStateException("MappedGenotypeCallTable: getInstance: not a mapped genotype file: " + filename);
+            }
+            int version = header.readInt();
+            if (version != VERSION) {
+                throw new IllegalStateException("MappedGenotypeCallTable: getInstance: unsupported version: " + version + " in file: " + filename);
+            }
+            boolean siteMajor = header.readByte() != 0;
+            boolean phased = header.readByte() != 0;
+            header.readShort();
+            int numTaxa = header.readInt();
+            int numSites = header.readInt();
+            long dataOffset = header.readLong();
+            // mappings stay valid after the channel is closed
+            return new MappedGenotypeCallTable(filename, numTaxa, numSites, phased, siteMajor, dataOffset, channel);
+        } catch (IOException e) {
+            myLogger.debug(e.getMessage(), e);
+            throw new IllegalStateException("MappedGenotypeCallTable: getInstance: problem reading: " + filename + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the header of a mapped genotype file.
+     *
+     * @param output output positioned at the start of the file
+     * @param numTaxa number of taxa
+     * @param numSites number of sites
+     * @param phased whether genotypes are phased
+     * @param siteMajor whether all taxa of a site are stored together
+     */
+    public static void writeHeader(DataOutputStream output, int numTaxa, int numSites, boolean phased, boolean siteMajor) throws IOException {
+        output.write(MAGIC);
+        output.writeInt(VERSION);
+        output.writeByte(siteMajor ? 1 : 0);
+        output.writeByte(phased ? 1 : 0);
+        output.writeShort(0);
+        output.writeInt(numTaxa);
+        output.writeInt(numSites);
+        output.writeLong(HEADER_SIZE);
+        int written = MAGIC.length + 4 + 4 + 4 + 4 + 8;
+        output.write(new byte[HEADER_SIZE - written]);
+    }
+
+    public String filename() {
+        return myFilename;
+    }
+
+    private ByteBuffer chunk(int row) {
+        return myChunks[row / myRowsPerChunk];
+    }
+
+    private int offset(int row, int column) {
+        return (row % myRowsPerChunk) * myRowLength + column;
+    }
+
+    @Override
+    public byte genotype(int taxon, int site) {
+        if (myIsSiteMajor) {
+            return chunk(site).get(offset(site, taxon));
+        } else {
+            return chunk(taxon).get(offset(taxon, site));
+        }
+    }
+
+    @Override
+    public byte[] genotypeForAllSites(int taxon) {
+        return genotypeForSiteRange(taxon, 0, mySiteCount);
+    }
+
+    @Override
+    public byte[] genotypeForSiteRange(int taxon, int start, int end) {
+        byte[] result = new byte[end - start];
+        if (myIsSiteMajor) {
+            for (int s = start; s < end; s++) {
+                result[s - start] = chunk(s).get(offset(s, taxon));
+            }
+        } else {
+            chunk(taxon).get(offset(taxon, start), result);
+        }
+        return result;
+    }
+
+    @Override
+    public byte[] genotypeForAllTaxa(int site) {
+        byte[] result = new byte[myTaxaCount];
+        if (myIsSiteMajor) {
+            chunk(site).get(offset(site, 0), result);
+        } else {
+            for (int t = 0; t < myTaxaCount; t++) {
+                result[t] = chunk(t).get(offset(t, site));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String genotypeAsString(int taxon, int site) {
+        return NucleotideAlignmentConstants.getNucleotideIUPAC(genotype(taxon, site));
+    }
+
+    @Override
+    public String diploidAsString(int site, byte value) {
+        return NucleotideAlignmentConstants.getNucleotideIUPAC(value);
+    }
+
+    @Override
+    public void transposeData(boolean siteInnerLoop) {
+        // layout is fixed by the file
+    }
+
+    @Override
+    public boolean isSiteOptimized() {
+        return myIsSiteMajor;
+    }
+
+}
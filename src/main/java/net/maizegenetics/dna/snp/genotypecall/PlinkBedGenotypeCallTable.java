@@ -0,0 +1,186 @@
+/*
+ *  PlinkBedGenotypeCallTable
+ */
+package net.maizegenetics.dna.snp.genotypecall;
+
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.GenotypeTableUtils;
+import net.maizegenetics.dna.snp.NucleotideAlignmentConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * GenotypeCallTable backed by a memory mapped PLINK 1.9 binary genotype file
+ * (.bed) in SNP-major mode. Each site is stored as ceil(numTaxa / 4) bytes,
+ * with 2 bits per taxon starting from the low order bits: 00 homozygous first
+ * allele, 01 missing, 10 heterozygous, 11 homozygous second allele. The two
+ * alleles of each site come from the .bim file. Genotypes are decoded when
+ * read, so memory use is independent of the size of the file.
+ * <p>
+ * The file is mapped in chunks of whole sites, so files larger than 2 GB are
+ * supported. Reads use absolute gets on read-only mapped buffers, so any
+ * number of threads can read concurrently without locking.
+ *
+ * @see net.maizegenetics.dna.snp.io.PlinkBedIO
+ */
+public class PlinkBedGenotypeCallTable extends AbstractGenotypeCallTable {
+
+    private static final Logger myLogger = LogManager.getLogger(PlinkBedGenotypeCallTable.class);
+
+    public static final byte[] MAGIC = new byte[]{0x6c, 0x1b};
+    public static final byte SNP_MAJOR = 0x01;
+    public static final int HEADER_SIZE = 3;
+
+    public static final int HOMOZYGOUS_FIRST = 0;
+    public static final int MISSING = 1;
+    public static final int HETEROZYGOUS = 2;
+    public static final int HOMOZYGOUS_SECOND = 3;
+
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+    private final String myFilename;
+    private final int myBytesPerSite;
+    private final int mySitesPerChunk;
+    private final MappedByteBuffer[] myChunks;
+    // diploid values of the four 2 bit codes for each site
+    private final byte[] myGenotypes;
+
+    private PlinkBedGenotypeCallTable(String filename, int numTaxa, byte[] firstAlleles, byte[] secondAlleles, FileChannel channel) throws IOException {
+        super(numTaxa, firstAlleles.length, false, NucleotideAlignmentConstants.NUCLEOTIDE_ALLELES);
+        myFilename = filename;
+        myBytesPerSite = (numTaxa + 3) / 4;
+        mySitesPerChunk = (int) Math.max(1, Math.min(mySiteCount, MAX_CHUNK_SIZE / Math.max(1, myBytesPerSite)));
+        int numChunks = (mySiteCount + mySitesPerChunk - 1) / mySitesPerChunk;
+        long expectedSize = HEADER_SIZE + (long) mySiteCount * (long) myBytesPerSite;
+        if (channel.size() != expectedSize) {
+            throw new IllegalStateException("PlinkBedGenotypeCallTable: file: " + filename + " doesn't match number of taxa and sites. Expected: " + expectedSize + " bytes but found: " + channel.size());
+        }
+        myChunks = new MappedByteBuffer[numChunks];
+        for (int c = 0; c < numChunks; c++) {
+            int sites = Math.min(mySitesPerChunk, mySiteCount - c * mySitesPerChunk);
+            long start = HEADER_SIZE + (long) c * (long) mySitesPerChunk * (long) myBytesPerSite;
+            myChunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, start, (long) sites * (long) myBytesPerSite);
+        }
+        myGenotypes = new byte[mySiteCount * 4];
+        for (int s = 0; s < mySiteCount; s++) {
+            byte first = firstAlleles[s];
+            byte second = secondAlleles[s];
+            myGenotypes[4 * s + HOMOZYGOUS_FIRST] = GenotypeTableUtils.getDiploidValue(first, first);
+            myGenotypes[4 * s + MISSING] = GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+            if (first == GenotypeTable.UNKNOWN_ALLELE || second == GenotypeTable.UNKNOWN_ALLELE) {
+                myGenotypes[4 * s + HETEROZYGOUS] = GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+            } else {
+                myGenotypes[4 * s + HETEROZYGOUS] = GenotypeTableUtils.getUnphasedDiploidValue(first, second);
+            }
+            myGenotypes[4 * s + HOMOZYGOUS_SECOND] = GenotypeTableUtils.getDiploidValue(second, second);
+        }
+    }
+
+    /**
+     * Opens a PLINK binary genotype file.
+     *
+     * @param filename .bed file name
+     * @param numTaxa number of taxa (lines of the .fam file)
+     * @param firstAlleles first allele (column 5 of the .bim file) of each
+     * site
+     * @param secondAlleles second allele (column 6 of the .bim file) of each
+     * site
+     *
+     * @return genotype call table
+     */
+    public static PlinkBedGenotypeCallTable getInstance(String filename, int numTaxa, byte[] firstAlleles, byte[] secondAlleles) {
+        if (firstAlleles.length != secondAlleles.length) {
+            throw new IllegalArgumentException("PlinkBedGenotypeCallTable: getInstance: number of first and second alleles differ");
+        }
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+             FileChannel channel = file.getChannel()) {
+            byte[] header = new byte[HEADER_SIZE];
+            file.readFully(header);
+            if (header[0] != MAGIC[0] || header[1] != MAGIC[1]) {
+                throw new IllegalStateException("PlinkBedGenotypeCallTable: getInstance: not a PLINK binary genotype file: " + filename);
+            }
+            if (header[2] != SNP_MAJOR) {
+                throw new IllegalStateException("PlinkBedGenotypeCallTable: getInstance: only SNP-major PLINK binary genotype files are supported: " + filename);
+            }
+            // mappings stay valid after the channel is closed
+            return new PlinkBedGenotypeCallTable(filename, numTaxa, firstAlleles, secondAlleles, channel);
+        } catch (IOException e) {
+            myLogger.debug(e.getMessage(), e);
+            throw new IllegalStateException("PlinkBedGenotypeCallTable: getInstance: problem reading: " + filename + ": " + e.getMessage());
+        }
+    }
+
+    public String filename() {
+        return myFilename;
+    }
+
+    private ByteBuffer chunk(int site) {
+        return myChunks[site / mySitesPerChunk];
+    }
+
+    private int offset(int site) {
+        return (site % mySitesPerChunk) * myBytesPerSite;
+    }
+
+    @Override
+    public byte genotype(int taxon, int site) {
+        int code = (chunk(site).get(offset(site) + (taxon >>> 2)) >>> ((taxon & 3) << 1)) & 3;
+        return myGenotypes[4 * site + code];
+    }
+
+    @Override
+    public byte[] genotypeForAllSites(int taxon) {
+        return genotypeForSiteRange(taxon, 0, mySiteCount);
+    }
+
+    @Override
+    public byte[] genotypeForSiteRange(int taxon, int start, int end) {
+        byte[] result = new byte[end - start];
+        int shift = (taxon & 3) << 1;
+        for (int s = start; s < end; s++) {
+            int code = (chunk(s).get(offset(s) + (taxon >>> 2)) >>> shift) & 3;
+            result[s - start] = myGenotypes[4 * s + code];
+        }
+        return result;
+    }
+
+    @Override
+    public byte[] genotypeForAllTaxa(int site) {
+        byte[] packed = new byte[myBytesPerSite];
+        chunk(site).get(offset(site), packed);
+        byte[] result = new byte[myTaxaCount];
+        int base = 4 * site;
+        for (int t = 0; t < myTaxaCount; t++) {
+            int code = (packed[t >>> 2] >>> ((t & 3) << 1)) & 3;
+            result[t] = myGenotypes[base + code];
+        }
+        return result;
+    }
+
+    @Override
+    public String genotypeAsString(int taxon, int site) {
+        return NucleotideAlignmentConstants.getNucleotideIUPAC(genotype(taxon, site));
+    }
+
+    @Override
+    public String diploidAsString(int site, byte value) {
+        return NucleotideAlignmentConstants.getNucleotideIUPAC(value);
+    }
+
+    @Override
+    public void transposeData(boolean siteInnerLoop) {
+        // layout is fixed by the file
+    }
+
+    @Override
+    public boolean isSiteOptimized() {
+        return true;
+    }
+
+}
@@ -1,5 +1,6 @@
 package net.maizegenetics.dna.snp.genotypecall;
 
+import com.google.common.collect.BoundType;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Range;
 import com.google.common.collect.RangeMap;
@@ -9,9 +10,10 @@ import net.maizegenetics.dna.snp.GenotypeTableUtils;
 import net.maizegenetics.dna.snp.NucleotideAlignmentConstants;
 import net.maizegenetics.dna.map.DonorHaplotypes;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.NavigableSet;
+import java.util.NoSuchElementException;
 
 /**
  * Projection genotype use defined haplotypes and breakpoints that point to a high
@@ -37,30 +39,54 @@ public class ProjectionGenotypeCallTable extends AbstractGenotypeCallTable {
         General, Site, Taxa
     };
     private BaseMode currMode = BaseMode.Taxa;
-    private ArrayList<RangeMap<Integer, DonorSiteHaps>> breakMaps;
-    private byte[] donorForCachedSite;
-    private byte[] projForCachedTaxon;
-    private int cachedSite = -1;
-    private int cachedTaxon = -1;
-    int[] primDSH; //startSite,endSite,parent1,parent2 array for the
+    // donor intervals of each taxon, sorted and not overlapping. Interval i of taxon t covers sites
+    // myStartSites[t][i] to myEndSites[t][i] inclusive, with donors myDonors[t][2 * i] and myDonors[t][2 * i + 1]
+    private final int[][] myStartSites;
+    private final int[][] myEndSites;
+    private final int[][] myDonors;
+    // interval of the last site looked up for each taxon, only a hint so it needs no synchronization
+    private final int[] myLastInterval;
+    private volatile CachedSite myCachedSite = null;
 
   public ProjectionGenotypeCallTable(GenotypeTable hdAlign, ImmutableList<NavigableSet<DonorHaplotypes>> allBreakPoints) {
         super(allBreakPoints.size(), hdAlign.numberOfSites(), false, NucleotideAlignmentConstants.NUCLEOTIDE_ALLELES);
         myBaseGenoTable= hdAlign;
         this.allBreakPoints = allBreakPoints;
-        breakMaps = new ArrayList<>(numberOfTaxa());
+        myStartSites = new int[myTaxaCount][];
+        myEndSites = new int[myTaxaCount][];
+        myDonors = new int[myTaxaCount][];
+        myLastInterval = new int[myTaxaCount];
+        int taxon = 0;
         for (NavigableSet<DonorHaplotypes> allBreakPoint : allBreakPoints) {
-            RangeMap<Integer, DonorSiteHaps> tRM = TreeRangeMap.create();
+            // later donor haplotypes replace the overlapping part of earlier ones
+            RangeMap<Integer, int[]> tRM = TreeRangeMap.create();
             for (DonorHaplotypes dh : allBreakPoint) {
                 int[] siteRange = siteRangeForDonor(dh);
-                DonorSiteHaps dsh = new DonorSiteHaps(siteRange[0], siteRange[1], dh.getParent1index(), dh.getParent2index());
-                tRM.put(Range.closed(siteRange[0], siteRange[1]), dsh);
-                //TODO consider putting in blank range maps
+                tRM.put(Range.closed(siteRange[0], siteRange[1]), new int[]{dh.getParent1index(), dh.getParent2index()});
             }
-            breakMaps.add(tRM);
+            Map<Range<Integer>, int[]> ranges = tRM.asMapOfRanges();
+            int[] starts = new int[ranges.size()];
+            int[] ends = new int[ranges.size()];
+            int[] donors = new int[ranges.size() * 2];
+            int numIntervals = 0;
+            for (Map.Entry<Range<Integer>, int[]> entry : ranges.entrySet()) {
+                Range<Integer> range = entry.getKey();
+                int startSite = range.lowerBoundType() == BoundType.CLOSED ? range.lowerEndpoint() : range.lowerEndpoint() + 1;
+                int endSite = range.upperBoundType() == BoundType.CLOSED ? range.upperEndpoint() : range.upperEndpoint() - 1;
+                if (startSite > endSite) {
+                    continue;
+                }
+                starts[numIntervals] = startSite;
+                ends[numIntervals] = endSite;
+                donors[2 * numIntervals] = entry.getValue()[0];
+                donors[2 * numIntervals + 1] = entry.getValue()[1];
+                numIntervals++;
+            }
+            myStartSites[taxon] = Arrays.copyOf(starts, numIntervals);
+            myEndSites[taxon] = Arrays.copyOf(ends, numIntervals);
+            myDonors[taxon] = Arrays.copyOf(donors, numIntervals * 2);
+            taxon++;
         }
-        primDSH = new int[myTaxaCount * 4];
-        Arrays.fill(primDSH, Integer.MIN_VALUE);
     }
 
     public NavigableSet<DonorHaplotypes> getDonorHaplotypes(int taxon) {
@@ -79,28 +105,60 @@ public class ProjectionGenotypeCallTable extends AbstractGenotypeCallTable {
         return new int[]{start, end};
     }
 
+    /**
+     * Returns the interval of the taxon containing the site.
+     *
+     * @return interval index, or -1 if no donors are defined at the site
+     */
+    private int interval(int taxon, int site) {
+        int[] starts = myStartSites[taxon];
+        int[] ends = myEndSites[taxon];
+        int last = myLastInterval[taxon];
+        if (last < starts.length && site >= starts[last] && site <= ends[last]) {
+            return last;
+        }
+        int index = Arrays.binarySearch(starts, site);
+        if (index < 0) {
+            index = -(index + 1) - 1;
+        }
+        if (index < 0 || site > ends[index]) {
+            return -1;
+        }
+        myLastInterval[taxon] = index;
+        return index;
+    }
+
     @Override
     public byte genotype(int taxon, int site) {
+        int interval = interval(taxon, site);
+        if (interval < 0) {
+            return GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+        }
+        int parent1 = myDonors[taxon][2 * interval];
+        int parent2 = myDonors[taxon][2 * interval + 1];
+        if (parent1 < 0 || parent2 < 0) {
+            return GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+        }
         if (currMode == BaseMode.Site) {
-            return getBaseSite(taxon, site);
+            byte[] donors = donorsForSite(site);
+            return GenotypeTableUtils.getUnphasedDiploidValueNoHets(donors[parent1], donors[parent2]);
         }
-//        if(currMode==BaseMode.Taxa) {return getBaseTaxon(taxon, site);}
-        return getBaseGeneral(taxon, site);
+        byte p1 = myBaseGenoTable.genotype(parent1, site);
+        byte p2 = myBaseGenoTable.genotype(parent2, site);
+        return GenotypeTableUtils.getUnphasedDiploidValueNoHets(p1, p2);
     }
-    
+
+    /**
+     * Returns the donors of the taxon at the site.
+     *
+     * @return indices of the two donors in the base genotype table
+     */
     public int[] taxonDonors(int taxon, int site) {
-        int primPos = taxon << 2;
-        if ((site < primDSH[primPos++]) || (site > primDSH[primPos++])) {
-            DonorSiteHaps currentDSH = breakMaps.get(taxon).get(site);
-            primPos = taxon << 2;
-            primDSH[primPos++] = currentDSH.getStartSite(); //NOTE:-used to be currentDSH.getStartSite(), but it threw an exception
-            primDSH[primPos++] = currentDSH.getStartSite(); //NOTE:-used to be currentDSH.getEndSite(), but it threw an exception
-            primDSH[primPos++] = currentDSH.getParent1index();
-            primDSH[primPos++] = currentDSH.getParent2index();
-            primPos = (taxon << 2) + 2;
-            //TODO consider null
+        int interval = interval(taxon, site);
+        if (interval < 0) {
+            throw new NoSuchElementException("ProjectionGenotypeCallTable: taxonDonors: no donors for taxon: " + taxon + " at site: " + site);
         }
-        return new int[]{primDSH[primPos], primDSH[primPos + 1]};
+        return new int[]{myDonors[taxon][2 * interval], myDonors[taxon][2 * interval + 1]};
     }
 
     /**
@@ -112,52 +170,81 @@ public class ProjectionGenotypeCallTable extends AbstractGenotypeCallTable {
         return myBaseGenoTable;
     }
 
-    private byte getBaseGeneral(int taxon, int site) {
-        DonorSiteHaps currentDSH = breakMaps.get(taxon).get(site);
-        if (currentDSH == null) {
-            return GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+    private byte[] donorsForSite(int site) {
+        CachedSite cached = myCachedSite;
+        if (cached == null || cached.mySite != site) {
+            cached = new CachedSite(site, myBaseGenoTable.genotypeAllTaxa(site));
+            myCachedSite = cached;
         }
-        byte p1 = myBaseGenoTable.genotype(currentDSH.getParent1index(), site);
-        byte p2 = myBaseGenoTable.genotype(currentDSH.getParent2index(), site);
-        return GenotypeTableUtils.getUnphasedDiploidValueNoHets(p1, p2);
+        return cached.myGenotypes;
     }
 
-    //Currently this is no faster than general genotype.  it should be possible to make this faster.
-    private byte getBaseTaxon(int taxon, int site) {
-        if (taxon != cachedTaxon) {
-            projForCachedTaxon = new byte[mySiteCount];
-            Arrays.fill(projForCachedTaxon, GenotypeTable.RARE_DIPLOID_ALLELE);
-            cachedTaxon = taxon;
-        }
-        byte result = projForCachedTaxon[site];
-        if (result == GenotypeTable.RARE_DIPLOID_ALLELE) {
-            DonorSiteHaps currentDSH = breakMaps.get(taxon).get(site);
-            byte[] r = myBaseGenoTable.genotypeRange(currentDSH.getParent1index(), currentDSH.getStartSite(), currentDSH.getEndSite() + 1);
-            System.arraycopy(r, 0, projForCachedTaxon, currentDSH.getStartSite(), r.length);
-            result = projForCachedTaxon[site];
+    @Override
+    public byte[] genotypeForAllTaxa(int site) {
+        byte[] donors = myBaseGenoTable.genotypeAllTaxa(site);
+        byte[] result = new byte[myTaxaCount];
+        for (int taxon = 0; taxon < myTaxaCount; taxon++) {
+            int interval = interval(taxon, site);
+            if (interval < 0) {
+                result[taxon] = GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+                continue;
+            }
+            int parent1 = myDonors[taxon][2 * interval];
+            int parent2 = myDonors[taxon][2 * interval + 1];
+            if (parent1 < 0 || parent2 < 0) {
+                result[taxon] = GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+            } else {
+                result[taxon] = GenotypeTableUtils.getUnphasedDiploidValueNoHets(donors[parent1], donors[parent2]);
+            }
         }
         return result;
     }
 
-    private byte getBaseSite(int taxon, int site) {
-        //test transpose problems
-        if (site != cachedSite) {
-            donorForCachedSite = myBaseGenoTable.genotypeMatrix().genotypeForAllTaxa(site);
-            cachedSite = site;
+    /**
+     * Copies the runs of sites between start (inclusive) and end (exclusive)
+     * from the donor rows of the base genotype table, one interval at a time.
+     */
+    @Override
+    public byte[] genotypeForSiteRange(int taxon, int start, int end) {
+        byte[] result = new byte[end - start];
+        Arrays.fill(result, GenotypeTable.UNKNOWN_DIPLOID_ALLELE);
+        int[] starts = myStartSites[taxon];
+        int[] ends = myEndSites[taxon];
+        int[] donors = myDonors[taxon];
+        int interval = Arrays.binarySearch(starts, start);
+        if (interval < 0) {
+            interval = Math.max(0, -(interval + 1) - 1);
         }
-        int primPos = taxon << 2;
-        if ((site < primDSH[primPos++]) || (site > primDSH[primPos++])) {
-            DonorSiteHaps currentDSH = breakMaps.get(taxon).get(site);
-            primPos = taxon << 2;
-            primDSH[primPos++] = currentDSH.getStartSite();
-            primDSH[primPos++] = currentDSH.getEndSite();
-            primDSH[primPos++] = currentDSH.getParent1index();
-            primDSH[primPos] = currentDSH.getParent2index();
-            primPos = (taxon << 2) + 2;
-            //TODO consider null
+        for (; interval < starts.length && starts[interval] < end; interval++) {
+            int first = Math.max(start, starts[interval]);
+            int last = Math.min(end, ends[interval] + 1);
+            int parent1 = donors[2 * interval];
+            int parent2 = donors[2 * interval + 1];
+            if (first >= last || parent1 < 0 || parent2 < 0) {
+                continue;
+            }
+            byte[] p1 = myBaseGenoTable.genotypeRange(parent1, first, last);
+            byte[] p2 = parent1 == parent2 ? p1 : myBaseGenoTable.genotypeRange(parent2, first, last);
+            for (int i = 0, n = last - first; i < n; i++) {
+                result[first - start + i] = GenotypeTableUtils.getUnphasedDiploidValueNoHets(p1[i], p2[i]);
+            }
         }
-        //       if(primDSH[primPos]==primDSH[primPos+1]) return donorForCachedSite[primDSH[primPos]];
-        return GenotypeTableUtils.getUnphasedDiploidValueNoHets(donorForCachedSite[primDSH[primPos]], donorForCachedSite[primDSH[primPos + 1]]);
+        return result;
+    }
+
+    @Override
+    public byte[] genotypeForAllSites(int taxon) {
+        return genotypeForSiteRange(taxon, 0, mySiteCount);
+    }
+
+    @Override
+    public byte[] genotypeRange(int taxon, int startSite, int endSite) {
+        return genotypeForSiteRange(taxon, startSite, endSite);
+    }
+
+    @Override
+    public byte[] genotypeAllSites(int taxon) {
+        return genotypeForSiteRange(taxon, 0, mySiteCount);
     }
 
     @Override
@@ -190,41 +277,14 @@ public class ProjectionGenotypeCallTable extends AbstractGenotypeCallTable {
         }
     }
 
-    private class DonorSiteHaps {
+    private static class CachedSite {
 
-        private final int startSite;
-        private final int endSite;
-        private final int parent1index;
-        private final int parent2index;
+        private final int mySite;
+        private final byte[] myGenotypes;
 
-        private DonorSiteHaps(int startSite, int endSite, int parent1index, int parent2index) {
-            this.startSite = startSite;
-            this.endSite = endSite;
-            this.parent1index = parent1index;
-            this.parent2index = parent2index;
-        }
-
-        private int getStartSite() {
-            return startSite;
-        }
-
-        private int getEndSite() {
-            return endSite;
-        }
-
-        private int getParent1index() {
-            return parent1index;
-        }
-
-        private int getParent2index() {
-            return parent2index;
-        }
-
-        private boolean containsSite(int site) {
-            if ((site < startSite) || (site > endSite)) {
-                return false;
-            }
-            return true;
+        private CachedSite(int site, byte[] genotypes) {
+            mySite = site;
+            myGenotypes = genotypes;
         }
     }
 
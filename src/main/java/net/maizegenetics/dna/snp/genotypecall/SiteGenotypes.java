@@ -0,0 +1,40 @@
+/*
+ *  SiteGenotypes
+ */
+package net.maizegenetics.dna.snp.genotypecall;
+
+/**
+ * Genotype calls of all taxa at one site. Element of
+ * {@link GenotypeCallTable#siteStream()}, so that streaming over a genotype
+ * table creates one object per site instead of one per call.
+ */
+public final class SiteGenotypes {
+
+    private final int mySite;
+    private final byte[] myGenotypes;
+
+    public SiteGenotypes(int site, byte[] genotypes) {
+        mySite = site;
+        myGenotypes = genotypes;
+    }
+
+    /**
+     * Site index
+     *
+     * @return site
+     */
+    public int site() {
+        return mySite;
+    }
+
+    /**
+     * Diploid genotype values of all taxa at this site. Indexed by taxon. The
+     * array is not copied, so should not be modified.
+     *
+     * @return genotypes
+     */
+    public byte[] genotypes() {
+        return myGenotypes;
+    }
+
+}
@@ -26,8 +26,10 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
@@ -53,6 +55,7 @@ public class BuilderFromVCF {
     private static final Logger myLogger=LogManager.getLogger(BuilderFromVCF.class);
     private static final Pattern WHITESPACE_PATTERN=Pattern.compile("[\\s]+");
     private static final Pattern TAB_PATTERN = Pattern.compile("[\\t]+");
+    private static final int MAX_BLOCKS_IN_FLIGHT_PER_THREAD=2;
     private HeaderPositions hp=null;
     private final String infile;
     private boolean includeDepth=false;
@@ -119,13 +122,15 @@ public class BuilderFromVCF {
     private GenotypeTable buildEngine(boolean fullSort) {
         long time=System.nanoTime();
         GenotypeTable result=null;
-        int totalSites=-1;//unknown
         GenotypeTableBuilder gtbDiskBuild=null;
         ExecutorService pool = null;
         try {
 
             int numThreads=Runtime.getRuntime().availableProcessors();
             pool=Executors.newFixedThreadPool(numThreads);
+            //Blocks of raw text lines submitted but not yet collected.  The reader blocks on the oldest
+            //block once this is full, so raw text held in memory is bounded no matter how large the file is.
+            int maxBlocksInFlight=MAX_BLOCKS_IN_FLIGHT_PER_THREAD*numThreads;
             
             BufferedReader r=Utils.getBufferedReader(infile, -1);
             //Read the ## annotation rows
@@ -137,50 +142,23 @@ public class BuilderFromVCF {
 
             TaxaList taxaList=processTaxa(currLine,sampAnnoBuild);
             if(inMemory==false) {
-                totalSites=Utils.getNumberLinesNotHashOrBlank(infile);
-                System.out.println("TotalSite count:"+totalSites);
-                gtbDiskBuild=GenotypeTableBuilder.getSiteIncremental(taxaList,totalSites,hdf5Outfile);
+                //HDF5 datasets grow as blocks are added, so the file is only read once
+                gtbDiskBuild=GenotypeTableBuilder.getSiteIncremental(taxaList,hdf5Outfile);
             }
             int linesAtTime=(inMemory)?1<<12:Tassel5HDF5Constants.BLOCK_SIZE;  //this is a critical lines with 20% or more swings.  Needs to be optimized with transposing
             //  int linesAtTime=1<<8;  //better for with lots of taxa.
             ArrayList<String> txtLines=new ArrayList<>(linesAtTime);
             ArrayList<ProcessVCFBlock> pbs=new ArrayList<>();
-            List<Future<ProcessVCFBlock>> futures = new ArrayList<>();
+            ArrayDeque<Future<ProcessVCFBlock>> futures = new ArrayDeque<>();
             int sitesRead=0;
             while ((currLine=r.readLine())!=null) {
                 if(currLine.startsWith("#")) continue;
                 txtLines.add(currLine);
                 sitesRead++;
                if (sitesRead%linesAtTime==0) {
-                    ProcessVCFBlock pb;
-                    if(inMemory) {
-                        pb=ProcessVCFBlock.getInstance(taxaList.numberOfTaxa(), hp, txtLines,includeDepth);}
-                    else{
-                        pb=ProcessVCFBlock.getInstance(taxaList.numberOfTaxa(), hp, txtLines, sitesRead-txtLines.size(),gtbDiskBuild, includeDepth);
-                    }
-                    //pbs.add(pb);
-                        //     pb.run(); //used for testing
-                    try {
-                        if(inMemory) {
-                            futures.add(pool.submit(pb));
-                        }
-                        else {
-                            //Put a future on the queue
-                            futures.add(pool.submit(pb));
-                            //If We are streaming to HDF5, we need to block temporarily and clean out the queue.
-                            if(futures.size()>=numThreads) {
-                            //if(futures.size()>0) {
-                                for(Future<ProcessVCFBlock> future : futures) {
-                                    pbs.add(future.get());
-                                }
-                                futures = new ArrayList<>();
-                            }
-                           
-                        }
-                    }
-                    catch(Exception e) {
-                        myLogger.debug(e.getMessage(), e);
-                        throw new IllegalStateException(e.getMessage());
+                    futures.add(pool.submit(createBlock(taxaList, txtLines, sitesRead, gtbDiskBuild)));
+                    while(futures.size()>=maxBlocksInFlight) {
+                        collectBlock(futures.poll(), pbs);
                     }
                     txtLines=new ArrayList<>(linesAtTime);
                 }
@@ -188,33 +166,12 @@ public class BuilderFromVCF {
             r.close();
             //Handle whatever is left over in the file
             if (txtLines.size()>0) {
-                ProcessVCFBlock pb;//=ProcessVCFBlock.getInstance(taxaList.numberOfTaxa(), hp, txtLines);
-                if(inMemory) {
-                    pb=ProcessVCFBlock.getInstance(taxaList.numberOfTaxa(), hp, txtLines, includeDepth);}
-                else{
-                    pb=ProcessVCFBlock.getInstance(taxaList.numberOfTaxa(), hp, txtLines, sitesRead-txtLines.size(),gtbDiskBuild, includeDepth);
-                }
-                //pbs.add(pb);
-                    //  pb.run(); //used for testing
-                
-                try {
-                    futures.add(pool.submit(pb));
-                }
-                catch(Exception e) {
-                    myLogger.debug(e.getMessage(), e);
-                throw new IllegalStateException(e.getMessage());
-                }
+                futures.add(pool.submit(createBlock(taxaList, txtLines, sitesRead, gtbDiskBuild)));
             }
             int numFutures = futures.size();
             int count = 0;
-            for(Future<ProcessVCFBlock> future : futures) {
-                try {
-                    pbs.add(future.get());
-                }
-                catch(Exception e) {
-                    myLogger.debug(e.getMessage(),e);
-                    throw new IllegalStateException(e.getMessage());
-                }
+            while(!futures.isEmpty()) {
+                collectBlock(futures.poll(), pbs);
                 if(myProgressListener != null) {
                     count++;
                     myProgressListener.progress(count * 100 / numFutures,null);
@@ -223,37 +180,10 @@ public class BuilderFromVCF {
             pool.shutdown();
             
             if(inMemory) {
-                //result=completeInMemoryBuilding(futures, taxaList, sitesRead, includeDepth, fullSort);
                 result=completeInMemoryBuilding(pbs, taxaList, sitesRead, includeDepth, fullSort);
             } else {
                 gtbDiskBuild.build();
             }
-            
-//            int currentSite=0;
-//            PositionListBuilder posBuild=new PositionListBuilder();
-//            GenotypeCallTableBuilder gb=GenotypeCallTableBuilder.getUnphasedNucleotideGenotypeBuilder(taxaList.numberOfTaxa(), lines);
-//            AlleleDepthBuilder db=null;
-//            if(includeDepth) db=AlleleDepthBuilder.getInstance(taxaList.numberOfTaxa(),lines,6);
-//            for (ProcessVCFBlock pb : pbs) {
-//                posBuild.addAll(pb.getBlkPosList());
-//                byte[][] bgTS=pb.getGenoTS();
-//                for (int t=0; t<bgTS.length; t++) {
-//                    gb.setBaseRangeForTaxon(t, currentSite, bgTS[t]);
-//                }
-//                if(includeDepth) {
-//                    byte[][][] bdTS=pb.getDepthTS();
-//                    for (int t=0; t<bgTS.length; t++) {
-//                        db.setDepthRangeForTaxon(t, currentSite, bdTS[t]);
-//                    }
-//                }
-//                currentSite+=pb.getSiteNumber();
-//            }
-//            if (posBuild.validateOrdering()==false) {
-//                throw new IllegalStateException("BuilderFromVCF: Ordering incorrect HapMap must be ordered by position");
-//            }
-//            GenotypeCallTable g=gb.build();
-//            if(includeDepth) {result=GenotypeTableBuilder.getInstance(g, posBuild.build(), taxaList, null, db.build());}
-//            else {result=GenotypeTableBuilder.getInstance(g, posBuild.build(), taxaList);}
         } 
         
         catch (IOException e) {  
@@ -271,6 +201,28 @@ public class BuilderFromVCF {
         return result;
     }
 
+    private ProcessVCFBlock createBlock(TaxaList taxaList, ArrayList<String> txtLines, int sitesRead, GenotypeTableBuilder gtbDiskBuild) {
+        if(inMemory) {
+            return ProcessVCFBlock.getInstance(taxaList.numberOfTaxa(), hp, txtLines, includeDepth);
+        }
+        return ProcessVCFBlock.getInstance(taxaList.numberOfTaxa(), hp, txtLines, sitesRead-txtLines.size(), gtbDiskBuild, includeDepth);
+    }
+
+    /**
+     * Waits for the oldest block.  Blocks are collected in file order, so in memory results stay ordered.
+     * Blocks streamed to HDF5 have already been written by the worker and are not kept.
+     */
+    private void collectBlock(Future<ProcessVCFBlock> future, List<ProcessVCFBlock> pbs) {
+        try {
+            ProcessVCFBlock pb=future.get();
+            if(inMemory) pbs.add(pb);
+        }
+        catch(Exception e) {
+            myLogger.debug(e.getMessage(),e);
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
     private static GenotypeTable completeInMemoryBuilding(List<ProcessVCFBlock> pbs, TaxaList taxaList, int numberOfSites, boolean includeDepth, boolean fullSort) {
         int currentSite=0;
         PositionListBuilder posBuild=new PositionListBuilder();
@@ -467,14 +419,16 @@ class ProcessVCFBlock implements Callable<ProcessVCFBlock> {
         Map<String, Chromosome> chromosomeLookup=new HashMap<>();
         gTS=new byte[taxaN][siteN];
         if(keepDepth==true) dTS=new byte[taxaN][6][siteN];
+        int[] tabPos=new int[hp.NUM_HAPMAP_NON_TAXA_HEADERS];
         for (int s=0; s<siteN; s++) {
             //really needs to use a Splitter iterator to make this cleaner if it is performant
             String input=txtL.get(s);
             try{
-                int[] tabPos=new int[hp.NUM_HAPMAP_NON_TAXA_HEADERS+taxaN];
+                //only the tabs ending the non-taxa columns are needed, the samples are tokenized by VCFGenotypeParser
+                Arrays.fill(tabPos, 0);
                 int tabIndex=0;
                 int len=input.length();
-                for (int i=0; (tabIndex<hp.NUM_HAPMAP_NON_TAXA_HEADERS+taxaN)&&(i<len); i++) {
+                for (int i=0; (tabIndex<hp.NUM_HAPMAP_NON_TAXA_HEADERS)&&(i<len); i++) {
                     if (input.charAt(i)=='\t') {
                         tabPos[tabIndex++]=i;
                     }
@@ -489,12 +443,7 @@ class ProcessVCFBlock implements Callable<ProcessVCFBlock> {
                 if(hp.SNPID_INDEX>0) snpID=input.substring(tabPos[hp.SNPID_INDEX-1]+1, tabPos[hp.SNPID_INDEX]);
                 String refS=input.substring(tabPos[hp.REF_INDEX-1]+1, tabPos[hp.REF_INDEX]);
                 String alt=input.substring(tabPos[hp.ALT_INDEX-1]+1, tabPos[hp.ALT_INDEX]);
-                String variants;
-                if(alt.equals(".")) {variants=refS;}
-                else {variants=(refS+"/"+alt).replace(',','/')
-                        .replace("<INS>", "+").replace('I', '+')
-                        .replace("<DEL>", "-").replace('D', '-')
-                        .replace("*", "N");}
+                String variants=VCFGenotypeParser.variants(refS, alt);
             
                 //GeneralPosition.Builder apb=new GeneralPosition.Builder(currChr, currentPosition)
                 //                                               .knownVariants(variants); //TODO strand, variants,
@@ -505,71 +454,7 @@ class ProcessVCFBlock implements Callable<ProcessVCFBlock> {
                 if(snpID!=null && !snpID.equals(".")) {
                     apb.snpName(snpID);
                 }
-                //byte[] alleles=new byte[(variants.length()+1)/2];
-                byte[] alleles = new byte[variants.split("/").length];
-                for (int i = 0, varInd=0; i < alleles.length; i++, varInd+=2) {
-                    alleles[i]=NucleotideAlignmentConstants.getNucleotideAlleleByte(variants.charAt(varInd));
-                }
-                /***ZRM 8_27 New code ***/
-                String[] variantList = variants.split("/");
-                if(variantList[0].length()>1) {
-                    String[] parsedVariantList = new String[variantList.length];
-                    //alt deletion
-                    for(int i = 0; i < variantList.length; i++) {
-                        //Pull off the first character if it exists
-                        if(variantList[i].length()>1) {
-                            parsedVariantList[i] = variantList[i].substring(1);
-                            if(parsedVariantList[i].length()==0) {
-                                parsedVariantList[i] = "-";
-                            }
-                        }
-                        else {
-                            //Mark as deletion
-                            parsedVariantList[i] = "-";
-                        }
-                    }
-                    for(int i = 0; i<parsedVariantList.length; i++) {
-                        alleles[i] = NucleotideAlignmentConstants.getNucleotideAlleleByte(parsedVariantList[i].charAt(0));
-                    }
-                }
-                else {
-                    //Check for reference deletion(insertion)
-                    //Loop through all variants to see if one alt is longer than the ref
-                    boolean isIndel = false;
-                    for(int i = 1; i < variantList.length; i++) {
-                        if(variantList[i].length() > variantList[0].length()) {
-                            isIndel = true;
-                            break;
-                        }
-                    }
-                    if(isIndel) {
-                        String[] parsedVariantList = new String[variantList.length];
-                        //ref+alt deletion
-                        for(int i = 0; i < variantList.length; i++) {
-                            //Pull off the first character if it exists
-                            if(variantList[i].length()>1) {
-                                parsedVariantList[i] = variantList[i].substring(1);
-                                if(parsedVariantList[i].length()==0) {
-                                    parsedVariantList[i] = "-";
-                                }
-                            }
-                            else {
-                                //Mark as deletion
-                                parsedVariantList[i] = "-";
-                            }
-                        }
-                        for(int i = 0; i<parsedVariantList.length; i++) {
-                            alleles[i] = NucleotideAlignmentConstants.getNucleotideAlleleByte(parsedVariantList[i].charAt(0));
-                        }
-                    }
-                    else {
-                        //if not just put it in the allele array
-                        for(int i = 0; i<variantList.length; i++) {
-                            alleles[i] = NucleotideAlignmentConstants.getNucleotideAlleleByte(variantList[i].charAt(0));
-                        }
-                    }
-                }
-                /***ZRM 8_27 New code end ***/
+                byte[] alleles=VCFGenotypeParser.alleles(variants);
                 apb.allele(WHICH_ALLELE.Reference, alleles[0]);
                 if (alleles.length > 1) {
                     apb.allele(WHICH_ALLELE.Alternate, alleles[1]);
@@ -600,75 +485,11 @@ class ProcessVCFBlock implements Callable<ProcessVCFBlock> {
                     
                     iAD=firstEqualIndex(formatS,"AD");
                 }
-                int t=0;
-                for(String taxaAllG: Splitter.on("\t").split(input.substring(tabPos[hp.NUM_HAPMAP_NON_TAXA_HEADERS-1]+1))) {
-                    int f=0;
-                    //if(taxaAllG.equals(".")) {
-                    if(taxaAllG.startsWith(".")) {
-                        gTS[t][s] = GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
-                        //need to still move up the taxa counter by one as we have covered this now.
-                        t++;
-                        continue;
-                    }
-                    for(String fieldS: Splitter.on(":").split(taxaAllG)) {
-                        if(f==iGT) {
-                            //String "[.0-9]\\/[.0-9]||[.0-9]\\|[.0-9]" will match a valid diploid
-                            if (!fieldS.equals(".")) { //[TAS-509] Check to make sure we are using diploids in the form 0/1 or 0|0
-                                int a1 = 0;
-                                int a2 = 0;
-                                //Should be this, but for speed we just check the character
-                                //if(fieldS.split("|/").length ==1) {
-                                if(fieldS.length() ==1) {
-                                    a1 = fieldS.charAt(0) - '0';
-                                    a2 = fieldS.charAt(0) - '0';
-                                }
-                                else {
-                                    //zrm22 Jul 31, 2017
-                                    //int a1 = fieldS.charAt(0) - '0';
-                                    //int a2 = fieldS.charAt(2) - '0';
-                                    
-                                    a1 = fieldS.charAt(0) - '0';
-                                    a2 = fieldS.charAt(2) - '0';
-                                }
-                                if(a1>alleles.length-1 || a2>alleles.length-1) {
-                                    Position pos = blkPosList.get(blkPosList.size()-1);
-                                    throw new IllegalStateException("\nError Processing VCF block: Mismatch of alleles.\n  At Chromosome "+ pos.getChromosome().getName() + ", Position "+pos.getPosition() +".\nAllele ID larger than number of alleles" );
-                                }
-                                if (a1 < 0 || a2 < 0) {
-                                    gTS[t][s] = GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
-                                }
-                                else {
-                                    gTS[t][s] =
-                                            GenotypeTableUtils.getDiploidValue(alleles[a1], alleles[a2]);
-                                }
-                            }
-                            else {	//[TAS-509] if it isnt a diploid error out early
-                                throw new IllegalStateException("Error Processing VCF block: Found haploid information for the element: "
-                                        + taxaAllG + ".\nExpected a diploid entry.");
-                            }
-                        } else if((f==iAD)&&keepDepth) {
-                           // System.out.println("GTS: "+gTS[t][s] + " "+fieldS);
-                            if(gTS[t][s]!=GenotypeTable.UNKNOWN_DIPLOID_ALLELE) {
-                                int i=0;
-                                for(String ad: Splitter.on(",").split(fieldS)){
-                                    if(i>=alleles.length) continue;
-                                    if(alleles[i]==GenotypeTable.UNKNOWN_ALLELE || ad.equals(".") || alleles[i]==NucleotideAlignmentConstants.UNDEFINED_ALLELE ||
-                                            alleles[i]==NucleotideAlignmentConstants.UNDEFINED_DIPLOID_ALLELE) {  //no position for depth of unknown alleles or depth is set to missing, so skip
-                                        //Uncomment when converted
-                                        //dTS[t][alleles[i++]][s] = AlleleDepthUtil.depthIntToByte(AlleleDepthUtil.DEPTH_MISSING);
-                                        //Comment next two lines when converted
-                                        i++;
-                                        continue;
-                                        }
-                                    
-                                    int adInt=Integer.parseInt(ad);
-                                    dTS[t][alleles[i++]][s]=AlleleDepthUtil.depthIntToByte(adInt);
-                                }
-                            }
-                        }
-                        f++;
-                    }
-                    t++;
+                try {
+                    VCFGenotypeParser.parseSamples(input, tabPos[hp.NUM_HAPMAP_NON_TAXA_HEADERS-1]+1, s, alleles, iAD, gTS, (keepDepth) ? dTS : null);
+                } catch(IllegalStateException e) {
+                    Position pos = blkPosList.get(blkPosList.size()-1);
+                    throw new IllegalStateException(e.getMessage()+"\n  At Chromosome "+ pos.getChromosome().getName() + ", Position "+pos.getPosition() +".", e);
                 }
             } catch(IllegalStateException e) {
                 e.printStackTrace();
@@ -0,0 +1,157 @@
+/*
+ *  BuilderFromVCFLIX
+ */
+package net.maizegenetics.dna.snp.io;
+
+import com.google.common.collect.SetMultimap;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.tribble.util.ParsingUtils;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import net.maizegenetics.dna.WHICH_ALLELE;
+import net.maizegenetics.dna.map.Chromosome;
+import net.maizegenetics.dna.map.GeneralPosition;
+import net.maizegenetics.dna.map.PositionList;
+import net.maizegenetics.dna.map.PositionListBuilder;
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.GenotypeTableBuilder;
+import net.maizegenetics.dna.snp.genotypecall.LineIndexVCFGenotypeCallTable;
+import net.maizegenetics.taxa.TaxaList;
+import net.maizegenetics.taxa.TaxaListBuilder;
+import net.maizegenetics.taxa.TaxaListIOUtils;
+import net.maizegenetics.taxa.Taxon;
+import net.maizegenetics.util.Tuple;
+
+/**
+ * Opens a block gzipped VCF file indexed by
+ * {@link LineIndexBuilder#buildVCFIndex(String)} without importing the
+ * genotypes. Positions come from the index, and genotypes are decoded from
+ * the VCF file as sites are accessed. Only the GT field is read, so depths
+ * and INFO annotations are not available.
+ */
+public class BuilderFromVCFLIX {
+
+    private static final Pattern TAB_PATTERN = Pattern.compile("[\\t]+");
+    // columns kept in the index: CHROM POS ID REF ALT
+    private static final int NUM_INDEX_COLUMNS = 5;
+
+    private BuilderFromVCFLIX() {
+    }
+
+    public static GenotypeTable build(String vcfFileBGZip) {
+        return build(vcfFileBGZip, ParsingUtils.appendToPath(vcfFileBGZip, LineIndexBuilder.LINE_INDEX_FILE_EXTENSION));
+    }
+
+    public static GenotypeTable build(String vcfFileBGZip, String indexFilename) {
+
+        TaxaList taxaList;
+        HeaderPositions hp;
+        try (BlockCompressedInputStream reader = new BlockCompressedInputStream(new File(vcfFileBGZip))) {
+
+            Map<String, SetMultimap<String, String>> sampAnnoBuild = new TreeMap<>();
+
+            String currLine = reader.readLine();
+            while ((currLine != null) && currLine.startsWith("##")) {
+                String[] cat = currLine.split("=", 2);
+                if ((cat.length == 2) && cat[0].startsWith("##SAMPLE")) {
+                    SetMultimap<String, String> mapOfAnno = TaxaListIOUtils.parseVCFHeadersIntoMap(cat[1]);
+                    String taxaID = mapOfAnno.get("ID").iterator().next();
+                    if (taxaID != null) {
+                        sampAnnoBuild.put(taxaID, mapOfAnno);
+                    }
+                }
+                currLine = reader.readLine();
+            }
+
+            if ((currLine == null) || !currLine.startsWith("#")) {
+                throw new IllegalStateException("BuilderFromVCFLIX: #CHROM header line not found.");
+            }
+            String[] header = TAB_PATTERN.split(currLine);
+            hp = new HeaderPositions(header);
+            taxaList = processTaxa(header, hp, sampAnnoBuild);
+
+        } catch (Exception e) {
+            throw new IllegalStateException("BuilderFromVCFLIX: Problem opening file: " + vcfFileBGZip + "\n" + e.getMessage());
+        }
+
+        if ((hp.CHROMOSOME_INDEX < 0) || (hp.CHROMOSOME_INDEX >= NUM_INDEX_COLUMNS)
+                || (hp.POSITION_INDEX < 0) || (hp.POSITION_INDEX >= NUM_INDEX_COLUMNS)
+                || (hp.REF_INDEX < 0) || (hp.REF_INDEX >= NUM_INDEX_COLUMNS)
+                || (hp.ALT_INDEX < 0) || (hp.ALT_INDEX >= NUM_INDEX_COLUMNS)
+                || (hp.SNPID_INDEX >= NUM_INDEX_COLUMNS)) {
+            throw new IllegalStateException("BuilderFromVCFLIX: CHROM, POS, ID, REF and ALT must be the first five columns: " + vcfFileBGZip);
+        }
+
+        Tuple<LineIndex, String[]> indexPositionInfo = LineIndexBuilder.readIndex(indexFilename);
+        if (indexPositionInfo == null) {
+            throw new IllegalStateException("BuilderFromVCFLIX: Problem reading index: " + indexFilename);
+        }
+
+        Map<String, Chromosome> chromosomeLookup = new HashMap<>();
+        PositionListBuilder positions = new PositionListBuilder();
+        for (String current : indexPositionInfo.y) {
+
+            String[] tokens = current.split("\t");
+
+            String chrName = tokens[hp.CHROMOSOME_INDEX];
+            Chromosome currChr = chromosomeLookup.get(chrName);
+            if (currChr == null) {
+                currChr = new Chromosome(new String(chrName));
+                chromosomeLookup.put(chrName, currChr);
+            }
+
+            int physicalPos;
+            try {
+                physicalPos = Integer.parseInt(tokens[hp.POSITION_INDEX]);
+            } catch (Exception ex) {
+                throw new IllegalArgumentException("BuilderFromVCFLIX: Position must be an integer: " + tokens[hp.POSITION_INDEX]);
+            }
+
+            String variants = VCFGenotypeParser.variants(tokens[hp.REF_INDEX], tokens[hp.ALT_INDEX]);
+            GeneralPosition.Builder positionBuilder = new GeneralPosition.Builder(currChr, physicalPos)
+                    .knownVariants(variants);
+            if ((hp.SNPID_INDEX >= 0) && !tokens[hp.SNPID_INDEX].equals(".")) {
+                positionBuilder.snpName(tokens[hp.SNPID_INDEX]);
+            }
+
+            byte[] alleles = VCFGenotypeParser.alleles(variants);
+            positionBuilder.allele(WHICH_ALLELE.Reference, alleles[0]);
+            if (alleles.length > 1) {
+                positionBuilder.allele(WHICH_ALLELE.Alternate, alleles[1]);
+            }
+
+            positions.add(positionBuilder.build());
+        }
+        PositionList positionList = positions.build();
+
+        LineIndexVCFGenotypeCallTable genotypes = LineIndexVCFGenotypeCallTable.getInstance(taxaList.numberOfTaxa(), positionList.numberOfSites(), false,
+                indexPositionInfo.x, vcfFileBGZip, hp.REF_INDEX, hp.ALT_INDEX, hp.FORMAT_INDEX, hp.NUM_HAPMAP_NON_TAXA_HEADERS);
+
+        return GenotypeTableBuilder.getInstance(genotypes, positionList, taxaList);
+
+    }
+
+    private static TaxaList processTaxa(String[] header, HeaderPositions hp, Map<String, SetMultimap<String, String>> taxaAnnotation) {
+        int numTaxa = header.length - hp.NUM_HAPMAP_NON_TAXA_HEADERS;
+        TaxaListBuilder tlb = new TaxaListBuilder();
+        for (int i = 0; i < numTaxa; i++) {
+            String taxonID = header[i + hp.NUM_HAPMAP_NON_TAXA_HEADERS];
+            Taxon.Builder at = new Taxon.Builder(taxonID);
+            SetMultimap<String, String> taMap = taxaAnnotation.get(taxonID);
+            if (taMap != null) {
+                for (Map.Entry<String, String> en : taMap.entries()) {
+                    if (en.getKey().equals("ID")) {
+                        continue;
+                    }
+                    at.addAnno(en.getKey(), en.getValue().replace("\"", ""));
+                }
+            }
+            tlb.add(at.build());
+        }
+        return tlb.build();
+    }
+
+}
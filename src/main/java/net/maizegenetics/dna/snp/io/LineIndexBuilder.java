@@ -31,6 +31,8 @@ public class LineIndexBuilder {
     public static final String LINE_INDEX_FILE_EXTENSION = ".lix";
     private static final byte[] MAGIC = {'L', 'I', 'X', 1};
     public static final int MAGIC_NUMBER;
+    public static final int NUM_HAPMAP_COLUMNS_IN_INDEX = 11;
+    public static final int NUM_VCF_COLUMNS_IN_INDEX = 5;
 
     static {
         final ByteBuffer bb = ByteBuffer.allocate(MAGIC.length);
@@ -99,16 +101,22 @@ public class LineIndexBuilder {
 
     public void build() {
 
-        try (LittleEndianOutputStream output = new LittleEndianOutputStream(new BlockCompressedOutputStream(myIdxFilename))) {
+        List<Long> virtualFileOffsets = new ArrayList<>();
+        List<String> beginningColumnsPerRow = new ArrayList<>();
 
-            output.writeInt(MAGIC_NUMBER);
-            output.writeInt(myCommentChar);
-            output.writeInt(myNumHeaderLinesToSkip);
-            output.writeInt(LineIndex.NUM_LINES_PER_INTERVAL);
+        try (BlockCompressedInputStream input = new BlockCompressedInputStream(new File(myFileToIndex))) {
 
-            try (BlockCompressedInputStream input = new BlockCompressedInputStream(new File(myFileToIndex))) {
-
-                boolean notFinished = true;
+            boolean notFinished = true;
+            if (myNumHeaderLinesToSkip == 0) {
+                // skip only the comment lines, returning to the start of the first line after them
+                long lineStart = input.getFilePointer();
+                String str = input.readLine();
+                while (str != null && !str.isEmpty() && str.charAt(0) == myCommentChar) {
+                    lineStart = input.getFilePointer();
+                    str = input.readLine();
+                }
+                input.seek(lineStart);
+            } else {
                 int linesSkipped = 0;
                 while (notFinished) {
                     String str = input.readLine();
@@ -119,58 +127,81 @@ public class LineIndexBuilder {
                         notFinished = false;
                     }
                 }
+            }
 
-                List<Long> virtualFileOffsets = new ArrayList<>();
-                List<String> beginningColumnsPerRow = new ArrayList<>();
-                notFinished = true;
-                while (notFinished) {
-                    virtualFileOffsets.add(input.getFilePointer());
-                    for (int i = 0; i < LineIndex.NUM_LINES_PER_INTERVAL; i++) {
-                        String current = input.readLine();
+            notFinished = true;
+            while (notFinished) {
+                virtualFileOffsets.add(input.getFilePointer());
+                for (int i = 0; i < LineIndex.NUM_LINES_PER_INTERVAL; i++) {
+                    String current = input.readLine();
 
-                        if (current == null) {
-                            notFinished = false;
-                            break;
-                        }
+                    if (current == null) {
+                        notFinished = false;
+                        break;
+                    }
 
-                        if (myNumColumnsPerRowToKeepInIndex > 0) {
-                            int n = myNumColumnsPerRowToKeepInIndex - 1;
-                            int pos = current.indexOf('\t');
-                            while (n-- > 0 && pos != -1) {
-                                pos = current.indexOf('\t', pos + 1);
-                            }
-                            if (pos == -1) {
-                                throw new IllegalStateException("LineIndexBuilder: build: " + myNumColumnsPerRowToKeepInIndex + " columns not found.");
-                            }
-                            beginningColumnsPerRow.add(current.substring(0, pos));
+                    if (myNumColumnsPerRowToKeepInIndex > 0) {
+                        int n = myNumColumnsPerRowToKeepInIndex - 1;
+                        int pos = current.indexOf('\t');
+                        while (n-- > 0 && pos != -1) {
+                            pos = current.indexOf('\t', pos + 1);
                         }
-
+                        if (pos == -1) {
+                            throw new IllegalStateException("LineIndexBuilder: build: " + myNumColumnsPerRowToKeepInIndex + " columns not found.");
+                        }
+                        beginningColumnsPerRow.add(current.substring(0, pos));
                     }
+
                 }
+            }
 
-                output.writeInt(beginningColumnsPerRow.size());
+        } catch (SAMFormatException se) {
+            myLogger.debug(se.getMessage(), se);
+            throw new IllegalStateException("LineIndexBuilder: build: this file is not bgzipped: " + myFileToIndex + ": " + se.getMessage());
+        } catch (Exception ex) {
+            myLogger.debug(ex.getMessage(), ex);
+            throw new IllegalStateException("LineIndexBuilder: build: problem creating index for file: " + myFileToIndex + ": " + ex.getMessage());
+        }
 
-                for (String current : beginningColumnsPerRow) {
-                    output.writeString(current);
-                }
+        writeIndex(myIdxFilename, myCommentChar, myNumHeaderLinesToSkip, beginningColumnsPerRow, virtualFileOffsets);
 
-                output.writeInt(virtualFileOffsets.size());
+    }
 
-                for (Long current : virtualFileOffsets) {
-                    output.writeLong(current);
-                }
+    /**
+     * Writes a line index. Used by {@link #build()} and by writers that
+     * record the virtual file offsets while writing the block gzipped file.
+     *
+     * @param idxFilename index file name
+     * @param commentChar comment character of the indexed file
+     * @param numHeaderLinesToSkip number of non-comment header lines
+     * @param beginningColumnsPerRow beginning columns of each line, or empty
+     * @param virtualFileOffsets virtual file offset of every
+     * {@link LineIndex#NUM_LINES_PER_INTERVAL}th line
+     */
+    public static void writeIndex(String idxFilename, char commentChar, int numHeaderLinesToSkip, List<String> beginningColumnsPerRow, List<Long> virtualFileOffsets) {
+
+        try (LittleEndianOutputStream output = new LittleEndianOutputStream(new BlockCompressedOutputStream(idxFilename))) {
+
+            output.writeInt(MAGIC_NUMBER);
+            output.writeInt(commentChar);
+            output.writeInt(numHeaderLinesToSkip);
+            output.writeInt(LineIndex.NUM_LINES_PER_INTERVAL);
+
+            output.writeInt(beginningColumnsPerRow.size());
+
+            for (String current : beginningColumnsPerRow) {
+                output.writeString(current);
+            }
+
+            output.writeInt(virtualFileOffsets.size());
 
-            } catch (SAMFormatException se) {
-                myLogger.debug(se.getMessage(), se);
-                throw new IllegalStateException("LineIndexBuilder: build: this file is not bgzipped: " + myFileToIndex + ": " + se.getMessage());
-            } catch (Exception ex) {
-                myLogger.debug(ex.getMessage(), ex);
-                throw new IllegalStateException("LineIndexBuilder: build: problem creating index for file: " + myFileToIndex + ": " + ex.getMessage());
+            for (Long current : virtualFileOffsets) {
+                output.writeLong(current);
             }
 
         } catch (Exception e) {
             myLogger.debug(e.getMessage(), e);
-            throw new IllegalStateException("LineIndexBuilder: build: problem writing index file: " + myIdxFilename + ": " + e.getMessage());
+            throw new IllegalStateException("LineIndexBuilder: writeIndex: problem writing index file: " + idxFilename + ": " + e.getMessage());
         }
 
     }
@@ -179,7 +210,22 @@ public class LineIndexBuilder {
         new LineIndexBuilder(filename)
                 .commentChar('#')
                 .numHeaderLinesToSkip(1)
-                .numColumnsPerRowToKeepInIndex(11)
+                .numColumnsPerRowToKeepInIndex(NUM_HAPMAP_COLUMNS_IN_INDEX)
+                .build();
+    }
+
+    /**
+     * Builds the index of a block gzipped VCF file. All lines starting with
+     * '#' are header lines. The CHROM, POS, ID, REF and ALT columns are kept
+     * in the index, so positions are known without reading the VCF.
+     *
+     * @param filename block gzipped VCF file
+     */
+    public static void buildVCFIndex(String filename) {
+        new LineIndexBuilder(filename)
+                .commentChar('#')
+                .numHeaderLinesToSkip(0)
+                .numColumnsPerRowToKeepInIndex(NUM_VCF_COLUMNS_IN_INDEX)
                 .build();
     }
 
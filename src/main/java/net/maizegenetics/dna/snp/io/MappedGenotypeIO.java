@@ -0,0 +1,102 @@
+/*
+ *  MappedGenotypeIO
+ */
+package net.maizegenetics.dna.snp.io;
+
+import net.maizegenetics.dna.map.PositionList;
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.GenotypeTableBuilder;
+import net.maizegenetics.dna.snp.genotypecall.GenotypeCallTable;
+import net.maizegenetics.dna.snp.genotypecall.GenotypeCallTableBuilder;
+import net.maizegenetics.dna.snp.genotypecall.MappedGenotypeCallTable;
+import net.maizegenetics.taxa.TaxaList;
+import net.maizegenetics.util.ProgressListener;
+import net.maizegenetics.util.Utils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+
+/**
+ * Reads and writes the memory mapped binary genotype format. Genotype calls
+ * are written to a .t5g file (see MappedGenotypeCallTable). Taxa and positions
+ * are written next to it as .t5g.taxa.json.gz and .t5g.position.json.gz using
+ * JSONUtils.
+ *
+ * @see MappedGenotypeCallTable
+ */
+public class MappedGenotypeIO {
+
+    private static final Logger myLogger = LogManager.getLogger(MappedGenotypeIO.class);
+
+    public static final String FILE_EXT_MAPPED_GENOTYPE = ".t5g";
+    public static final String TAXA_SUFFIX = ".taxa.json.gz";
+    public static final String POSITION_SUFFIX = ".position.json.gz";
+
+    private MappedGenotypeIO() {
+        // utility
+    }
+
+    /**
+     * Writes genotype table to mapped binary format.
+     *
+     * @param genotypes genotype table
+     * @param filename output file name (adds .t5g if needed)
+     * @param siteMajor true to store all taxa of a site together (fast
+     * genotypeAllTaxa), false to store all sites of a taxon together (fast
+     * genotypeAllSites)
+     * @param listener progress listener (can be null)
+     *
+     * @return final filename
+     */
+    public static String write(GenotypeTable genotypes, String filename, boolean siteMajor, ProgressListener listener) {
+
+        filename = Utils.addSuffixIfNeeded(filename, FILE_EXT_MAPPED_GENOTYPE);
+        int numTaxa = genotypes.numberOfTaxa();
+        int numSites = genotypes.numberOfSites();
+        GenotypeCallTable calls = genotypes.genotypeMatrix();
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 20))) {
+            MappedGenotypeCallTable.writeHeader(output, numTaxa, numSites, calls.isPhased(), siteMajor);
+            int numRows = siteMajor ? numSites : numTaxa;
+            for (int row = 0; row < numRows; row++) {
+                output.write(siteMajor ? calls.genotypeForAllTaxa(row) : calls.genotypeForAllSites(row));
+                if (listener != null && row % 1000 == 0) {
+                    listener.progress((int) ((long) row * 100L / numRows), null);
+                }
+            }
+        } catch (Exception e) {
+            myLogger.debug(e.getMessage(), e);
+            throw new IllegalStateException("MappedGenotypeIO: write: problem writing: " + filename + "\n" + e.getMessage());
+        }
+
+        JSONUtils.exportTaxaListToJSON(genotypes.taxa(), filename + TAXA_SUFFIX);
+        JSONUtils.exportPositionListToJSON(genotypes.positions(), filename + POSITION_SUFFIX);
+        if (listener != null) {
+            listener.progress(100, null);
+        }
+        return filename;
+
+    }
+
+    /**
+     * Opens a mapped binary genotype file. Only the taxa and positions are
+     * read into memory. Genotypes are read on demand from the mapped file.
+     *
+     * @param filename .t5g file name
+     *
+     * @return genotype table
+     */
+    public static GenotypeTable read(String filename) {
+        TaxaList taxa = JSONUtils.importTaxaListFromJSON(filename + TAXA_SUFFIX);
+        PositionList positions = JSONUtils.importPositionListFromJSON(filename + POSITION_SUFFIX);
+        GenotypeCallTable calls = GenotypeCallTableBuilder.buildMapped(filename);
+        if (calls.numberOfTaxa() != taxa.numberOfTaxa() || calls.numberOfSites() != positions.numberOfSites()) {
+            throw new IllegalStateException("MappedGenotypeIO: read: taxa or positions don't match genotypes in: " + filename);
+        }
+        return GenotypeTableBuilder.getInstance(calls, positions, taxa);
+    }
+
+}
@@ -0,0 +1,401 @@
+/*
+ *  ParallelSiteWriter
+ */
+package net.maizegenetics.dna.snp.io;
+
+import net.maizegenetics.util.ProgressListener;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a text file with one line per site, such as Hapmap or VCF. Blocks of
+ * sites are formatted into byte buffers on multiple cores and written in site
+ * order, so the file is the same as when the lines are written one at a time.
+ *
+ * Files ending with ".gz" are written as BGZF (block gzip), which any gzip
+ * reader can read. Each block of sites is compressed by the thread that
+ * formats it. A line index ({@link LineIndexBuilder}) can be written in the
+ * same pass, since the virtual file offsets are known as the blocks are
+ * written.
+ */
+public class ParallelSiteWriter {
+
+    /**
+     * Formats one site. Implementations are called from multiple threads.
+     */
+    @FunctionalInterface
+    public interface SiteFormatter {
+
+        /**
+         * Appends the line for a site, including the ending new line.
+         *
+         * @param site site
+         * @param builder builder to append to
+         */
+        void format(int site, StringBuilder builder);
+    }
+
+    private static final int MAX_BLOCKS_IN_FLIGHT_PER_THREAD = 2;
+    // bytes of formatted lines per block of sites, used to choose the number of sites per block
+    private static final int TARGET_BLOCK_SIZE = 1 << 22;
+
+    private static final int BGZF_HEADER_LENGTH = 18;
+    private static final int BGZF_FOOTER_LENGTH = 8;
+    private static final int BGZF_MAX_BLOCK_SIZE = 1 << 16;
+    // uncompressed bytes per BGZF block, same as bgzip
+    private static final int BGZF_MAX_UNCOMPRESSED_SIZE = 0xff00;
+    private static final int BGZF_COMPRESSION_LEVEL = 5;
+    private static final byte[] BGZF_EOF = {31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 6, 0, 'B', 'C', 2, 0, 27, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(BGZF_COMPRESSION_LEVEL, true));
+    private static final ThreadLocal<Deflater> STORE_DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.NO_COMPRESSION, true));
+    private static final ThreadLocal<byte[]> COMPRESSED_BUFFER = ThreadLocal.withInitial(() -> new byte[BGZF_MAX_BLOCK_SIZE]);
+
+    private final String myFilename;
+    private final int myNumSites;
+    private final SiteFormatter myFormatter;
+    private final boolean myIsBGZF;
+    private final Charset myCharset = Charset.defaultCharset();
+    private String myHeader = "";
+    private int myNumThreads = Runtime.getRuntime().availableProcessors();
+    private int mySitesPerBlock = 0;
+    private boolean myWriteIndex = false;
+    private int myNumHeaderLinesToSkip = 0;
+    private int myNumColumnsInIndex = 0;
+    private ProgressListener myListener = null;
+
+    /**
+     * @param filename output file, written as BGZF if it ends with ".gz"
+     * @param numSites number of sites
+     * @param formatter formats the line of a site
+     */
+    public ParallelSiteWriter(String filename, int numSites, SiteFormatter formatter) {
+        myFilename = filename;
+        myNumSites = numSites;
+        myFormatter = formatter;
+        myIsBGZF = filename.endsWith(".gz");
+    }
+
+    /**
+     * Header lines written before the sites, including the ending new line.
+     */
+    public ParallelSiteWriter header(String header) {
+        myHeader = header;
+        return this;
+    }
+
+    public ParallelSiteWriter numThreads(int numThreads) {
+        myNumThreads = Math.max(1, numThreads);
+        return this;
+    }
+
+    /**
+     * Number of sites formatted together. By default, chosen from the length
+     * of the first line so that a block is about 4 MB.
+     */
+    public ParallelSiteWriter sitesPerBlock(int sitesPerBlock) {
+        mySitesPerBlock = sitesPerBlock;
+        return this;
+    }
+
+    /**
+     * Writes a line index (filename + ".lix") of the BGZF file, as
+     * {@link LineIndexBuilder} would. The lines must be tab delimited.
+     *
+     * @param numHeaderLinesToSkip number of header lines not starting with
+     * '#'
+     * @param numColumnsInIndex number of beginning columns of each line kept
+     * in the index
+     */
+    public ParallelSiteWriter lineIndex(int numHeaderLinesToSkip, int numColumnsInIndex) {
+        if (!myIsBGZF) {
+            throw new IllegalArgumentException("ParallelSiteWriter: lineIndex: a line index can only be written for a block gzipped (.gz) file: " + myFilename);
+        }
+        myWriteIndex = true;
+        myNumHeaderLinesToSkip = numHeaderLinesToSkip;
+        myNumColumnsInIndex = numColumnsInIndex;
+        return this;
+    }
+
+    public ParallelSiteWriter progressListener(ProgressListener listener) {
+        myListener = listener;
+        return this;
+    }
+
+    /**
+     * Writes the file, and the line index if requested.
+     */
+    public void write() throws IOException {
+
+        List<Long> virtualFileOffsets = new ArrayList<>();
+        List<String> beginningColumnsPerRow = new ArrayList<>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(myNumThreads);
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(myFilename), 1 << 20)) {
+
+            long compressedOffset = 0;
+            Block header = compress(myHeader.getBytes(myCharset), new int[0]);
+            output.write(header.myData, 0, header.myLength);
+            compressedOffset += header.myLength;
+
+            int sitesPerBlock = mySitesPerBlock;
+            int nextSite = 0;
+            if (sitesPerBlock <= 0 && myNumSites > 0) {
+                // format the first site to estimate the line length
+                Block first = formatBlock(0, 1);
+                output.write(first.myData, 0, first.myLength);
+                addIndex(first, compressedOffset, virtualFileOffsets, beginningColumnsPerRow);
+                compressedOffset += first.myLength;
+                sitesPerBlock = (int) Math.max(1, Math.min(1 << 16, TARGET_BLOCK_SIZE / Math.max(1, first.myUncompressedLength)));
+                nextSite = 1;
+            }
+
+            int maxBlocksInFlight = MAX_BLOCKS_IN_FLIGHT_PER_THREAD * myNumThreads;
+            ArrayDeque<Future<Block>> blocks = new ArrayDeque<>();
+            while (nextSite < myNumSites || !blocks.isEmpty()) {
+                while (nextSite < myNumSites && blocks.size() < maxBlocksInFlight) {
+                    int start = nextSite;
+                    int end = Math.min(myNumSites, start + sitesPerBlock);
+                    blocks.add(pool.submit(() -> formatBlock(start, end)));
+                    nextSite = end;
+                }
+                Block block = getBlock(blocks.poll());
+                output.write(block.myData, 0, block.myLength);
+                addIndex(block, compressedOffset, virtualFileOffsets, beginningColumnsPerRow);
+                compressedOffset += block.myLength;
+                if (myListener != null) {
+                    myListener.progress((int) ((double) block.myEndSite / (double) myNumSites * 100.0), null);
+                }
+            }
+
+            if (myWriteIndex && myNumSites % LineIndex.NUM_LINES_PER_INTERVAL == 0) {
+                // LineIndexBuilder also records the offset after the last line in this case
+                virtualFileOffsets.add(compressedOffset << 16);
+            }
+
+            if (myIsBGZF) {
+                output.write(BGZF_EOF);
+            }
+
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (myWriteIndex) {
+            LineIndexBuilder.writeIndex(myFilename + LineIndexBuilder.LINE_INDEX_FILE_EXTENSION, '#', myNumHeaderLinesToSkip, beginningColumnsPerRow, virtualFileOffsets);
+        }
+
+    }
+
+    private static Block getBlock(Future<Block> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("ParallelSiteWriter: write: interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("ParallelSiteWriter: write: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Adds the virtual file offsets and beginning columns of the lines of a
+     * block to the index.
+     */
+    private void addIndex(Block block, long compressedOffset, List<Long> virtualFileOffsets, List<String> beginningColumnsPerRow) {
+        if (!myWriteIndex) {
+            return;
+        }
+        for (long offset : block.myLineOffsets) {
+            virtualFileOffsets.add(((compressedOffset + (offset >>> 16)) << 16) | (offset & 0xFFFF));
+        }
+        for (String columns : block.myBeginningColumns) {
+            beginningColumnsPerRow.add(columns);
+        }
+    }
+
+    private Block formatBlock(int startSite, int endSite) {
+
+        StringBuilder builder = new StringBuilder();
+        for (int site = startSite; site < endSite; site++) {
+            myFormatter.format(site, builder);
+        }
+        byte[] data = builder.toString().getBytes(myCharset);
+
+        if (!myWriteIndex) {
+            Block result = compress(data, new int[0]);
+            result.myEndSite = endSite;
+            return result;
+        }
+
+        // starts of the lines recorded in the index
+        int numIndexedLines = 0;
+        for (int site = startSite; site < endSite; site++) {
+            if (site % LineIndex.NUM_LINES_PER_INTERVAL == 0) {
+                numIndexedLines++;
+            }
+        }
+        int[] indexedLineStarts = new int[numIndexedLines];
+        String[] beginningColumns = new String[endSite - startSite];
+        int lineStart = 0;
+        int count = 0;
+        for (int site = startSite; site < endSite; site++) {
+            if (site % LineIndex.NUM_LINES_PER_INTERVAL == 0) {
+                indexedLineStarts[count++] = lineStart;
+            }
+            int lineEnd = lineStart;
+            while (lineEnd < data.length && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int columnsEnd = lineStart;
+            int numTabs = 0;
+            while (columnsEnd < lineEnd) {
+                if (data[columnsEnd] == '\t' && ++numTabs == myNumColumnsInIndex) {
+                    break;
+                }
+                columnsEnd++;
+            }
+            if (numTabs < myNumColumnsInIndex) {
+                throw new IllegalStateException("ParallelSiteWriter: write: " + myNumColumnsInIndex + " columns not found for site: " + site);
+            }
+            beginningColumns[site - startSite] = new String(data, lineStart, columnsEnd - lineStart, myCharset);
+            lineStart = lineEnd + 1;
+        }
+
+        Block result = compress(data, indexedLineStarts);
+        result.myBeginningColumns = beginningColumns;
+        result.myEndSite = endSite;
+        return result;
+
+    }
+
+    /**
+     * Compresses data into BGZF blocks if writing BGZF.
+     *
+     * @param data uncompressed data
+     * @param lineStarts offsets in data of the lines needing virtual file
+     * offsets, in increasing order
+     *
+     * @return block with virtual file offsets relative to the start of the
+     * block
+     */
+    private Block compress(byte[] data, int[] lineStarts) {
+
+        Block result = new Block();
+        result.myUncompressedLength = data.length;
+        result.myLineOffsets = new long[lineStarts.length];
+
+        if (!myIsBGZF) {
+            result.myData = data;
+            result.myLength = data.length;
+            return result;
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 3 + BGZF_MAX_BLOCK_SIZE);
+        int nextLine = 0;
+        for (int start = 0; start < data.length; start += BGZF_MAX_UNCOMPRESSED_SIZE) {
+            int length = Math.min(BGZF_MAX_UNCOMPRESSED_SIZE, data.length - start);
+            while (nextLine < lineStarts.length && lineStarts[nextLine] < start + length) {
+                result.myLineOffsets[nextLine] = ((long) compressed.size() << 16) | (lineStarts[nextLine] - start);
+                nextLine++;
+            }
+            writeBGZFBlock(data, start, length, compressed);
+        }
+        // lines starting at the end of the data start in the next block
+        while (nextLine < lineStarts.length) {
+            result.myLineOffsets[nextLine++] = (long) compressed.size() << 16;
+        }
+
+        result.myData = compressed.toByteArray();
+        result.myLength = result.myData.length;
+        return result;
+
+    }
+
+    private static void writeBGZFBlock(byte[] data, int start, int length, ByteArrayOutputStream output) {
+
+        byte[] buffer = COMPRESSED_BUFFER.get();
+        int maxCompressedLength = BGZF_MAX_BLOCK_SIZE - BGZF_HEADER_LENGTH - BGZF_FOOTER_LENGTH;
+
+        int compressedLength = deflate(DEFLATER.get(), data, start, length, buffer, maxCompressedLength);
+        if (compressedLength < 0) {
+            // data that does not compress is stored, which always fits
+            compressedLength = deflate(STORE_DEFLATER.get(), data, start, length, buffer, maxCompressedLength);
+        }
+
+        int blockSize = BGZF_HEADER_LENGTH + compressedLength + BGZF_FOOTER_LENGTH;
+        output.write(31);
+        output.write(139);
+        output.write(8);
+        output.write(4);
+        writeInt(output, 0);
+        output.write(0);
+        output.write(255);
+        writeShort(output, 6);
+        output.write('B');
+        output.write('C');
+        writeShort(output, 2);
+        writeShort(output, blockSize - 1);
+        output.write(buffer, 0, compressedLength);
+        CRC32 crc = new CRC32();
+        crc.update(data, start, length);
+        writeInt(output, (int) crc.getValue());
+        writeInt(output, length);
+
+    }
+
+    /**
+     * @return compressed length, or -1 if the compressed data is longer than
+     * maxLength
+     */
+    private static int deflate(Deflater deflater, byte[] data, int start, int length, byte[] buffer, int maxLength) {
+        deflater.reset();
+        deflater.setInput(data, start, length);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished() && compressedLength < maxLength) {
+            compressedLength += deflater.deflate(buffer, compressedLength, maxLength - compressedLength);
+        }
+        return deflater.finished() ? compressedLength : -1;
+    }
+
+    private static void writeShort(ByteArrayOutputStream output, int value) {
+        output.write(value & 0xFF);
+        output.write((value >>> 8) & 0xFF);
+    }
+
+    private static void writeInt(ByteArrayOutputStream output, int value) {
+        writeShort(output, value & 0xFFFF);
+        writeShort(output, (value >>> 16) & 0xFFFF);
+    }
+
+    private static class Block {
+
+        private byte[] myData;
+        private int myLength;
+        private int myUncompressedLength;
+        private int myEndSite;
+        // virtual file offsets relative to the start of the block
+        private long[] myLineOffsets;
+        private String[] myBeginningColumns = new String[0];
+    }
+
+}
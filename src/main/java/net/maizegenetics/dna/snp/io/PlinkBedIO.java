@@ -0,0 +1,339 @@
+/*
+ *  PlinkBedIO
+ */
+package net.maizegenetics.dna.snp.io;
+
+import net.maizegenetics.dna.map.Chromosome;
+import net.maizegenetics.dna.map.GeneralPosition;
+import net.maizegenetics.dna.map.PositionListBuilder;
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.GenotypeTableBuilder;
+import net.maizegenetics.dna.snp.NucleotideAlignmentConstants;
+import net.maizegenetics.dna.snp.genotypecall.PlinkBedGenotypeCallTable;
+import net.maizegenetics.taxa.TaxaListBuilder;
+import net.maizegenetics.taxa.Taxon;
+import net.maizegenetics.util.ProgressListener;
+import net.maizegenetics.util.Utils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Reads and writes PLINK 1.9 binary genotype files. Genotype calls are in the
+ * .bed file (see PlinkBedGenotypeCallTable), sites in the .bim file and taxa
+ * in the .fam file, all with the same prefix.
+ * <p>
+ * Reading maps the .bed file into memory, so only the taxa, positions and two
+ * alleles of each site are held on the heap. Writing streams one site at a
+ * time. PLINK binary files are biallelic, so the two most common alleles of
+ * each site are written, and genotypes with any other allele are written as
+ * missing.
+ *
+ * @see PlinkBedGenotypeCallTable
+ */
+public class PlinkBedIO {
+
+    private static final Logger myLogger = LogManager.getLogger(PlinkBedIO.class);
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+
+    public static final String FILE_EXT_PLINK_BED = ".bed";
+    public static final String FILE_EXT_PLINK_BIM = ".bim";
+    public static final String FILE_EXT_PLINK_FAM = ".fam";
+
+    // chromosome, variant identifier, genetic distance, base-pair position, first allele, second allele
+    private static final int PLINK_BIM_CHROMOSOME_INDEX = 0;
+    private static final int PLINK_BIM_SNP_ID_INDEX = 1;
+    private static final int PLINK_BIM_POSITION_INDEX = 3;
+    private static final int PLINK_BIM_FIRST_ALLELE_INDEX = 4;
+    private static final int PLINK_BIM_SECOND_ALLELE_INDEX = 5;
+    private static final int NUM_PLINK_BIM_COLUMNS = 6;
+
+    // family ID, individual ID, paternal ID, maternal ID, sex, phenotype
+    private static final int PLINK_FAM_INDIVIDUAL_ID_INDEX = 1;
+
+    private PlinkBedIO() {
+        // utility
+    }
+
+    /**
+     * Returns the file name without the .bed, .bim or .fam extension.
+     *
+     * @param filename PLINK binary file name or prefix
+     *
+     * @return prefix
+     */
+    public static String prefix(String filename) {
+        for (String extension : new String[]{FILE_EXT_PLINK_BED, FILE_EXT_PLINK_BIM, FILE_EXT_PLINK_FAM}) {
+            if (filename.endsWith(extension)) {
+                return filename.substring(0, filename.length() - extension.length());
+            }
+        }
+        return filename;
+    }
+
+    /**
+     * Returns whether the given file is one of a set of PLINK binary files.
+     * The .bed file must start with the PLINK magic number, so UCSC BED files
+     * are not mistaken for it, and the .bim and .fam files must exist.
+     *
+     * @param filename .bed, .bim or .fam file name
+     *
+     * @return true if PLINK binary
+     */
+    public static boolean isPlinkBed(String filename) {
+        String prefix = prefix(filename);
+        if (prefix.equals(filename)) {
+            return false;
+        }
+        if (!new File(prefix + FILE_EXT_PLINK_BIM).isFile() || !new File(prefix + FILE_EXT_PLINK_FAM).isFile()) {
+            return false;
+        }
+        try (InputStream input = new FileInputStream(prefix + FILE_EXT_PLINK_BED)) {
+            byte[] magic = new byte[PlinkBedGenotypeCallTable.MAGIC.length];
+            return input.read(magic) == magic.length && Arrays.equals(magic, PlinkBedGenotypeCallTable.MAGIC);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens PLINK binary genotype files. Genotypes are read on demand from the
+     * mapped .bed file. Sites must be ordered by position.
+     *
+     * @param filename .bed, .bim or .fam file name, or their prefix
+     *
+     * @return genotype table
+     */
+    public static GenotypeTable read(String filename) {
+
+        String prefix = prefix(filename);
+        String bedFile = prefix + FILE_EXT_PLINK_BED;
+        String bimFile = prefix + FILE_EXT_PLINK_BIM;
+        String famFile = prefix + FILE_EXT_PLINK_FAM;
+        myLogger.info("Reading: " + bedFile + " with " + bimFile + " and " + famFile);
+
+        TaxaListBuilder taxa = new TaxaListBuilder();
+        try (BufferedReader reader = Utils.getBufferedReader(famFile)) {
+            String line = reader.readLine();
+            while (line != null) {
+                if (!line.trim().isEmpty()) {
+                    String[] tokens = WHITESPACE_PATTERN.split(line.trim());
+                    taxa.add(new Taxon(tokens[PLINK_FAM_INDIVIDUAL_ID_INDEX]));
+                }
+                line = reader.readLine();
+            }
+        } catch (Exception e) {
+            myLogger.debug(e.getMessage(), e);
+            throw new IllegalStateException("PlinkBedIO: read: problem reading: " + famFile + ": " + e.getMessage());
+        }
+
+        PositionListBuilder positions = new PositionListBuilder();
+        Map<String, Chromosome> chromosomes = new HashMap<>();
+        byte[] firstAlleles = new byte[1024];
+        byte[] secondAlleles = new byte[1024];
+        int numSites = 0;
+        try (BufferedReader reader = Utils.getBufferedReader(bimFile)) {
+            String line = reader.readLine();
+            while (line != null) {
+                if (!line.trim().isEmpty()) {
+                    String[] tokens = WHITESPACE_PATTERN.split(line.trim());
+                    if (tokens.length < NUM_PLINK_BIM_COLUMNS) {
+                        throw new IllegalStateException("Not all columns defined line: \"" + line + "\"");
+                    }
+                    Chromosome chr = chromosomes.computeIfAbsent(tokens[PLINK_BIM_CHROMOSOME_INDEX], Chromosome::instance);
+                    positions.add(new GeneralPosition.Builder(chr, Integer.parseInt(tokens[PLINK_BIM_POSITION_INDEX]))
+                            .snpName(tokens[PLINK_BIM_SNP_ID_INDEX]).build());
+                    if (numSites == firstAlleles.length) {
+                        firstAlleles = Arrays.copyOf(firstAlleles, numSites * 2);
+                        secondAlleles = Arrays.copyOf(secondAlleles, numSites * 2);
+                    }
+                    firstAlleles[numSites] = alleleByte(tokens[PLINK_BIM_FIRST_ALLELE_INDEX], tokens[PLINK_BIM_SECOND_ALLELE_INDEX]);
+                    secondAlleles[numSites] = alleleByte(tokens[PLINK_BIM_SECOND_ALLELE_INDEX], tokens[PLINK_BIM_FIRST_ALLELE_INDEX]);
+                    numSites++;
+                }
+                line = reader.readLine();
+            }
+        } catch (Exception e) {
+            myLogger.debug(e.getMessage(), e);
+            throw new IllegalStateException("PlinkBedIO: read: problem reading: " + bimFile + ": " + e.getMessage());
+        }
+
+        if (!positions.validateOrdering()) {
+            throw new IllegalStateException("PlinkBedIO: read: sites in: " + bimFile + " must be ordered by position.");
+        }
+
+        PlinkBedGenotypeCallTable calls = PlinkBedGenotypeCallTable.getInstance(bedFile, taxa.numberOfTaxa(),
+                Arrays.copyOf(firstAlleles, numSites), Arrays.copyOf(secondAlleles, numSites));
+        return GenotypeTableBuilder.getInstance(calls, positions.build(), taxa.build());
+
+    }
+
+    /**
+     * Returns the allele value of a .bim allele. Single character alleles are
+     * converted like text PLINK. For multiple character alleles (indels), the
+     * longer allele is an insertion and the shorter a deletion.
+     */
+    private static byte alleleByte(String allele, String otherAllele) {
+        if (allele.length() == 1) {
+            return BuilderFromPLINK.getPLINKAlleleByte(allele.charAt(0));
+        } else if (allele.length() > otherAllele.length()) {
+            return NucleotideAlignmentConstants.INSERT_ALLELE;
+        } else if (allele.length() < otherAllele.length()) {
+            return NucleotideAlignmentConstants.GAP_ALLELE;
+        } else {
+            return NucleotideAlignmentConstants.UNDEFINED_ALLELE;
+        }
+    }
+
+    /**
+     * Writes genotype table to PLINK binary genotype files, one site at a
+     * time. The most common allele of each site is the second allele and the
+     * next most common the first allele, as PLINK does.
+     *
+     * @param genotypes genotype table
+     * @param filename output file name or prefix (.bed, .bim and .fam are
+     * added)
+     * @param listener progress listener (can be null)
+     *
+     * @return .bed file name
+     */
+    public static String write(GenotypeTable genotypes, String filename, ProgressListener listener) {
+
+        String prefix = prefix(filename);
+        String bedFile = prefix + FILE_EXT_PLINK_BED;
+        String bimFile = prefix + FILE_EXT_PLINK_BIM;
+        String famFile = prefix + FILE_EXT_PLINK_FAM;
+        int numTaxa = genotypes.numberOfTaxa();
+        int numSites = genotypes.numberOfSites();
+
+        try (BufferedWriter fam = Utils.getBufferedWriter(famFile)) {
+            for (int t = 0; t < numTaxa; t++) {
+                String name = genotypes.taxaName(t).trim();
+                fam.write(name + "\t" + name + "\t0\t0\t0\t-9\n");
+            }
+        } catch (Exception e) {
+            myLogger.debug(e.getMessage(), e);
+            throw new IllegalStateException("PlinkBedIO: write: problem writing: " + famFile + ": " + e.getMessage());
+        }
+
+        long numDropped = 0;
+        try (BufferedWriter bim = Utils.getBufferedWriter(bimFile);
+             OutputStream bed = new BufferedOutputStream(new FileOutputStream(bedFile), 1 << 20)) {
+            bed.write(PlinkBedGenotypeCallTable.MAGIC);
+            bed.write(PlinkBedGenotypeCallTable.SNP_MAJOR);
+            byte[] packed = new byte[(numTaxa + 3) / 4];
+            int[] counts = new int[16];
+            for (int site = 0; site < numSites; site++) {
+                byte[] calls = genotypes.genotypeAllTaxa(site);
+                byte[] alleles = twoMostCommonAlleles(calls, counts);
+                byte first = alleles[0];
+                byte second = alleles[1];
+                Arrays.fill(packed, (byte) 0);
+                for (int t = 0; t < numTaxa; t++) {
+                    int code = code(calls[t], first, second);
+                    if (code == PlinkBedGenotypeCallTable.MISSING && calls[t] != GenotypeTable.UNKNOWN_DIPLOID_ALLELE) {
+                        numDropped++;
+                    }
+                    packed[t >>> 2] |= code << ((t & 3) << 1);
+                }
+                bed.write(packed);
+
+                bim.write(genotypes.chromosomeName(site));
+                bim.write('\t');
+                bim.write(genotypes.siteName(site));
+                bim.write("\t0\t");
+                bim.write(Integer.toString(genotypes.chromosomalPosition(site)));
+                bim.write('\t');
+                bim.write(alleleString(first));
+                bim.write('\t');
+                bim.write(alleleString(second));
+                bim.write('\n');
+
+                if (listener != null && site % 10000 == 0) {
+                    listener.progress((int) ((long) site * 100L / numSites), null);
+                }
+            }
+        } catch (Exception e) {
+            myLogger.debug(e.getMessage(), e);
+            throw new IllegalStateException("PlinkBedIO: write: problem writing: " + bedFile + ": " + e.getMessage());
+        }
+
+        if (numDropped != 0) {
+            myLogger.warn("write: " + numDropped + " genotypes with an allele other than the two written for the site, or with one unknown allele, written as missing to: " + bedFile);
+        }
+        if (listener != null) {
+            listener.progress(100, null);
+        }
+        return bedFile;
+
+    }
+
+    /**
+     * Returns the two most common alleles of a site, ties going to the lower
+     * allele value. The first allele is the less common one, and is unknown
+     * if the site has only one allele.
+     *
+     * @param calls genotypes of all taxa at the site
+     * @param counts work array of length 16
+     *
+     * @return first and second allele
+     */
+    static byte[] twoMostCommonAlleles(byte[] calls, int[] counts) {
+        Arrays.fill(counts, 0);
+        for (byte call : calls) {
+            counts[(call >>> 4) & 0xF]++;
+            counts[call & 0xF]++;
+        }
+        counts[GenotypeTable.UNKNOWN_ALLELE] = 0;
+        int best = GenotypeTable.UNKNOWN_ALLELE;
+        int next = GenotypeTable.UNKNOWN_ALLELE;
+        for (int allele = 0; allele < counts.length; allele++) {
+            if (counts[allele] == 0) {
+                continue;
+            }
+            if (best == GenotypeTable.UNKNOWN_ALLELE || counts[allele] > counts[best]) {
+                next = best;
+                best = allele;
+            } else if (next == GenotypeTable.UNKNOWN_ALLELE || counts[allele] > counts[next]) {
+                next = allele;
+            }
+        }
+        return new byte[]{(byte) next, (byte) best};
+    }
+
+    private static int code(byte call, byte first, byte second) {
+        byte allele1 = (byte) ((call >>> 4) & 0xF);
+        byte allele2 = (byte) (call & 0xF);
+        if (allele1 == GenotypeTable.UNKNOWN_ALLELE || allele2 == GenotypeTable.UNKNOWN_ALLELE) {
+            return PlinkBedGenotypeCallTable.MISSING;
+        } else if (allele1 == second && allele2 == second) {
+            return PlinkBedGenotypeCallTable.HOMOZYGOUS_SECOND;
+        } else if (allele1 == first && allele2 == first) {
+            return PlinkBedGenotypeCallTable.HOMOZYGOUS_FIRST;
+        } else if ((allele1 == first && allele2 == second) || (allele1 == second && allele2 == first)) {
+            return PlinkBedGenotypeCallTable.HETEROZYGOUS;
+        } else {
+            return PlinkBedGenotypeCallTable.MISSING;
+        }
+    }
+
+    private static String alleleString(byte allele) {
+        if (allele == GenotypeTable.UNKNOWN_ALLELE) {
+            return "0";
+        }
+        return NucleotideAlignmentConstants.getHaplotypeNucleotide(allele);
+    }
+
+}
@@ -0,0 +1,288 @@
+/*
+ *  VCFGenotypeParser
+ */
+package net.maizegenetics.dna.snp.io;
+
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.GenotypeTableUtils;
+import net.maizegenetics.dna.snp.NucleotideAlignmentConstants;
+import net.maizegenetics.dna.snp.score.AlleleDepthUtil;
+
+/**
+ * Decodes the per-sample columns of a VCF data line (GT and optionally AD)
+ * directly from the characters of the line. No String or other object is
+ * created per sample, which matters when there are tens of thousands of
+ * samples per site.
+ *
+ * Also decodes single sites for random access to an indexed VCF, see
+ * {@link #parseSite(String, int, int, int, int, byte[])}.
+ */
+public final class VCFGenotypeParser {
+
+    private VCFGenotypeParser() {
+        // utility
+    }
+
+    /**
+     * Parses all sample columns of one site.
+     *
+     * @param line VCF data line
+     * @param start index of the first character of the first sample column
+     * @param site site index within the block
+     * @param alleles allele bytes (reference first) for the site
+     * @param iAD index of the AD field in FORMAT, or -1 if absent
+     * @param genotypes genotypes[taxon][site] to fill
+     * @param depths depths[taxon][allele][site] to fill, or null to skip
+     * depth
+     *
+     * @return number of sample columns parsed
+     */
+    static int parseSamples(CharSequence line, int start, int site, byte[] alleles, int iAD, byte[][] genotypes, byte[][][] depths) {
+        final int len = line.length();
+        final int numTaxa = genotypes.length;
+        int t = 0;
+        int i = start;
+        while (i <= len) {
+            if (t >= numTaxa) {
+                throw new IllegalStateException("Error Processing VCF block: More genotype columns than taxa in header.");
+            }
+            int end = i;
+            while (end < len && line.charAt(end) != '\t') {
+                end++;
+            }
+            parseSample(line, i, end, site, alleles, iAD, genotypes[t], (depths == null) ? null : depths[t]);
+            t++;
+            i = end + 1;
+        }
+        return t;
+    }
+
+    /**
+     * Known variants of a site from its REF and ALT columns, for example
+     * "A/C" or "A/C/T".
+     *
+     * @param ref REF column
+     * @param alt ALT column
+     *
+     * @return known variants separated by '/'
+     */
+    static String variants(String ref, String alt) {
+        if (alt.equals(".")) {
+            return ref;
+        }
+        return (ref + "/" + alt).replace(',', '/')
+                .replace("<INS>", "+").replace('I', '+')
+                .replace("<DEL>", "-").replace('D', '-')
+                .replace("*", "N");
+    }
+
+    /**
+     * Allele bytes of the known variants of a site, reference first. The
+     * shared first base of indels is removed, so deletions are coded as '-'.
+     *
+     * @param variants known variants from {@link #variants(String, String)}
+     *
+     * @return allele bytes
+     */
+    static byte[] alleles(String variants) {
+        //byte[] alleles=new byte[(variants.length()+1)/2];
+        byte[] alleles = new byte[variants.split("/").length];
+        for (int i = 0, varInd=0; i < alleles.length; i++, varInd+=2) {
+            alleles[i]=NucleotideAlignmentConstants.getNucleotideAlleleByte(variants.charAt(varInd));
+        }
+        /***ZRM 8_27 New code ***/
+        String[] variantList = variants.split("/");
+        if(variantList[0].length()>1) {
+            String[] parsedVariantList = new String[variantList.length];
+            //alt deletion
+            for(int i = 0; i < variantList.length; i++) {
+                //Pull off the first character if it exists
+                if(variantList[i].length()>1) {
+                    parsedVariantList[i] = variantList[i].substring(1);
+                    if(parsedVariantList[i].length()==0) {
+                        parsedVariantList[i] = "-";
+                    }
+                }
+                else {
+                    //Mark as deletion
+                    parsedVariantList[i] = "-";
+                }
+            }
+            for(int i = 0; i<parsedVariantList.length; i++) {
+                alleles[i] = NucleotideAlignmentConstants.getNucleotideAlleleByte(parsedVariantList[i].charAt(0));
+            }
+        }
+        else {
+            //Check for reference deletion(insertion)
+            //Loop through all variants to see if one alt is longer than the ref
+            boolean isIndel = false;
+            for(int i = 1; i < variantList.length; i++) {
+                if(variantList[i].length() > variantList[0].length()) {
+                    isIndel = true;
+                    break;
+                }
+            }
+            if(isIndel) {
+                String[] parsedVariantList = new String[variantList.length];
+                //ref+alt deletion
+                for(int i = 0; i < variantList.length; i++) {
+                    //Pull off the first character if it exists
+                    if(variantList[i].length()>1) {
+                        parsedVariantList[i] = variantList[i].substring(1);
+                        if(parsedVariantList[i].length()==0) {
+                            parsedVariantList[i] = "-";
+                        }
+                    }
+                    else {
+                        //Mark as deletion
+                        parsedVariantList[i] = "-";
+                    }
+                }
+                for(int i = 0; i<parsedVariantList.length; i++) {
+                    alleles[i] = NucleotideAlignmentConstants.getNucleotideAlleleByte(parsedVariantList[i].charAt(0));
+                }
+            }
+            else {
+                //if not just put it in the allele array
+                for(int i = 0; i<variantList.length; i++) {
+                    alleles[i] = NucleotideAlignmentConstants.getNucleotideAlleleByte(variantList[i].charAt(0));
+                }
+            }
+        }
+        /***ZRM 8_27 New code end ***/
+        return alleles;
+    }
+
+    /**
+     * Parses the genotypes of all taxa at one site from a VCF data line. Used
+     * to decode single sites of an indexed VCF without building the
+     * position.
+     *
+     * @param line VCF data line
+     * @param refColumn index of the REF column
+     * @param altColumn index of the ALT column
+     * @param formatColumn index of the FORMAT column, or -1 if absent
+     * @param firstSampleColumn index of the first sample column
+     * @param genotypes genotypes[taxon] to fill
+     *
+     * @return number of sample columns parsed
+     */
+    public static int parseSite(String line, int refColumn, int altColumn, int formatColumn, int firstSampleColumn, byte[] genotypes) {
+        final int len = line.length();
+        int[] columnStart = new int[firstSampleColumn + 1];
+        int column = 0;
+        for (int i = 0; (column < firstSampleColumn) && (i < len); i++) {
+            if (line.charAt(i) == '\t') {
+                columnStart[++column] = i + 1;
+            }
+        }
+        if (column < firstSampleColumn) {
+            throw new IllegalStateException("Error Processing VCF: Missing columns: " + line);
+        }
+        String ref = line.substring(columnStart[refColumn], columnStart[refColumn + 1] - 1);
+        String alt = line.substring(columnStart[altColumn], columnStart[altColumn + 1] - 1);
+        byte[] alleles = alleles(variants(ref, alt));
+        if (formatColumn >= 0 && !line.startsWith("GT", columnStart[formatColumn])) {
+            String format = line.substring(columnStart[formatColumn], columnStart[formatColumn + 1] - 1);
+            if (format.contains("GT")) {
+                throw new IllegalStateException("Error Processing VCF: GT field is not in first position of FORMAT.");
+            } else {
+                throw new IllegalStateException("Error Processing VCF: Missing FORMAT tag.");
+            }
+        }
+
+        final int numTaxa = genotypes.length;
+        int t = 0;
+        int i = columnStart[firstSampleColumn];
+        while (i <= len) {
+            if (t >= numTaxa) {
+                throw new IllegalStateException("Error Processing VCF: More genotype columns than taxa in header.");
+            }
+            int end = i;
+            while (end < len && line.charAt(end) != '\t') {
+                end++;
+            }
+            parseSample(line, i, end, t, alleles, -1, genotypes, null);
+            t++;
+            i = end + 1;
+        }
+        return t;
+    }
+
+    /**
+     * Parses one sample column occupying line[start, end).
+     */
+    private static void parseSample(CharSequence line, int start, int end, int site, byte[] alleles, int iAD, byte[] genotypes, byte[][] depths) {
+        if (start < end && line.charAt(start) == '.') {
+            genotypes[site] = GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+            return;
+        }
+        int lastField = (depths != null && iAD > 0) ? iAD : 0;
+        int f = 0;
+        int fieldStart = start;
+        while (fieldStart <= end) {
+            int fieldEnd = fieldStart;
+            while (fieldEnd < end && line.charAt(fieldEnd) != ':') {
+                fieldEnd++;
+            }
+            if (f == 0) {
+                genotypes[site] = parseGT(line, fieldStart, fieldEnd, alleles);
+            } else if (f == iAD && genotypes[site] != GenotypeTable.UNKNOWN_DIPLOID_ALLELE) {
+                parseAD(line, fieldStart, fieldEnd, site, alleles, depths);
+            }
+            if (f >= lastField) {
+                // nothing else needed from this sample
+                return;
+            }
+            f++;
+            fieldStart = fieldEnd + 1;
+        }
+    }
+
+    private static byte parseGT(CharSequence line, int start, int end, byte[] alleles) {
+        int length = end - start;
+        int a1;
+        int a2;
+        if (length == 1) {
+            a1 = line.charAt(start) - '0';
+            a2 = a1;
+        } else if (length >= 3) {
+            a1 = line.charAt(start) - '0';
+            a2 = line.charAt(start + 2) - '0';
+        } else {
+            throw new IllegalStateException("Error Processing VCF block: Malformed GT field: " + line.subSequence(start, end) + ".\nExpected a diploid entry.");
+        }
+        if (a1 > alleles.length - 1 || a2 > alleles.length - 1) {
+            throw new IllegalStateException("\nError Processing VCF block: Mismatch of alleles.\nAllele ID larger than number of alleles");
+        }
+        if (a1 < 0 || a2 < 0) {
+            return GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+        }
+        return GenotypeTableUtils.getDiploidValue(alleles[a1], alleles[a2]);
+    }
+
+    private static void parseAD(CharSequence line, int start, int end, int site, byte[] alleles, byte[][] depths) {
+        int i = 0;
+        int valueStart = start;
+        while (valueStart <= end) {
+            int valueEnd = valueStart;
+            while (valueEnd < end && line.charAt(valueEnd) != ',') {
+                valueEnd++;
+            }
+            if (i < alleles.length) {
+                byte allele = alleles[i];
+                boolean missing = (valueEnd - valueStart == 1) && line.charAt(valueStart) == '.';
+                if (allele == GenotypeTable.UNKNOWN_ALLELE || missing || allele == NucleotideAlignmentConstants.UNDEFINED_ALLELE
+                        || allele == NucleotideAlignmentConstants.UNDEFINED_DIPLOID_ALLELE) {
+                    //no position for depth of unknown alleles or depth is set to missing, so skip
+                    i++;
+                } else {
+                    int depth = Integer.parseInt(line, valueStart, valueEnd, 10);
+                    depths[alleles[i++]][site] = AlleleDepthUtil.depthIntToByte(depth);
+                }
+            }
+            valueStart = valueEnd + 1;
+        }
+    }
+
+}
@@ -4,13 +4,15 @@
 package net.maizegenetics.dna.snp.score;
 
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import java.util.Collection;
+import java.util.concurrent.ExecutionException;
 import net.maizegenetics.taxa.TaxaList;
 import net.maizegenetics.taxa.TaxaListBuilder;
 import net.maizegenetics.util.Tassel5HDF5Constants;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
 import net.maizegenetics.dna.snp.byte2d.Byte2D;
 
 /**
@@ -21,12 +23,14 @@ public class HDF5AlleleDepth extends AlleleDepth {
 
     private static int MAX_CACHE_SIZE = 1 << 16;
     private static final int HDF5_BLOCK = 1 << 16;
-    private final Map<Long, byte[][]> myDepthCache = new LinkedHashMap<Long, byte[][]>((3 * MAX_CACHE_SIZE) / 2) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry eldest) {
-            return size() > MAX_CACHE_SIZE;
-        }
-    };
+    private final LoadingCache<Long, byte[][]> myDepthCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHE_SIZE)
+            .build(new CacheLoader<Long, byte[][]>() {
+                @Override
+                public byte[][] load(Long key) {
+                    return readDepthBlock(key);
+                }
+            });
 
     private final IHDF5Reader myReader;
     private final int myNumSites;
@@ -45,6 +49,14 @@ public class HDF5AlleleDepth extends AlleleDepth {
         return ((long) taxon << 33) + (site / HDF5_BLOCK);
     }
 
+    private byte[][] depthBlock(int taxon, int site) {
+        try {
+            return myDepthCache.get(getCacheKey(taxon, site));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("HDF5AlleleDepth: depthBlock: Error getting depth from cache: " + e.getMessage());
+        }
+    }
+
     /**
      * Returns the depth values (byte representation) of all nucleotides at
      * given taxon and site. Depth values are stored in bytes and translated to
@@ -57,14 +69,10 @@ public class HDF5AlleleDepth extends AlleleDepth {
      */
     @Override
     public byte[] valuesByte(int taxon, int site) {
-        long key = getCacheKey(taxon, site);
-        byte[][] data = myDepthCache.get(key);
-        if (data == null) {
-            data = cacheDepthBlock(taxon, site, key);
-        }
+        byte[][] data = depthBlock(taxon, site);
         byte[] result = new byte[6];
         for (int i = 0; i < 6; i++) {
-            result[i] = data[i][site % MAX_CACHE_SIZE];
+            result[i] = data[i][site % HDF5_BLOCK];
         }
         return result;
     }
@@ -81,28 +89,24 @@ public class HDF5AlleleDepth extends AlleleDepth {
     @Override
     public byte[][] valuesForTaxonByte(int taxon) {
         byte[][] result = new byte[6][myNumSites];
-        for (int site = 0; site < myNumSites; site++) {
-            long key = getCacheKey(taxon, site);
-            byte[][] data = myDepthCache.get(key);
-            if (data == null) {
-                data = cacheDepthBlock(taxon, site, key);
-            }
+        for (int start = 0; start < myNumSites; start += HDF5_BLOCK) {
+            byte[][] data = depthBlock(taxon, start);
+            int length = Math.min(HDF5_BLOCK, myNumSites - start);
             for (int i = 0; i < 6; i++) {
-                result[i][site] = data[i][site % MAX_CACHE_SIZE];
+                System.arraycopy(data[i], 0, result[i], start, length);
             }
         }
         return result;
     }
 
-    private byte[][] cacheDepthBlock(int taxon, int site, long key) {
-        int start = (site / MAX_CACHE_SIZE) * MAX_CACHE_SIZE;
-        int realSiteCache = (myNumSites - start < MAX_CACHE_SIZE) ? myNumSites - start : MAX_CACHE_SIZE;
-        byte[][] data = myReader.int8().readMatrixBlockWithOffset(Tassel5HDF5Constants.getGenotypesDepthPath(myTaxa.taxaName(taxon)), 6, realSiteCache, 0, start);
-        if (data == null) {
-            return null;
+    private byte[][] readDepthBlock(long key) {
+        int taxon = (int) (key >>> 33);
+        int start = (int) ((key << 33) >>> 33) * HDF5_BLOCK;
+        int realSiteCache = Math.min(myNumSites - start, HDF5_BLOCK);
+        String path = Tassel5HDF5Constants.getGenotypesDepthPath(myTaxa.taxaName(taxon));
+        synchronized (myReader) {
+            return myReader.int8().readMatrixBlockWithOffset(path, 6, realSiteCache, 0, start);
         }
-        myDepthCache.put(key, data);
-        return data;
     }
 
     /**
@@ -149,12 +153,7 @@ public class HDF5AlleleDepth extends AlleleDepth {
      */
     @Override
     public byte valueByte(int taxon, int site, SITE_SCORE_TYPE scoreType) {
-        long key = getCacheKey(taxon, site);
-        byte[][] data = myDepthCache.get(key);
-        if (data == null) {
-            data = cacheDepthBlock(taxon, site, key);
-        }
-        return data[scoreType.getIndex()][site % MAX_CACHE_SIZE];
+        return depthBlock(taxon, site)[scoreType.getIndex()][site % HDF5_BLOCK];
     }
 
     @Override
@@ -36,7 +36,15 @@ public class ColtDoubleMatrix implements DoubleMatrix {
 	}
         
         public ColtDoubleMatrix(DistanceMatrix values) {
-		myMatrix = DoubleFactory2D.dense.make(values.getDistances());
+		int n = values.numberOfTaxa();
+		myMatrix = DoubleFactory2D.dense.make(n, n);
+		for (int r = 0; r < n; r++) {
+			for (int c = 0; c <= r; c++) {
+				double value = values.getDistance(r, c);
+				myMatrix.setQuick(r, c, value);
+				myMatrix.setQuick(c, r, value);
+			}
+		}
 	}
 	
 	public ColtDoubleMatrix(int size) {
@@ -474,6 +474,9 @@ public class TasselPipeline implements PluginListener {
                 } else if (current.equalsIgnoreCase("-k")) {
                     String kinshipFile = args[index++].trim();
                     loadFile(kinshipFile, FileLoadPlugin.TasselFileType.SqrMatrix);
+                } else if (current.equalsIgnoreCase("-kMapped")) {
+                    String kinshipFile = args[index++].trim();
+                    loadFile(kinshipFile, FileLoadPlugin.TasselFileType.SqrMatrixBinMapped);
                 } else if (current.equalsIgnoreCase("-q")) {
                     String populationFile = args[index++].trim();
                     loadFile(populationFile, FileLoadPlugin.TasselFileType.Phenotype);
@@ -708,6 +711,19 @@ public class TasselPipeline implements PluginListener {
                         throw new IllegalArgumentException("TasselPipeline: parseArgs: Problem parsing max P: " + temp);
                     }
                     plugin.setMaxp(maxP);
+                } else if (current.equalsIgnoreCase("-mlmMaxThreads")) {
+                    WeightedMLMPlugin plugin = (WeightedMLMPlugin) findLastPluginFromCurrentPipe(new Class[]{WeightedMLMPlugin.class});
+                    if (plugin == null) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: No MLM step defined: " + current);
+                    }
+                    String temp = args[index++].trim();
+                    int maxThreads = 0;
+                    try {
+                        maxThreads = Integer.parseInt(temp);
+                    } catch (Exception e) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: Problem parsing max threads: " + temp);
+                    }
+                    plugin.setMaxThreads(maxThreads);
                 } else if (current.equalsIgnoreCase("-glm")) {
                     myDeprecatedWarning.append("parseArgs: NOTE: The -glm flags are deprecated.\n");
                     myDeprecatedWarning.append("parseArgs: PLEASE RUN THIS COMMAND TO GET USAGE: ./run_pipeline.pl -FixedEffectLMPlugin\n");
@@ -989,6 +1005,106 @@ public class TasselPipeline implements PluginListener {
                         throw new IllegalArgumentException("TasselPipeline: parseArgs: LD Het Treatment parameter must be Haplotype, Homozygous, or Genotype.");
                     }
 
+                } else if (current.equalsIgnoreCase("-ldOutputFile")) {
+
+                    LinkageDisequilibriumPlugin plugin = null;
+                    try {
+                        plugin = (LinkageDisequilibriumPlugin) myCurrentPipe.get(myCurrentPipe.size() - 1);
+                    } catch (Exception e) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: No LinkageDisequilibriumPlugin step defined: " + current);
+                    }
+
+                    String str = args[index++].trim();
+                    plugin.setOutputFile(str);
+
+                } else if (current.equalsIgnoreCase("-ldMinR2")) {
+
+                    LinkageDisequilibriumPlugin plugin = null;
+                    try {
+                        plugin = (LinkageDisequilibriumPlugin) myCurrentPipe.get(myCurrentPipe.size() - 1);
+                    } catch (Exception e) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: No LinkageDisequilibriumPlugin step defined: " + current);
+                    }
+
+                    String str = args[index++].trim();
+                    float minR2 = -1.0f;
+                    try {
+                        minR2 = Float.parseFloat(str);
+                    } catch (Exception e) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: Problem with LD Min R2: " + str);
+                    }
+                    if ((minR2 < 0.0f) || (minR2 > 1.0f)) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: LD Min R2 must be between 0.0 and 1.0.");
+                    }
+
+                    plugin.setMinR2(minR2);
+
+                } else if (current.equalsIgnoreCase("-ldMaxPValue")) {
+
+                    LinkageDisequilibriumPlugin plugin = null;
+                    try {
+                        plugin = (LinkageDisequilibriumPlugin) myCurrentPipe.get(myCurrentPipe.size() - 1);
+                    } catch (Exception e) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: No LinkageDisequilibriumPlugin step defined: " + current);
+                    }
+
+                    String str = args[index++].trim();
+                    float maxPValue = -1.0f;
+                    try {
+                        maxPValue = Float.parseFloat(str);
+                    } catch (Exception e) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: Problem with LD Max P-Value: " + str);
+                    }
+                    if ((maxPValue < 0.0f) || (maxPValue > 1.0f)) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: LD Max P-Value must be between 0.0 and 1.0.");
+                    }
+
+                    plugin.setMaxPValue(maxPValue);
+
+                } else if (current.equalsIgnoreCase("-ldDecayBinWidth")) {
+
+                    LinkageDisequilibriumPlugin plugin = null;
+                    try {
+                        plugin = (LinkageDisequilibriumPlugin) myCurrentPipe.get(myCurrentPipe.size() - 1);
+                    } catch (Exception e) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: No LinkageDisequilibriumPlugin step defined: " + current);
+                    }
+
+                    String str = args[index++].trim();
+                    int binWidth = -1;
+                    try {
+                        binWidth = Integer.parseInt(str);
+                    } catch (Exception e) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: Problem with LD Decay Bin Width: " + str);
+                    }
+                    if (binWidth < 1) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: LD Decay Bin Width can't be less than 1.");
+                    }
+
+                    plugin.setDecayBinWidth(binWidth);
+
+                } else if (current.equalsIgnoreCase("-ldNumDecayBins")) {
+
+                    LinkageDisequilibriumPlugin plugin = null;
+                    try {
+                        plugin = (LinkageDisequilibriumPlugin) myCurrentPipe.get(myCurrentPipe.size() - 1);
+                    } catch (Exception e) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: No LinkageDisequilibriumPlugin step defined: " + current);
+                    }
+
+                    String str = args[index++].trim();
+                    int numBins = -1;
+                    try {
+                        numBins = Integer.parseInt(str);
+                    } catch (Exception e) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: Problem with LD Number Decay Bins: " + str);
+                    }
+                    if (numBins < 1) {
+                        throw new IllegalArgumentException("TasselPipeline: parseArgs: LD Number Decay Bins can't be less than 1.");
+                    }
+
+                    plugin.setNumDecayBins(numBins);
+
                 } else if (current.equalsIgnoreCase("-ldd")) {
                     String outputType = args[index++].trim();
                     getLinkageDiseqDisplayPlugin(outputType);
@@ -21,6 +21,7 @@ import net.maizegenetics.taxa.TaxaList;
 import net.maizegenetics.taxa.TaxaListBuilder;
 import net.maizegenetics.taxa.distance.DistanceMatrix;
 import net.maizegenetics.taxa.distance.ReadDistanceMatrix;
+import net.maizegenetics.util.CacheStatisticsReporter;
 import net.maizegenetics.util.ExceptionUtils;
 import net.maizegenetics.util.Utils;
 import org.apache.logging.log4j.LogManager;
@@ -113,6 +114,7 @@ abstract public class AbstractPlugin implements Plugin {
             time = LocalDateTime.now();
             timeStr = time.format(DateTimeFormatter.ofPattern("MMM d, uuuu H:mm:s"));
             myLogger.info("Finished " + getClass().getName() + ": time: " + timeStr);
+            logCacheStatistics(input);
             fireDataSetReturned(new PluginEvent(output, getClass()));
             return output;
 
@@ -137,6 +139,23 @@ abstract public class AbstractPlugin implements Plugin {
 
     }
 
+    /**
+     * Logs cache statistics of input genotypes backed by caches (i.e. HDF5
+     * genotypes) at debug level, which helps when tuning cache sizes for
+     * large runs.
+     */
+    private void logCacheStatistics(DataSet input) {
+        if ((input == null) || !myLogger.isDebugEnabled()) {
+            return;
+        }
+        for (Datum datum : input.getDataOfType(GenotypeTable.class)) {
+            Object genotypes = ((GenotypeTable) datum.getData()).genotypeMatrix();
+            if (genotypes instanceof CacheStatisticsReporter) {
+                myLogger.debug(getClass().getName() + ": cache statistics of: " + datum.getName() + "\n" + ((CacheStatisticsReporter) genotypes).cacheStatistics());
+            }
+        }
+    }
+
     protected void preProcessParameters(DataSet input) {
         // do nothing
     }
@@ -92,6 +92,12 @@ public class TasselPrefs {
     // Retain Rare Alleles
     public static final String ALIGNMENT_RETAIN_RARE_ALLELES = "retainRareAlleles";
     public static final boolean ALIGNMENT_RETAIN_RARE_ALLELES_DEFAULT = false;
+    // HDF5 genotype cache size in megabytes (zero or less shares a third of max memory among all HDF5 genotype files)
+    public static final String ALIGNMENT_HDF5_CACHE_SIZE_MB = "hdf5CacheSizeMB";
+    public static final int ALIGNMENT_HDF5_CACHE_SIZE_MB_DEFAULT = 0;
+    // Read ahead when HDF5 genotypes are scanned sequentially
+    public static final String ALIGNMENT_HDF5_READ_AHEAD = "hdf5ReadAhead";
+    public static final boolean ALIGNMENT_HDF5_READ_AHEAD_DEFAULT = true;
     //
     // GOBII preferences
     //
@@ -426,6 +432,22 @@ public class TasselPrefs {
         putBooleanPref(ALIGNMENT_TOP, ALIGNMENT_RETAIN_RARE_ALLELES, value);
     }
 
+    public static int getAlignmentHDF5CacheSizeMB() {
+        return getIntPref(ALIGNMENT_TOP, ALIGNMENT_HDF5_CACHE_SIZE_MB, ALIGNMENT_HDF5_CACHE_SIZE_MB_DEFAULT);
+    }
+
+    public static void putAlignmentHDF5CacheSizeMB(int value) {
+        putIntPref(ALIGNMENT_TOP, ALIGNMENT_HDF5_CACHE_SIZE_MB, value);
+    }
+
+    public static boolean getAlignmentHDF5ReadAhead() {
+        return getBooleanPref(ALIGNMENT_TOP, ALIGNMENT_HDF5_READ_AHEAD, ALIGNMENT_HDF5_READ_AHEAD_DEFAULT);
+    }
+
+    public static void putAlignmentHDF5ReadAhead(boolean value) {
+        putBooleanPref(ALIGNMENT_TOP, ALIGNMENT_HDF5_READ_AHEAD, value);
+    }
+
     //
     // GOBII preferences
     //
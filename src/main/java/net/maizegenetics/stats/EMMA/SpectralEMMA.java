@@ -0,0 +1,481 @@
+package net.maizegenetics.stats.EMMA;
+
+import net.maizegenetics.matrixalgebra.Matrix.DoubleMatrix;
+import net.maizegenetics.matrixalgebra.Matrix.DoubleMatrixFactory;
+import net.maizegenetics.matrixalgebra.decomposition.EigenvalueDecomposition;
+import net.maizegenetics.stats.linearmodels.LinearModelUtils;
+
+import java.util.Arrays;
+
+/**
+ * Marker tests that re-estimate variance components for each marker, like
+ * {@link EMMAforDoubleMatrix}, but with a single eigendecomposition per trait.
+ * Based on FaST-LMM (Lippert et al. Nature Methods 2011 8:833-835) and GEMMA
+ * (Zhou and Stephens Nature Genetics 2012 44:821-824).
+ * <p>
+ * ZKZ' = USU' is decomposed once. The phenotype and the fixed effects are
+ * rotated by U' once and marker columns are rotated with
+ * {@link #rotateColumns(DoubleMatrix)}, preferably many markers at a time.
+ * Since U'(ZKZ' + delta I)U is diagonal, every evaluation of the restricted
+ * likelihood for a marker is linear in the number of observations. The
+ * rotation requires that no observations are missing for the marker.
+ */
+public class SpectralEMMA {
+
+    private static final double LOWER_LIMIT = 1e-5;
+    private static final double UPPER_LIMIT = 1e5;
+    private static final int NUMBER_OF_REGIONS = 100;
+
+    // Convergence of the golden section search on log10(delta)
+    private static final double CONVERGENCE = 1e-8;
+    private static final double GOLDEN_RATIO = (Math.sqrt(5.0) - 1.0) / 2.0;
+
+    // Relative size of Cholesky pivot below which a design is rank deficient
+    private static final double RANK_TOLERANCE = 1e-10;
+
+    private final int N;
+    private final DoubleMatrix U;
+    private final double[] eigenvalues;
+    private final double[] yRotated;
+    private final double[][] fixedRotated;
+    private final double[] onesRotated;
+    private final double yMean;
+
+    //
+    // Weights 1 / (eigenvalue + delta) and log determinant of
+    // ZKZ' + delta I for each delta in the initial scan. These are
+    // the same for every marker.
+    //
+    private final double[] gridLog10Delta;
+    private final double[][] gridWeights;
+    private final double[] gridLogDetH;
+
+    /**
+     * @param data phenotype (column matrix) without missing values
+     * @param fixed fixed effects design matrix without marker effects
+     * @param A ZKZ', the covariance of the random effect for the observations
+     */
+    public SpectralEMMA(DoubleMatrix data, DoubleMatrix fixed, DoubleMatrix A) {
+        N = data.numberOfRows();
+        if (fixed.numberOfRows() != N || A.numberOfRows() != N || A.numberOfColumns() != N) {
+            throw new IllegalArgumentException("SpectralEMMA: init: data, fixed effects, and ZKZ' must have the same number of rows.");
+        }
+
+        EigenvalueDecomposition eig = A.getEigenvalueDecomposition();
+        eigenvalues = eig.getEigenvalues();
+        U = eig.getEigenvectors();
+
+        yRotated = rotateColumns(data)[0];
+        fixedRotated = rotateColumns(fixed);
+        onesRotated = rotateColumns(DoubleMatrixFactory.DEFAULT.make(N, 1, 1.0))[0];
+
+        double sum = 0;
+        for (int i = 0; i < N; i++) sum += data.get(i, 0);
+        yMean = sum / N;
+
+        gridLog10Delta = new double[NUMBER_OF_REGIONS];
+        gridWeights = new double[NUMBER_OF_REGIONS][N];
+        gridLogDetH = new double[NUMBER_OF_REGIONS];
+        double lower = Math.log10(LOWER_LIMIT);
+        double incr = (Math.log10(UPPER_LIMIT) - lower) / (NUMBER_OF_REGIONS - 1);
+        for (int g = 0; g < NUMBER_OF_REGIONS; g++) {
+            gridLog10Delta[g] = lower + g * incr;
+            gridLogDetH[g] = weights(Math.pow(10.0, gridLog10Delta[g]), gridWeights[g]);
+        }
+    }
+
+    /**
+     * Rotates the columns of a matrix into the eigenvector basis of ZKZ'.
+     * Rotating many marker columns in one call is much faster than one at a
+     * time.
+     *
+     * @param columns matrix with one row per observation
+     *
+     * @return rotated columns, indexed by column then observation
+     */
+    public double[][] rotateColumns(DoubleMatrix columns) {
+        int ncol = columns.numberOfColumns();
+        double[][] result = new double[ncol][N];
+        if (ncol == 0) return result;
+        DoubleMatrix rotated = U.crossproduct(columns);
+        for (int j = 0; j < ncol; j++) {
+            for (int i = 0; i < N; i++) result[j][i] = rotated.get(i, j);
+        }
+        return result;
+    }
+
+    /**
+     * Fits the model with fixed effects plus the marker columns. The marker
+     * columns are tested jointly.
+     *
+     * @param markerColumns marker design columns rotated with
+     * {@link #rotateColumns(DoubleMatrix)}
+     *
+     * @return the fit or null if the design matrix has less than full column
+     * rank
+     */
+    public Result fit(double[][] markerColumns) {
+        int q0 = fixedRotated.length;
+        int dfMarker = markerColumns.length;
+        int q = q0 + dfMarker;
+        int nreml = N - q;
+        if (nreml < 1) return null;
+
+        double[][] x = new double[q][];
+        System.arraycopy(fixedRotated, 0, x, 0, q0);
+        System.arraycopy(markerColumns, 0, x, q0, dfMarker);
+
+        //X'X is not changed by rotation
+        double[] ones = new double[N];
+        Arrays.fill(ones, 1.0);
+        double[] XtX = crossproducts(x, ones);
+        double[] L = cholesky(XtX, q);
+        if (L == null) return null;
+        double logDetXtX = logDeterminant(L, q);
+        double c = nreml * Math.log(nreml / 2.0 / Math.PI) - nreml;
+
+        //scan ln likelihood over the grid, then refine the local maxima
+        double[] lk = new double[NUMBER_OF_REGIONS];
+        int best = -1;
+        for (int g = 0; g < NUMBER_OF_REGIONS; g++) {
+            lk[g] = lnlk(x, gridWeights[g], gridLogDetH[g], logDetXtX, c, nreml);
+            if (!Double.isNaN(lk[g]) && (best < 0 || lk[g] > lk[best])) best = g;
+        }
+        if (best < 0) return null;
+
+        double bestLog10Delta = gridLog10Delta[best];
+        double bestLk = lk[best];
+        double[] w = new double[N];
+        for (int g = 1; g < NUMBER_OF_REGIONS - 1; g++) {
+            if (Double.isNaN(lk[g]) || lk[g - 1] > lk[g] || lk[g + 1] > lk[g]) continue;
+            double[] max = findMaximum(x, gridLog10Delta[g - 1], gridLog10Delta[g + 1], w, logDetXtX, c, nreml);
+            if (max[1] > bestLk) {
+                bestLog10Delta = max[0];
+                bestLk = max[1];
+            }
+        }
+
+        //final estimates at the best delta
+        double delta = Math.pow(10.0, bestLog10Delta);
+        weights(delta, w);
+        double[] cp = crossproducts(x, w);
+        L = cholesky(cp, q);
+        if (L == null) return null;
+        double[] XtHy = new double[q];
+        System.arraycopy(cp, q * q, XtHy, 0, q);
+        double[] beta = solve(L, q, XtHy);
+        double[] invXHX = inverse(L, q);
+        double R = cp[q * q + q];
+        for (int j = 0; j < q; j++) R -= XtHy[j] * beta[j];
+        double genvar = R / nreml;
+
+        Result result = new Result();
+        result.beta = DoubleMatrixFactory.DEFAULT.make(q, 1, beta);
+        result.delta = delta;
+        result.lnLikelihood = bestLk;
+        result.varRandomEffect = genvar;
+        result.varResidual = genvar * delta;
+        result.dfModel = q - 1;
+        result.markerFp = markerFp(beta, invXHX, q, dfMarker, genvar, nreml);
+        result.rsquare = rsquare(x, w, cp, beta, q0, q);
+        return result;
+    }
+
+    /**
+     * @return the log determinant of ZKZ' + delta I
+     */
+    private double weights(double delta, double[] w) {
+        double logDet = 0;
+        for (int i = 0; i < N; i++) {
+            double val = eigenvalues[i] + delta;
+            if (val <= 0) return Double.NaN;
+            w[i] = 1 / val;
+            logDet += Math.log(val);
+        }
+        return logDet;
+    }
+
+    //
+    // Returns X'WX (q x q, row major) followed by X'Wy and y'Wy for
+    // W = diag(w).
+    //
+    private double[] crossproducts(double[][] x, double[] w) {
+        int q = x.length;
+        double[] result = new double[q * q + q + 1];
+        for (int j = 0; j < q; j++) {
+            double[] xj = x[j];
+            for (int k = j; k < q; k++) {
+                double[] xk = x[k];
+                double sum = 0;
+                for (int i = 0; i < N; i++) sum += w[i] * xj[i] * xk[i];
+                result[j * q + k] = sum;
+                result[k * q + j] = sum;
+            }
+            double sum = 0;
+            for (int i = 0; i < N; i++) sum += w[i] * xj[i] * yRotated[i];
+            result[q * q + j] = sum;
+        }
+        double sum = 0;
+        for (int i = 0; i < N; i++) sum += w[i] * yRotated[i] * yRotated[i];
+        result[q * q + q] = sum;
+        return result;
+    }
+
+    //
+    // Restricted ln likelihood. Equal to the EMMA likelihood since the
+    // product of the nonzero eigenvalues of S(ZKZ' + delta I)S is
+    // |ZKZ' + delta I| |X'H^-1X| / |X'X|.
+    //
+    private double lnlk(double[][] x, double[] w, double logDetH, double logDetXtX, double c, int nreml) {
+        if (Double.isNaN(logDetH)) return Double.NaN;
+        int q = x.length;
+        double[] cp = crossproducts(x, w);
+        double[] L = cholesky(cp, q);
+        if (L == null) return Double.NaN;
+        double[] XtHy = new double[q];
+        System.arraycopy(cp, q * q, XtHy, 0, q);
+        double[] beta = solve(L, q, XtHy);
+        double R = cp[q * q + q];
+        for (int j = 0; j < q; j++) R -= XtHy[j] * beta[j];
+        if (R <= 0) return Double.NaN;
+        return (c - nreml * Math.log(R) - logDetH - logDeterminant(L, q) + logDetXtX) / 2;
+    }
+
+    //
+    // Golden section search for the maximum ln likelihood with log10(delta)
+    // between lower and upper. Returns log10(delta) and the ln likelihood.
+    //
+    private double[] findMaximum(double[][] x, double lower, double upper, double[] w, double logDetXtX, double c, int nreml) {
+        double a = lower;
+        double b = upper;
+        double t1 = b - GOLDEN_RATIO * (b - a);
+        double t2 = a + GOLDEN_RATIO * (b - a);
+        double f1 = lnlkAt(x, t1, w, logDetXtX, c, nreml);
+        double f2 = lnlkAt(x, t2, w, logDetXtX, c, nreml);
+        while (b - a > CONVERGENCE) {
+            if (f1 >= f2 || Double.isNaN(f2)) {
+                b = t2;
+                t2 = t1;
+                f2 = f1;
+                t1 = b - GOLDEN_RATIO * (b - a);
+                f1 = lnlkAt(x, t1, w, logDetXtX, c, nreml);
+            } else {
+                a = t1;
+                t1 = t2;
+                f1 = f2;
+                t2 = a + GOLDEN_RATIO * (b - a);
+                f2 = lnlkAt(x, t2, w, logDetXtX, c, nreml);
+            }
+        }
+        double t = (a + b) / 2;
+        double lk = lnlkAt(x, t, w, logDetXtX, c, nreml);
+        if (Double.isNaN(lk)) return new double[]{t, Double.NEGATIVE_INFINITY};
+        return new double[]{t, lk};
+    }
+
+    private double lnlkAt(double[][] x, double log10Delta, double[] w, double logDetXtX, double c, int nreml) {
+        double logDetH = weights(Math.pow(10.0, log10Delta), w);
+        return lnlk(x, w, logDetH, logDetXtX, c, nreml);
+    }
+
+    //
+    // Same tests as EMMAforDoubleMatrix.getMarkerFp()
+    //
+    private static double[] markerFp(double[] beta, double[] invXHX, int q, int dfMarker, double genvar, int dfError) {
+        if (dfMarker < 1) return new double[]{Double.NaN, Double.NaN, Double.NaN};
+        int firstmarker = q - dfMarker;
+        double[] invMiM = new double[dfMarker * dfMarker];
+        double[] MB = new double[dfMarker];
+        for (int j = 0; j < dfMarker; j++) {
+            MB[j] = beta[firstmarker + j];
+            for (int k = 0; k < dfMarker; k++) {
+                invMiM[j * dfMarker + k] = invXHX[(firstmarker + j) * q + firstmarker + k];
+            }
+        }
+        double F;
+        double[] L = cholesky(invMiM, dfMarker);
+        if (L == null) {
+            F = Double.NaN;
+        } else {
+            double[] solved = solve(L, dfMarker, MB);
+            F = 0;
+            for (int j = 0; j < dfMarker; j++) F += MB[j] * solved[j];
+            F /= genvar;
+            F /= dfMarker;
+        }
+        double p = ftest(F, dfMarker, dfError);
+
+        if (dfMarker != 2) return new double[]{F, p};
+
+        //additive and dominance effects and tests
+        //assumes the betas are for the two homozygous classes and that the het effect = 0;
+        double b1 = beta[q - 2];
+        double b2 = beta[q - 1];
+        double v11 = invXHX[(q - 2) * q + q - 2];
+        double v12 = invXHX[(q - 2) * q + q - 1];
+        double v22 = invXHX[(q - 1) * q + q - 1];
+
+        double addEffect = 0.5 * b1 - 0.5 * b2;
+        double Fadd = addEffect * addEffect / (0.25 * (v11 - 2 * v12 + v22)) / genvar;
+        double padd = ftest(Fadd, 1, dfError);
+
+        double domEffect = -0.5 * b1 - 0.5 * b2;
+        double Fdom = domEffect * domEffect / (0.25 * (v11 + 2 * v12 + v22)) / genvar;
+        double pdom = ftest(Fdom, 1, dfError);
+
+        return new double[]{F, p, addEffect, Fadd, padd, domEffect, Fdom, pdom};
+    }
+
+    private static double ftest(double F, int numeratordf, int denominatordf) {
+        if (Double.isNaN(F)) return Double.NaN;
+        try {
+            return LinearModelUtils.Ftest(F, numeratordf, denominatordf);
+        } catch (Exception e) {
+            return Double.NaN;
+        }
+    }
+
+    //
+    // R^2 from Buse(1973) Am. Stat. 27:106-108, as calculated by
+    // CompressedMLMusingDoubleMatrix. Since H^-1 = U diag(w) U', the
+    // quadratic forms are weighted sums of squares of rotated vectors.
+    //
+    private double rsquare(double[][] x, double[] w, double[] cp, double[] beta, int q0, int q) {
+        double[] XtHXreduced = new double[q0 * q0];
+        double[] XtHyreduced = new double[q0];
+        for (int j = 0; j < q0; j++) {
+            for (int k = 0; k < q0; k++) XtHXreduced[j * q0 + k] = cp[j * q + k];
+            XtHyreduced[j] = cp[q * q + j];
+        }
+        double[] L = cholesky(XtHXreduced, q0);
+        if (L == null) return Double.NaN;
+        double[] betaReduced = solve(L, q0, XtHyreduced);
+
+        double numerator = 0;
+        double denominator = 0;
+        for (int i = 0; i < N; i++) {
+            double yhat = 0;
+            for (int j = 0; j < q0; j++) yhat += x[j][i] * (beta[j] - betaReduced[j]);
+            for (int j = q0; j < q; j++) yhat += x[j][i] * beta[j];
+            double ydev = yRotated[i] - yMean * onesRotated[i];
+            numerator += w[i] * yhat * yhat;
+            denominator += w[i] * ydev * ydev;
+        }
+        return numerator / denominator;
+    }
+
+    //
+    // Cholesky factor (lower triangle, row major) of a symmetric n x n
+    // matrix. Returns null if the matrix is not positive definite.
+    //
+    private static double[] cholesky(double[] a, int n) {
+        double[] L = new double[n * n];
+        for (int j = 0; j < n; j++) {
+            double d = a[j * n + j];
+            for (int k = 0; k < j; k++) d -= L[j * n + k] * L[j * n + k];
+            if (!(d > RANK_TOLERANCE * Math.abs(a[j * n + j]))) return null;
+            double ljj = Math.sqrt(d);
+            L[j * n + j] = ljj;
+            for (int i = j + 1; i < n; i++) {
+                double s = a[i * n + j];
+                for (int k = 0; k < j; k++) s -= L[i * n + k] * L[j * n + k];
+                L[i * n + j] = s / ljj;
+            }
+        }
+        return L;
+    }
+
+    private static double logDeterminant(double[] L, int n) {
+        double result = 0;
+        for (int j = 0; j < n; j++) result += Math.log(L[j * n + j]);
+        return 2 * result;
+    }
+
+    //
+    // Solves LL'x = b
+    //
+    private static double[] solve(double[] L, int n, double[] b) {
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            double s = b[i];
+            for (int k = 0; k < i; k++) s -= L[i * n + k] * x[k];
+            x[i] = s / L[i * n + i];
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            double s = x[i];
+            for (int k = i + 1; k < n; k++) s -= L[k * n + i] * x[k];
+            x[i] = s / L[i * n + i];
+        }
+        return x;
+    }
+
+    private static double[] inverse(double[] L, int n) {
+        double[] result = new double[n * n];
+        double[] e = new double[n];
+        for (int j = 0; j < n; j++) {
+            Arrays.fill(e, 0);
+            e[j] = 1;
+            double[] col = solve(L, n, e);
+            for (int i = 0; i < n; i++) result[i * n + j] = col[i];
+        }
+        return result;
+    }
+
+    /**
+     * Results for one marker. Getters mirror {@link EMMAforDoubleMatrix}.
+     */
+    public static class Result {
+
+        private DoubleMatrix beta;
+        private double[] markerFp;
+        private int dfModel;
+        private double delta;
+        private double varResidual;
+        private double varRandomEffect;
+        private double lnLikelihood;
+        private double rsquare;
+
+        private Result() {
+        }
+
+        public DoubleMatrix getBeta() {
+            return beta;
+        }
+
+        /**
+         * @return For markers with 2 df, F.fullModel, p.fullModel, additive
+         * effect, Fadd, padd, dominance effect, Fdom, pdom For markers with
+         * other than 2 df, F and p for the full model only
+         */
+        public double[] getMarkerFp() {
+            return markerFp;
+        }
+
+        public int getDfModel() {
+            return dfModel;
+        }
+
+        public double getDelta() {
+            return delta;
+        }
+
+        public double getVarRes() {
+            return varResidual;
+        }
+
+        public double getVarRan() {
+            return varRandomEffect;
+        }
+
+        public double getLnLikelihood() {
+            return lnLikelihood;
+        }
+
+        /**
+         * @return marker R^2 from Buse(1973) Am. Stat. 27:106-108
+         */
+        public double getRsquare() {
+            return rsquare;
+        }
+    }
+}
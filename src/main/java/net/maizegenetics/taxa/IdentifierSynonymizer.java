@@ -34,6 +34,7 @@ public class IdentifierSynonymizer extends AbstractTableReport implements Serial
     private String delimiter = "";
     private double globalMin = Double.POSITIVE_INFINITY;
     private double globalMax = Double.NEGATIVE_INFINITY;
+    private transient IdentifierSynonymizerIndex referenceIndex = null;
 
     public IdentifierSynonymizer(TaxaList preferredTaxa, TaxaList[] alternateTaxaSets) {
         init2(preferredTaxa, alternateTaxaSets);
@@ -63,8 +64,21 @@ public class IdentifierSynonymizer extends AbstractTableReport implements Serial
         
         //Go Through each alternateTaxaSet and compute the similarity to the referenceTaxa entries
         for(TaxaList altTaxaList:alternateTaxaSets) { 
-            for(Taxon altTaxon:altTaxaList){
-                ArrayList<String> theBest = findBestMatch(altTaxon.getName(),referenceTaxa);
+            //Match the names in parallel, then record them in order
+            BestMatch[] matches = altTaxaList.parallelStream()
+                    .map(altTaxon -> findIndexedBestMatch(altTaxon.getName()))
+                    .toArray(BestMatch[]::new);
+            for(int t = 0; t < matches.length; t++) {
+                Taxon altTaxon = altTaxaList.get(t);
+                ArrayList<String> theBest = matches[t].matches;
+                for(double minScore:matches[t].levelMinScores) {
+                    if(minScore<globalMin) {
+                        globalMin = minScore;
+                    }
+                    if(minScore>globalMax) {
+                        globalMax = minScore;
+                    }
+                }
                 //If the score is better than the current score, put it on the change Syn
                 if (theBest.size() == 1) {
                     String bs = theBest.get(0);
@@ -239,6 +253,73 @@ public class IdentifierSynonymizer extends AbstractTableReport implements Serial
         System.out.println("GlobalMax"+globalMax);
         return bestMatches;
     }
+    /**
+     * Same matches as findBestMatch(taxaName, referenceTaxa) for the reference taxa of this
+     * synonymizer, but scored through the reference index.  globalMin and globalMax are left
+     * alone so that names can be matched in parallel.  The minimum score after each level of
+     * restriction is returned for the caller to apply instead.
+     */
+    private BestMatch findIndexedBestMatch(String taxaName) {
+        IdentifierSynonymizerIndex index = referenceIndex();
+        ArrayList<String> bestMatches = new ArrayList<>();
+        Set<String> included = new HashSet<>();
+        double[] levelMinScores = new double[4];
+        double minScore = Double.POSITIVE_INFINITY;
+        double sm;
+        int levelOfRestriction = 0;
+        boolean ignoreCase = true, ignoreWhite = false, ignorePunc = false;
+        while ((bestMatches.size() != 1) && (levelOfRestriction < 4)) {
+            switch (levelOfRestriction) {
+                case 1:
+                    ignoreCase = true;
+                    break;
+                case 2:
+                    ignoreWhite = true;
+                    break;
+                case 3:
+                    ignorePunc = true;
+                    break;
+            }
+            //Scores above minScore can't change the matches, so the index doesn't need to compute them
+            double[] scores = index.bestScores(taxaName, ignoreCase, ignoreWhite, ignorePunc, minScore);
+            for (int i = 0; i < scores.length; i++) {
+                sm = scores[i];
+                if (sm < minScore) {
+                    bestMatches.clear();
+                    included.clear();
+                    bestMatches.add(index.name(i));
+                    included.add(index.name(i));
+                    minScore = sm;
+                } else if (sm == minScore) {
+                    if(included.add(index.name(i))) {
+                        bestMatches.add(index.name(i));
+                    }
+                }
+            }
+            levelMinScores[levelOfRestriction] = minScore;
+            levelOfRestriction++;
+        }
+        return new BestMatch(bestMatches, Arrays.copyOf(levelMinScores, levelOfRestriction));
+    }
+
+    private static class BestMatch {
+
+        private final ArrayList<String> matches;
+        private final double[] levelMinScores;
+
+        private BestMatch(ArrayList<String> matches, double[] levelMinScores) {
+            this.matches = matches;
+            this.levelMinScores = levelMinScores;
+        }
+    }
+
+    private synchronized IdentifierSynonymizerIndex referenceIndex() {
+        if (referenceIndex == null) {
+            referenceIndex = new IdentifierSynonymizerIndex(referenceIDGroup, technique, delimiter);
+        }
+        return referenceIndex;
+    }
+
     public ArrayList<String> findOrderedMatches(String unmatchedString, int levelOfRestriction) {
         SortedMap<Double,String> theSortMap = new TreeMap<>();
         double sm;
@@ -252,14 +333,10 @@ public class IdentifierSynonymizer extends AbstractTableReport implements Serial
         if (levelOfRestriction > 2) {
             ignorePunc = true;
         }
+        double[] scores = referenceIndex().allScores(unmatchedString, ignoreCase, ignoreWhite, ignorePunc);
         for (int i = 0; i < referenceIDGroup.numberOfTaxa(); i++) {
             //sm = scoreMatch(referenceIDGroup.taxaName(i), unmatchedString, ignoreCase, ignoreWhite, ignorePunc);
-            if(technique==7) {
-                sm = getScore(referenceIDGroup.taxaName(i), unmatchedString, ignoreCase, ignoreWhite, ignorePunc,technique,delimiter);
-            }
-            else {
-                sm = getScore(referenceIDGroup.taxaName(i), unmatchedString, ignoreCase, ignoreWhite, ignorePunc,technique);
-            }
+            sm = scores[i];
             sm = 1.0-((sm - globalMin)/(globalMax-globalMin));
             theSortMap.put(1 - sm - ((double) i / 100000.0), referenceIDGroup.taxaName(i));
             //theSortMap.put(sm - ((double) i / 100000.0), referenceIDGroup.taxaName(i));
@@ -345,8 +422,11 @@ public class IdentifierSynonymizer extends AbstractTableReport implements Serial
     }
     
     public static double hammingDistSoundex(String s1, String s2, boolean ignoreCase, boolean ignoreWhite, boolean ignorePunc) {
-        s1 = soundex2(s1, true, true, true);
-        s2 = soundex2(s2, true, true, true);
+        return hammingDist(soundex2(s1, true, true, true), soundex2(s2, true, true, true));
+    }
+
+    /** @return number of positions where the encoded strings differ */
+    static double hammingDist(String s1, String s2) {
         int sum = 0;
         for(int i = 0; i<s1.length();i++) {
             sum += hammingDist(s1.charAt(i), s2.charAt(i));
@@ -388,8 +468,11 @@ public class IdentifierSynonymizer extends AbstractTableReport implements Serial
     public static double scoreMatch(String s1, String s2, boolean ignoreCase, boolean ignoreWhite, boolean ignorePunc) {
         //idea from http://www.catalysoft.com/articles/StrikeAMatch.html?article=How_to_Strike_a_Match_15
         //this is slower but it will not be tricked if there are long runs of characters in s1
-        s1 = cleanName(s1, ignoreCase, ignoreWhite, ignorePunc);
-        s2 = cleanName(s2, ignoreCase, ignoreWhite, ignorePunc);
+        return diceCoefficient(cleanName(s1, ignoreCase, ignoreWhite, ignorePunc), cleanName(s2, ignoreCase, ignoreWhite, ignorePunc));
+    }
+
+    /** @return lexical similarity value in the range [0,1] of cleaned strings */
+    static double diceCoefficient(String s1, String s2) {
         ArrayList<String> pairs1 = letterPairs(s1);
         ArrayList<String> pairs2 = letterPairs(s2);
 
@@ -411,9 +494,11 @@ public class IdentifierSynonymizer extends AbstractTableReport implements Serial
     
     public static double editDistanceScoreMatch(String s1, String s2, boolean ignoreCase, boolean ignoreWhite, boolean ignorePunc) {
         
-        s1 = cleanName(s1, ignoreCase, ignoreWhite, ignorePunc);
-        s2 = cleanName(s2, ignoreCase, ignoreWhite, ignorePunc);
-        
+        return editDistance(cleanName(s1, ignoreCase, ignoreWhite, ignorePunc), cleanName(s2, ignoreCase, ignoreWhite, ignorePunc));
+    }
+
+    /** @return edit distance of cleaned strings */
+    static double editDistance(String s1, String s2) {
         if(s1.equals("")) {
             return s2.length();
         }
@@ -648,8 +733,11 @@ public class IdentifierSynonymizer extends AbstractTableReport implements Serial
      * Currently uses KeyboardDistance as the distance measurement
      */
     private static double dtwDist(String str1, String str2, String distMeas,boolean ignoreCase, boolean ignoreWhite, boolean ignorePunc) {
-        str1 = cleanName(str1,ignoreCase,ignoreWhite,ignorePunc);
-        str2 = cleanName(str2,ignoreCase,ignoreWhite,ignorePunc);
+        return dtwDist(cleanName(str1,ignoreCase,ignoreWhite,ignorePunc), cleanName(str2,ignoreCase,ignoreWhite,ignorePunc), distMeas);
+    }
+
+    /** Dynamic Time Warping distance of cleaned strings */
+    static double dtwDist(String str1, String str2, String distMeas) {
         double[][] costMat = new double[str1.length()+1][str2.length()+1];
         //Initialize arrays
         for(int i = 0; i<costMat.length;i++) {
@@ -770,7 +858,7 @@ public class IdentifierSynonymizer extends AbstractTableReport implements Serial
         return allPairs;
     }
 
-    private static String cleanName(String s, boolean ignoreCase, boolean ignoreWhite, boolean ignorePunc) {
+    static String cleanName(String s, boolean ignoreCase, boolean ignoreWhite, boolean ignorePunc) {
         if (ignoreCase) {
             s = s.toUpperCase();
         }
@@ -0,0 +1,400 @@
+/*
+ *  IdentifierSynonymizerIndex
+ */
+package net.maizegenetics.taxa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Index over the reference names of an {@link IdentifierSynonymizer}, so that
+ * scoring a name doesn't clean, tokenize and encode every reference name
+ * again. For each combination of cleaning options, the reference names are
+ * reduced once to the form compared by the technique (cleaned name, Soundex
+ * code or Metaphone code). Reference names sharing a form are scored once.
+ * <p>
+ * Dice techniques (0 and 5) are scored from an inverted index of letter
+ * pairs, so only forms sharing a letter pair with the name are visited. Edit
+ * distance techniques (1 and 6) can visit forms in order of a lower bound on
+ * the distance, and stop once the bound passes the best distance found. The
+ * bound comes from the characters the two forms don't have in common. Other
+ * techniques score every distinct form in parallel.
+ * <p>
+ * Scores are identical to {@link IdentifierSynonymizer#getScore}.
+ */
+public class IdentifierSynonymizerIndex {
+
+    private static final int[] NO_INDICES = new int[0];
+
+    private final String[] myNames;
+    private final int myTechnique;
+    private final String myDelimiter;
+    private final Map<String, int[]> myNameIndices;
+    private final Map<Integer, KeyTable> myKeyTables = new ConcurrentHashMap<>();
+
+    /**
+     * Creates index over reference taxa.
+     *
+     * @param referenceTaxa reference taxa
+     * @param technique scoring technique as used by
+     * {@link IdentifierSynonymizer#getScore}
+     * @param delimiter delimiter for technique 7
+     */
+    public IdentifierSynonymizerIndex(TaxaList referenceTaxa, int technique, String delimiter) {
+        myTechnique = technique;
+        myDelimiter = delimiter;
+        myNames = new String[referenceTaxa.numberOfTaxa()];
+        Map<String, List<Integer>> indices = new HashMap<>();
+        for (int i = 0; i < myNames.length; i++) {
+            myNames[i] = referenceTaxa.taxaName(i);
+            indices.computeIfAbsent(myNames[i], k -> new ArrayList<>()).add(i);
+        }
+        myNameIndices = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : indices.entrySet()) {
+            myNameIndices.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    public int numberOfNames() {
+        return myNames.length;
+    }
+
+    public String name(int index) {
+        return myNames[index];
+    }
+
+    public int technique() {
+        return myTechnique;
+    }
+
+    /**
+     * Scores name against every reference name.
+     *
+     * @param name name to match
+     * @param ignoreCase ignore case
+     * @param ignoreWhite ignore white space
+     * @param ignorePunc ignore punctuation
+     *
+     * @return score for each reference name, in reference order
+     */
+    public double[] allScores(String name, boolean ignoreCase, boolean ignoreWhite, boolean ignorePunc) {
+        return scores(name, ignoreCase, ignoreWhite, ignorePunc, Double.POSITIVE_INFINITY, false);
+    }
+
+    /**
+     * Scores name against the reference names that can have the lowest
+     * score. A reference score is exact if it is at most the lowest score and
+     * at most limit. Other references may be Double.NaN instead.
+     *
+     * @param name name to match
+     * @param ignoreCase ignore case
+     * @param ignoreWhite ignore white space
+     * @param ignorePunc ignore punctuation
+     * @param limit scores above this are not needed
+     *
+     * @return score for each reference name, in reference order
+     */
+    public double[] bestScores(String name, boolean ignoreCase, boolean ignoreWhite, boolean ignorePunc, double limit) {
+        return scores(name, ignoreCase, ignoreWhite, ignorePunc, limit, true);
+    }
+
+    private double[] scores(String name, boolean ignoreCase, boolean ignoreWhite, boolean ignorePunc, double limit, boolean prune) {
+
+        KeyTable table = keyTable(ignoreCase, ignoreWhite, ignorePunc);
+        String queryKey = key(name, ignoreCase, ignoreWhite, ignorePunc);
+        int[] sameName = myNameIndices.getOrDefault(name, NO_INDICES);
+
+        // the form of the name can't be scored without error for some techniques
+        // (i.e. an empty form with dynamic time warping), so skip it when every
+        // reference with that form is the name itself
+        Integer queryKeyIndex = table.myKeyIndices.get(queryKey);
+        int skipKey = -1;
+        if (queryKeyIndex != null && sameName.length == table.myNumNames[queryKeyIndex]) {
+            skipKey = queryKeyIndex;
+        }
+
+        double[] keyScores;
+        if (isDice()) {
+            keyScores = diceScores(table, queryKey);
+        } else if (prune && isEditDistance()) {
+            keyScores = editDistanceScores(table, queryKey, skipKey, limit, sameName.length == 0 ? Double.POSITIVE_INFINITY : 0.0);
+        } else {
+            keyScores = new double[table.numberOfKeys()];
+            final int skip = skipKey;
+            IntStream.range(0, keyScores.length).parallel().forEach(k -> {
+                keyScores[k] = k == skip ? Double.NaN : score(table.myKeys[k], queryKey, ignoreCase, ignoreWhite, ignorePunc);
+            });
+        }
+
+        double[] result = new double[myNames.length];
+        for (int i = 0; i < myNames.length; i++) {
+            result[i] = keyScores[table.myKeyOfName[i]];
+        }
+        // identical names score 0.0 whatever the technique
+        for (int i : sameName) {
+            result[i] = 0.0;
+        }
+        return result;
+
+    }
+
+    private static double[] diceScores(KeyTable table, String queryKey) {
+        int numKeys = table.numberOfKeys();
+        int[] intersection = new int[numKeys];
+        for (Map.Entry<Integer, Integer> entry : letterPairCounts(queryKey).entrySet()) {
+            int[] postings = table.myPostings.get(entry.getKey());
+            if (postings == null) {
+                continue;
+            }
+            int count = entry.getValue();
+            for (int p = 0; p < postings.length; p += 2) {
+                intersection[postings[p]] += Math.min(count, postings[p + 1]);
+            }
+        }
+        int queryPairs = Math.max(0, queryKey.length() - 1);
+        double[] result = new double[numKeys];
+        for (int k = 0; k < numKeys; k++) {
+            result[k] = 1.0 - (2.0 * intersection[k]) / (table.myNumPairs[k] + queryPairs);
+        }
+        return result;
+    }
+
+    /**
+     * A character of one form that doesn't occur in the other form costs at
+     * least one edit, so the number of such characters in either form is a
+     * lower bound on the distance. Forms are scored in order of that bound
+     * until it passes the lowest distance found (or the limit).
+     */
+    private static double[] editDistanceScores(KeyTable table, String queryKey, int skipKey, double limit, double lowest) {
+
+        int numKeys = table.numberOfKeys();
+        int[] queryCounts = new int[128];
+        long queryLow = 0L;
+        long queryHigh = 0L;
+        for (int i = 0; i < queryKey.length(); i++) {
+            char c = queryKey.charAt(i);
+            if (c < 64) {
+                queryCounts[c]++;
+                queryLow |= 1L << c;
+            } else if (c < 128) {
+                queryCounts[c]++;
+                queryHigh |= 1L << (c - 64);
+            }
+        }
+
+        int[] bound = new int[numKeys];
+        int maxBound = 0;
+        for (int k = 0; k < numKeys; k++) {
+            long low = table.myLowMasks[k];
+            long high = table.myHighMasks[k];
+            int missing = 0;
+            for (long bits = queryLow & ~low; bits != 0; bits &= bits - 1) {
+                missing += queryCounts[Long.numberOfTrailingZeros(bits)];
+            }
+            for (long bits = queryHigh & ~high; bits != 0; bits &= bits - 1) {
+                missing += queryCounts[64 + Long.numberOfTrailingZeros(bits)];
+            }
+            int extra = Long.bitCount(low & ~queryLow) + Long.bitCount(high & ~queryHigh);
+            bound[k] = Math.max(missing, extra);
+            maxBound = Math.max(maxBound, bound[k]);
+        }
+
+        // order keys by bound
+        int[] start = new int[maxBound + 2];
+        for (int k = 0; k < numKeys; k++) {
+            start[bound[k] + 1]++;
+        }
+        for (int b = 1; b < start.length; b++) {
+            start[b] += start[b - 1];
+        }
+        int[] next = Arrays.copyOf(start, start.length);
+        int[] order = new int[numKeys];
+        for (int k = 0; k < numKeys; k++) {
+            order[next[bound[k]]++] = k;
+        }
+
+        double[] result = new double[numKeys];
+        Arrays.fill(result, Double.NaN);
+        for (int b = 0; b <= maxBound && b <= Math.min(limit, lowest); b++) {
+            IntStream.range(start[b], start[b + 1]).parallel().forEach(p -> {
+                int k = order[p];
+                if (k != skipKey) {
+                    result[k] = IdentifierSynonymizer.editDistance(table.myKeys[k], queryKey);
+                }
+            });
+            for (int p = start[b]; p < start[b + 1]; p++) {
+                if (result[order[p]] < lowest) {
+                    lowest = result[order[p]];
+                }
+            }
+        }
+        return result;
+
+    }
+
+    /**
+     * Score between the forms of a reference name and the name to match.
+     * Same as IdentifierSynonymizer.getScore() for names that aren't equal.
+     */
+    private double score(String referenceKey, String queryKey, boolean ignoreCase, boolean ignoreWhite, boolean ignorePunc) {
+        switch (myTechnique) {
+            case 0:
+            case 5:
+                return 1.0 - IdentifierSynonymizer.diceCoefficient(referenceKey, queryKey);
+            case 1:
+            case 6:
+                return IdentifierSynonymizer.editDistance(referenceKey, queryKey);
+            case 2:
+                return IdentifierSynonymizer.dtwDist(referenceKey, queryKey, "hamming");
+            case 3:
+                return IdentifierSynonymizer.dtwDist(referenceKey, queryKey, "key");
+            case 4:
+                return IdentifierSynonymizer.hammingDist(referenceKey, queryKey);
+            case 7:
+                return IdentifierSynonymizer.getScore(referenceKey, queryKey, ignoreCase, ignoreWhite, ignorePunc, myTechnique, myDelimiter);
+            default:
+                return 0.0;
+        }
+    }
+
+    /**
+     * Form of name compared by the technique.
+     */
+    private String key(String name, boolean ignoreCase, boolean ignoreWhite, boolean ignorePunc) {
+        switch (myTechnique) {
+            case 0:
+            case 1:
+                return IdentifierSynonymizer.cleanName(name, ignoreCase, ignoreWhite, ignorePunc);
+            case 2:
+            case 3:
+                return IdentifierSynonymizer.cleanName(name, ignoreCase, true, ignorePunc);
+            case 4:
+                return IdentifierSynonymizer.soundex2(name, true, true, true);
+            case 5:
+            case 6:
+                return IdentifierSynonymizer.cleanName(IdentifierSynonymizer.metaphone2(name, true, true, true), ignoreCase, ignoreWhite, ignorePunc);
+            default:
+                return name;
+        }
+    }
+
+    private boolean isDice() {
+        return myTechnique == 0 || myTechnique == 5;
+    }
+
+    private boolean isEditDistance() {
+        return myTechnique == 1 || myTechnique == 6;
+    }
+
+    private KeyTable keyTable(boolean ignoreCase, boolean ignoreWhite, boolean ignorePunc) {
+        int options = 0;
+        // Soundex codes and delimited names don't depend on the cleaning options
+        if (myTechnique >= 0 && myTechnique <= 6 && myTechnique != 4) {
+            options = (ignoreCase ? 1 : 0) | (ignoreWhite ? 2 : 0) | (ignorePunc ? 4 : 0);
+        }
+        return myKeyTables.computeIfAbsent(options, o -> {
+            String[] keys = IntStream.range(0, myNames.length).parallel()
+                    .mapToObj(i -> key(myNames[i], ignoreCase, ignoreWhite, ignorePunc))
+                    .toArray(String[]::new);
+            return new KeyTable(keys, isDice(), isEditDistance());
+        });
+    }
+
+    private static Map<Integer, Integer> letterPairCounts(String str) {
+        Map<Integer, Integer> result = new HashMap<>();
+        for (int i = 0; i < str.length() - 1; i++) {
+            result.merge((str.charAt(i) << 16) | str.charAt(i + 1), 1, Integer::sum);
+        }
+        return result;
+    }
+
+    /**
+     * Distinct forms of the reference names for one combination of cleaning
+     * options.
+     */
+    private static final class KeyTable {
+
+        private final String[] myKeys;
+        private final int[] myKeyOfName;
+        private final int[] myNumNames;
+        private final Map<String, Integer> myKeyIndices;
+
+        // letter pair to (key index, count) pairs, for Dice techniques
+        private final Map<Integer, int[]> myPostings;
+        private final int[] myNumPairs;
+
+        // characters below 128 in each key, for edit distance techniques
+        private final long[] myLowMasks;
+        private final long[] myHighMasks;
+
+        private KeyTable(String[] nameKeys, boolean dice, boolean editDistance) {
+
+            myKeyIndices = new LinkedHashMap<>();
+            myKeyOfName = new int[nameKeys.length];
+            List<Integer> numNames = new ArrayList<>();
+            for (int i = 0; i < nameKeys.length; i++) {
+                Integer index = myKeyIndices.get(nameKeys[i]);
+                if (index == null) {
+                    index = myKeyIndices.size();
+                    myKeyIndices.put(nameKeys[i], index);
+                    numNames.add(0);
+                }
+                myKeyOfName[i] = index;
+                numNames.set(index, numNames.get(index) + 1);
+            }
+            myKeys = myKeyIndices.keySet().toArray(new String[0]);
+            myNumNames = numNames.stream().mapToInt(Integer::intValue).toArray();
+
+            if (dice) {
+                myNumPairs = new int[myKeys.length];
+                Map<Integer, List<Integer>> postings = new HashMap<>();
+                for (int k = 0; k < myKeys.length; k++) {
+                    myNumPairs[k] = Math.max(0, myKeys[k].length() - 1);
+                    for (Map.Entry<Integer, Integer> entry : letterPairCounts(myKeys[k]).entrySet()) {
+                        List<Integer> current = postings.computeIfAbsent(entry.getKey(), p -> new ArrayList<>());
+                        current.add(k);
+                        current.add(entry.getValue());
+                    }
+                }
+                myPostings = new HashMap<>();
+                for (Map.Entry<Integer, List<Integer>> entry : postings.entrySet()) {
+                    myPostings.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+                }
+            } else {
+                myNumPairs = null;
+                myPostings = null;
+            }
+
+            if (editDistance) {
+                myLowMasks = new long[myKeys.length];
+                myHighMasks = new long[myKeys.length];
+                for (int k = 0; k < myKeys.length; k++) {
+                    for (int i = 0; i < myKeys[k].length(); i++) {
+                        char c = myKeys[k].charAt(i);
+                        if (c < 64) {
+                            myLowMasks[k] |= 1L << c;
+                        } else if (c < 128) {
+                            myHighMasks[k] |= 1L << (c - 64);
+                        }
+                    }
+                }
+            } else {
+                myLowMasks = null;
+                myHighMasks = null;
+            }
+
+        }
+
+        private int numberOfKeys() {
+            return myKeys.length;
+        }
+
+    }
+
+}
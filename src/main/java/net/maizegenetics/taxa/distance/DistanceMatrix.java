@@ -53,6 +53,17 @@ public class DistanceMatrix implements TableReport {
         myAnnotations = annotations;
     }
 
+    /**
+     * For subclasses that store distances elsewhere. Subclasses must override
+     * getDistance().
+     */
+    DistanceMatrix(TaxaList taxa, GeneralAnnotation annotations) {
+        myDistances = null;
+        myTaxaList = taxa;
+        myNumTaxa = myTaxaList.numberOfTaxa();
+        myAnnotations = annotations;
+    }
+
     /**
      * Constructor taking distances array and taxa list. Use
      * DistanceMatrixBuilder instead of this.
@@ -100,7 +111,7 @@ public class DistanceMatrix implements TableReport {
         }
         for (int x = 0; x < myNumTaxa; x++) {
             for (int y = 0; y <= x; y++) {
-                myDistances[x][y] = dm.myDistances[x][y];
+                myDistances[x][y] = dm.getDistance(x, y);
             }
         }
         myTaxaList = dm.myTaxaList;
@@ -121,7 +132,7 @@ public class DistanceMatrix implements TableReport {
 
         for (int i = 0; i < myNumTaxa; i++) {
             int index1 = dm.whichIdNumber(subset.taxaName(i));
-            myDistances[i][i] = dm.myDistances[index1][index1];
+            myDistances[i][i] = dm.getDistance(index1, index1);
             for (int j = 0; j < i; j++) {
                 int index2 = dm.whichIdNumber(subset.taxaName(j));
                 myDistances[i][j] = dm.getDistance(index1, index2);
@@ -183,12 +194,12 @@ public class DistanceMatrix implements TableReport {
         double sum = 0;
         for (int i = 0; i < myNumTaxa - 1; i++) {
             for (int j = 0; j < i; j++) {
-                double diff = myDistances[i][j] - mat.getDistance(i, j);
+                double diff = getDistance(i, j) - mat.getDistance(i, j);
                 double weight;
                 if (weighted) {
                     // Fitch-Margoliash weight
                     // (variances proportional to distances)
-                    float distance = myDistances[i][j];
+                    float distance = getDistance(i, j);
                     weight = 1.0 / distance * distance;
                 } else {
                     // Cavalli-Sforza-Edwards weight
@@ -209,7 +220,7 @@ public class DistanceMatrix implements TableReport {
         double sum = 0;
         for (int i = 0; i < myNumTaxa - 1; i++) {
             for (int j = 0; j < i; j++) {
-                double diff = Math.abs(myDistances[i][j] - mat.getDistance(i, j));
+                double diff = Math.abs(getDistance(i, j) - mat.getDistance(i, j));
                 sum += diff;
             }
         }
@@ -233,7 +244,7 @@ public class DistanceMatrix implements TableReport {
         double[][] copy = new double[myNumTaxa][myNumTaxa];
         for (int i = 0; i < myNumTaxa; i++) {
             for (int j = 0; j <= i; j++) {
-                copy[i][j] = myDistances[i][j];
+                copy[i][j] = getDistance(i, j);
                 copy[j][i] = copy[i][j];
             }
         }
@@ -248,7 +259,7 @@ public class DistanceMatrix implements TableReport {
         return getClonedDistances();
     }
 
-    public final float getDistance(final int row, final int col) {
+    public float getDistance(final int row, final int col) {
         if (row > col) {
             return myDistances[row][col];
         } else {
@@ -264,7 +275,7 @@ public class DistanceMatrix implements TableReport {
         int count = 0;
         for (int i = 1; i < myNumTaxa; i++) {
             for (int j = 0; j < i; j++) {
-                float distance = myDistances[i][j];
+                float distance = getDistance(i, j);
                 if (!Float.isNaN(distance)) {
                     dist += distance;
                     count++;
@@ -303,7 +314,7 @@ public class DistanceMatrix implements TableReport {
      */
     public boolean isSymmetric() {
         for (int i = 0; i < myNumTaxa; i++) {
-            if (myDistances[i][i] != 0) {
+            if (getDistance(i, i) != 0) {
                 return false;
             }
         }
@@ -354,7 +365,7 @@ public class DistanceMatrix implements TableReport {
         DistanceMatrixBuilder builder = DistanceMatrixBuilder.getInstance(m0.getTaxaList());
         for (int r = 0; r < n; r++) {
             for (int c = 0; c <= r; c++) {
-                builder.set(r, c, m0.myDistances[r][c] * m1.myDistances[r][c]);
+                builder.set(r, c, m0.getDistance(r, c) * m1.getDistance(r, c));
             }
         }
 
@@ -71,6 +71,19 @@ public class DistanceMatrixBuilder {
         }
     }
 
+    /**
+     * Returns storage of given row of this lower triangular matrix. Row x
+     * holds values for columns 0 through x, so that values can be accumulated
+     * in place without a second copy of the matrix.
+     *
+     * @param x row
+     *
+     * @return row values (not a copy)
+     */
+    public float[] row(int x) {
+        return myMatrix[x];
+    }
+
     public void addTaxon(Taxon taxon) {
         if (myTaxaBuilder == null) {
             throw new IllegalStateException("DistanceMatrixBuilder: addTaxon: this builder was given Taxa List at creation.");
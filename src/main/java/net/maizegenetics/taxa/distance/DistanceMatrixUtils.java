@@ -130,18 +130,18 @@ public class DistanceMatrixUtils {
 
         double sum = 0;
         int ai;
-        final double[][] mat1Distance = mat1.getDistances();
-        final double[][] mat2Distance = mat2.getDistances();
         for (int i = 0; i < mat1.getSize() - 1; i++) {
             ai = alias[i];
 
             for (int j = i + 1; j < mat1.getSize(); j++) {
-                double diff = mat1Distance[i][j] - mat2Distance[ai][alias[j]];
+                double distance1 = mat1.getDistance(i, j);
+                double distance2 = mat2.getDistance(ai, alias[j]);
+                double diff = distance1 - distance2;
                 double weight;
                 if (weighted) {
                     // Fitch-Margoliash weight
                     // (variances proportional to distances)
-                    weight = 1.0 / (mat1Distance[i][j] * mat2Distance[ai][alias[j]]);
+                    weight = 1.0 / (distance1 * distance2);
                 } else {
                     // Cavalli-Sforza-Edwards weight
                     // (homogeneity of variances)
@@ -171,12 +171,11 @@ public class DistanceMatrixUtils {
             ids[i] = parent.getTaxon(counti);
 
             countj = 0;
-            final double[][] parentDistance = parent.getDistances();
             for (int j = 0; j < size; j++) {
                 if (countj == taxaToRemove) {
                     countj += 1;
                 }
-                distances[i][j] = parentDistance[counti][countj];
+                distances[i][j] = parent.getDistance(counti, countj);
                 countj += 1;
             }
             counti += 1;
@@ -0,0 +1,117 @@
+/*
+ *  MappedDistanceMatrix
+ */
+package net.maizegenetics.taxa.distance;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import net.maizegenetics.taxa.TaxaList;
+import net.maizegenetics.util.GeneralAnnotation;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Distance matrix backed by a memory mapped binary MultiBLUP (GCTA) matrix
+ * file (.grm.bin). That file is the lower triangle of the matrix (including
+ * diagonal) stored row by row as little endian 32 bit floats. Values are read
+ * from the operating system page cache on demand, so opening is nearly
+ * instant and the Java heap only holds the taxa list. The file must not be
+ * compressed or changed while this matrix is in use.
+ *
+ * @see WriteDistanceMatrix#saveBinMultiBlupMatrix(DistanceMatrix, String)
+ */
+public class MappedDistanceMatrix extends DistanceMatrix {
+
+    private static final Logger myLogger = LogManager.getLogger(MappedDistanceMatrix.class);
+
+    // Maximum bytes mapped per buffer. Must be less than 2 GB.
+    private static final long MAX_BYTES_PER_SEGMENT = 1L << 30;
+
+    private final FloatBuffer[] mySegments;
+
+    // Segment containing each row and float index of row start within segment
+    private final int[] myRowSegment;
+    private final int[] myRowOffset;
+
+    private MappedDistanceMatrix(FloatBuffer[] segments, int[] rowSegment, int[] rowOffset, TaxaList taxa, GeneralAnnotation annotations) {
+        super(taxa, annotations);
+        mySegments = segments;
+        myRowSegment = rowSegment;
+        myRowOffset = rowOffset;
+    }
+
+    /**
+     * Maps binary MultiBLUP matrix.
+     *
+     * @param matrixFile matrix file (.grm.bin)
+     * @param taxa taxa in order of matrix rows (i.e. from .grm.id file)
+     * @param annotations annotations (can be null)
+     *
+     * @return distance matrix
+     */
+    public static MappedDistanceMatrix getInstance(String matrixFile, TaxaList taxa, GeneralAnnotation annotations) {
+
+        int numTaxa = taxa.numberOfTaxa();
+        long expectedBytes = (long) numTaxa * ((long) numTaxa + 1L) / 2L * 4L;
+
+        try (RandomAccessFile file = new RandomAccessFile(matrixFile, "r")) {
+
+            FileChannel channel = file.getChannel();
+            if (channel.size() != expectedBytes) {
+                throw new IllegalArgumentException("MappedDistanceMatrix: getInstance: file: " + matrixFile + " has " + channel.size() + " bytes but expected " + expectedBytes + " for " + numTaxa + " taxa. File must be uncompressed.");
+            }
+
+            //
+            // Segments hold whole rows, so a row never spans two buffers.
+            //
+            List<FloatBuffer> segments = new ArrayList<>();
+            int[] rowSegment = new int[numTaxa];
+            int[] rowOffset = new int[numTaxa];
+            long segmentStart = 0;
+            long segmentEnd = 0;
+            for (int row = 0; row < numTaxa; row++) {
+                long rowBytes = (row + 1L) * 4L;
+                if (segmentEnd + rowBytes - segmentStart > MAX_BYTES_PER_SEGMENT) {
+                    segments.add(map(channel, segmentStart, segmentEnd));
+                    segmentStart = segmentEnd;
+                }
+                rowSegment[row] = segments.size();
+                rowOffset[row] = (int) ((segmentEnd - segmentStart) / 4L);
+                segmentEnd += rowBytes;
+            }
+            if (segmentEnd > segmentStart) {
+                segments.add(map(channel, segmentStart, segmentEnd));
+            }
+
+            myLogger.info("getInstance: mapped: " + matrixFile + " taxa: " + numTaxa + " segments: " + segments.size());
+
+            return new MappedDistanceMatrix(segments.toArray(new FloatBuffer[segments.size()]), rowSegment, rowOffset, taxa, annotations);
+
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            myLogger.debug(e.getMessage(), e);
+            throw new IllegalStateException("MappedDistanceMatrix: getInstance: problem mapping file: " + matrixFile + ": " + e.getMessage());
+        }
+
+    }
+
+    private static FloatBuffer map(FileChannel channel, long start, long end) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    @Override
+    public float getDistance(final int row, final int col) {
+        if (row > col) {
+            return mySegments[myRowSegment[row]].get(myRowOffset[row] + col);
+        } else {
+            return mySegments[myRowSegment[col]].get(myRowOffset[col] + row);
+        }
+    }
+
+}
@@ -150,6 +150,21 @@ public class ReadDistanceMatrix {
 
     }
 
+    /**
+     * Opens binary MultiBLUP matrix (.grm.bin) with memory mapping instead of
+     * reading it into memory. Counts (.grm.N.bin) are not loaded. The matrix
+     * file must be uncompressed.
+     *
+     * @param filename any of the MultiBLUP file names or base name
+     *
+     * @return distance matrix
+     */
+    public static DistanceMatrix mapBinMultiBlupMatrix(String filename) {
+        String[] grmFilenames = DistanceMatrixUtils.getGRMFilenames(filename);
+        TaxaList taxa = readBinMultiBlupID(grmFilenames[0]);
+        return MappedDistanceMatrix.getInstance(grmFilenames[1], taxa, null);
+    }
+
     public static TaxaList readBinMultiBlupID(String filename) {
 
         TaxaListBuilder builder = new TaxaListBuilder();
@@ -120,17 +120,14 @@ public class WriteDistanceMatrix {
 
         try (BufferedOutputStream bw = Utils.getBufferedOutputStream(matrixFile)) {
 
-            for (long r = 0, n = matrix.getRowCount(); r < n; r++) {
-                Object[] theRow = matrix.getRow(r);
-
-                for (int i = 1; i < r + 2; i++) {
-
-                    ByteBuffer kinsBuffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
-
-                    kinsBuffer.putFloat(Float.parseFloat(theRow[i].toString()));
-                    bw.write(kinsBuffer.array());
-
+            int numTaxa = matrix.numberOfTaxa();
+            ByteBuffer kinsBuffer = ByteBuffer.allocate(numTaxa * 4).order(ByteOrder.LITTLE_ENDIAN);
+            for (int r = 0; r < numTaxa; r++) {
+                kinsBuffer.clear();
+                for (int c = 0; c <= r; c++) {
+                    kinsBuffer.putFloat(matrix.getDistance(r, c));
                 }
+                bw.write(kinsBuffer.array(), 0, kinsBuffer.position());
             }
 
         } catch (Exception e) {
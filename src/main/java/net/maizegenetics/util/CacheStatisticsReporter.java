@@ -0,0 +1,45 @@
+/*
+ *  CacheStatisticsReporter
+ */
+package net.maizegenetics.util;
+
+import com.google.common.cache.CacheStats;
+
+import java.util.Map;
+
+/**
+ * Implemented by classes backed by lazily loaded caches (i.e. HDF5 genotypes)
+ * so cache behavior can be reported when tuning large runs. When debug
+ * logging is on, AbstractPlugin logs the statistics of input genotypes that
+ * implement this when a plugin finishes.
+ */
+public interface CacheStatisticsReporter {
+
+    /**
+     * Returns statistics of each cache, keyed by cache name.
+     *
+     * @return cache statistics
+     */
+    Map<String, CacheStats> cacheStats();
+
+    /**
+     * Returns readable summary of cacheStats().
+     *
+     * @return summary
+     */
+    default String cacheStatistics() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, CacheStats> entry : cacheStats().entrySet()) {
+            CacheStats stats = entry.getValue();
+            builder.append(entry.getKey())
+                    .append(": requests: ").append(stats.requestCount())
+                    .append(" hit rate: ").append(String.format("%.4f", stats.hitRate()))
+                    .append(" loads: ").append(stats.loadCount())
+                    .append(" average load: ").append(String.format("%.3f", stats.averageLoadPenalty() / 1e6)).append(" ms")
+                    .append(" evictions: ").append(stats.evictionCount())
+                    .append("\n");
+        }
+        return builder.toString();
+    }
+
+}
@@ -271,6 +271,26 @@ public final class HDF5Utils {
         writeHDF5EntireArray(callsPath, h5w, calls.length, Tassel5HDF5Constants.BLOCK_SIZE, calls);
     }
 
+    /**
+     * Creates an empty, extendable genotype calls dataset for a taxon. Blocks
+     * written beyond the current end with replaceHDF5GenotypesCalls() extend
+     * the dataset, so the number of sites does not need to be known. The
+     * writer must not be configured with dontUseExtendableDataTypes().
+     *
+     * @param h5w writer
+     * @param taxon taxon name
+     */
+    public static void createExtendableHDF5GenotypesCalls(IHDF5Writer h5w, String taxon) {
+        if (isHDF5GenotypeLocked(h5w) == true) {
+            throw new UnsupportedOperationException("Trying to write to a locked HDF5 file");
+        }
+        String callsPath = Tassel5HDF5Constants.getGenotypesCallsPath(taxon);
+        if (h5w.exists(callsPath)) {
+            throw new IllegalStateException("Taxa Calls Already Exists:" + taxon);
+        }
+        h5w.int8().createArray(callsPath, 0, Tassel5HDF5Constants.BLOCK_SIZE, Tassel5HDF5Constants.intDeflation);
+    }
+
     public static void replaceHDF5GenotypesCalls(IHDF5Writer h5w, String taxon, byte[] calls) {
         if (isHDF5GenotypeLocked(h5w) == true) {
             throw new UnsupportedOperationException("Trying to write to a locked HDF5 file");
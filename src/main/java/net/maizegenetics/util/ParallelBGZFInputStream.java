@@ -0,0 +1,247 @@
+/*
+ *  ParallelBGZFInputStream
+ */
+package net.maizegenetics.util;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Input stream for BGZF (block gzip) files that inflates blocks on multiple
+ * cores. BGZF files (bgzip, htsjdk) are a series of independent gzip members
+ * of at most 64 KB, each recording its own compressed size. This stream reads
+ * the compressed blocks sequentially, inflates a bounded number of them ahead
+ * in parallel, and returns the uncompressed bytes in file order. It can be
+ * used anywhere a GZIPInputStream over the same file would be used.
+ */
+public class ParallelBGZFInputStream extends InputStream {
+
+    private static final int BGZF_HEADER_LENGTH = 18;
+    private static final int MAX_BLOCK_SIZE = 1 << 16;
+
+    private static final int NUM_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final ExecutorService INFLATE_POOL = Executors.newFixedThreadPool(NUM_THREADS, r -> {
+        Thread thread = new Thread(r, "ParallelBGZFInputStream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final InputStream myInput;
+    private final int myMaxBlocksAhead;
+    private final ArrayDeque<Future<byte[]>> myBlocks = new ArrayDeque<>();
+    private boolean myEndOfInput = false;
+
+    private byte[] myCurrent = new byte[0];
+    private int myPosition = 0;
+
+    public ParallelBGZFInputStream(String filename) throws IOException {
+        this(new FileInputStream(filename));
+    }
+
+    public ParallelBGZFInputStream(InputStream input) {
+        this(input, NUM_THREADS * 4);
+    }
+
+    /**
+     * @param input compressed BGZF input
+     * @param maxBlocksAhead maximum number of blocks read and inflated ahead
+     * of the consumer. This bounds memory to about maxBlocksAhead * 128 KB.
+     */
+    public ParallelBGZFInputStream(InputStream input, int maxBlocksAhead) {
+        myInput = new BufferedInputStream(input, 1 << 20);
+        myMaxBlocksAhead = Math.max(1, maxBlocksAhead);
+    }
+
+    /**
+     * Returns whether the given file starts with a BGZF block header.
+     *
+     * @param filename file name
+     *
+     * @return true if BGZF
+     */
+    public static boolean isBGZF(String filename) {
+        try (InputStream input = new FileInputStream(filename)) {
+            byte[] header = new byte[BGZF_HEADER_LENGTH];
+            int count = 0;
+            while (count < BGZF_HEADER_LENGTH) {
+                int n = input.read(header, count, BGZF_HEADER_LENGTH - count);
+                if (n < 0) {
+                    return false;
+                }
+                count += n;
+            }
+            return isBGZFHeader(header);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isBGZFHeader(byte[] header) {
+        return (header[0] & 0xFF) == 31 && (header[1] & 0xFF) == 139
+                && (header[2] & 0xFF) == 8 && (header[3] & 0x04) != 0
+                && header[12] == 'B' && header[13] == 'C';
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return myCurrent[myPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(len, myCurrent.length - myPosition);
+        System.arraycopy(myCurrent, myPosition, b, off, count);
+        myPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return myCurrent.length - myPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> block : myBlocks) {
+            block.cancel(false);
+        }
+        myBlocks.clear();
+        myInput.close();
+    }
+
+    /**
+     * Makes sure the current block has unread bytes.
+     *
+     * @return false at end of stream
+     */
+    private boolean fill() throws IOException {
+        while (myPosition >= myCurrent.length) {
+            submitBlocks();
+            if (myBlocks.isEmpty()) {
+                return false;
+            }
+            try {
+                myCurrent = myBlocks.poll().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("ParallelBGZFInputStream: interrupted");
+            } catch (ExecutionException e) {
+                throw new IOException("ParallelBGZFInputStream: " + e.getCause().getMessage(), e.getCause());
+            }
+            myPosition = 0;
+        }
+        return true;
+    }
+
+    private void submitBlocks() throws IOException {
+        while (!myEndOfInput && myBlocks.size() < myMaxBlocksAhead) {
+            byte[] compressed = readCompressedBlock();
+            if (compressed == null) {
+                myEndOfInput = true;
+            } else {
+                myBlocks.add(INFLATE_POOL.submit(() -> inflate(compressed)));
+            }
+        }
+    }
+
+    /**
+     * Reads one whole compressed block (header through ISIZE).
+     *
+     * @return block or null at end of input
+     */
+    private byte[] readCompressedBlock() throws IOException {
+        byte[] header = new byte[BGZF_HEADER_LENGTH];
+        int first = myInput.read();
+        if (first < 0) {
+            return null;
+        }
+        header[0] = (byte) first;
+        readFully(header, 1, BGZF_HEADER_LENGTH - 1);
+        if (!isBGZFHeader(header)) {
+            throw new IOException("ParallelBGZFInputStream: not a BGZF block header");
+        }
+        int extraLength = (header[10] & 0xFF) | ((header[11] & 0xFF) << 8);
+        int blockSize = ((header[16] & 0xFF) | ((header[17] & 0xFF) << 8)) + 1;
+        if (extraLength < 6 || blockSize > MAX_BLOCK_SIZE || blockSize < BGZF_HEADER_LENGTH + 8) {
+            throw new IOException("ParallelBGZFInputStream: corrupt BGZF block header");
+        }
+        byte[] block = new byte[blockSize];
+        System.arraycopy(header, 0, block, 0, BGZF_HEADER_LENGTH);
+        readFully(block, BGZF_HEADER_LENGTH, blockSize - BGZF_HEADER_LENGTH);
+        return block;
+    }
+
+    private void readFully(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = myInput.read(b, off, len);
+            if (n < 0) {
+                throw new EOFException("ParallelBGZFInputStream: truncated BGZF block");
+            }
+            off += n;
+            len -= n;
+        }
+    }
+
+    private static byte[] inflate(byte[] block) throws IOException {
+        int extraLength = (block[10] & 0xFF) | ((block[11] & 0xFF) << 8);
+        int dataStart = 12 + extraLength;
+        int dataLength = block.length - dataStart - 8;
+        int expectedCRC = readInt(block, block.length - 8);
+        int uncompressedSize = readInt(block, block.length - 4);
+        byte[] result = new byte[uncompressedSize];
+        if (uncompressedSize == 0) {
+            return result;
+        }
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(block, dataStart, dataLength);
+        try {
+            int count = 0;
+            while (count < uncompressedSize) {
+                int n = inflater.inflate(result, count, uncompressedSize - count);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                count += n;
+            }
+            if (count != uncompressedSize) {
+                throw new IOException("ParallelBGZFInputStream: block inflated to " + count + " bytes; expected " + uncompressedSize);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("ParallelBGZFInputStream: " + e.getMessage(), e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(result, 0, uncompressedSize);
+        if ((int) crc.getValue() != expectedCRC) {
+            throw new IOException("ParallelBGZFInputStream: CRC mismatch in BGZF block");
+        }
+        return result;
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) | ((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24);
+    }
+
+}
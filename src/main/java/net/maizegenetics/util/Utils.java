@@ -448,6 +448,9 @@ public final class Utils {
                     return new BufferedReader(new InputStreamReader((new URL(inSourceName)).openStream()), bufSize);
                 }
             } else if (inSourceName.endsWith(".gz")) {
+                if (ParallelBGZFInputStream.isBGZF(inSourceName)) {
+                    return new BufferedReader(new InputStreamReader(new ParallelBGZFInputStream(inSourceName)), bufSize);
+                }
                 return new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(inSourceName), bufSize)), bufSize);
             } else {
                 return new BufferedReader(new InputStreamReader(new FileInputStream(inSourceName)), bufSize);
@@ -620,6 +623,9 @@ public final class Utils {
                     return (new URL(filename)).openStream();
                 }
             } else if (filename.endsWith(".gz")) {
+                if (ParallelBGZFInputStream.isBGZF(filename)) {
+                    return new ParallelBGZFInputStream(filename);
+                }
                 return new GZIPInputStream(new FileInputStream(filename));
             } else {
                 return new FileInputStream(filename);
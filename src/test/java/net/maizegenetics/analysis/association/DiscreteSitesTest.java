@@ -114,6 +114,30 @@ public class DiscreteSitesTest {
 		
 	}
 	
+	@Test
+	public void testMultithreaded() {
+		String filename = TutorialConstants.TRAITS_FILENAME;
+		Phenotype myPhenotype = new PhenotypeBuilder().fromFile(filename).keepAttributes(new int[]{0,1,2}).build().get(0);
+		GenotypePhenotype myGenoPheno = new GenotypePhenotypeBuilder().genotype(myGenotype).phenotype(myPhenotype).intersect().build();
+
+		//results, including permutation p-values, should not depend on the number of threads
+		DiscreteSitesFELM serial = new DiscreteSitesFELM(new Datum("name", myGenoPheno, "comment"), null);
+		serial.permutationTest(true, 100);
+		serial.setRandomSeed(1234);
+		serial.minimumClassSize(5);
+		serial.solve();
+
+		DiscreteSitesFELM parallel = new DiscreteSitesFELM(new Datum("name", myGenoPheno, "comment"), null);
+		parallel.permutationTest(true, 100);
+		parallel.setRandomSeed(1234);
+		parallel.minimumClassSize(5);
+		parallel.maxThreads(4);
+		parallel.solve();
+
+		TableReportTestUtils.compareTableReports(serial.siteReport(), parallel.siteReport());
+		TableReportTestUtils.compareTableReports(serial.alleleReport(), parallel.alleleReport());
+	}
+	
 	@Test
 	public void testHeterozygotes() {
 	       // AC and CA should be a single genotype class not two different genotype classes
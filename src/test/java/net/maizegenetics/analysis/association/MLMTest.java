@@ -86,7 +86,45 @@ public class MLMTest {
 		TableReportTestUtils.compareTableReports(effectReferenceReport, effectTestReport,.01);
 		TableReportTestUtils.compareTableReports(residualReferenceReport, residualTestReport,.01);
 	}
-	
+
+	@Test
+	public void testSpectralRotation() {
+		//re-estimating variance components with spectral rotation should match EMMA for each marker
+		MLMPlugin myPlugin = new MLMPlugin(null, false);
+		myPlugin.setCompressionType(CompressionType.None);
+		myPlugin.setVarCompEst("Spectral");
+		DataSet resultSet = myPlugin.performFunction(myDataset);
+
+		TableReport statReferenceReport = TableReportUtils.readDelimitedTableReport(statsNocompNop3d, "\t");
+		TableReport effectReferenceReport = TableReportUtils.readDelimitedTableReport(effectsNocompNop3d, "\t");
+		TableReport statTestReport = (TableReport) resultSet.getData(1).getData();
+		TableReport effectTestReport  = (TableReport) resultSet.getData(2).getData();
+
+		TableReportTestUtils.compareTableReports(statReferenceReport, statTestReport,.01);
+		TableReportTestUtils.compareTableReports(effectReferenceReport, effectTestReport,.01);
+	}
+
+	@Test
+	public void testMultithreaded() {
+		//results should be the same, in the same order, for any number of threads
+		for (boolean useP3D : new boolean[]{true, false}) {
+			MLMPlugin singlePlugin = new MLMPlugin(null, false);
+			singlePlugin.setCompressionType(CompressionType.None);
+			singlePlugin.setUseP3D(useP3D);
+			singlePlugin.setMaxThreads(1);
+			DataSet singleSet = singlePlugin.performFunction(myDataset);
+
+			MLMPlugin multiPlugin = new MLMPlugin(null, false);
+			multiPlugin.setCompressionType(CompressionType.None);
+			multiPlugin.setUseP3D(useP3D);
+			multiPlugin.setMaxThreads(4);
+			DataSet multiSet = multiPlugin.performFunction(myDataset);
+
+			TableReportTestUtils.compareTableReports((TableReport) singleSet.getData(1).getData(), (TableReport) multiSet.getData(1).getData());
+			TableReportTestUtils.compareTableReports((TableReport) singleSet.getData(2).getData(), (TableReport) multiSet.getData(2).getData());
+		}
+	}
+
 	@Test
 	public void testCompressionP3D() {
 		MLMPlugin myPlugin = new MLMPlugin(null, false);
@@ -0,0 +1,113 @@
+package net.maizegenetics.analysis.association;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.maizegenetics.matrixalgebra.Matrix.DoubleMatrix;
+import net.maizegenetics.stats.linearmodels.CovariateModelEffect;
+import net.maizegenetics.stats.linearmodels.FactorModelEffect;
+import net.maizegenetics.stats.linearmodels.LinearModelUtils;
+import net.maizegenetics.stats.linearmodels.ModelEffect;
+import net.maizegenetics.stats.linearmodels.SweepFastLinearModel;
+
+import org.junit.Test;
+
+public class PermutedDataTest {
+
+	@Test
+	public void testUpdateMinP() {
+		//permuted values for 50 observations, 10 of which are missing for the site being tested
+		Random rand = new Random(1234);
+		int numberOfObs = 50;
+		int numberOfPermutations = 20;
+		PermutedData permutedData = new PermutedData(numberOfPermutations, numberOfObs);
+		for (int p = 0; p < numberOfPermutations; p++) {
+			for (int i = 0; i < numberOfObs; i++) permutedData.set(p, i, 10 + rand.nextGaussian());
+		}
+
+		int[] observations = new int[40];
+		for (int i = 0; i < 40; i++) observations[i] = i + i / 4;
+		int n = observations.length;
+
+		int[] factorLevels = new int[n];
+		double[] covariate = new double[n];
+		int[] markerLevels = new int[n];
+		for (int i = 0; i < n; i++) {
+			factorLevels[i] = i % 3;
+			covariate[i] = rand.nextGaussian();
+			markerLevels[i] = rand.nextInt(3);
+		}
+		ArrayList<ModelEffect> baseModel = new ArrayList<>();
+		baseModel.add(new FactorModelEffect(new int[n], false, "mean"));
+		baseModel.add(new FactorModelEffect(factorLevels, true, "factor"));
+		baseModel.add(new CovariateModelEffect(covariate, "covariate"));
+		ModelEffect markerEffect = new FactorModelEffect(markerLevels, true, "marker");
+		ArrayList<ModelEffect> fullModel = new ArrayList<>(baseModel);
+		fullModel.add(markerEffect);
+
+		double[] minP = new double[numberOfPermutations];
+		Arrays.fill(minP, 1.0);
+		permutedData.updateMinP(permutedData.base(observations, columns(baseModel)), columns(markerEffect), minP);
+
+		//compare to fitting a linear model to each permutation
+		for (int p = 0; p < numberOfPermutations; p++) {
+			double[] allValues = permutedData.permutation(p);
+			double[] y = new double[n];
+			for (int i = 0; i < n; i++) y[i] = allValues[observations[i]];
+			SweepFastLinearModel sflm = new SweepFastLinearModel(fullModel, y);
+			double[] markerSSdf = sflm.getIncrementalSSdf(fullModel.size() - 1);
+			double[] errorSSdf = sflm.getResidualSSdf();
+			double F = markerSSdf[0] / markerSSdf[1] / errorSSdf[0] * errorSSdf[1];
+			double expected = LinearModelUtils.Ftest(F, markerSSdf[1], errorSSdf[1]);
+			assertEquals(expected, minP[p], 1e-10);
+		}
+	}
+
+	@Test
+	public void testUpdateMinPSkipsUntestablePermutations() {
+		//permutation 0 has no variance and permutation 1 has a missing value, so neither can be tested
+		Random rand = new Random(4321);
+		int numberOfObs = 30;
+		int numberOfPermutations = 3;
+		PermutedData permutedData = new PermutedData(numberOfPermutations, numberOfObs);
+		for (int i = 0; i < numberOfObs; i++) {
+			permutedData.set(0, i, 0);
+			permutedData.set(1, i, i == 5 ? Double.NaN : rand.nextGaussian());
+			permutedData.set(2, i, rand.nextGaussian());
+		}
+
+		int[] observations = new int[numberOfObs];
+		int[] markerLevels = new int[numberOfObs];
+		for (int i = 0; i < numberOfObs; i++) {
+			observations[i] = i;
+			markerLevels[i] = i % 2;
+		}
+		ArrayList<ModelEffect> baseModel = new ArrayList<>();
+		baseModel.add(new FactorModelEffect(new int[numberOfObs], false, "mean"));
+		ModelEffect markerEffect = new FactorModelEffect(markerLevels, true, "marker");
+
+		double[] minP = new double[numberOfPermutations];
+		Arrays.fill(minP, 1.0);
+		permutedData.updateMinP(permutedData.base(observations, columns(baseModel)), columns(markerEffect), minP);
+		assertEquals(1.0, minP[0], 0);
+		assertEquals(1.0, minP[1], 0);
+		assertTrue(minP[2] < 1.0);
+	}
+
+	private static List<double[]> columns(List<ModelEffect> model) {
+		List<double[]> columns = new ArrayList<>();
+		for (ModelEffect effect : model) columns.addAll(columns(effect));
+		return columns;
+	}
+
+	private static List<double[]> columns(ModelEffect effect) {
+		DoubleMatrix X = effect.getX();
+		List<double[]> columns = new ArrayList<>();
+		for (int c = 0; c < X.numberOfColumns(); c++) columns.add(X.column(c).to1DArray());
+		return columns;
+	}
+}
@@ -45,4 +45,23 @@ public class CenteredIBSTest {
         DistanceMatrixTestingUtils.compare(expected, output, 0.0000000008);
         
     }
+
+    @Test
+    public void testTiledCenteredIBS() {
+
+        System.out.println("Testing Tiled Centered IBS Matrix ...");
+
+        DataSet input = ImportUtils.readDataSet(TutorialConstants.HAPMAP_FILENAME);
+        DataSet expected = new KinshipPlugin(null, false)
+                .kinshipMethod(KinshipPlugin.KINSHIP_METHOD.Centered_IBS)
+                .performFunction(input);
+        DataSet tiled = new KinshipPlugin(null, false)
+                .kinshipMethod(KinshipPlugin.KINSHIP_METHOD.Centered_IBS)
+                .tiled(true)
+                .performFunction(input);
+
+        // sites are summed in a different order
+        DistanceMatrixTestingUtils.compare(expected, tiled, 0.00001);
+
+    }
 }
@@ -0,0 +1,105 @@
+package net.maizegenetics.analysis.gbs.repgen;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.maizegenetics.analysis.gbs.neobio.BasicScoringScheme;
+import net.maizegenetics.analysis.gbs.neobio.PairwiseAlignment;
+import net.maizegenetics.analysis.gbs.neobio.SmithWaterman;
+
+import org.junit.Test;
+
+public class TagAlignerTest {
+
+    private static final int[][] SCORING_SCHEMES = {{2, -1, -1}, {2, -2, -1}, {1, -3, -2}};
+
+    @Test
+    public void testSameAsNeobio() throws Exception {
+        Random random = new Random(1234);
+        for (int[] scheme : SCORING_SCHEMES) {
+            TagAligner aligner = new TagAligner(scheme[0], scheme[1], scheme[2]);
+            for (int pair = 0; pair < 500; pair++) {
+                String seq1 = randomSequence(random, 1 + random.nextInt(80));
+                // related sequences, so alignments have gaps and do not start at the beginning
+                String seq2 = random.nextBoolean() ? randomSequence(random, 1 + random.nextInt(160)) : mutate(random, seq1);
+
+                SmithWaterman algorithm = new SmithWaterman();
+                algorithm.setScoringScheme(new BasicScoringScheme(scheme[0], scheme[1], scheme[2]));
+                algorithm.loadSequences(new StringReader(seq1), new StringReader(seq2));
+                int score = algorithm.getScore();
+                PairwiseAlignment alignment = algorithm.getPairwiseAlignment();
+
+                String message = seq1 + " " + seq2;
+                assertEquals(message, score, aligner.score(seq1.getBytes(), seq2.getBytes()));
+                assertEquals(message, score, aligner.align(seq1.getBytes(), seq2.getBytes()));
+                assertEquals(message, alignment.getRowStart(), aligner.rowStart());
+                assertEquals(message, alignment.getColStart(), aligner.colStart());
+                // a band containing every diagonal gives the full score
+                assertEquals(message, score, aligner.score(seq1.getBytes(), seq2.getBytes(), -seq1.length(), seq2.length()));
+            }
+        }
+    }
+
+    @Test
+    public void testBand() {
+        TagAligner aligner = new TagAligner(2, -1, -1);
+        String seq1 = "ACGTTGCAACGTTGCAACGTTGCAACGTTGCA";
+        String seq2 = "GGGGGGGGGG" + seq1;
+        // the alignment is on diagonal 10
+        assertEquals(64, aligner.score(seq1.getBytes(), seq2.getBytes(), 8, 12));
+        assertEquals(64, aligner.score(seq1.getBytes(), seq2.getBytes(), 10, 10));
+        // a band away from the alignment gives a lower score
+        assertTrue(aligner.score(seq1.getBytes(), seq2.getBytes(), -2, 2) < 64);
+    }
+
+    @Test
+    public void testKmerIndex() {
+        List<byte[]> sequences = new ArrayList<>();
+        sequences.add("ACGTTGCAACGTTGCAACGTTGCA".getBytes());
+        sequences.add("GGGGGGGGGGGGGGGGGGGGGGGG".getBytes());
+        sequences.add("TTTTTACGTTGCAACGTNTTTTTT".getBytes());
+        TagKmerIndex index = new TagKmerIndex(sequences, 12);
+        TagKmerIndex.Search search = index.newSearch();
+
+        assertEquals(2, search.find("CCACGTTGCAACGTCC".getBytes()));
+        for (int c = 0; c < 2; c++) {
+            if (search.candidate(c) == 0) {
+                // ACGTTGCAACGT is at positions 0 and 8 of sequence 0, and at position 2 of the query
+                assertEquals(2, search.sharedKmers(c));
+                assertEquals(-2, search.minDiagonal(c));
+                assertEquals(6, search.maxDiagonal(c));
+            } else {
+                assertEquals(2, search.candidate(c));
+                assertEquals(1, search.sharedKmers(c));
+                assertEquals(3, search.minDiagonal(c));
+                assertEquals(3, search.maxDiagonal(c));
+            }
+        }
+        // kmers containing N are not indexed
+        assertEquals(0, search.find("TTGCAACGTNTTTT".getBytes()));
+        assertEquals(1, search.find("GGGGGGGGGGGGGG".getBytes()));
+        assertEquals(1, search.candidate(0));
+    }
+
+    private static String randomSequence(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) sb.append("ACGT".charAt(random.nextInt(4)));
+        return sb.toString();
+    }
+
+    private static String mutate(Random random, String sequence) {
+        StringBuilder sb = new StringBuilder(randomSequence(random, random.nextInt(20)));
+        for (int i = 0; i < sequence.length(); i++) {
+            int change = random.nextInt(20);
+            if (change == 0) continue;
+            if (change == 1) sb.append("ACGT".charAt(random.nextInt(4)));
+            sb.append(change == 2 ? "ACGT".charAt(random.nextInt(4)) : sequence.charAt(i));
+        }
+        sb.append(randomSequence(random, random.nextInt(20)));
+        return sb.length() == 0 ? "A" : sb.toString();
+    }
+}
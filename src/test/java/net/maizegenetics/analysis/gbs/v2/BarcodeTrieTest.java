@@ -67,4 +67,33 @@ public class BarcodeTrieTest {
 //        System.out.println(b2);
 //        Assert.assertNull(b2);
     }
-}
\ No newline at end of file
+    @Test
+    public void testBarcodeParsingBytes() throws Exception {
+        GBSEnzyme enzyme=new GBSEnzyme("ApeKI");
+        List<Barcode> barcodes=new ArrayList<>();
+        barcodes.add(new Barcode("ACGT",enzyme.initialCutSiteRemnant(),"T1",1,"",""));
+        barcodes.add(new Barcode("AGGG",enzyme.initialCutSiteRemnant(),"T2",2,"",""));
+        barcodes.add(new Barcode("AGGGGT",enzyme.initialCutSiteRemnant(),"T3",3,"",""));
+        barcodes.add(new Barcode("AGGGAAA",enzyme.initialCutSiteRemnant(),"T4",4,"",""));
+        BarcodeTrie bt=new BarcodeTrie();
+        bt.addAllBarcodes(barcodes);
+
+        List<String> testList= ImmutableList.of(
+                "ACGTCAGCTTTTTTTTTTTTTT",
+                "AGGGAAACAGCTTTTTTTTTTTTTT",
+                "AGGGAAACTGCACGTACAGT",
+                "AGgGCAGCTTTTTTTTTTTTTT",
+                "AGGGGTCWGC",
+                "ACNTCAGCTTTTTTTTTTTTTT",
+                "A.GGAAACAGCTTTTTTTTTTTTTT",
+                "CGGGCAGCTTTTTTTTTTTTTT",
+                "ACGTCAG"
+        );
+
+        // the read is in the middle of the array, as it is when reading chunks of a fastq file
+        for (String s : testList) {
+            byte[] bytes = ("NNN" + s + "NNN").getBytes();
+            assertSame(s, bt.longestPrefix(s), bt.longestPrefix(bytes, 3, s.length()));
+        }
+    }
+}
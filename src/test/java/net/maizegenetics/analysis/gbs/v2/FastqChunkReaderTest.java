@@ -0,0 +1,131 @@
+package net.maizegenetics.analysis.gbs.v2;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class FastqChunkReaderTest {
+
+    private static final int NUMBER_OF_READS = 10000;
+
+    @Test
+    public void testReadAllRecords() throws Exception {
+        List<String[]> reads = randomReads(new Random(1234));
+        Path fastq = writeFastq(reads, false);
+        List<List<String>> workers = FastqChunkReader.process(fastq, 1, ArrayList::new, FastqChunkReaderTest::addRecords);
+        assertEquals(1, workers.size());
+        List<String> records = workers.get(0);
+        assertEquals(NUMBER_OF_READS, records.size());
+        for (int i = 0; i < NUMBER_OF_READS; i++) {
+            assertEquals((i + 1) + "\t" + reads.get(i)[0] + "\t" + reads.get(i)[1], records.get(i));
+        }
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        List<String[]> reads = randomReads(new Random(4321));
+        Path fastq = writeFastq(reads, true);
+        List<List<String>> workers = FastqChunkReader.process(fastq, 4, ArrayList::new, FastqChunkReaderTest::addRecords);
+        assertEquals(4, workers.size());
+        String[] records = new String[NUMBER_OF_READS];
+        for (List<String> worker : workers) {
+            for (String record : worker) {
+                int readNumber = Integer.parseInt(record.substring(0, record.indexOf('\t')));
+                assertNull(records[readNumber - 1]);
+                records[readNumber - 1] = record;
+            }
+        }
+        for (int i = 0; i < NUMBER_OF_READS; i++) {
+            assertEquals((i + 1) + "\t" + reads.get(i)[0] + "\t" + reads.get(i)[1], records[i]);
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        Path fastq = writeFastq(randomReads(new Random(99)), false);
+        try {
+            FastqChunkReader.process(fastq, 3, ArrayList::new, (List<String> state, FastqChunkReader.Chunk chunk) -> {
+                throw new StringIndexOutOfBoundsException("read too short");
+            });
+            fail("Exception from worker was not thrown");
+        } catch (StringIndexOutOfBoundsException e) {
+            assertEquals("read too short", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testStateFailure() throws Exception {
+        // more chunks than the reader can fill before a worker must return one
+        List<String[]> reads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) reads.addAll(randomReads(new Random(98)));
+        Path fastq = writeFastq(reads, false);
+        // no worker is left to return chunks, so the reader must not wait for them
+        try {
+            FastqChunkReader.process(fastq, 2, () -> {
+                throw new OutOfMemoryError("no memory for state");
+            }, FastqChunkReaderTest::addRecords);
+            fail("Exception from worker state was not thrown");
+        } catch (OutOfMemoryError e) {
+            assertEquals("no memory for state", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFirstLowQualityPosition() throws Exception {
+        List<String[]> reads = new ArrayList<>();
+        reads.add(new String[]{"ACGTACGT", "IIII#III"});
+        reads.add(new String[]{"ACGTACGT", "IIIIIIII"});
+        Path fastq = writeFastq(reads, false);
+        FastqChunkReader.process(fastq, 1, () -> null, (Object state, FastqChunkReader.Chunk chunk) -> {
+            assertEquals(4, chunk.firstLowQualityPosition(0, 20, 33));
+            assertEquals(8, chunk.firstLowQualityPosition(1, 20, 33));
+        });
+    }
+
+    private static void addRecords(List<String> records, FastqChunkReader.Chunk chunk) {
+        for (int r = 0; r < chunk.numberOfRecords(); r++) {
+            String quality = new String(chunk.data(), chunk.qualityOffset(r), chunk.qualityLength(r));
+            records.add(chunk.recordNumber(r) + "\t" + chunk.sequence(r, 0) + "\t" + quality);
+        }
+    }
+
+    private static List<String[]> randomReads(Random random) {
+        String bases = "ACGTN";
+        List<String[]> reads = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_READS; i++) {
+            int length = 50 + random.nextInt(100);
+            StringBuilder sequence = new StringBuilder();
+            StringBuilder quality = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                sequence.append(bases.charAt(random.nextInt(bases.length())));
+                quality.append((char) (33 + random.nextInt(41)));
+            }
+            reads.add(new String[]{sequence.toString(), quality.toString()});
+        }
+        return reads;
+    }
+
+    private static Path writeFastq(List<String[]> reads, boolean gzip) throws Exception {
+        File file = File.createTempFile("FastqChunkReaderTest", gzip ? ".fastq.gz" : ".fastq");
+        file.deleteOnExit();
+        try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(gzip ? new GZIPOutputStream(new FileOutputStream(file)) : new FileOutputStream(file)))) {
+            for (int i = 0; i < reads.size(); i++) {
+                bw.write("@read" + i + " 1:N:0:1\n");
+                bw.write(reads.get(i)[0] + "\n");
+                bw.write("+\n");
+                bw.write(reads.get(i)[1] + "\n");
+            }
+        }
+        return file.toPath();
+    }
+}
@@ -0,0 +1,162 @@
+package net.maizegenetics.analysis.gbs.v2;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.maizegenetics.dna.tag.Tag;
+import net.maizegenetics.dna.tag.TagBuilder;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class ReadTagExtractorTest {
+
+    private static final String[] APEKI_READ_ENDS = {"GCAGC", "GCTGC", "GCAGAGAT", "GCTGAGAT"};
+    private static final int APEKI_REMNANT_LENGTH = 4;
+    private static final String[] PSTI_READ_ENDS = {"CTGCAG", "CTGCAAGAT"};
+    private static final int PSTI_REMNANT_LENGTH = 5;
+    private static final int PREFERRED_LENGTH = 64;
+    private static final int MINIMUM_LENGTH = 30;
+
+    @Test
+    public void testSameTagsAsStringMethod() {
+        Random random = new Random(1234);
+        List<String> reads = randomReads(random, 20000, APEKI_READ_ENDS);
+        compareToStringMethod(reads, APEKI_READ_ENDS, APEKI_REMNANT_LENGTH, true, MINIMUM_LENGTH);
+        compareToStringMethod(reads, APEKI_READ_ENDS, APEKI_REMNANT_LENGTH, true, 0);
+        reads = randomReads(random, 20000, PSTI_READ_ENDS);
+        compareToStringMethod(reads, PSTI_READ_ENDS, PSTI_REMNANT_LENGTH, false, MINIMUM_LENGTH);
+    }
+
+    @Test
+    public void testReadEnds() {
+        ReadTagExtractor extractor = new ReadTagExtractor(APEKI_READ_ENDS, APEKI_REMNANT_LENGTH, true, PREFERRED_LENGTH, 0);
+        String start = "ACGTTGCAACGTTGCAACGTTGCAACGTAAAA";
+        String read = start + "GCAGC" + "TTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTT";
+        assertEquals(36, extractor.extract(read.getBytes(), 0, read.length()));
+        assertEquals(TagBuilder.instance(read.substring(0, 36)).build(), extractor.tag());
+
+        // the overlapping ApeKI cut site is removed
+        read = "CAGCTGC" + read;
+        assertEquals(36 + 4, extractor.extract(read.getBytes(), 0, read.length()));
+        assertEquals(TagBuilder.instance(read.substring(3, 43)).build(), extractor.tag());
+
+        // no read end before the preferred length
+        read = start + "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA";
+        assertEquals(PREFERRED_LENGTH, extractor.extract(read.getBytes(), 0, read.length()));
+        assertEquals(TagBuilder.instance(read.substring(0, PREFERRED_LENGTH)).build(), extractor.tag());
+
+        // a base other than A, C, G or T in the tag
+        read = start + "N" + "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA";
+        assertEquals(-1, extractor.extract(read.getBytes(), 0, read.length()));
+        assertNull(extractor.tag());
+    }
+
+    /**
+     * Compares the speed of the byte method to the previous String method.  Prints the time per read.  Benchmark
+     * only, run by hand.
+     */
+    @Ignore
+    @Test
+    public void testRatesOfExtraction() {
+        List<String> reads = randomReads(new Random(99), 200000, APEKI_READ_ENDS);
+        List<byte[]> readBytes = new ArrayList<>();
+        for (String read : reads) readBytes.add(read.getBytes());
+        ReadTagExtractor extractor = new ReadTagExtractor(APEKI_READ_ENDS, APEKI_REMNANT_LENGTH, true, PREFERRED_LENGTH, MINIMUM_LENGTH);
+        TagCounter counter = new TagCounter(1, PREFERRED_LENGTH);
+        int stringTags = 0, byteTags = 0;
+        long stringTime = 0, byteTime = 0;
+        for (int trial = 0; trial < 5; trial++) {
+            long time = System.nanoTime();
+            for (String read : reads) {
+                Tag tag = stringMethod(read, APEKI_READ_ENDS, APEKI_REMNANT_LENGTH, true, MINIMUM_LENGTH);
+                if (tag != null) stringTags++;
+            }
+            stringTime += System.nanoTime() - time;
+            time = System.nanoTime();
+            for (byte[] read : readBytes) {
+                int length = extractor.extract(read, 0, read.length);
+                if (length < 0) continue;
+                counter.increment(extractor.encodedTag(), length, 0);
+                byteTags++;
+            }
+            byteTime += System.nanoTime() - time;
+        }
+        System.out.printf("String method: %d ns/read  Byte method with counting: %d ns/read%n",
+                stringTime / (5L * reads.size()), byteTime / (5L * reads.size()));
+        assertEquals(stringTags, byteTags);
+    }
+
+    private static void compareToStringMethod(List<String> reads, String[] readEnds, int remnantLength, boolean apeKI, int minimumLength) {
+        ReadTagExtractor extractor = new ReadTagExtractor(readEnds, remnantLength, apeKI, PREFERRED_LENGTH, minimumLength);
+        for (String read : reads) {
+            Tag expected = stringMethod(read, readEnds, remnantLength, apeKI, minimumLength);
+            // the read is in the middle of the array, as it is when reading chunks of a fastq file
+            byte[] bytes = ("NNNNNNNN" + read + "NNNN").getBytes();
+            int length = extractor.extract(bytes, 8, read.length());
+            if (expected == null) {
+                assertEquals(read, -1, length);
+            } else {
+                assertEquals(read, expected.seqLength(), length);
+                assertEquals(read, expected, extractor.tag());
+                long[] seq2Bit = Arrays.copyOf(extractor.encodedTag(), expected.seq2Bit().length);
+                assertArrayEquals(read, expected.seq2Bit(), seq2Bit);
+            }
+        }
+    }
+
+    /**
+     * The String method previously used in GBSSeqToTagDBPlugin and ProductionSNPCallerPluginV2
+     */
+    private static Tag stringMethod(String seq, String[] likelyReadEndStrings, int readEndCutSiteRemnantLength, boolean apeKI, int minimumLength) {
+        if (apeKI) {
+            if (seq.startsWith("CAGCTGC") || seq.startsWith("CTGCAGC")) {
+                seq = seq.substring(3, seq.length());
+            }
+        }
+        int indexOfReadEnd = -1;
+        String shortSeq = seq.substring(20);
+        for (String readEnd : likelyReadEndStrings) {
+            int indx = shortSeq.indexOf(readEnd);
+            if (indx > 0) {
+                if (indexOfReadEnd < 0 || indx < indexOfReadEnd) {
+                    indexOfReadEnd = indx;
+                }
+            }
+        }
+        int tagLen = indexOfReadEnd + 20 + readEndCutSiteRemnantLength;
+        if (indexOfReadEnd > 0 && (tagLen < PREFERRED_LENGTH)) {
+            if (tagLen < minimumLength) return null;
+            return TagBuilder.instance(seq.substring(0, tagLen)).build();
+        } else {
+            int seqEnd = Math.min(seq.length(), PREFERRED_LENGTH);
+            return TagBuilder.instance(seq.substring(0, seqEnd)).build();
+        }
+    }
+
+    /**
+     * Reads with read ends, overlapping ApeKI cut sites, and a few N and lower case bases
+     */
+    private static List<String> randomReads(Random random, int count, String[] readEnds) {
+        String bases = "ACGT";
+        List<String> reads = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int length = 70 + random.nextInt(80);
+            StringBuilder sb = new StringBuilder();
+            if (random.nextInt(10) == 0) sb.append(random.nextBoolean() ? "CAGCTGC" : "CTGCAGC");
+            while (sb.length() < length) {
+                int choice = random.nextInt(100);
+                if (choice < 3) sb.append(readEnds[random.nextInt(readEnds.length)]);
+                else if (choice == 3 && random.nextInt(10) == 0) sb.append('N');
+                else if (choice == 4 && random.nextInt(10) == 0) sb.append('g');
+                else sb.append(bases.charAt(random.nextInt(4)));
+            }
+            reads.add(sb.toString());
+        }
+        return reads;
+    }
+}
@@ -0,0 +1,157 @@
+package net.maizegenetics.analysis.gbs.v2;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import net.maizegenetics.dna.tag.Tag;
+import net.maizegenetics.dna.tag.TagBuilder;
+import net.maizegenetics.dna.tag.TaxaDistBuilder;
+import net.maizegenetics.dna.tag.TaxaDistribution;
+
+import org.junit.Test;
+
+public class TagCounterTest {
+
+    private static final int NUMBER_OF_TAXA = 20;
+    private static final String[] BASES = {"A", "C", "G", "T"};
+
+    @Test
+    public void testCountsMatchTaxaDistribution() {
+        Random random = new Random(1234);
+        List<String> sequences = randomSequences(random, 500);
+        Map<Tag, TaxaDistribution> expected = new HashMap<>();
+        List<TagCounter> fileCounters = new ArrayList<>();
+        for (int file = 0; file < 4; file++) {
+            TagCounter fileCounter = new TagCounter(NUMBER_OF_TAXA, 64);
+            for (int read = 0; read < 20000; read++) {
+                String sequence = sequences.get(random.nextInt(sequences.size()));
+                //a few taxa get enough reads to need more than one value per taxon
+                int taxon = random.nextInt(10) == 0 ? 0 : random.nextInt(NUMBER_OF_TAXA);
+                assertTrue(fileCounter.increment(sequence, taxon));
+                Tag tag = TagBuilder.instance(sequence).build();
+                TaxaDistribution distribution = expected.get(tag);
+                if (distribution == null) expected.put(tag, TaxaDistBuilder.create(NUMBER_OF_TAXA, taxon));
+                else distribution.increment(taxon);
+            }
+            fileCounters.add(fileCounter);
+        }
+        TagCounter counter = new TagCounter(NUMBER_OF_TAXA, 64);
+        counter.addAll(fileCounters);
+        assertEquals(expected.size(), counter.size());
+        assertEquals(80000, counter.totalDepth());
+        assertSameDistributions(expected, counter.toTaxaDistributionMap());
+    }
+
+    @Test
+    public void testShardsMatchSingleCounter() {
+        List<String> sequences = randomSequences(new Random(5678), 500);
+        TagCounter expected = new TagCounter(NUMBER_OF_TAXA, 64);
+        for (int thread = 0; thread < 8; thread++) {
+            Random random = new Random(thread);
+            for (int read = 0; read < 20000; read++) {
+                expected.increment(sequences.get(random.nextInt(sequences.size())), random.nextInt(10) == 0 ? 0 : random.nextInt(NUMBER_OF_TAXA));
+            }
+        }
+        TagCounter counter = new TagCounter(NUMBER_OF_TAXA, 64);
+        //every flushIfFull adds the shard to the shared counter, while other threads are counting
+        TagCounterShards shards = new TagCounterShards(counter, 0L);
+        IntStream.range(0, 8).parallel().forEach(thread -> {
+            Random random = new Random(thread);
+            TagCounter shard = shards.borrow();
+            for (int read = 0; read < 20000; read++) {
+                assertTrue(shard.increment(sequences.get(random.nextInt(sequences.size())), random.nextInt(10) == 0 ? 0 : random.nextInt(NUMBER_OF_TAXA)));
+                if (read % 1000 == 999) shards.flushIfFull(shard);
+            }
+            shards.release(shard);
+        });
+        shards.merge();
+        assertEquals(expected.size(), counter.size());
+        assertEquals(160000, counter.totalDepth());
+        assertSameDistributions(expected.toTaxaDistributionMap(), counter.toTaxaDistributionMap());
+    }
+
+    @Test
+    public void testClear() {
+        TagCounter counter = new TagCounter(NUMBER_OF_TAXA, 64);
+        counter.increment("ACGTACGTACGTACGTACGTA", 3);
+        long tableSize = counter.tableMemorySize();
+        counter.clear();
+        assertEquals(0, counter.size());
+        assertEquals(tableSize, counter.tableMemorySize());
+        counter.increment("ACGTACGTACGTACGTACGTA", 4);
+        assertEquals(1, counter.totalDepth());
+        assertEquals(1, counter.toTaxaDistributionMap().values().iterator().next().depths()[4]);
+    }
+
+    @Test
+    public void testInvalidBase() {
+        TagCounter counter = new TagCounter(NUMBER_OF_TAXA, 64);
+        assertFalse(counter.increment("ACGTNACGTACGTACGTACGT", 0));
+        assertEquals(0, counter.size());
+        assertTrue(counter.increment("ACGTACGTACGTACGTACGTA", 0));
+        assertTrue(counter.increment("ACGTACGTACGTACGTACGTAA", 0));
+        assertEquals(2, counter.size());
+    }
+
+    @Test
+    public void testAddExistingTags() {
+        Tag tag = TagBuilder.instance("ACGTTGCAACGTTGCAACGTTGCAACGTTGCAACGTTGCA").build();
+        TaxaDistribution distribution = TaxaDistBuilder.create(NUMBER_OF_TAXA, new int[]{1, 5}, new int[]{300, 2});
+        TagCounter counter = new TagCounter(NUMBER_OF_TAXA, 64);
+        counter.add(tag, distribution);
+        counter.increment(tag.sequence(), 5);
+        int[] depths = counter.toTaxaDistributionMap().get(tag).depths();
+        assertEquals(300, depths[1]);
+        assertEquals(3, depths[5]);
+    }
+
+    @Test
+    public void testRemoveTags() {
+        TagCounter counter = new TagCounter(NUMBER_OF_TAXA, 64);
+        String replicated = "AAAACCCCGGGGTTTTAAAACCCC";
+        String oneTaxon = "CCCCGGGGTTTTAAAACCCCGGGG";
+        String noReplication = "GGGGTTTTAAAACCCCGGGGTTTT";
+        for (int i = 0; i < 3; i++) {
+            counter.increment(replicated, 2);
+            counter.increment(replicated, 7);
+            counter.increment(oneTaxon, 4);
+        }
+        for (int taxon = 0; taxon < 10; taxon++) counter.increment(noReplication, taxon);
+
+        assertEquals(2, counter.removeTagsWithoutReplication(2));
+        Map<Tag, TaxaDistribution> result = counter.toTaxaDistributionMap();
+        assertEquals(1, result.size());
+        assertTrue(result.containsKey(TagBuilder.instance(replicated).build()));
+
+        assertEquals(0, counter.removeTagsByCount(6));
+        assertEquals(1, counter.removeTagsByCount(7));
+        assertEquals(0, counter.size());
+    }
+
+    private static List<String> randomSequences(Random random, int count) {
+        List<String> sequences = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int length = 20 + random.nextInt(45);
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < length; j++) sb.append(BASES[random.nextInt(4)]);
+            sequences.add(sb.toString());
+        }
+        return sequences;
+    }
+
+    private static void assertSameDistributions(Map<Tag, TaxaDistribution> expected, Map<Tag, TaxaDistribution> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (Map.Entry<Tag, TaxaDistribution> entry : expected.entrySet()) {
+            TaxaDistribution distribution = actual.get(entry.getKey());
+            assertNotNull(entry.getKey().sequence(), distribution);
+            assertTrue(entry.getKey().sequence(), Arrays.equals(entry.getValue().depths(), distribution.depths()));
+        }
+    }
+}
@@ -35,6 +35,8 @@ public class GenotypeTableStreamTest {
         GenotypeTable genotypes = ImportUtils.readFromHapmap(TutorialConstants.HAPMAP_FILENAME, null);
         testStream(genotypes);
         testTaxaStream(genotypes);
+        testIntStream(genotypes);
+        testSiteStream(genotypes);
     }
 
     @Test
@@ -51,6 +53,8 @@ public class GenotypeTableStreamTest {
         GenotypeTable filterTaxa = FilterGenotypeTable.getInstance(genotypes, taxa);
         testStream(filterTaxa);
         testTaxaStream(filterTaxa);
+        testIntStream(filterTaxa);
+        testSiteStream(filterTaxa);
 
         double minFreq = 0.1;
         double maxFreq = 0.8;
@@ -58,6 +62,8 @@ public class GenotypeTableStreamTest {
         GenotypeTable filterTaxaSites = GenotypeTableUtils.removeSitesBasedOnFreqIgnoreMissing(filterTaxa, minFreq, maxFreq, minCount);
         testStream(filterTaxaSites);
         testTaxaStream(filterTaxaSites);
+        testIntStream(filterTaxaSites);
+        testSiteStream(filterTaxaSites);
     }
 
     @Test
@@ -68,6 +74,8 @@ public class GenotypeTableStreamTest {
         GenotypeTable genotypes = ImportUtils.readGuessFormat(filename);
         testStream(genotypes);
         testTaxaStream(genotypes);
+        testIntStream(genotypes);
+        testSiteStream(genotypes);
     }
 
     @Test
@@ -83,6 +91,20 @@ public class GenotypeTableStreamTest {
         }
         GenotypeTable genotypes = GenotypeTableBuilder.getInstance(builder.build(), PositionListBuilder.getInstance(numSites), taxaBuilder.build());
         testTaxaStream(genotypes);
+        testSiteStream(genotypes);
+    }
+
+    @Test
+    public void testCombineGenotypeStream() throws IOException {
+        System.out.println("Testing Combine Genotype Stream...");
+        GenotypeTable genotypes = ImportUtils.readFromHapmap(TutorialConstants.HAPMAP_FILENAME, null);
+        GenotypeTable[] chromosomes = new GenotypeTable[genotypes.numChromosomes()];
+        for (int c = 0; c < chromosomes.length; c++) {
+            chromosomes[c] = FilterGenotypeTable.getInstance(genotypes, genotypes.chromosomes()[c]);
+        }
+        GenotypeTable combined = CombineGenotypeTable.getInstance(chromosomes);
+        testIntStream(combined);
+        testSiteStream(combined);
     }
 
     private void testStream(GenotypeTable genotypes) {
@@ -95,6 +117,31 @@ public class GenotypeTableStreamTest {
         }
     }
 
+    private void testIntStream(GenotypeTable genotypes) {
+        int[] stream = genotypes.intStreamGenotype().toArray();
+        int count = 0;
+        for (int t = 0; t < genotypes.numberOfTaxa(); t++) {
+            for (int s = 0; s < genotypes.numberOfSites(); s++) {
+                assertEquals("Genotypes don't match int stream at taxon: " + t + "  site: " + s, genotypes.genotype(t, s), (byte) stream[count++]);
+            }
+        }
+        assertEquals(count, stream.length);
+    }
+
+    private void testSiteStream(GenotypeTable genotypes) {
+        long numSites = genotypes.streamSiteGenotypes()
+                .mapToLong(block -> {
+                    int s = block.site();
+                    byte[] calls = block.genotypes();
+                    assertEquals(genotypes.numberOfTaxa(), calls.length);
+                    for (int t = 0; t < calls.length; t++) {
+                        assertEquals("Genotypes don't match site stream at taxon: " + t + "  site: " + s, genotypes.genotype(t, s), calls[t]);
+                    }
+                    return 1;
+                }).sum();
+        assertEquals(genotypes.numberOfSites(), numSites);
+    }
+
     private void testTaxaStream(GenotypeTable genotypes) {
         for (int t = 0; t < genotypes.numberOfTaxa(); t++) {
             List<Byte> stream = genotypes.streamGenotype(t).collect(Collectors.toList());
@@ -0,0 +1,131 @@
+/*
+ *  LineIndexVCFTest
+ */
+package net.maizegenetics.dna.snp;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import net.maizegenetics.constants.GeneralConstants;
+import net.maizegenetics.dna.WHICH_ALLELE;
+import net.maizegenetics.dna.map.Position;
+import net.maizegenetics.dna.snp.io.BuilderFromVCF;
+import net.maizegenetics.dna.snp.io.BuilderFromVCFLIX;
+import net.maizegenetics.dna.snp.io.LineIndexBuilder;
+import net.maizegenetics.util.Utils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares a bgzipped VCF opened with its line index to the same VCF
+ * imported by BuilderFromVCF.
+ */
+public class LineIndexVCFTest {
+
+    private static final int NUM_TAXA = 50;
+    private static final int NUM_SITES = 1234;
+
+    @Test
+    public void testLineIndexVCF() throws IOException {
+
+        System.out.println("Testing Line Index VCF...");
+
+        new File(GeneralConstants.TEMP_DIR).mkdirs();
+        String vcfFilename = GeneralConstants.TEMP_DIR + "LineIndexVCFTest.vcf";
+        String bgzipFilename = vcfFilename + ".gz";
+        String vcf = syntheticVCF(new Random(1234));
+        try (Writer writer = Utils.getBufferedWriter(vcfFilename)) {
+            writer.write(vcf);
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new BlockCompressedOutputStream(bgzipFilename)))) {
+            writer.write(vcf);
+        }
+
+        LineIndexBuilder.buildVCFIndex(bgzipFilename);
+
+        GenotypeTable expected = BuilderFromVCF.getBuilder(vcfFilename).build();
+        GenotypeTable lixGenotype = BuilderFromVCFLIX.build(bgzipFilename);
+
+        assertEquals(NUM_SITES, lixGenotype.numberOfSites());
+        assertEquals(expected.taxa(), lixGenotype.taxa());
+        for (int s = 0; s < NUM_SITES; s++) {
+            Position expectedPosition = expected.positions().get(s);
+            Position position = lixGenotype.positions().get(s);
+            assertEquals(expectedPosition, position);
+            assertEquals(expectedPosition.getSNPID(), position.getSNPID());
+            assertEquals(expectedPosition.getKnownVariants().length, position.getKnownVariants().length);
+            assertEquals(expectedPosition.getAllele(WHICH_ALLELE.Reference), position.getAllele(WHICH_ALLELE.Reference));
+        }
+
+        // access sites out of order, as a region filter would
+        Random random = new Random(99);
+        for (int i = 0; i < 2000; i++) {
+            int site = random.nextInt(NUM_SITES);
+            int taxon = random.nextInt(NUM_TAXA);
+            assertEquals("site: " + site + " taxon: " + taxon, expected.genotype(taxon, site), lixGenotype.genotype(taxon, site));
+        }
+
+        AlignmentTestingUtils.alignmentsEqual(expected, lixGenotype);
+
+    }
+
+    @Test
+    public void testBadLineFailsRequest() throws IOException {
+
+        new File(GeneralConstants.TEMP_DIR).mkdirs();
+        String bgzipFilename = GeneralConstants.TEMP_DIR + "LineIndexVCFTestBadLine.vcf.gz";
+        String vcf = syntheticVCF(new Random(4321));
+        // drop the last sample of the last site
+        int lastTab = vcf.lastIndexOf('\t');
+        vcf = vcf.substring(0, lastTab) + "\n";
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new BlockCompressedOutputStream(bgzipFilename)))) {
+            writer.write(vcf);
+        }
+
+        LineIndexBuilder.buildVCFIndex(bgzipFilename);
+        GenotypeTable lixGenotype = BuilderFromVCFLIX.build(bgzipFilename);
+
+        // the block is released after the failure, so asking again fails again rather than waiting
+        for (int i = 0; i < 2; i++) {
+            try {
+                lixGenotype.genotypeAllTaxa(NUM_SITES - 1);
+                fail("Expected IllegalStateException for site with a missing sample");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+
+    }
+
+    private static String syntheticVCF(Random random) {
+        String[] bases = {"A", "C", "G", "T"};
+        String[] gts = {"0/0", "0/1", "1/1", "0|1", "./.", "1/0"};
+        StringBuilder sb = new StringBuilder();
+        sb.append("##fileformat=VCFv4.2\n");
+        sb.append("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n");
+        sb.append("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT");
+        for (int t = 0; t < NUM_TAXA; t++) {
+            sb.append("\tTaxon").append(t);
+        }
+        sb.append('\n');
+        for (int s = 0; s < NUM_SITES; s++) {
+            int chr = s < NUM_SITES / 2 ? 1 : 2;
+            int ref = random.nextInt(4);
+            int alt = (ref + 1 + random.nextInt(3)) % 4;
+            sb.append(chr).append('\t').append(s * 10 + 1).append('\t');
+            sb.append(random.nextInt(5) == 0 ? "." : "S" + chr + "_" + (s * 10 + 1)).append('\t');
+            sb.append(bases[ref]).append('\t').append(bases[alt]).append("\t.\tPASS\t.\tGT:GQ");
+            for (int t = 0; t < NUM_TAXA; t++) {
+                sb.append('\t').append(gts[random.nextInt(gts.length)]).append(":99");
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ *  MappedGenotypeTest
+ */
+package net.maizegenetics.dna.snp;
+
+import net.maizegenetics.constants.GeneralConstants;
+import net.maizegenetics.constants.TutorialConstants;
+import net.maizegenetics.dna.snp.io.MappedGenotypeIO;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips the tutorial hapmap through the memory mapped binary genotype
+ * format in both layouts.
+ */
+public class MappedGenotypeTest {
+
+    private static final String TEMP_DIR = GeneralConstants.TEMP_DIR + "MappedGenotypeTest/";
+
+    @BeforeClass
+    public static void setUpClass() {
+        new File(TEMP_DIR).mkdirs();
+    }
+
+    @Test
+    public void testTaxonMajor() {
+        testRoundTrip(false);
+    }
+
+    @Test
+    public void testSiteMajor() {
+        testRoundTrip(true);
+    }
+
+    private void testRoundTrip(boolean siteMajor) {
+
+        System.out.println("Testing Mapped Genotype site major: " + siteMajor);
+
+        GenotypeTable expected = ImportUtils.readFromHapmap(TutorialConstants.HAPMAP_FILENAME);
+
+        String filename = ExportUtils.writeToMappedGenotype(expected, TEMP_DIR + "mdp_genotype_" + (siteMajor ? "site" : "taxon"), siteMajor);
+        assertTrue(filename.endsWith(MappedGenotypeIO.FILE_EXT_MAPPED_GENOTYPE));
+
+        GenotypeTable mapped = ImportUtils.readFromMappedGenotype(filename);
+        AlignmentTestingUtils.alignmentsEqual(expected, mapped);
+
+        assertArrayEquals(expected.genotypeAllTaxa(17), mapped.genotypeAllTaxa(17));
+        assertArrayEquals(expected.genotypeAllSites(5), mapped.genotypeAllSites(5));
+        assertArrayEquals(expected.genotypeRange(3, 10, 200), mapped.genotypeRange(3, 10, 200));
+
+        // concurrent readers
+        long expectedHets = IntStream.range(0, expected.numberOfSites()).mapToLong(expected::heterozygousCount).sum();
+        long mappedHets = IntStream.range(0, mapped.numberOfSites()).parallel().mapToLong(mapped::heterozygousCount).sum();
+        assertEquals(expectedHets, mappedHets);
+
+    }
+
+}
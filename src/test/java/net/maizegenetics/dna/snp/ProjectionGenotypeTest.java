@@ -10,7 +10,12 @@ import net.maizegenetics.taxa.Taxon;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.*;
+
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NavigableSet;
 import java.util.Random;
 import java.util.TreeSet;
@@ -172,6 +177,71 @@ public class ProjectionGenotypeTest {
 
     }
 
+    @Test
+    public void testBulkAccess() throws Exception {
+        System.out.println("testBulkAccess");
+        GenotypeTable base=BuilderFromHapMap.getBuilder(inFile).build();
+        ProjectionBuilder pb=new ProjectionBuilder(base);
+        Random r=new Random(42);
+        int numTaxa=50;
+        List<NavigableSet<DonorHaplotypes>> breakPoints=new ArrayList<>();
+        for (int i = 0; i < numTaxa; i++) {
+            NavigableSet<DonorHaplotypes> bp=new TreeSet<>();
+            for (Chromosome chromosome : base.chromosomes()) {
+                int[] se=base.firstLastSiteOfChromosome(chromosome);
+                //several donor segments per chromosome, with gaps between some of them
+                int start=se[0]+r.nextInt(3);
+                while (start<=se[1]) {
+                    int end=Math.min(se[1], start+r.nextInt(200));
+                    int donor1=r.nextInt(base.numberOfTaxa());
+                    int donor2=r.nextBoolean() ? donor1 : r.nextInt(base.numberOfTaxa());
+                    bp.add(new DonorHaplotypes(chromosome,base.chromosomalPosition(start),base.chromosomalPosition(end),donor1,donor2));
+                    start=end+1+(r.nextInt(4)==0 ? r.nextInt(20) : 0);
+                }
+            }
+            breakPoints.add(bp);
+            pb.addTaxon(new Taxon("T"+i),bp);
+        }
+        GenotypeTable proj=pb.build();
+
+        //expected genotypes straight from the donor haplotypes
+        byte[][] expected=new byte[numTaxa][base.numberOfSites()];
+        for (int t = 0; t < numTaxa; t++) {
+            Arrays.fill(expected[t], GenotypeTable.UNKNOWN_DIPLOID_ALLELE);
+            for (DonorHaplotypes dh : breakPoints.get(t)) {
+                for (int s = 0; s < base.numberOfSites(); s++) {
+                    if(!base.chromosome(s).equals(dh.getChromosome())) continue;
+                    int position=base.chromosomalPosition(s);
+                    if(position<dh.getStartPosition() || position>dh.getEndPosition()) continue;
+                    expected[t][s]=GenotypeTableUtils.getUnphasedDiploidValueNoHets(base.genotype(dh.getParent1index(),s),
+                            base.genotype(dh.getParent2index(),s));
+                }
+            }
+        }
+
+        for (int t = 0; t < numTaxa; t++) {
+            assertArrayEquals(expected[t], proj.genotypeAllSites(t));
+            int start=r.nextInt(base.numberOfSites());
+            int end=start+r.nextInt(base.numberOfSites()-start+1);
+            assertArrayEquals(Arrays.copyOfRange(expected[t], start, end), proj.genotypeRange(t, start, end));
+            for (int s = 0; s < base.numberOfSites(); s++) {
+                assertEquals(expected[t][s], proj.genotype(t, s));
+            }
+        }
+        for (int s = 0; s < base.numberOfSites(); s++) {
+            byte[] allTaxa=proj.genotypeAllTaxa(s);
+            for (int t = 0; t < numTaxa; t++) {
+                assertEquals(expected[t][s], allTaxa[t]);
+            }
+        }
+        proj.genotypeMatrix().transposeData(true);
+        for (int s = 0; s < base.numberOfSites(); s++) {
+            for (int t = 0; t < numTaxa; t++) {
+                assertEquals(expected[t][s], proj.genotype(t, s));
+            }
+        }
+    }
+
     private double scoreRateOfAccessingBases(GenotypeTable a, GenotypeTable b) {
         long same=0, diff=0;
         long time=System.nanoTime();
@@ -0,0 +1,120 @@
+package net.maizegenetics.dna.snp.genotypecall;
+
+import net.maizegenetics.constants.TutorialConstants;
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.ImportUtils;
+import net.maizegenetics.dna.snp.NucleotideAlignmentConstants;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests packing of biallelic genotypes by GenotypeCallTableBuilder.
+ */
+public class BiallelicGenotypeCallTableTest {
+
+    // More than one 64 bit word of sites per taxon
+    private static final int NUM_TAXA = 13;
+    private static final int NUM_SITES = 150;
+
+    @Test
+    public void testBiallelicIsPacked() {
+
+        GenotypeCallTable packed = biallelic().packBiallelic(true).build();
+        GenotypeCallTable unpacked = biallelic().build();
+        assertTrue(packed instanceof BiallelicGenotypeCallTable);
+        assertFalse(unpacked instanceof BiallelicGenotypeCallTable);
+        assertEqualGenotypes(unpacked, packed);
+
+    }
+
+    @Test
+    public void testNotBiallelicIsNotPacked() {
+
+        // third allele at first site
+        String[] triallelic = new String[]{"AC", "CC", "GC"};
+        GenotypeCallTableBuilder builder = GenotypeCallTableBuilder.getInstance(3, 2).setBases(triallelic).packBiallelic(true);
+        assertFalse(builder.build() instanceof BiallelicGenotypeCallTable);
+
+        // heterozygous calls in both orders
+        builder = GenotypeCallTableBuilder.getInstance(2, 1).packBiallelic(true);
+        builder.setBase(0, 0, (byte) 0x01);
+        builder.setBase(1, 0, (byte) 0x10);
+        assertFalse(builder.build() instanceof BiallelicGenotypeCallTable);
+
+        // partially unknown call
+        builder = GenotypeCallTableBuilder.getInstance(2, 1).packBiallelic(true);
+        builder.setBase(0, 0, (byte) 0x00);
+        builder.setBase(1, 0, (byte) 0x0F);
+        assertFalse(builder.build() instanceof BiallelicGenotypeCallTable);
+
+        // non-nucleotide encoding
+        builder = GenotypeCallTableBuilder.getInstance(1, 1).alleleEncodings(new String[][]{{"X", "Y"}}).packBiallelic(true);
+        builder.setBase(0, 0, (byte) 0x00);
+        assertFalse(builder.build() instanceof BiallelicGenotypeCallTable);
+
+    }
+
+    @Test
+    public void testHapmap() {
+
+        GenotypeTable genotypes = ImportUtils.readFromHapmap(TutorialConstants.HAPMAP_FILENAME);
+        GenotypeCallTable expected = GenotypeCallTableBuilder.getInstanceCopy(genotypes.genotypeMatrix()).build();
+        GenotypeCallTable actual = GenotypeCallTableBuilder.getInstanceCopy(genotypes.genotypeMatrix()).packBiallelic(true).build();
+        System.out.println("testHapmap: packed: " + (actual instanceof BiallelicGenotypeCallTable));
+        assertEqualGenotypes(expected, actual);
+
+    }
+
+    private static GenotypeCallTableBuilder biallelic() {
+        Random random = new Random(42);
+        GenotypeCallTableBuilder builder = GenotypeCallTableBuilder.getInstance(NUM_TAXA, NUM_SITES);
+        for (int s = 0; s < NUM_SITES; s++) {
+            byte first = (byte) random.nextInt(4);
+            byte second = (byte) ((first + 1 + random.nextInt(3)) % 4);
+            byte[] values = new byte[]{
+                (byte) ((first << 4) | first),
+                (byte) ((first << 4) | second),
+                (byte) ((second << 4) | second),
+                GenotypeTable.UNKNOWN_DIPLOID_ALLELE
+            };
+            for (int t = 0; t < NUM_TAXA; t++) {
+                builder.setBase(t, s, values[random.nextInt(values.length)]);
+            }
+        }
+        return builder;
+    }
+
+    private static void assertEqualGenotypes(GenotypeCallTable expected, GenotypeCallTable actual) {
+
+        int numTaxa = expected.numberOfTaxa();
+        int numSites = expected.numberOfSites();
+        assertEquals(numTaxa, actual.numberOfTaxa());
+        assertEquals(numSites, actual.numberOfSites());
+
+        for (int t = 0; t < numTaxa; t++) {
+            for (int s = 0; s < numSites; s++) {
+                assertEquals(expected.genotype(t, s), actual.genotype(t, s));
+                assertEquals(expected.isHeterozygous(t, s), actual.isHeterozygous(t, s));
+            }
+            assertArrayEquals(expected.genotypeForAllSites(t), actual.genotypeForAllSites(t));
+            assertArrayEquals(expected.genotypeForSiteRange(t, 3, numSites - 1), actual.genotypeForSiteRange(t, 3, numSites - 1));
+            assertEquals(expected.genotypeAsStringRow(t), actual.genotypeAsStringRow(t));
+            assertEquals(expected.heterozygousCountForTaxon(t), actual.heterozygousCountForTaxon(t));
+            assertEquals(expected.totalNonMissingForTaxon(t), actual.totalNonMissingForTaxon(t));
+            assertEquals(expected.totalGametesNonMissingForTaxon(t), actual.totalGametesNonMissingForTaxon(t));
+        }
+
+        for (int s = 0; s < numSites; s++) {
+            assertArrayEquals(expected.genotypeForAllTaxa(s), actual.genotypeForAllTaxa(s));
+            assertEquals(expected.majorAllele(s), actual.majorAllele(s));
+            assertEquals(expected.minorAllele(s), actual.minorAllele(s));
+        }
+
+        assertEquals(NucleotideAlignmentConstants.NUMBER_NUCLEOTIDE_ALLELES, actual.maxNumAlleles());
+
+    }
+
+}
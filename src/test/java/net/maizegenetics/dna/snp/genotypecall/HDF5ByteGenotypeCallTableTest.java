@@ -0,0 +1,192 @@
+package net.maizegenetics.dna.snp.genotypecall;
+
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+import com.google.common.cache.CacheStats;
+import net.maizegenetics.constants.GeneralConstants;
+import net.maizegenetics.constants.TutorialConstants;
+import net.maizegenetics.dna.snp.ExportUtils;
+import net.maizegenetics.dna.map.Chromosome;
+import net.maizegenetics.dna.map.GeneralPosition;
+import net.maizegenetics.dna.map.PositionListBuilder;
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.GenotypeTableBuilder;
+import net.maizegenetics.dna.snp.ImportUtils;
+import net.maizegenetics.taxa.TaxaListBuilder;
+import net.maizegenetics.taxa.Taxon;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests byte bounded caches and read ahead of HDF5ByteGenotypeCallTable.
+ */
+public class HDF5ByteGenotypeCallTableTest {
+
+    private static final String HDF5_FILE = GeneralConstants.TEMP_DIR + "HDF5ByteGenotypeCallTableTest.h5";
+    private static final String BLOCKS_HDF5_FILE = GeneralConstants.TEMP_DIR + "HDF5ByteGenotypeCallTableTestBlocks.h5";
+
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int NUM_BLOCKS = 5;
+    private static final int NUM_BLOCK_TAXA = 3;
+    private static final byte[] HOMOZYGOUS = new byte[]{0x00, 0x11, 0x22, 0x33};
+
+    private static GenotypeTable myExpected;
+
+    @BeforeClass
+    public static void setUpClass() {
+        new File(GeneralConstants.TEMP_DIR).mkdirs();
+        new File(HDF5_FILE).delete();
+        myExpected = ImportUtils.readFromHapmap(TutorialConstants.HAPMAP_FILENAME);
+        ExportUtils.writeGenotypeHDF5(myExpected, HDF5_FILE);
+
+        // several genotype blocks per taxon, so sequential reads can read ahead
+        new File(BLOCKS_HDF5_FILE).delete();
+        int numSites = NUM_BLOCKS * BLOCK_SIZE;
+        GenotypeCallTableBuilder builder = GenotypeCallTableBuilder.getInstance(NUM_BLOCK_TAXA, numSites);
+        TaxaListBuilder taxa = new TaxaListBuilder();
+        for (int taxon = 0; taxon < NUM_BLOCK_TAXA; taxon++) {
+            taxa.add(new Taxon("T" + taxon));
+            for (int site = 0; site < numSites; site++) {
+                builder.setBase(taxon, site, blockGenotype(taxon, site));
+            }
+        }
+        PositionListBuilder positions = new PositionListBuilder();
+        Chromosome chr = Chromosome.instance(1);
+        for (int site = 0; site < numSites; site++) {
+            positions.add(new GeneralPosition.Builder(chr, site + 1).build());
+        }
+        ExportUtils.writeGenotypeHDF5(GenotypeTableBuilder.getInstance(builder.build(), positions.build(), taxa.build()), BLOCKS_HDF5_FILE);
+    }
+
+    private static byte blockGenotype(int taxon, int site) {
+        return HOMOZYGOUS[(taxon + site / 7) % HOMOZYGOUS.length];
+    }
+
+    @Test
+    public void testSmallCache() {
+        IHDF5Reader reader = HDF5Factory.openForReading(HDF5_FILE);
+        try {
+            // 1 MB holds fewer blocks than there are taxa
+            HDF5ByteGenotypeCallTable genotypes = HDF5ByteGenotypeCallTable.getInstance(reader, 1, true);
+            for (int taxon = 0; taxon < myExpected.numberOfTaxa(); taxon++) {
+                for (int site = 0; site < myExpected.numberOfSites(); site += 7) {
+                    assertEquals(myExpected.genotype(taxon, site), genotypes.genotype(taxon, site));
+                }
+            }
+            CacheStats stats = genotypes.cacheStats().get("HDF5 genotypes");
+            assertTrue(stats.evictionCount() > 0);
+            assertTrue(stats.hitCount() > 0);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testLargeCache() {
+        IHDF5Reader reader = HDF5Factory.openForReading(HDF5_FILE);
+        try {
+            HDF5ByteGenotypeCallTable genotypes = HDF5ByteGenotypeCallTable.getInstance(reader, 256, true);
+            for (int taxon = 0; taxon < myExpected.numberOfTaxa(); taxon++) {
+                assertArrayEquals(myExpected.genotypeAllSites(taxon), genotypes.genotypeForAllSites(taxon));
+            }
+            for (int taxon = 0; taxon < myExpected.numberOfTaxa(); taxon++) {
+                genotypes.genotypeForAllSites(taxon);
+            }
+            CacheStats stats = genotypes.cacheStats().get("HDF5 genotypes");
+            assertEquals(0, stats.evictionCount());
+            assertEquals(myExpected.numberOfTaxa(), stats.loadCount());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testDefaultCachesAreShared() {
+        IHDF5Reader first = HDF5Factory.openForReading(HDF5_FILE);
+        IHDF5Reader second = HDF5Factory.openForReading(BLOCKS_HDF5_FILE);
+        try {
+            HDF5ByteGenotypeCallTable firstGenotypes = HDF5ByteGenotypeCallTable.getInstance(first, 0, false);
+            HDF5ByteGenotypeCallTable secondGenotypes = HDF5ByteGenotypeCallTable.getInstance(second, 0, false);
+            assertEquals(myExpected.genotype(0, 0), firstGenotypes.genotype(0, 0));
+            assertEquals(blockGenotype(0, 0), secondGenotypes.genotype(0, 0));
+            assertTrue(firstGenotypes.isCached(0, 0));
+            assertTrue(secondGenotypes.isCached(0, 0));
+            // both tables report the one process wide cache
+            CacheStats stats = firstGenotypes.cacheStats().get("HDF5 genotypes");
+            assertEquals(stats, secondGenotypes.cacheStats().get("HDF5 genotypes"));
+            assertTrue(stats.loadCount() >= 2);
+
+            // a table with its own size does not use the shared cache
+            HDF5ByteGenotypeCallTable ownCache = HDF5ByteGenotypeCallTable.getInstance(first, 256, false);
+            assertFalse(ownCache.isCached(0, 0));
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void testReadAhead() throws InterruptedException {
+        IHDF5Reader reader = HDF5Factory.openForReading(BLOCKS_HDF5_FILE);
+        try {
+            HDF5ByteGenotypeCallTable genotypes = HDF5ByteGenotypeCallTable.getInstance(reader, 256, true);
+
+            // scanning the first two blocks of a taxon reads the third block ahead, and only that
+            for (int site = 0; site < 2 * BLOCK_SIZE; site++) {
+                assertEquals(blockGenotype(1, site), genotypes.genotype(1, site));
+            }
+            waitForReadAhead(genotypes);
+            assertTrue(genotypes.isCached(1, 2 * BLOCK_SIZE));
+            for (int block = 3; block < NUM_BLOCKS; block++) {
+                assertFalse(genotypes.isCached(1, block * BLOCK_SIZE));
+            }
+            for (int taxon = 0; taxon < NUM_BLOCK_TAXA; taxon++) {
+                if (taxon != 1) {
+                    assertFalse(genotypes.isCached(taxon, 0));
+                }
+            }
+            CacheStats stats = genotypes.cacheStats().get("HDF5 genotypes");
+            assertEquals(2, stats.loadCount());
+
+            // the block read ahead is a hit, and continuing the scan reads ahead one block at a time
+            byte[] all = genotypes.genotypeForSiteRange(1, 2 * BLOCK_SIZE, NUM_BLOCKS * BLOCK_SIZE);
+            for (int site = 2 * BLOCK_SIZE; site < NUM_BLOCKS * BLOCK_SIZE; site++) {
+                assertEquals(blockGenotype(1, site), all[site - 2 * BLOCK_SIZE]);
+            }
+            waitForReadAhead(genotypes);
+            for (int block = 0; block < NUM_BLOCKS; block++) {
+                assertTrue(genotypes.isCached(1, block * BLOCK_SIZE));
+            }
+            assertFalse(genotypes.isCached(0, 0));
+            assertFalse(genotypes.isCached(2, 0));
+        } finally {
+            reader.close();
+        }
+
+        reader = HDF5Factory.openForReading(BLOCKS_HDF5_FILE);
+        try {
+            HDF5ByteGenotypeCallTable genotypes = HDF5ByteGenotypeCallTable.getInstance(reader, 256, false);
+            byte[] scanned = genotypes.genotypeForSiteRange(0, 0, 2 * BLOCK_SIZE);
+            for (int site = 0; site < 2 * BLOCK_SIZE; site++) {
+                assertEquals(blockGenotype(0, site), scanned[site]);
+            }
+            assertEquals(0, genotypes.numPendingReadAhead());
+            assertFalse(genotypes.isCached(0, 2 * BLOCK_SIZE));
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void waitForReadAhead(HDF5ByteGenotypeCallTable genotypes) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (genotypes.numPendingReadAhead() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, genotypes.numPendingReadAhead());
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * ParallelSiteWriterTest
+ */
+package net.maizegenetics.dna.snp.io;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import net.maizegenetics.util.Tuple;
+import net.maizegenetics.util.Utils;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that sites formatted by several threads are written in order, plain
+ * and block gzipped, and that the line index written at the same time points
+ * to the right lines.
+ */
+public class ParallelSiteWriterTest {
+
+    private static final int NUM_SITES = 20000;
+
+    private static final String HEADER = "##fileformat=VCFv4.0\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tA\tB\n";
+
+    @Test
+    public void testPlainFile() throws Exception {
+        File file = File.createTempFile("ParallelSiteWriterTest", ".vcf");
+        file.deleteOnExit();
+        new ParallelSiteWriter(file.getAbsolutePath(), NUM_SITES, ParallelSiteWriterTest::formatLine)
+                .header(HEADER)
+                .numThreads(4)
+                .sitesPerBlock(37)
+                .write();
+        checkLines(file.getAbsolutePath());
+    }
+
+    @Test
+    public void testBGZFFile() throws Exception {
+        File file = File.createTempFile("ParallelSiteWriterTest", ".vcf.gz");
+        file.deleteOnExit();
+        new ParallelSiteWriter(file.getAbsolutePath(), NUM_SITES, ParallelSiteWriterTest::formatLine)
+                .header(HEADER)
+                .numThreads(4)
+                .write();
+        checkLines(file.getAbsolutePath());
+    }
+
+    @Test
+    public void testLineIndex() throws Exception {
+        // number of sites not a multiple of the index interval, and blocks spanning several BGZF blocks
+        int numSites = NUM_SITES + 3;
+        File file = File.createTempFile("ParallelSiteWriterTest", ".vcf.gz");
+        file.deleteOnExit();
+        String filename = file.getAbsolutePath();
+        new File(filename + LineIndexBuilder.LINE_INDEX_FILE_EXTENSION).deleteOnExit();
+        new ParallelSiteWriter(filename, numSites, ParallelSiteWriterTest::formatLine)
+                .header(HEADER)
+                .numThreads(3)
+                .sitesPerBlock(4001)
+                .lineIndex(0, LineIndexBuilder.NUM_VCF_COLUMNS_IN_INDEX)
+                .write();
+
+        Tuple<LineIndex, String[]> written = LineIndexBuilder.readIndex(filename + LineIndexBuilder.LINE_INDEX_FILE_EXTENSION);
+        LineIndex index = written.x;
+        String[] columns = written.y;
+        assertEquals(LineIndexBuilder.MAGIC_NUMBER, index.magicNumber());
+        assertEquals('#', index.commentChar());
+        assertEquals(numSites, columns.length);
+        for (int site = 0; site < numSites; site++) {
+            assertEquals("1\t" + (site + 1) + "\tS1_" + (site + 1) + "\tA\tC", columns[site]);
+        }
+
+        try (BlockCompressedInputStream input = new BlockCompressedInputStream(file)) {
+            for (int i = 0; i * LineIndex.NUM_LINES_PER_INTERVAL < numSites; i++) {
+                input.seek(index.virtualOffset(i));
+                assertEquals(line(i * LineIndex.NUM_LINES_PER_INTERVAL).trim(), input.readLine());
+            }
+        }
+
+        // same index as built from the file afterwards
+        LineIndexBuilder.buildVCFIndex(filename);
+        Tuple<LineIndex, String[]> built = LineIndexBuilder.readIndex(filename + LineIndexBuilder.LINE_INDEX_FILE_EXTENSION);
+        assertArrayEquals(built.y, columns);
+        assertEquals(built.x.numVirtualOffsets(), index.numVirtualOffsets());
+    }
+
+    private static void checkLines(String filename) throws Exception {
+        try (BufferedReader reader = Utils.getBufferedReader(filename)) {
+            for (String headerLine : HEADER.split("\n")) {
+                assertEquals(headerLine, reader.readLine());
+            }
+            for (int site = 0; site < NUM_SITES; site++) {
+                assertEquals(line(site).trim(), reader.readLine());
+            }
+            assertNull(reader.readLine());
+        }
+    }
+
+    private static String line(int site) {
+        StringBuilder builder = new StringBuilder();
+        formatLine(site, builder);
+        return builder.toString();
+    }
+
+    private static void formatLine(int site, StringBuilder builder) {
+        builder.append("1\t").append(site + 1).append("\tS1_").append(site + 1).append("\tA\tC\t.\tPASS\t.\tGT");
+        for (int taxon = 0; taxon < 2; taxon++) {
+            builder.append('\t').append((site + taxon) % 3 == 0 ? "0/0" : "0/1");
+        }
+        builder.append('\n');
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ *  PlinkBedIOTest
+ */
+package net.maizegenetics.dna.snp.io;
+
+import net.maizegenetics.constants.GeneralConstants;
+import net.maizegenetics.constants.TutorialConstants;
+import net.maizegenetics.dna.snp.ExportUtils;
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.GenotypeTableUtils;
+import net.maizegenetics.dna.snp.ImportUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips the tutorial hapmap through PLINK binary genotype files.
+ * Genotypes with an unknown allele, or with alleles other than the two
+ * written for a site, come back as missing.
+ */
+public class PlinkBedIOTest {
+
+    private static final String TEMP_DIR = GeneralConstants.TEMP_DIR + "PlinkBedIOTest/";
+
+    @BeforeClass
+    public static void setUpClass() {
+        new File(TEMP_DIR).mkdirs();
+    }
+
+    @Test
+    public void testRoundTrip() {
+
+        GenotypeTable original = ImportUtils.readFromHapmap(TutorialConstants.HAPMAP_FILENAME);
+
+        String filename = ExportUtils.writeToPlinkBed(original, TEMP_DIR + "mdp_genotype", null);
+        assertTrue(filename.endsWith(PlinkBedIO.FILE_EXT_PLINK_BED));
+        assertTrue(PlinkBedIO.isPlinkBed(filename));
+        assertTrue(PlinkBedIO.isPlinkBed(PlinkBedIO.prefix(filename) + PlinkBedIO.FILE_EXT_PLINK_FAM));
+
+        GenotypeTable plink = ImportUtils.readFromPlinkBed(filename);
+        assertEquals(original.numberOfTaxa(), plink.numberOfTaxa());
+        assertEquals(original.numberOfSites(), plink.numberOfSites());
+        for (int t = 0; t < original.numberOfTaxa(); t++) {
+            assertEquals(original.taxaName(t), plink.taxaName(t));
+        }
+
+        int[] counts = new int[16];
+        for (int s = 0; s < original.numberOfSites(); s++) {
+            assertEquals(original.chromosomeName(s), plink.chromosomeName(s));
+            assertEquals(original.chromosomalPosition(s), plink.chromosomalPosition(s));
+            assertEquals(original.siteName(s), plink.siteName(s));
+
+            byte[] expected = original.genotypeAllTaxa(s);
+            byte[] alleles = PlinkBedIO.twoMostCommonAlleles(expected, counts);
+            byte[] allTaxa = plink.genotypeAllTaxa(s);
+            for (int t = 0; t < original.numberOfTaxa(); t++) {
+                byte[] diploid = GenotypeTableUtils.getDiploidValues(expected[t]);
+                boolean biallelic = diploid[0] != GenotypeTable.UNKNOWN_ALLELE && diploid[1] != GenotypeTable.UNKNOWN_ALLELE
+                        && (diploid[0] == alleles[0] || diploid[0] == alleles[1])
+                        && (diploid[1] == alleles[0] || diploid[1] == alleles[1]);
+                byte value = biallelic ? GenotypeTableUtils.getUnphasedDiploidValue(diploid[0], diploid[1]) : GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+                assertEquals(value, plink.genotype(t, s));
+                assertEquals(value, allTaxa[t]);
+            }
+        }
+
+        assertArrayEquals(plink.genotypeAllTaxa(17), plink.genotypeMatrix().genotypeForAllTaxa(17));
+        byte[] taxon = plink.genotypeAllSites(5);
+        for (int s = 0; s < plink.numberOfSites(); s++) {
+            assertEquals(plink.genotype(5, s), taxon[s]);
+        }
+
+        // writing the PLINK genotypes again gives the same genotypes
+        String again = ExportUtils.writeToPlinkBed(plink, TEMP_DIR + "mdp_genotype_again.bed", null);
+        GenotypeTable plinkAgain = ImportUtils.readFromPlinkBed(again);
+        for (int s = 0; s < plink.numberOfSites(); s++) {
+            assertArrayEquals(plink.genotypeAllTaxa(s), plinkAgain.genotypeAllTaxa(s));
+        }
+
+    }
+
+}
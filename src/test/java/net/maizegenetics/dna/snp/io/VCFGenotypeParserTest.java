@@ -0,0 +1,173 @@
+package net.maizegenetics.dna.snp.io;
+
+import com.google.common.base.Splitter;
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.GenotypeTableUtils;
+import net.maizegenetics.dna.snp.NucleotideAlignmentConstants;
+import net.maizegenetics.dna.snp.score.AlleleDepthUtil;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares VCFGenotypeParser with the Splitter based parsing it replaced in
+ * ProcessVCFBlock on a synthetic 10k sample VCF. testTiming times both, but is
+ * ignored so it does not run with the suite.
+ */
+public class VCFGenotypeParserTest {
+
+    private static final int NUM_TAXA = 10000;
+    private static final int NUM_SITES = 200;
+    private static final byte[] ALLELES = new byte[]{NucleotideAlignmentConstants.A_ALLELE, NucleotideAlignmentConstants.C_ALLELE, NucleotideAlignmentConstants.T_ALLELE};
+
+    @Test
+    public void testMatchesSplitterParsing() {
+        String[] lines = syntheticSampleColumns(NUM_SITES, NUM_TAXA, 1234);
+        byte[][] expectedGenotypes = new byte[NUM_TAXA][NUM_SITES];
+        byte[][][] expectedDepths = new byte[NUM_TAXA][6][NUM_SITES];
+        byte[][] genotypes = new byte[NUM_TAXA][NUM_SITES];
+        byte[][][] depths = new byte[NUM_TAXA][6][NUM_SITES];
+        for (int s = 0; s < NUM_SITES; s++) {
+            splitterParse(lines[s], s, ALLELES, 1, expectedGenotypes, expectedDepths);
+            int numParsed = VCFGenotypeParser.parseSamples(lines[s], 0, s, ALLELES, 1, genotypes, depths);
+            assertEquals(NUM_TAXA, numParsed);
+        }
+        for (int t = 0; t < NUM_TAXA; t++) {
+            assertArrayEquals(expectedGenotypes[t], genotypes[t]);
+            for (int a = 0; a < 6; a++) {
+                assertArrayEquals(expectedDepths[t][a], depths[t][a]);
+            }
+        }
+    }
+
+    @Test
+    public void testGenotypeOnly() {
+        byte[][] genotypes = new byte[4][1];
+        VCFGenotypeParser.parseSamples("0/0:3,0\t0|1:2,2\t./.:0,0\t1:0,5", 0, 0, ALLELES, -1, genotypes, null);
+        assertEquals(GenotypeTableUtils.getDiploidValue(ALLELES[0], ALLELES[0]), genotypes[0][0]);
+        assertEquals(GenotypeTableUtils.getDiploidValue(ALLELES[0], ALLELES[1]), genotypes[1][0]);
+        assertEquals(GenotypeTable.UNKNOWN_DIPLOID_ALLELE, genotypes[2][0]);
+        assertEquals(GenotypeTableUtils.getDiploidValue(ALLELES[1], ALLELES[1]), genotypes[3][0]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAlleleOutOfRange() {
+        VCFGenotypeParser.parseSamples("0/5", 0, 0, ALLELES, -1, new byte[1][1], null);
+    }
+
+    @Test
+    public void testParseSite() {
+        String[] lines = syntheticSampleColumns(1, 100, 7);
+        byte[] alleles = VCFGenotypeParser.alleles(VCFGenotypeParser.variants("A", "C,T"));
+        assertArrayEquals(ALLELES, alleles);
+        byte[][] expected = new byte[100][1];
+        VCFGenotypeParser.parseSamples(lines[0], 0, 0, alleles, -1, expected, null);
+        byte[] genotypes = new byte[100];
+        String line = "1\t100\tS1_100\tA\tC,T\t.\tPASS\t.\tGT:AD:GQ\t" + lines[0];
+        assertEquals(100, VCFGenotypeParser.parseSite(line, 3, 4, 8, 9, genotypes));
+        for (int t = 0; t < 100; t++) {
+            assertEquals(expected[t][0], genotypes[t]);
+        }
+    }
+
+    /**
+     * Benchmark only, run by hand.  Prints timings and checks nothing.
+     */
+    @Ignore
+    @Test
+    public void testTiming() {
+        String[] lines = syntheticSampleColumns(NUM_SITES, NUM_TAXA, 42);
+        byte[][] genotypes = new byte[NUM_TAXA][NUM_SITES];
+        byte[][][] depths = new byte[NUM_TAXA][6][NUM_SITES];
+        for (int rep = 0; rep < 3; rep++) {
+            long time = System.nanoTime();
+            for (int s = 0; s < NUM_SITES; s++) {
+                splitterParse(lines[s], s, ALLELES, 1, genotypes, depths);
+            }
+            long splitterTime = System.nanoTime() - time;
+            time = System.nanoTime();
+            for (int s = 0; s < NUM_SITES; s++) {
+                VCFGenotypeParser.parseSamples(lines[s], 0, s, ALLELES, 1, genotypes, depths);
+            }
+            long parserTime = System.nanoTime() - time;
+            System.out.printf("VCFGenotypeParserTest: %d sites x %d taxa: Splitter %.3fs, VCFGenotypeParser %.3fs%n",
+                    NUM_SITES, NUM_TAXA, splitterTime / 1e9, parserTime / 1e9);
+        }
+    }
+
+    private static String[] syntheticSampleColumns(int numSites, int numTaxa, long seed) {
+        Random random = new Random(seed);
+        String[] gts = new String[]{"0/0", "0/1", "1/1", "0|2", "./.", "1/.", "2"};
+        String[] lines = new String[numSites];
+        for (int s = 0; s < numSites; s++) {
+            StringBuilder sb = new StringBuilder();
+            for (int t = 0; t < numTaxa; t++) {
+                if (t > 0) {
+                    sb.append('\t');
+                }
+                String gt = gts[random.nextInt(gts.length)];
+                sb.append(gt);
+                if (!gt.startsWith(".")) {
+                    sb.append(':').append(random.nextInt(300)).append(',').append(random.nextInt(20));
+                    sb.append(',').append(random.nextBoolean() ? "." : String.valueOf(random.nextInt(5)));
+                    sb.append(":99");
+                }
+            }
+            lines[s] = sb.toString();
+        }
+        return lines;
+    }
+
+    /**
+     * Sample column parsing as previously done in ProcessVCFBlock
+     */
+    private static void splitterParse(String samples, int s, byte[] alleles, int iAD, byte[][] gTS, byte[][][] dTS) {
+        int t = 0;
+        for (String taxaAllG : Splitter.on("\t").split(samples)) {
+            int f = 0;
+            if (taxaAllG.startsWith(".")) {
+                gTS[t][s] = GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+                t++;
+                continue;
+            }
+            for (String fieldS : Splitter.on(":").split(taxaAllG)) {
+                if (f == 0) {
+                    int a1;
+                    int a2;
+                    if (fieldS.length() == 1) {
+                        a1 = fieldS.charAt(0) - '0';
+                        a2 = fieldS.charAt(0) - '0';
+                    } else {
+                        a1 = fieldS.charAt(0) - '0';
+                        a2 = fieldS.charAt(2) - '0';
+                    }
+                    if (a1 < 0 || a2 < 0) {
+                        gTS[t][s] = GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+                    } else {
+                        gTS[t][s] = GenotypeTableUtils.getDiploidValue(alleles[a1], alleles[a2]);
+                    }
+                } else if (f == iAD) {
+                    if (gTS[t][s] != GenotypeTable.UNKNOWN_DIPLOID_ALLELE) {
+                        int i = 0;
+                        for (String ad : Splitter.on(",").split(fieldS)) {
+                            if (i >= alleles.length) {
+                                continue;
+                            }
+                            if (alleles[i] == GenotypeTable.UNKNOWN_ALLELE || ad.equals(".")) {
+                                i++;
+                                continue;
+                            }
+                            dTS[t][alleles[i++]][s] = AlleleDepthUtil.depthIntToByte(Integer.parseInt(ad));
+                        }
+                    }
+                }
+                f++;
+            }
+            t++;
+        }
+    }
+
+}
@@ -15,12 +15,15 @@ import net.maizegenetics.dna.map.GeneralPosition;
 import net.maizegenetics.dna.map.PositionListBuilder;
 import net.maizegenetics.util.TableReport;
 import net.maizegenetics.util.TableReportUtils;
+import net.maizegenetics.util.Utils;
 import net.maizegenetics.taxa.TaxaListBuilder;
 import net.maizegenetics.taxa.Taxon;
 import org.junit.Test;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import net.maizegenetics.analysis.popgen.LDResult;
 import net.maizegenetics.analysis.popgen.LinkageDisequilibrium;
 import net.maizegenetics.util.TableReportTestUtils;
 
@@ -208,4 +211,99 @@ public class LinkageDisequilibriumTest {
         }
         siteListLD = null;
     }
+
+    /**
+     * Tests that blocks of tests calculated in parallel match LD calculated
+     * one site pair at a time.
+     */
+    @Test
+    public void testParallelMatchesPairwise() {
+        System.out.println("Testing LD parallel blocks against site pairs...");
+
+        GenotypeTable inputAlign = ImportUtils.readFromHapmap(TutorialConstants.HAPMAP_CHR_9_10_FILENAME, null);
+        LinkageDisequilibrium slidingWinLD = new LinkageDisequilibrium(inputAlign, 100, LinkageDisequilibrium.testDesign.SlidingWindow, -1, null,
+                false, -1, null, LinkageDisequilibrium.HetTreatment.Haplotype);
+        slidingWinLD.run();
+
+        for (long i = 0; i < slidingWinLD.getRowCount(); i++) {
+            Object[] actualRow = slidingWinLD.getRow(i);
+            int site1 = (Integer) actualRow[2];
+            int site2 = (Integer) actualRow[8];
+            LDResult expected = LinkageDisequilibrium.calculateBitLDForHaplotype(false, 20, inputAlign, site1, site2);
+            assertEquals("RSqr: site1: " + site1 + " site2: " + site2, expected.r2(), (Float) actualRow[13], 0.0);
+            assertEquals("DPrime: site1: " + site1 + " site2: " + site2, expected.dPrime(), (Float) actualRow[14], 0.0);
+            assertEquals("PVal: site1: " + site1 + " site2: " + site2, expected.p(), (Float) actualRow[15], 0.0);
+            assertEquals("SampleSize: site1: " + site1 + " site2: " + site2, expected.n(), ((Integer) actualRow[16]).intValue());
+        }
+
+        LinkageDisequilibrium accumulativeLD = new LinkageDisequilibrium(inputAlign, 100, LinkageDisequilibrium.testDesign.SlidingWindow, -1, null,
+                true, 10, null, LinkageDisequilibrium.HetTreatment.Haplotype);
+        accumulativeLD.run();
+        long total = 0;
+        for (long i = 0; i < accumulativeLD.getRowCount(); i++) {
+            total += (Integer) accumulativeLD.getRow(i)[2];
+        }
+        assertEquals("Accumulative bins should count every test", slidingWinLD.getRowCount(), total);
+    }
+
+    /**
+     * Tests that pairs written to output file match in memory results.
+     */
+    @Test
+    public void testOutputFile() throws IOException {
+        System.out.println("Testing LD output file...");
+
+        GenotypeTable inputAlign = ImportUtils.readFromHapmap(TutorialConstants.HAPMAP_CHR_9_10_FILENAME, null);
+        LinkageDisequilibrium inMemoryLD = new LinkageDisequilibrium(inputAlign, 100, LinkageDisequilibrium.testDesign.SlidingWindow, -1, null,
+                false, -1, null, LinkageDisequilibrium.HetTreatment.Homozygous);
+        inMemoryLD.run();
+
+        new File(GeneralConstants.TEMP_DIR).mkdirs();
+        String outputFile = GeneralConstants.TEMP_DIR + "LinkageDisequilibriumTest.txt.gz";
+        float minR2 = 0.2f;
+        int binWidth = 10000;
+        int numBins = 50;
+        LinkageDisequilibrium streamingLD = new LinkageDisequilibrium(inputAlign, 100, LinkageDisequilibrium.testDesign.SlidingWindow, -1, null,
+                false, -1, null, LinkageDisequilibrium.HetTreatment.Homozygous);
+        streamingLD.setOutputFile(outputFile);
+        streamingLD.setMinR2(minR2);
+        streamingLD.setDecayBins(binWidth, numBins);
+        streamingLD.run();
+
+        long expectedWritten = 0;
+        long[] expectedCounts = new long[numBins];
+        for (long i = 0; i < inMemoryLD.getRowCount(); i++) {
+            Object[] row = inMemoryLD.getRow(i);
+            float r2 = (Float) row[13];
+            if (Float.isNaN(r2)) {
+                continue;
+            }
+            if (r2 >= minR2) {
+                expectedWritten++;
+            }
+            if ((row[12] instanceof Integer) && ((Integer) row[12] / binWidth < numBins)) {
+                expectedCounts[(Integer) row[12] / binWidth]++;
+            }
+        }
+        assertEquals("Number of pairs written", expectedWritten, streamingLD.getNumPairsWritten());
+        assertEquals("Number of decay bins", numBins, streamingLD.getRowCount());
+        for (int i = 0; i < numBins; i++) {
+            assertEquals("Decay bin: " + i, expectedCounts[i], ((Long) streamingLD.getRow(i)[2]).longValue());
+        }
+
+        try (BufferedReader reader = Utils.getBufferedReader(outputFile)) {
+            String[] header = reader.readLine().split("\t");
+            assertEquals("R^2", header[7]);
+            long numLines = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split("\t");
+                int site1 = Integer.parseInt(tokens[2]);
+                int site2 = Integer.parseInt(tokens[5]);
+                assertEquals("R^2: site1: " + site1 + " site2: " + site2, inMemoryLD.getRSqr(site1, site2), Float.parseFloat(tokens[7]), 0.0);
+                numLines++;
+            }
+            assertEquals("Number of lines written", expectedWritten, numLines);
+        }
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ *  IdentifierSynonymizerIndexTest
+ */
+package net.maizegenetics.taxa;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that scores and matches from the reference index are the same as
+ * scoring every reference name with IdentifierSynonymizer.getScore().
+ */
+public class IdentifierSynonymizerIndexTest {
+
+    private static final String DELIMITER = "_";
+
+    private static final String[] REFERENCE_NAMES = new String[]{"B73", "b73", "B73-1", "B73_HT", "Mo17", "MO17:250", "Oh43", "CML247", "CML-247",
+        "Ky21", "Ki3", "Ki11", "NC350", "NC358", "Tx303", "Hp301", "P39", "Il14H", "M37W", "Ms71", "Oh7B", "CML52", "CML69", "CML103",
+        "CML228", "CML277", "CML322", "CML333", "M162W", "Tzi8", "B97", "A", "AA", "W22", "W64A", "Mo18W", "A632", "A619_x_B73"};
+
+    private static final String[] ALTERNATE_NAMES = new String[]{"B73", "B73_1", "b73ht", "mo17", "MO-17", "CML_247:C05", "KI-11", "nc350",
+        "Ohio43", "A", "a", "Z", "CML69", "cml-69", "Tzi_8", "W64a:250", "M37W", "A619", "Ky-21", "p39:C0J:5", "Hp_301_x_B73"};
+
+    private static final boolean[][] OPTIONS = new boolean[][]{{false, false, false}, {true, false, false}, {true, true, false}, {true, true, true}};
+
+    @Test
+    public void testAllScores() {
+        TaxaList reference = new TaxaListBuilder().addAll(REFERENCE_NAMES).build();
+        for (int technique = 0; technique <= 7; technique++) {
+            IdentifierSynonymizerIndex index = new IdentifierSynonymizerIndex(reference, technique, DELIMITER);
+            for (String name : ALTERNATE_NAMES) {
+                for (boolean[] options : OPTIONS) {
+                    double[] scores = index.allScores(name, options[0], options[1], options[2]);
+                    assertEquals(REFERENCE_NAMES.length, scores.length);
+                    for (int i = 0; i < REFERENCE_NAMES.length; i++) {
+                        double expected = score(REFERENCE_NAMES[i], name, options, technique);
+                        assertEquals("technique: " + technique + " reference: " + REFERENCE_NAMES[i] + " name: " + name, expected, scores[i], 0.0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBestScores() {
+        TaxaList reference = new TaxaListBuilder().addAll(REFERENCE_NAMES).build();
+        double[] limits = new double[]{Double.POSITIVE_INFINITY, 2.0, 0.0};
+        for (int technique = 0; technique <= 7; technique++) {
+            IdentifierSynonymizerIndex index = new IdentifierSynonymizerIndex(reference, technique, DELIMITER);
+            for (String name : ALTERNATE_NAMES) {
+                for (boolean[] options : OPTIONS) {
+                    for (double limit : limits) {
+                        double[] scores = index.bestScores(name, options[0], options[1], options[2], limit);
+                        double lowest = Double.POSITIVE_INFINITY;
+                        for (String referenceName : REFERENCE_NAMES) {
+                            lowest = Math.min(lowest, score(referenceName, name, options, technique));
+                        }
+                        for (int i = 0; i < REFERENCE_NAMES.length; i++) {
+                            double expected = score(REFERENCE_NAMES[i], name, options, technique);
+                            if (expected <= Math.min(lowest, limit)) {
+                                assertEquals("technique: " + technique + " reference: " + REFERENCE_NAMES[i] + " name: " + name, expected, scores[i], 0.0);
+                            } else {
+                                assertTrue(Double.isNaN(scores[i]) || scores[i] == expected);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSynonymizer() {
+        TaxaList reference = new TaxaListBuilder().addAll(REFERENCE_NAMES).build();
+        TaxaList alternate = new TaxaListBuilder().addAll(ALTERNATE_NAMES).build();
+        for (int technique = 0; technique <= 7; technique++) {
+            IdentifierSynonymizer synonymizer = new IdentifierSynonymizer(reference, new TaxaList[]{alternate}, technique, DELIMITER);
+            TaxaList synonymized = synonymizer.getTaxaList();
+            for (int t = 0; t < alternate.numberOfTaxa(); t++) {
+                String name = alternate.taxaName(t);
+                ArrayList<String> expected = synonymizer.findBestMatch(name, reference);
+                if (expected.size() == 1 && expected.get(0).equals(name)) {
+                    expected.clear();
+                }
+                List<String> synonyms = Arrays.asList(synonymized.get(t).getAnnotation().getTextAnnotation(Taxon.SynonymKey));
+                assertEquals("technique: " + technique + " name: " + name, expected, synonyms);
+            }
+        }
+    }
+
+    private static double score(String reference, String name, boolean[] options, int technique) {
+        return IdentifierSynonymizer.getScore(reference, name, options[0], options[1], options[2], technique, DELIMITER);
+    }
+
+}
@@ -0,0 +1,65 @@
+package net.maizegenetics.taxa.distance;
+
+import net.maizegenetics.analysis.distance.EndelmanDistanceMatrix;
+import net.maizegenetics.constants.GeneralConstants;
+import net.maizegenetics.constants.TutorialConstants;
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.ImportUtils;
+import net.maizegenetics.taxa.TaxaListBuilder;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests memory mapped binary MultiBLUP matrices.
+ */
+public class MappedDistanceMatrixTest {
+
+    @Test
+    public void testMapBinMultiBlupMatrix() {
+
+        new File(GeneralConstants.TEMP_DIR).mkdirs();
+        String filename = GeneralConstants.TEMP_DIR + "MappedDistanceMatrixTest.grm.bin";
+
+        GenotypeTable genotypes = ImportUtils.readFromHapmap(TutorialConstants.HAPMAP_FILENAME);
+        DistanceMatrix expected = EndelmanDistanceMatrix.getInstance(genotypes);
+        WriteDistanceMatrix.saveBinMultiBlupMatrix(expected, filename);
+
+        DistanceMatrix read = ReadDistanceMatrix.readBinMultiBlupMatrix(filename);
+        DistanceMatrix mapped = ReadDistanceMatrix.mapBinMultiBlupMatrix(filename);
+        assertTrue(mapped instanceof MappedDistanceMatrix);
+
+        int numTaxa = expected.numberOfTaxa();
+        assertEquals(numTaxa, mapped.numberOfTaxa());
+        for (int r = 0; r < numTaxa; r++) {
+            assertEquals(expected.getTaxon(r).getName(), mapped.getTaxon(r).getName());
+            for (int c = 0; c < numTaxa; c++) {
+                assertEquals(expected.getDistance(r, c), mapped.getDistance(r, c), 0.0);
+                assertEquals(read.getDistance(r, c), mapped.getDistance(r, c), 0.0);
+            }
+        }
+        assertEquals(expected.meanDistance(), mapped.meanDistance(), 0.0);
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongSize() {
+
+        new File(GeneralConstants.TEMP_DIR).mkdirs();
+        String filename = GeneralConstants.TEMP_DIR + "MappedDistanceMatrixTestWrongSize.grm.bin";
+
+        GenotypeTable genotypes = ImportUtils.readFromHapmap(TutorialConstants.HAPMAP_FILENAME);
+        WriteDistanceMatrix.saveBinMultiBlupMatrix(EndelmanDistanceMatrix.getInstance(genotypes), filename);
+
+        // taxa list with one fewer taxon than file
+        TaxaListBuilder builder = new TaxaListBuilder();
+        for (int t = 0; t < genotypes.numberOfTaxa() - 1; t++) {
+            builder.add(genotypes.taxa().get(t));
+        }
+        MappedDistanceMatrix.getInstance(filename, builder.build(), null);
+
+    }
+
+}
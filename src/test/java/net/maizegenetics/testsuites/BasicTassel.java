@@ -45,6 +45,7 @@ import net.maizegenetics.dna.snp.GenotypeTableBuilderTest;
 import net.maizegenetics.dna.snp.GenotypeTableStreamTest;
 import net.maizegenetics.dna.snp.ImportUtilsTest;
 import net.maizegenetics.dna.snp.LineIndexHapmapTest;
+import net.maizegenetics.dna.snp.LineIndexVCFTest;
 import net.maizegenetics.dna.snp.genotypecall.AlleleFreqCacheTest;
 import net.maizegenetics.dna.snp.score.AlleleDepthUtilTest;
 import net.maizegenetics.dna.snp.genotypecall.BasicGenotypeMergeRuleTest;
@@ -53,6 +54,7 @@ import net.maizegenetics.popgen.LinkageDisequilibriumTest;
 import net.maizegenetics.prefs.TasselPrefsTest;
 import net.maizegenetics.stats.linearmodels.ModelEffectTest;
 import net.maizegenetics.taxa.IdentifierSynonymizerTest;
+import net.maizegenetics.taxa.IdentifierSynonymizerIndexTest;
 import net.maizegenetics.taxa.TaxaListBuilderTest;
 import net.maizegenetics.taxa.TaxaListIOUtilsTest;
 import net.maizegenetics.util.BitSetTest;
@@ -114,6 +116,7 @@ public class BasicTassel {
                 EqtlAssociationPluginTest.class,
                 MLMTest.class,
                 IdentifierSynonymizerTest.class,
+                IdentifierSynonymizerIndexTest.class,
                 GenotypeTableStreamTest.class,
                 GenosToABHPluginTest.class,
                 ChromosomeTest.class,
@@ -123,6 +126,7 @@ public class BasicTassel {
                 FilterSiteBuilderPluginTest.class,
                 AMatrixPluginTest.class,
                 LineIndexHapmapTest.class,
+                LineIndexVCFTest.class,
                 DominanceCenteredIBSTest.class,
                 DominanceNormalizedIBSTest.class,
                 CenteredIBSTest.class,
@@ -0,0 +1,60 @@
+/*
+ * ParallelBGZFInputStreamTest
+ */
+package net.maizegenetics.util;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that parallel BGZF decompression returns the same lines, in order,
+ * as the original file.
+ */
+public class ParallelBGZFInputStreamTest {
+
+    private static final int NUM_LINES = 50000;
+
+    @Test
+    public void testReadsLinesInOrder() throws Exception {
+        File bgzf = File.createTempFile("ParallelBGZFInputStreamTest", ".txt.gz");
+        bgzf.deleteOnExit();
+        try (OutputStream output = new BlockCompressedOutputStream(bgzf)) {
+            for (int i = 0; i < NUM_LINES; i++) {
+                output.write(line(i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        assertTrue(ParallelBGZFInputStream.isBGZF(bgzf.getAbsolutePath()));
+
+        try (BufferedReader reader = Utils.getBufferedReader(bgzf.getAbsolutePath())) {
+            for (int i = 0; i < NUM_LINES; i++) {
+                assertEquals(line(i).trim(), reader.readLine());
+            }
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void testPlainGzipIsNotBGZF() throws Exception {
+        File gzip = File.createTempFile("ParallelBGZFInputStreamTest", ".txt.gz");
+        gzip.deleteOnExit();
+        try (OutputStream output = new GZIPOutputStream(new FileOutputStream(gzip))) {
+            output.write(line(0).getBytes(StandardCharsets.UTF_8));
+        }
+        assertFalse(ParallelBGZFInputStream.isBGZF(gzip.getAbsolutePath()));
+    }
+
+    private static String line(int i) {
+        return "1\t" + i + "\tS1_" + i + "\tA\tC\t.\tPASS\t.\tGT\t0/0\t0/1\t1/1\n";
+    }
+
+}